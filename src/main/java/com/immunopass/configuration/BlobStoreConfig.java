@@ -0,0 +1,56 @@
+package com.immunopass.configuration;
+
+import java.nio.file.Paths;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.function.SingletonSupplier;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.immunopass.storage.BlobStore;
+import com.immunopass.storage.CachingBlobStore;
+import com.immunopass.storage.LocalBlobStore;
+import com.immunopass.storage.S3BlobStore;
+import com.immunopass.storage.TracingBlobStore;
+import com.immunopass.tracing.Tracer;
+
+
+/**
+ * Picks the {@link BlobStore} with {@code storage.type}: {@code s3} (default) or {@code local}. Either is traced.
+ */
+@Configuration
+public class BlobStoreConfig {
+
+    @Bean
+    @ConditionalOnProperty(value = "storage.type", havingValue = "s3", matchIfMissing = true)
+    public BlobStore s3BlobStore(
+            @Value("${aws.s3.accessKeyId}") final String accessKeyId,
+            @Value("${aws.s3.secretAccessKey}") final String secretAccessKey,
+            @Value("${aws.s3.region}") final String region,
+            @Value("${aws.s3.bucket}") final String bucket,
+            @Value("${storage.cache.directory:}") final String cacheDirectory,
+            @Value("${storage.cache.max_bytes:1073741824}") final long cacheMaxBytes,
+            final Tracer tracer) {
+        SingletonSupplier<AmazonS3> s3Client = SingletonSupplier.of(() -> {
+            AWSStaticCredentialsProvider credentials =
+                    new AWSStaticCredentialsProvider(new BasicAWSCredentials(accessKeyId, secretAccessKey));
+            return AmazonS3ClientBuilder.standard().withCredentials(credentials).withRegion(region).build();
+        });
+        BlobStore s3BlobStore = new S3BlobStore(s3Client, bucket);
+        if (cacheDirectory.isEmpty()) {
+            return new TracingBlobStore(s3BlobStore, tracer);
+        }
+        return new TracingBlobStore(new CachingBlobStore(s3BlobStore, Paths.get(cacheDirectory), cacheMaxBytes),
+                tracer);
+    }
+
+    @Bean
+    @ConditionalOnProperty(value = "storage.type", havingValue = "local")
+    public BlobStore localBlobStore(@Value("${storage.local.directory:blobs}") final String directory,
+            final Tracer tracer) {
+        return new TracingBlobStore(new LocalBlobStore(Paths.get(directory)), tracer);
+    }
+}
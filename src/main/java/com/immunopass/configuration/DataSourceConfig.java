@@ -0,0 +1,83 @@
+package com.immunopass.configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import com.immunopass.datasource.ReplicaHealthChecker;
+import com.immunopass.datasource.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+
+
+/**
+ * Enabled with {@code datasource.replica.enabled=true}. The primary keeps using the regular
+ * {@code spring.datasource.*} properties; replicas share its credentials unless overridden.
+ */
+@Configuration
+@ConditionalOnProperty(value = "datasource.replica.enabled", havingValue = "true")
+public class DataSourceConfig {
+
+    /*
+     * Spring Boot registers DataSourceProperties of its own, this one is primary so the data source initializer and
+     * Flyway still get a single candidate.
+     */
+    @Bean
+    @Primary
+    @ConfigurationProperties("spring.datasource")
+    public DataSourceProperties primaryDataSourceProperties() {
+        return new DataSourceProperties();
+    }
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(
+            final DataSourceProperties primaryDataSourceProperties,
+            @Value("${datasource.replica.urls}") final String[] replicaUrls,
+            @Value("${datasource.replica.username:${spring.datasource.username:}}") final String replicaUsername,
+            @Value("${datasource.replica.password:${spring.datasource.password:}}") final String replicaPassword) {
+        DataSource primary = primaryDataSourceProperties
+                .initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        List<DataSource> replicas = new ArrayList<>();
+        for (String replicaUrl : replicaUrls) {
+            replicas.add(DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .url(replicaUrl.trim())
+                    .username(replicaUsername)
+                    .password(replicaPassword)
+                    .build());
+        }
+        return new ReplicaRoutingDataSource(primary, replicas);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(final ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+
+    /*
+     * The time since the last replayed transaction only counts as lag while the replica has WAL left to replay, so a
+     * replica of an idle primary stays in rotation.
+     */
+    @Bean
+    @Lazy(false)
+    public ReplicaHealthChecker replicaHealthChecker(
+            final ReplicaRoutingDataSource replicaRoutingDataSource,
+            @Value("${datasource.replica.lag_query:select case"
+                    + " when pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() then 0"
+                    + " else coalesce(extract(epoch from now() - pg_last_xact_replay_timestamp()), 0) end}")
+            final String lagQuery,
+            @Value("${datasource.replica.max_lag_seconds:10}") final double maxLagSeconds) {
+        return new ReplicaHealthChecker(replicaRoutingDataSource, lagQuery, maxLagSeconds);
+    }
+}
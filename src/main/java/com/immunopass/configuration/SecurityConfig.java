@@ -27,6 +27,8 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                 .antMatchers("/v1/send_otp").permitAll()
                 .antMatchers("/v1/verify_otp").permitAll()
                 .antMatchers("/v1/verify_immunopass").permitAll()
+                .antMatchers("/v1/verify_immunopass_token").permitAll()
+                .antMatchers("/v1/immunopass_token_keys").permitAll()
                 .anyRequest().authenticated()
                 .and()
                 .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS)
@@ -0,0 +1,117 @@
+package com.immunopass.configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.sql.DataSource;
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import com.immunopass.datasource.ShardRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+
+
+/**
+ * Enabled with {@code datasource.shards.enabled=true}. Shard 0 is the primary database of the regular
+ * {@code spring.datasource.*} properties; {@code datasource.shards.urls} lists the other shards in order, which share
+ * its credentials unless overridden. Shards may be appended to the list, never removed or reordered. Can't be
+ * combined with read replicas.
+ *
+ * Every shard is migrated on startup. On the shards other than 0 the foreign keys to tables that aren't sharded are
+ * dropped, and the ids of the sharded tables are allocated from a range of the shard's own, so an id is unique
+ * across shards.
+ */
+@Configuration
+@ConditionalOnProperty(value = "datasource.shards.enabled", havingValue = "true")
+public class ShardDataSourceConfig {
+
+    private static final int ID_RANGE_BITS = 48;
+    private static final String[] SHARDED_SEQUENCES = {
+            "voucher_id_seq", "voucher_order_id_seq", "immunopass_id_seq", "sms_outbox_id_seq", "daily_rollup_id_seq"
+    };
+    private static final String[][] CROSS_SHARD_FOREIGN_KEYS = {
+            {"voucher_order", "fk_created_account_id"},
+            {"voucher_order", "fk_created_organization_id"},
+            {"voucher", "fk_immunopass_id"},
+            {"voucher", "fk_issuer_account_id"},
+            {"voucher", "fk_issuer_organization_id"},
+            {"voucher", "fk_redeemed_account_id"},
+            {"voucher", "fk_redeemed_pathology_lab_id"}
+    };
+
+    /*
+     * Spring Boot registers DataSourceProperties of its own, this one is primary so the data source initializer and
+     * Flyway still get a single candidate.
+     */
+    @Bean
+    @Primary
+    @ConfigurationProperties("spring.datasource")
+    public DataSourceProperties primaryDataSourceProperties() {
+        return new DataSourceProperties();
+    }
+
+    @Bean
+    public ShardRoutingDataSource shardRoutingDataSource(
+            final DataSourceProperties primaryDataSourceProperties,
+            @Value("${datasource.shards.urls}") final String[] shardUrls,
+            @Value("${datasource.shards.username:${spring.datasource.username:}}") final String shardUsername,
+            @Value("${datasource.shards.password:${spring.datasource.password:}}") final String shardPassword) {
+        List<DataSource> shards = new ArrayList<>();
+        shards.add(primaryDataSourceProperties
+                .initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build());
+        for (String shardUrl : shardUrls) {
+            shards.add(DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .url(shardUrl.trim())
+                    .username(shardUsername)
+                    .password(shardPassword)
+                    .build());
+        }
+        return new ShardRoutingDataSource(shards);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(final ShardRoutingDataSource shardRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(shardRoutingDataSource);
+    }
+
+    @Bean
+    public FlywayMigrationStrategy shardMigrationStrategy(final ShardRoutingDataSource shardRoutingDataSource) {
+        return flyway -> {
+            List<DataSource> shards = shardRoutingDataSource.getShards();
+            for (int shard = 0; shard < shards.size(); shard++) {
+                Flyway.configure()
+                        .configuration(flyway.getConfiguration())
+                        .dataSource(shards.get(shard))
+                        .load()
+                        .migrate();
+                if (shard > 0) {
+                    prepareShard(new JdbcTemplate(shards.get(shard)), shard);
+                }
+            }
+        };
+    }
+
+    private static void prepareShard(JdbcTemplate jdbcTemplate, int shard) {
+        for (String[] foreignKey : CROSS_SHARD_FOREIGN_KEYS) {
+            jdbcTemplate.execute("alter table immunopass." + foreignKey[0] + " drop constraint if exists "
+                    + foreignKey[1]);
+        }
+        long idBase = (long) shard << ID_RANGE_BITS;
+        for (String sequence : SHARDED_SEQUENCES) {
+            jdbcTemplate.queryForList("select setval('immunopass." + sequence + "', ?)"
+                    + " where (select last_value from immunopass." + sequence + ") < ?", Long.class, idBase, idBase);
+        }
+    }
+}
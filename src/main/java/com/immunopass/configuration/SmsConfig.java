@@ -0,0 +1,22 @@
+package com.immunopass.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import com.immunopass.util.TokenBucket;
+
+
+/**
+ * The one rate limiter of the instance's SMS, {@code sms.max_per_second}: voucher dispatch and the SMS outbox take a
+ * token from it before every SMS. Both only run on the cron instance, so the limit holds for the whole deployment and
+ * can be set to the SMS provider's.
+ */
+@Configuration
+public class SmsConfig {
+
+    @Bean
+    public TokenBucket smsRateLimiter(
+            @Value("${sms.max_per_second:${voucher_order.dispatch.max_sms_per_second:50}}") final double maxPerSecond) {
+        return new TokenBucket(maxPerSecond);
+    }
+}
@@ -0,0 +1,30 @@
+package com.immunopass.controller;
+
+import java.util.List;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import com.immunopass.model.BulkImmunopassRecord;
+import com.immunopass.model.BulkImmunopassResponse;
+
+
+@RestController
+@RequestMapping("/v1/immunopasses/bulk")
+public interface BulkImmunopassController {
+
+    @PostMapping(value = "", consumes = MediaType.APPLICATION_JSON_VALUE)
+    BulkImmunopassResponse createImmunopasses(@RequestBody final List<BulkImmunopassRecord> records);
+
+    /*
+     * Accepts either a CSV file (header row followed by
+     * userName,userMobile,immunoTestResult,userEmpId,userGovernmentId,userLocation) or a JSON-lines file with one
+     * record per line.
+     */
+    @PostMapping(value = "", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    BulkImmunopassResponse uploadImmunopasses(@RequestParam("file") final MultipartFile file);
+
+}
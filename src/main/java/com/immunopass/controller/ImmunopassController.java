@@ -1,12 +1,16 @@
 package com.immunopass.controller;
 
+import java.util.Map;
 import javax.validation.Valid;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import com.immunopass.model.Immunopass;
+import com.immunopass.model.ImmunopassToken;
 import com.immunopass.model.VerifyImmunopassRequest;
+import com.immunopass.model.VerifyImmunopassTokenRequest;
 
 
 @RestController
@@ -19,4 +23,10 @@ public interface ImmunopassController {
     @PostMapping("/verify_immunopass")
     Immunopass verifyImmunopass(@Valid @RequestBody final VerifyImmunopassRequest immunopass);
 
+    @PostMapping("/verify_immunopass_token")
+    ImmunopassToken verifyImmunopassToken(@Valid @RequestBody final VerifyImmunopassTokenRequest request);
+
+    @GetMapping("/immunopass_token_keys")
+    Map<String, String> getImmunopassTokenKeys();
+
 }
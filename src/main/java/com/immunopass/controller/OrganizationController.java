@@ -1,13 +1,21 @@
 package com.immunopass.controller;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import com.immunopass.model.DailyStats;
+import com.immunopass.enums.VoucherStatus;
 import com.immunopass.model.Organization;
+import com.immunopass.model.VoucherSummaryPage;
 
 
 @RestController
@@ -24,4 +32,27 @@ public interface OrganizationController {
     @GetMapping("/{id}")
     Organization getOrganization(@NotNull @PathVariable final String id);
 
+    @GetMapping("/{id}/daily_stats")
+    List<DailyStats> getDailyStats(
+            @NotNull @PathVariable final String id,
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) final LocalDate from,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) final LocalDate to);
+
+    /**
+     * Lists the organization's vouchers, newest first. Pages are fetched with the {@code nextCursor} of the previous
+     * page rather than an offset, so deep pages cost the same as the first one. Redeemed and expired vouchers moved
+     * to the archive are listed too.
+     */
+    @GetMapping("/{id}/vouchers")
+    VoucherSummaryPage getVouchers(
+            @NotNull @PathVariable final String id,
+            @RequestParam(value = "status", required = false) final VoucherStatus status,
+            @RequestParam(value = "orderId", required = false) final Long orderId,
+            @RequestParam(value = "createdFrom", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) final LocalDateTime createdFrom,
+            @RequestParam(value = "createdTo", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) final LocalDateTime createdTo,
+            @RequestParam(value = "cursor", required = false) final String cursor,
+            @RequestParam(value = "limit", defaultValue = "50") final int limit);
+
 }
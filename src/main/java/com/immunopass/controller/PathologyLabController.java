@@ -1,12 +1,17 @@
 package com.immunopass.controller;
 
+import java.time.LocalDate;
+import java.util.List;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import com.immunopass.model.DailyStats;
 import com.immunopass.model.PathologyLab;
 
 
@@ -24,4 +29,10 @@ public interface PathologyLabController {
     @GetMapping("/{id}")
     PathologyLab getPathologyLab(@NotNull @PathVariable final String id);
 
+    @GetMapping("/{id}/daily_stats")
+    List<DailyStats> getDailyStats(
+            @NotNull @PathVariable final String id,
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) final LocalDate from,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) final LocalDate to);
+
 }
@@ -1,12 +1,15 @@
 package com.immunopass.controller;
 
 import javax.validation.Valid;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import com.immunopass.model.Voucher;
 import com.immunopass.model.VoucherRequest;
+import com.immunopass.model.VoucherSearchResult;
 
 
 @RestController
@@ -19,4 +22,15 @@ public interface VoucherController {
     @PostMapping("/fetch_voucher")
     Voucher getVoucher(@Valid @RequestBody final VoucherRequest voucherRequest);
 
+    /**
+     * Finds the redeemable vouchers of a person, by mobile number or by employee id within the issuing organization.
+     */
+    @GetMapping("/vouchers/search")
+    VoucherSearchResult searchVouchers(
+            @RequestParam(value = "mobile", required = false) final String mobile,
+            @RequestParam(value = "empId", required = false) final String empId,
+            @RequestParam(value = "organizationId", required = false) final Long organizationId,
+            @RequestParam(value = "page", defaultValue = "0") final int page,
+            @RequestParam(value = "size", defaultValue = "20") final int size);
+
 }
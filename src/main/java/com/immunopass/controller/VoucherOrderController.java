@@ -1,10 +1,17 @@
 package com.immunopass.controller;
 
+import javax.validation.constraints.NotNull;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import com.immunopass.model.VoucherOrder;
 
 
@@ -15,4 +22,9 @@ public interface VoucherOrderController {
     @PostMapping("")
     public VoucherOrder createVoucherOrder(@RequestParam("file") MultipartFile file);
 
+    @GetMapping("/{id}/vouchers.csv")
+    ResponseEntity<StreamingResponseBody> exportVouchers(
+            @NotNull @PathVariable final Long id,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) final String acceptEncoding);
+
 }
@@ -0,0 +1,275 @@
+package com.immunopass.cron;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import com.immunopass.entity.VoucherOrderEntity;
+import com.immunopass.enums.SpanKind;
+import com.immunopass.service.VoucherOrderService;
+import com.immunopass.service.VoucherOrderService.DispatchChunk;
+import com.immunopass.tracing.Span;
+import com.immunopass.tracing.Tracer;
+import com.immunopass.util.TokenBucket;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+
+/**
+ * The dispatch stage of the {@link VoucherOrderPipeline}. Orders are not sent one after another but in chunks, picked
+ * by deficit round-robin over organizations: on its turn an organization earns {@code quantum * weight} SMS of
+ * credit and spends it on chunks of its orders, which take turns among themselves. A big order therefore only delays
+ * a small order of another organization by one round, at most the sum of the active organizations' credit divided by
+ * the send rate, however many vouchers it has left.
+ *
+ * All workers take from the instance's SMS {@link TokenBucket}, shared with the SMS outbox, which keeps the total
+ * send rate within the SMS provider's limit. Every chunk is a span of its order's trace.
+ */
+class FairDispatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FairDispatcher.class);
+
+    private final VoucherOrderService voucherOrderService;
+    private final Map<Long, Integer> organizationWeights;
+    private final int quantum;
+    private final int capacity;
+    private final TokenBucket rateLimiter;
+    private final Consumer<VoucherOrderEntity> onDone;
+    private final Tracer tracer;
+    private final ExecutorService workers;
+    private final int workerCount;
+    private final AtomicInteger busyWorkers = new AtomicInteger();
+
+    // Guarded by this.
+    private final Map<Long, OrganizationQueue> organizationQueues = new HashMap<>();
+    private final Deque<OrganizationQueue> turns = new ArrayDeque<>();
+    private int queuedOrders;
+    private boolean stopped;
+
+    FairDispatcher(final VoucherOrderService voucherOrderService,
+            final Map<Long, Integer> organizationWeights,
+            final int quantum,
+            final int workerCount,
+            final int capacity,
+            final TokenBucket rateLimiter,
+            final Consumer<VoucherOrderEntity> onDone,
+            final Tracer tracer,
+            final MeterRegistry meterRegistry) {
+        this.voucherOrderService = voucherOrderService;
+        this.organizationWeights = organizationWeights;
+        this.quantum = quantum;
+        this.capacity = capacity;
+        this.rateLimiter = rateLimiter;
+        this.onDone = onDone;
+        this.tracer = tracer;
+        this.workerCount = workerCount;
+        this.workers = Executors.newFixedThreadPool(workerCount,
+                new CustomizableThreadFactory("voucher-order-dispatch-"));
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(this::work);
+        }
+        Gauge.builder("voucher_order.pipeline.queue.size", this, FairDispatcher::getQueuedOrders)
+                .tag("stage", "dispatch")
+                .register(meterRegistry);
+        Gauge.builder("voucher_order.pipeline.utilization", busyWorkers,
+                busy -> (double) busy.get() / workerCount)
+                .tag("stage", "dispatch")
+                .register(meterRegistry);
+        Gauge.builder("voucher_order.dispatch.organizations", this, FairDispatcher::getActiveOrganizations)
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return false if the dispatcher already holds {@code capacity} orders or is shut down.
+     */
+    synchronized boolean offer(VoucherOrderEntity voucherOrderEntity, Span orderSpan) {
+        if (stopped || queuedOrders >= capacity) {
+            return false;
+        }
+        Long organizationId = voucherOrderEntity.getCreatedOrganizationId();
+        OrganizationQueue organizationQueue = organizationQueues.get(organizationId);
+        if (organizationQueue == null) {
+            // Joins at the end of the round with the credit of its first turn, so it is served on that turn.
+            organizationQueue = new OrganizationQueue(organizationWeights.getOrDefault(organizationId, 1), quantum);
+            organizationQueues.put(organizationId, organizationQueue);
+            turns.addLast(organizationQueue);
+        }
+        organizationQueue.ready.addLast(new OrderCursor(voucherOrderEntity, orderSpan));
+        queuedOrders++;
+        notifyAll();
+        return true;
+    }
+
+    synchronized int getQueuedOrders() {
+        return queuedOrders;
+    }
+
+    synchronized int getActiveOrganizations() {
+        return organizationQueues.size();
+    }
+
+    void shutdown(long timeoutMs) throws InterruptedException {
+        synchronized (this) {
+            stopped = true;
+            notifyAll();
+        }
+        workers.shutdown();
+        if (!workers.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS)) {
+            // Interrupts the rate limiter wait; unsent vouchers stay allotted for the next run.
+            workers.shutdownNow();
+        }
+    }
+
+    private void work() {
+        while (true) {
+            Grant grant;
+            try {
+                grant = take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (grant == null) {
+                return;
+            }
+            busyWorkers.incrementAndGet();
+            DispatchChunk chunk = null;
+            try (Span span = tracer.startSpan("voucher_order.dispatch", SpanKind.INTERNAL, grant.order.span)) {
+                span.setAttribute("voucher_order.chunk_limit", grant.limit);
+                try {
+                    chunk = voucherOrderService.dispatchVouchers(grant.order.voucherOrderEntity,
+                            grant.order.afterVoucherId, grant.limit, rateLimiter);
+                    span.setAttribute("voucher_order.sent", chunk.getSent());
+                    span.setAttribute("voucher_order.failed", chunk.getFailed());
+                } catch (RuntimeException e) {
+                    LOGGER.error("Error occured while processing voucher order {}.",
+                            grant.order.voucherOrderEntity.getId(), e);
+                    span.recordError(e);
+                }
+            } finally {
+                busyWorkers.decrementAndGet();
+                // Also after an Error, so the order is released rather than left in flight.
+                complete(grant, chunk);
+            }
+        }
+    }
+
+    /**
+     * Waits for the next chunk to send, or returns null once shut down.
+     */
+    private synchronized Grant take() throws InterruptedException {
+        while (!stopped) {
+            Grant grant = nextGrant();
+            if (grant != null) {
+                return grant;
+            }
+            wait();
+        }
+        return null;
+    }
+
+    private Grant nextGrant() {
+        // Two passes: an organization that ends its turn is topped up, so it can be served on the second.
+        for (int i = 0; i < 2 * turns.size(); i++) {
+            OrganizationQueue organizationQueue = turns.peekFirst();
+            if (organizationQueue.deficit > 0 && !organizationQueue.ready.isEmpty()) {
+                OrderCursor order = organizationQueue.ready.pollFirst();
+                int limit = Math.min(organizationQueue.deficit, voucherOrderService.getDispatchChunkSize());
+                organizationQueue.deficit -= limit;
+                organizationQueue.sending++;
+                return new Grant(organizationQueue, order, limit);
+            }
+            turns.addLast(turns.pollFirst());
+            if (organizationQueue.ready.isEmpty()) {
+                // Nothing ready, so no credit is banked: an idle organization can't come back with a burst.
+                organizationQueue.deficit = 0;
+            } else {
+                organizationQueue.deficit += quantum * organizationQueue.weight;
+            }
+        }
+        return null;
+    }
+
+    private void complete(Grant grant, DispatchChunk chunk) {
+        VoucherOrderEntity voucherOrderEntity = grant.order.voucherOrderEntity;
+        boolean done;
+        synchronized (this) {
+            OrganizationQueue organizationQueue = grant.organizationQueue;
+            organizationQueue.sending--;
+            if (chunk != null) {
+                // Refund the credit of vouchers the chunk turned out not to have.
+                organizationQueue.deficit += grant.limit - chunk.getSent() - chunk.getFailed();
+                grant.order.afterVoucherId = chunk.getLastVoucherId();
+                grant.order.failure |= chunk.getFailed() > 0;
+            }
+            done = chunk == null || chunk.isExhausted() || stopped;
+            if (done) {
+                queuedOrders--;
+                if (organizationQueue.ready.isEmpty() && organizationQueue.sending == 0) {
+                    organizationQueues.remove(voucherOrderEntity.getCreatedOrganizationId());
+                    turns.remove(organizationQueue);
+                }
+            } else {
+                organizationQueue.ready.addLast(grant.order);
+            }
+            notifyAll();
+        }
+        if (!done) {
+            return;
+        }
+        try (Span span = tracer.startSpan("voucher_order.complete", SpanKind.INTERNAL, grant.order.span)) {
+            if (chunk != null && chunk.isExhausted() && !grant.order.failure) {
+                voucherOrderService.completeOrder(voucherOrderEntity);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Error occured while completing voucher order {}.", voucherOrderEntity.getId(), e);
+            grant.order.span.recordError(e);
+        } finally {
+            onDone.accept(voucherOrderEntity);
+        }
+    }
+
+    private static class OrganizationQueue {
+        private final int weight;
+        private final Deque<OrderCursor> ready = new ArrayDeque<>();
+        private int deficit;
+        // Orders of this organization a worker is sending a chunk of right now.
+        private int sending;
+
+        private OrganizationQueue(final int weight, final int quantum) {
+            this.weight = weight;
+            this.deficit = quantum * weight;
+        }
+    }
+
+    private static class OrderCursor {
+        private final VoucherOrderEntity voucherOrderEntity;
+        private final Span span;
+        private long afterVoucherId;
+        private boolean failure;
+
+        private OrderCursor(final VoucherOrderEntity voucherOrderEntity, final Span span) {
+            this.voucherOrderEntity = voucherOrderEntity;
+            this.span = span;
+        }
+    }
+
+    private static class Grant {
+        private final OrganizationQueue organizationQueue;
+        private final OrderCursor order;
+        private final int limit;
+
+        private Grant(final OrganizationQueue organizationQueue, final OrderCursor order, final int limit) {
+            this.organizationQueue = organizationQueue;
+            this.order = order;
+            this.limit = limit;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.immunopass.cron;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+
+/**
+ * One stage of the {@link VoucherOrderPipeline}: a fixed pool of workers fed by a bounded queue. A full queue
+ * rejects new work instead of blocking the stage before it.
+ */
+class PipelineStage {
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final Timer taskTimer;
+
+    PipelineStage(final String name, final int threads, final int queueCapacity, final MeterRegistry meterRegistry) {
+        this.name = name;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory("voucher-order-" + name + "-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.taskTimer = Timer.builder("voucher_order.pipeline.task")
+                .tag("stage", name)
+                .register(meterRegistry);
+        Gauge.builder("voucher_order.pipeline.queue.size", executor, stageExecutor -> stageExecutor.getQueue().size())
+                .tag("stage", name)
+                .register(meterRegistry);
+        Gauge.builder("voucher_order.pipeline.utilization", executor,
+                stageExecutor -> (double) stageExecutor.getActiveCount() / stageExecutor.getMaximumPoolSize())
+                .tag("stage", name)
+                .register(meterRegistry);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return false if the stage's queue is full or the stage is shut down.
+     */
+    boolean offer(Runnable task) {
+        try {
+            executor.execute(() -> taskTimer.record(task));
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    void shutdown(long timeoutMs) throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+}
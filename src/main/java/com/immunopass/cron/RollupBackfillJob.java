@@ -0,0 +1,41 @@
+package com.immunopass.cron;
+
+import java.time.LocalDate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import com.immunopass.service.RollupService;
+
+
+/**
+ * One-off backfill of the daily rollups, enabled with {@code rollup.backfill.enabled=true}, run by the cron instance
+ * on startup. Covers the {@code rollup.backfill.days} days before today; today is left to the incremental updates.
+ * Once a shard is backfilled, later starts skip it, see {@link RollupService#backfill}.
+ */
+@Component
+@ConditionalOnProperty(value = {"rollup.backfill.enabled", "cronInstance"}, havingValue = "true")
+public class RollupBackfillJob {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RollupBackfillJob.class);
+
+    private final RollupService rollupService;
+    private final int days;
+
+    public RollupBackfillJob(final RollupService rollupService,
+            @Value("${rollup.backfill.days:90}") final int days) {
+        this.rollupService = rollupService;
+        this.days = days;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        LocalDate today = LocalDate.now();
+        LOGGER.info("Backfilling daily rollups for the last {} days.", days);
+        rollupService.backfill(today.minusDays(days), today);
+        LOGGER.info("Daily rollup backfill done.");
+    }
+}
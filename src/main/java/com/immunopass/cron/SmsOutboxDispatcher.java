@@ -0,0 +1,56 @@
+package com.immunopass.cron;
+
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import com.immunopass.datasource.ShardRouter;
+import com.immunopass.enums.SmsType;
+import com.immunopass.service.SmsOutboxService;
+
+
+/**
+ * Drains the SMS outbox. Runs on the cron instance only, like voucher dispatch, so every SMS is sent by one instance
+ * and its rate limiter holds the SMS provider's limit however many instances are running. The leases taken by
+ * {@link SmsOutboxService#dispatchBatch(Set)} still keep a drain that outlives a redeploy from sending an SMS twice.
+ * Login OTPs are drained by a task of their own, so they don't wait behind bulk immunopass SMS. Every shard has an
+ * outbox of its own, written with its vouchers.
+ */
+@Component
+@Lazy(false)
+@ConditionalOnProperty(value = "cronInstance", havingValue = "true")
+public class SmsOutboxDispatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SmsOutboxDispatcher.class);
+
+    private final SmsOutboxService smsOutboxService;
+    private final ShardRouter shardRouter;
+
+    public SmsOutboxDispatcher(final SmsOutboxService smsOutboxService, final ShardRouter shardRouter) {
+        this.smsOutboxService = smsOutboxService;
+        this.shardRouter = shardRouter;
+    }
+
+    @Scheduled(fixedDelayString = "${sms.outbox.poll_interval_ms:500}")
+    public void dispatchOtps() {
+        shardRouter.runOnEachShard(() -> drain(SmsOutboxService.OTP_LANE));
+    }
+
+    @Scheduled(fixedDelayString = "${sms.outbox.poll_interval_ms:500}")
+    public void dispatchBulk() {
+        shardRouter.runOnEachShard(() -> drain(SmsOutboxService.BULK_LANE));
+    }
+
+    private void drain(Set<SmsType> lane) {
+        int claimed;
+        do {
+            claimed = smsOutboxService.dispatchBatch(lane);
+            if (claimed > 0) {
+                LOGGER.debug("Dispatched {} outbox SMS of {}.", claimed, lane);
+            }
+        } while (claimed == smsOutboxService.getBatchSize());
+    }
+}
@@ -0,0 +1,113 @@
+package com.immunopass.cron;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import com.immunopass.datasource.ShardRouter;
+import com.immunopass.service.VoucherArchiveService;
+
+
+/**
+ * Expires vouchers not redeemed within {@code voucher.expiry_days} of being issued, then archives vouchers that have
+ * been redeemed or expired for {@code voucher.archive.after_days}. A setting of 0 turns the step off.
+ *
+ * Batches are spaced by {@code voucher.archive.batch_pause_ms}, and the job waits while the replicas lag more than
+ * {@code voucher.archive.max_replica_lag_seconds} behind, as reported by the primary. Each shard is drained in turn,
+ * waiting on its own replicas.
+ */
+@Component
+@Lazy(false)
+@ConditionalOnProperty(value = "cronInstance", havingValue = "true")
+public class VoucherArchiveJob {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VoucherArchiveJob.class);
+
+    private final VoucherArchiveService voucherArchiveService;
+    private final ShardRouter shardRouter;
+    private final JdbcTemplate jdbcTemplate;
+    private final int expiryDays;
+    private final int archiveAfterDays;
+    private final long batchPauseMs;
+    private final String replicaLagQuery;
+    private final double maxReplicaLagSeconds;
+
+    public VoucherArchiveJob(final VoucherArchiveService voucherArchiveService,
+            final ShardRouter shardRouter,
+            final JdbcTemplate jdbcTemplate,
+            @Value("${voucher.expiry_days:0}") final int expiryDays,
+            @Value("${voucher.archive.after_days:0}") final int archiveAfterDays,
+            @Value("${voucher.archive.batch_pause_ms:200}") final long batchPauseMs,
+            @Value("${voucher.archive.replica_lag_query:select coalesce(max(extract(epoch from replay_lag)), 0)"
+                    + " from pg_stat_replication}") final String replicaLagQuery,
+            @Value("${voucher.archive.max_replica_lag_seconds:5}") final double maxReplicaLagSeconds) {
+        this.voucherArchiveService = voucherArchiveService;
+        this.shardRouter = shardRouter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.expiryDays = expiryDays;
+        this.archiveAfterDays = archiveAfterDays;
+        this.batchPauseMs = batchPauseMs;
+        this.replicaLagQuery = replicaLagQuery;
+        this.maxReplicaLagSeconds = maxReplicaLagSeconds;
+    }
+
+    @Scheduled(fixedDelayString = "${voucher.archive.interval_ms:3600000}", initialDelay = 300000)
+    public void run() {
+        try {
+            if (expiryDays > 0) {
+                LocalDateTime createdBefore = LocalDateTime.now().minusDays(expiryDays);
+                int expired = drainEachShard(() -> voucherArchiveService.expireBatch(createdBefore));
+                LOGGER.info("Expired {} vouchers issued before {}.", expired, createdBefore);
+            }
+            if (archiveAfterDays > 0) {
+                LocalDateTime updatedBefore = LocalDateTime.now().minusDays(archiveAfterDays);
+                int archived = drainEachShard(() -> voucherArchiveService.archiveBatch(updatedBefore));
+                LOGGER.info("Archived {} vouchers redeemed or expired before {}.", archived, updatedBefore);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int drainEachShard(IntSupplier batch) throws InterruptedException {
+        int total = 0;
+        for (int shard = 0; shard < shardRouter.getDirectory().getShardCount(); shard++) {
+            try (ShardRouter.Binding binding = shardRouter.bind(shard)) {
+                total += drain(batch);
+            }
+        }
+        return total;
+    }
+
+    private int drain(IntSupplier batch) throws InterruptedException {
+        int total = 0;
+        int processed;
+        do {
+            awaitReplicas();
+            processed = batch.getAsInt();
+            total += processed;
+            TimeUnit.MILLISECONDS.sleep(batchPauseMs);
+        } while (processed == voucherArchiveService.getBatchSize());
+        return total;
+    }
+
+    private void awaitReplicas() throws InterruptedException {
+        if (StringUtils.isBlank(replicaLagQuery)) {
+            return;
+        }
+        Double lag;
+        while ((lag = jdbcTemplate.queryForObject(replicaLagQuery, Double.class)) != null
+                && lag > maxReplicaLagSeconds) {
+            LOGGER.info("Replicas are {} seconds behind, pausing the voucher archive job.", lag);
+            TimeUnit.SECONDS.sleep(1);
+        }
+    }
+}
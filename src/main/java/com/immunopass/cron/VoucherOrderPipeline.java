@@ -0,0 +1,212 @@
+package com.immunopass.cron;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.PreDestroy;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import com.immunopass.entity.VoucherOrderEntity;
+import com.immunopass.enums.OrderStatus;
+import com.immunopass.enums.SpanKind;
+import com.immunopass.service.VoucherOrderService;
+import com.immunopass.tracing.Span;
+import com.immunopass.tracing.Tracer;
+import com.immunopass.util.TokenBucket;
+import io.micrometer.core.instrument.MeterRegistry;
+
+
+/**
+ * Moves voucher orders through three stages, each with its own workers: ingest downloads the order's file, create
+ * inserts its vouchers and dispatch sends their SMS. So a slow download no longer holds up the SMS of other orders,
+ * and one order can be created while another is dispatched. Dispatch shares its workers fairly between
+ * organizations, see {@link FairDispatcher}.
+ *
+ * The order status in the database stays the source of truth. An order that finds the next stage's queue full is
+ * let go and picked up again by a later poll, from the stage its status says it is in.
+ *
+ * Every admission of an order is the root span of a trace, with a child span for each stage's work on it.
+ */
+@Component
+@Lazy(false)
+@ConditionalOnProperty(value = "cronInstance", havingValue = "true")
+public class VoucherOrderPipeline {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VoucherOrderPipeline.class);
+
+    private final VoucherOrderService voucherOrderService;
+    private final long shutdownTimeoutMs;
+    private final PipelineStage ingestStage;
+    private final PipelineStage createStage;
+    private final FairDispatcher dispatchStage;
+    private final Tracer tracer;
+    // Orders held by some stage, so a poll doesn't admit them twice.
+    private final Set<Long> inFlightOrderIds = ConcurrentHashMap.newKeySet();
+    // Root spans of the orders in flight, ended on release.
+    private final Map<Long, Span> orderSpans = new ConcurrentHashMap<>();
+
+    public VoucherOrderPipeline(final VoucherOrderService voucherOrderService,
+            final MeterRegistry meterRegistry,
+            final Tracer tracer,
+            final TokenBucket smsRateLimiter,
+            @Value("${voucher_order.pipeline.ingest.threads:2}") final int ingestThreads,
+            @Value("${voucher_order.pipeline.ingest.queue_capacity:8}") final int ingestQueueCapacity,
+            @Value("${voucher_order.pipeline.create.threads:2}") final int createThreads,
+            @Value("${voucher_order.pipeline.create.queue_capacity:4}") final int createQueueCapacity,
+            @Value("${voucher_order.pipeline.dispatch.threads:4}") final int dispatchThreads,
+            @Value("${voucher_order.pipeline.dispatch.queue_capacity:64}") final int dispatchQueueCapacity,
+            @Value("${voucher_order.dispatch.quantum:100}") final int dispatchQuantum,
+            @Value("${voucher_order.dispatch.weights:}") final String dispatchWeights,
+            @Value("${voucher_order.pipeline.shutdown_timeout_ms:30000}") final long shutdownTimeoutMs) {
+        this.voucherOrderService = voucherOrderService;
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        this.tracer = tracer;
+        this.ingestStage = new PipelineStage("ingest", ingestThreads, ingestQueueCapacity, meterRegistry);
+        // Records wait in this queue between ingest and create, so its capacity bounds the files held in memory.
+        this.createStage = new PipelineStage("create", createThreads, createQueueCapacity, meterRegistry);
+        this.dispatchStage = new FairDispatcher(voucherOrderService, parseWeights(dispatchWeights), dispatchQuantum,
+                dispatchThreads, dispatchQueueCapacity, smsRateLimiter, this::release, tracer, meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${voucher_order.pipeline.poll_interval_ms:10000}", initialDelay = 60000)
+    public void poll() {
+        voucherOrderService.findOrdersByStatus(OrderStatus.CREATED)
+                .forEach(voucherOrderEntity -> admit(voucherOrderEntity, ingestStage,
+                        () -> ingest(voucherOrderEntity)));
+        voucherOrderService.findOrdersByStatus(OrderStatus.PROCESSING)
+                .forEach(voucherOrderEntity -> {
+                    if (track(voucherOrderEntity)) {
+                        dispatch(voucherOrderEntity);
+                    }
+                });
+    }
+
+    private void admit(VoucherOrderEntity voucherOrderEntity, PipelineStage stage, Runnable task) {
+        if (track(voucherOrderEntity)) {
+            handOff(voucherOrderEntity, stage, task);
+        }
+    }
+
+    /**
+     * @return false if the order is already in flight.
+     */
+    private boolean track(VoucherOrderEntity voucherOrderEntity) {
+        if (!inFlightOrderIds.add(voucherOrderEntity.getId())) {
+            return false;
+        }
+        Span orderSpan = tracer.startDetachedSpan("voucher_order");
+        orderSpan.setAttribute("voucher_order.id", voucherOrderEntity.getId());
+        orderSpan.setAttribute("voucher_order.status", voucherOrderEntity.getStatus().name());
+        orderSpan.setAttribute("organization.id", voucherOrderEntity.getCreatedOrganizationId());
+        orderSpans.put(voucherOrderEntity.getId(), orderSpan);
+        return true;
+    }
+
+    private Span orderSpan(VoucherOrderEntity voucherOrderEntity) {
+        return orderSpans.getOrDefault(voucherOrderEntity.getId(), Span.NOOP);
+    }
+
+    private void ingest(VoucherOrderEntity voucherOrderEntity) {
+        List<String> records;
+        boolean read = false;
+        try (Span span = tracer.startSpan("voucher_order.ingest", SpanKind.INTERNAL, orderSpan(voucherOrderEntity))) {
+            try {
+                records = voucherOrderService.readOrderRecords(voucherOrderEntity);
+                read = true;
+            } catch (RuntimeException e) {
+                LOGGER.error("Error occured while reading the file of voucher order {}.", voucherOrderEntity.getId(),
+                        e);
+                span.recordError(e);
+                return;
+            }
+        } finally {
+            // Errors too, so the order isn't left in flight.
+            if (!read) {
+                release(voucherOrderEntity);
+            }
+        }
+        handOff(voucherOrderEntity, createStage, () -> create(voucherOrderEntity, records));
+    }
+
+    private void create(VoucherOrderEntity voucherOrderEntity, List<String> records) {
+        boolean created = false;
+        try (Span span = tracer.startSpan("voucher_order.create", SpanKind.INTERNAL, orderSpan(voucherOrderEntity))) {
+            try {
+                voucherOrderService.createVouchers(voucherOrderEntity, records);
+                created = true;
+            } catch (RuntimeException e) {
+                LOGGER.error("Error occured while creating the vouchers of order {}.", voucherOrderEntity.getId(), e);
+                span.recordError(e);
+                return;
+            }
+        } finally {
+            if (!created) {
+                release(voucherOrderEntity);
+            }
+        }
+        dispatch(voucherOrderEntity);
+    }
+
+    // The dispatcher releases the order once it is done with it.
+    private void dispatch(VoucherOrderEntity voucherOrderEntity) {
+        if (!dispatchStage.offer(voucherOrderEntity, orderSpan(voucherOrderEntity))) {
+            LOGGER.debug("Stage dispatch is full, voucher order {} waits for the next poll.",
+                    voucherOrderEntity.getId());
+            orderSpan(voucherOrderEntity).setAttribute("voucher_order.deferred_at", "dispatch");
+            release(voucherOrderEntity);
+        }
+    }
+
+    private void handOff(VoucherOrderEntity voucherOrderEntity, PipelineStage stage, Runnable task) {
+        if (!stage.offer(task)) {
+            LOGGER.debug("Stage {} is full, voucher order {} waits for the next poll.", stage.getName(),
+                    voucherOrderEntity.getId());
+            orderSpan(voucherOrderEntity).setAttribute("voucher_order.deferred_at", stage.getName());
+            release(voucherOrderEntity);
+        }
+    }
+
+    private void release(VoucherOrderEntity voucherOrderEntity) {
+        Span orderSpan = orderSpans.remove(voucherOrderEntity.getId());
+        if (orderSpan != null) {
+            orderSpan.close();
+        }
+        inFlightOrderIds.remove(voucherOrderEntity.getId());
+    }
+
+    /**
+     * Parses {@code organizationId:weight} pairs separated by commas. Organizations not listed have weight 1, listed
+     * ones need a positive weight.
+     */
+    static Map<Long, Integer> parseWeights(String weights) {
+        Map<Long, Integer> organizationWeights = new HashMap<>();
+        for (String entry : StringUtils.split(weights, ',')) {
+            String[] parts = StringUtils.split(entry.trim(), ':');
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid dispatch weight " + entry);
+            }
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight <= 0) {
+                throw new IllegalArgumentException("Invalid dispatch weight " + entry);
+            }
+            organizationWeights.put(Long.valueOf(parts[0].trim()), weight);
+        }
+        return organizationWeights;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // Upstream first, so orders finishing a stage can still be handed to the next one.
+        ingestStage.shutdown(shutdownTimeoutMs);
+        createStage.shutdown(shutdownTimeoutMs);
+        dispatchStage.shutdown(shutdownTimeoutMs);
+    }
+}
@@ -0,0 +1,64 @@
+package com.immunopass.datasource;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import javax.sql.DataSource;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+
+/**
+ * Periodically probes every replica and takes it out of rotation when it is unreachable or its replay lag is above
+ * the configured threshold. The lag query must return the lag in seconds as a single numeric column; when it is
+ * blank only connectivity is checked.
+ */
+public class ReplicaHealthChecker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaHealthChecker.class);
+
+    private final ReplicaRoutingDataSource routingDataSource;
+    private final String lagQuery;
+    private final double maxLagSeconds;
+
+    public ReplicaHealthChecker(final ReplicaRoutingDataSource routingDataSource, final String lagQuery,
+            final double maxLagSeconds) {
+        this.routingDataSource = routingDataSource;
+        this.lagQuery = lagQuery;
+        this.maxLagSeconds = maxLagSeconds;
+    }
+
+    @Scheduled(fixedDelayString = "${datasource.replica.health_check_interval_ms:5000}")
+    public void checkReplicas() {
+        routingDataSource.getReplicas().forEach((key, dataSource) -> {
+            boolean healthy = isHealthy(key, dataSource);
+            if (healthy != routingDataSource.isReplicaHealthy(key)) {
+                LOGGER.warn("Replica {} is now {}.", key, healthy ? "in rotation" : "out of rotation");
+            }
+            routingDataSource.markReplicaHealth(key, healthy);
+        });
+    }
+
+    private boolean isHealthy(final String key, final DataSource dataSource) {
+        try (Connection connection = dataSource.getConnection()) {
+            if (StringUtils.isBlank(lagQuery)) {
+                return connection.isValid(2);
+            }
+            try (Statement statement = connection.createStatement();
+                    ResultSet resultSet = statement.executeQuery(lagQuery)) {
+                // A NULL lag means the replica hasn't replayed anything yet, e.g. right after it was promoted.
+                double lag = resultSet.next() ? resultSet.getDouble(1) : 0;
+                if (lag > maxLagSeconds) {
+                    LOGGER.warn("Replica {} is lagging by {} seconds.", key, lag);
+                    return false;
+                }
+                return true;
+            }
+        } catch (Exception e) {
+            LOGGER.error("Health check failed for replica {}.", key, e);
+            return false;
+        }
+    }
+}
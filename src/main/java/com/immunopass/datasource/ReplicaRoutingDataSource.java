@@ -0,0 +1,79 @@
+package com.immunopass.datasource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+
+/**
+ * Routes read-only transactions to one of the healthy replicas and everything else to the primary.
+ *
+ * The routing key is resolved when the physical connection is fetched, so this data source has to be wrapped in a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}; otherwise the connection is taken before
+ * the transaction's read-only flag is bound to the thread.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    public static final String PRIMARY = "primary";
+    private static final String REPLICA_PREFIX = "replica-";
+
+    private final List<String> replicaKeys;
+    private final Map<String, DataSource> replicas;
+    private final Map<String, Boolean> replicaHealth = new ConcurrentHashMap<>();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(final DataSource primary, final List<DataSource> replicas) {
+        Map<Object, Object> targetDataSources = new HashMap<>();
+        Map<String, DataSource> replicasByKey = new HashMap<>();
+        List<String> keys = new ArrayList<>();
+        targetDataSources.put(PRIMARY, primary);
+        for (int i = 0; i < replicas.size(); i++) {
+            String key = REPLICA_PREFIX + i;
+            keys.add(key);
+            replicasByKey.put(key, replicas.get(i));
+            targetDataSources.put(key, replicas.get(i));
+            replicaHealth.put(key, true);
+        }
+        this.replicaKeys = Collections.unmodifiableList(keys);
+        this.replicas = Collections.unmodifiableMap(replicasByKey);
+        setTargetDataSources(targetDataSources);
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+        int size = replicaKeys.size();
+        int start = Math.floorMod(nextReplica.getAndIncrement(), Math.max(size, 1));
+        for (int i = 0; i < size; i++) {
+            String key = replicaKeys.get((start + i) % size);
+            if (replicaHealth.get(key)) {
+                return key;
+            }
+        }
+        // No replica is reachable or within the lag threshold, so the primary serves the read.
+        return PRIMARY;
+    }
+
+    public Map<String, DataSource> getReplicas() {
+        return replicas;
+    }
+
+    public void markReplicaHealth(final String key, final boolean healthy) {
+        replicaHealth.replace(key, healthy);
+    }
+
+    public boolean isReplicaHealthy(final String key) {
+        return replicaHealth.getOrDefault(key, false);
+    }
+}
@@ -0,0 +1,131 @@
+package com.immunopass.datasource;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * Knows which shard holds what.
+ *
+ * <ul>
+ * <li>An organization's vouchers and voucher orders live on the shard in its {@code organization.shard} column, which
+ * never changes. Existing organizations stay on shard 0, new ones go to the shard with the fewest organizations.</li>
+ * <li>Voucher and immunopass codes carry their shard in the first letter: {@code A} or {@code a} for shard 0,
+ * {@code B} or {@code b} for shard 1, and so on. Codes issued before sharding have a random first letter, they are
+ * on shard 0.</li>
+ * <li>Immunopasses don't belong to an organization, they are spread over the shards by mobile number.</li>
+ * </ul>
+ *
+ * Directory lookups read the primary database directly, never through a shard's transaction.
+ */
+@Component
+public class ShardDirectory {
+
+    public static final int MAX_SHARDS = 26;
+    private static final String ORGANIZATION_SHARD_QUERY = "select shard from immunopass.organization where id = ?";
+    private static final String ORGANIZATIONS_PER_SHARD_QUERY =
+            "select shard, count(*) from immunopass.organization group by shard";
+
+    private final int shardCount;
+    private final JdbcTemplate primaryJdbcTemplate;
+    private final Map<Long, Integer> organizationShards = new ConcurrentHashMap<>();
+
+    public ShardDirectory(final ObjectProvider<ShardRoutingDataSource> shardRoutingDataSource) {
+        ShardRoutingDataSource shards = shardRoutingDataSource.getIfAvailable();
+        this.shardCount = shards == null ? 1 : shards.getShards().size();
+        this.primaryJdbcTemplate = shards == null ? null : new JdbcTemplate(shards.getShards().get(0));
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public int shardOfOrganization(Long organizationId) {
+        if (shardCount == 1 || organizationId == null) {
+            return 0;
+        }
+        Integer shard = organizationShards.get(organizationId);
+        if (shard == null) {
+            List<Integer> shards =
+                    primaryJdbcTemplate.queryForList(ORGANIZATION_SHARD_QUERY, Integer.class, organizationId);
+            if (shards.isEmpty()) {
+                // Not cached, the organization may be created later.
+                return 0;
+            }
+            shard = checkShard(shards.get(0));
+            organizationShards.put(organizationId, shard);
+        }
+        return shard;
+    }
+
+    /**
+     * @return the shard for a new organization.
+     */
+    public int placeOrganization() {
+        if (shardCount == 1) {
+            return 0;
+        }
+        long[] organizations = new long[shardCount];
+        primaryJdbcTemplate.query(ORGANIZATIONS_PER_SHARD_QUERY, resultSet -> {
+            int shard = resultSet.getInt(1);
+            if (shard < shardCount) {
+                organizations[shard] = resultSet.getLong(2);
+            }
+        });
+        int placement = 0;
+        for (int shard = 1; shard < shardCount; shard++) {
+            if (organizations[shard] < organizations[placement]) {
+                placement = shard;
+            }
+        }
+        return placement;
+    }
+
+    public int placeImmunopass(String userMobile) {
+        return shardCount == 1 ? 0 : Math.floorMod(userMobile.hashCode(), shardCount);
+    }
+
+    /**
+     * @return the shard the code's first letter names, or shard 0 if it names none.
+     */
+    public int shardOfCode(String code) {
+        if (shardCount == 1 || code == null || code.isEmpty()) {
+            return 0;
+        }
+        int shard = Character.toUpperCase(code.charAt(0)) - 'A';
+        return shard >= 0 && shard < shardCount ? shard : 0;
+    }
+
+    /**
+     * Replaces the first letter of a random alphabetic code with one naming the shard. Unsharded codes stay random.
+     */
+    public String codeOnShard(int shard, String randomCode) {
+        if (shardCount == 1) {
+            return randomCode;
+        }
+        return codePrefixes(shard).charAt(ThreadLocalRandom.current().nextInt(2)) + randomCode.substring(1);
+    }
+
+    /**
+     * @return the letters a code on the shard may start with.
+     */
+    public String codePrefixes(int shard) {
+        if (shardCount == 1) {
+            return "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+        }
+        return new String(new char[] {(char) ('A' + shard), (char) ('a' + shard)});
+    }
+
+    private int checkShard(int shard) {
+        if (shard < 0 || shard >= shardCount) {
+            throw new IllegalStateException("Organization is placed on shard " + shard + " but only " + shardCount
+                    + " shards are configured.");
+        }
+        return shard;
+    }
+}
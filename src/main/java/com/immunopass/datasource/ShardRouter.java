@@ -0,0 +1,244 @@
+package com.immunopass.datasource;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+
+/**
+ * Binds work to a shard of the {@link ShardRoutingDataSource}. The shard has to be bound before the transaction that
+ * reads or writes the sharded tables issues its first statement, and a transaction never spans two shards; methods
+ * routed here start their transactions inside the work they pass in.
+ *
+ * Without sharding every call runs its work directly, on the one database.
+ */
+@Component
+public class ShardRouter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardRouter.class);
+    private static final ThreadLocal<Integer> CURRENT_SHARD = new ThreadLocal<>();
+
+    private final ShardDirectory directory;
+    private final TransactionTemplate newTransactionTemplate;
+    private final TransactionTemplate newReadOnlyTransactionTemplate;
+
+    public ShardRouter(final ShardDirectory directory, final PlatformTransactionManager transactionManager) {
+        this.directory = directory;
+        this.newTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.newTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.newReadOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.newReadOnlyTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.newReadOnlyTransactionTemplate.setReadOnly(true);
+    }
+
+    static int currentShard() {
+        Integer shard = CURRENT_SHARD.get();
+        return shard == null ? 0 : shard;
+    }
+
+    public ShardDirectory getDirectory() {
+        return directory;
+    }
+
+    public boolean isSharded() {
+        return directory.getShardCount() > 1;
+    }
+
+    /**
+     * Binds the shard to the current thread until the binding is closed, for work that can't be passed as a
+     * {@link Supplier}, e.g. because it throws checked exceptions.
+     */
+    public Binding bind(int shard) {
+        Integer previous = CURRENT_SHARD.get();
+        CURRENT_SHARD.set(shard);
+        return new Binding(previous);
+    }
+
+    public <T> T callOnShard(int shard, Supplier<T> work) {
+        try (Binding binding = bind(shard)) {
+            return work.get();
+        }
+    }
+
+    public void runOnShard(int shard, Runnable work) {
+        try (Binding binding = bind(shard)) {
+            work.run();
+        }
+    }
+
+    public <T> T callForOrganization(Long organizationId, Supplier<T> work) {
+        return callOnShard(directory.shardOfOrganization(organizationId), work);
+    }
+
+    public void runForOrganization(Long organizationId, Runnable work) {
+        runOnShard(directory.shardOfOrganization(organizationId), work);
+    }
+
+    /**
+     * Runs a lookup by voucher or immunopass code on the code's shard, then on shard 0 if it found nothing there:
+     * codes issued before sharding don't name their shard.
+     */
+    public <T> Optional<T> findByCode(String code, Supplier<Optional<T>> lookup) {
+        int shard = directory.shardOfCode(code);
+        Optional<T> found = callOnShard(shard, lookup);
+        if (!found.isPresent() && shard != 0) {
+            found = callOnShard(0, lookup);
+        }
+        return found;
+    }
+
+    /**
+     * Runs the work on every shard, one after the other. Must be called outside of a transaction.
+     */
+    public void runOnEachShard(Runnable work) {
+        for (int shard = 0; shard < directory.getShardCount(); shard++) {
+            runOnShard(shard, work);
+        }
+    }
+
+    /**
+     * Runs a query on every shard, one after the other, and concatenates the results in shard order. Each shard is
+     * queried in a read only transaction of its own, so this may be called inside a transaction too.
+     */
+    public <T> List<T> collectFromEachShard(Supplier<? extends Collection<T>> query) {
+        if (!isSharded()) {
+            return new ArrayList<>(query.get());
+        }
+        List<T> results = new ArrayList<>();
+        for (int shard = 0; shard < directory.getShardCount(); shard++) {
+            results.addAll(readOnShard(shard, query));
+        }
+        return results;
+    }
+
+    /**
+     * Runs a query on the shard in a read only transaction of its own, so this may be called inside a transaction on
+     * another shard.
+     */
+    public <T> T readOnShard(int shard, Supplier<T> query) {
+        if (!isSharded()) {
+            return query.get();
+        }
+        return callOnShard(shard, () -> newReadOnlyTransactionTemplate.execute(status -> query.get()));
+    }
+
+    /**
+     * Runs a write to the tables kept on the primary database, e.g. an organization's voucher counters, that goes
+     * with a write to a shard. Without sharding it runs right away, in the current transaction. With sharding it
+     * runs in a transaction of its own once the shard's transaction has committed, or right away outside of one; if
+     * it fails the counters are off, the shard's rows stay authoritative.
+     */
+    public void runOnPrimaryAfterCommit(Runnable work) {
+        if (!isSharded()) {
+            work.run();
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    runOnPrimary(work);
+                }
+            });
+        } else {
+            runOnPrimary(work);
+        }
+    }
+
+    /**
+     * Runs a write to the tables kept on the primary database that decides whether the shard's transaction goes on,
+     * e.g. taking an organization's voucher quota with a conditional update, or that mustn't be lost when it commits.
+     * Without sharding it runs in the current transaction. With sharding it commits in a transaction of its own
+     * right away, and if it applied and the current transaction then rolls back, {@code undo} runs the same way. A
+     * failure of the work is thrown to the caller; a failure of the undo is logged and the counters are off.
+     *
+     * @return whether the work applied, as it reported.
+     */
+    public boolean applyOnPrimary(BooleanSupplier work, Runnable undo) {
+        if (!isSharded()) {
+            return work.getAsBoolean();
+        }
+        boolean applied = Boolean.TRUE.equals(
+                callOnShard(0, () -> newTransactionTemplate.execute(status -> work.getAsBoolean())));
+        if (applied && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK) {
+                        runOnPrimary(undo);
+                    }
+                }
+            });
+        }
+        return applied;
+    }
+
+    /**
+     * Runs a write that doesn't have to commit with the current transaction, e.g. to a counter row every transaction
+     * on the shard would otherwise wait for, in a transaction of its own on the current shard once the current
+     * transaction has committed, or right away outside of one. A rolled back transaction drops the write; if the
+     * write fails it is logged and lost.
+     */
+    public void runOnShardAfterCommit(Runnable work) {
+        int shard = currentShard();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    runInNewTransaction(shard, work);
+                }
+            });
+        } else {
+            runInNewTransaction(shard, work);
+        }
+    }
+
+    private void runOnPrimary(Runnable work) {
+        runInNewTransaction(0, work);
+    }
+
+    /*
+     * Work run after a commit has to start a new transaction, or it joins the one that just committed.
+     */
+    private void runInNewTransaction(int shard, Runnable work) {
+        try {
+            runOnShard(shard, () -> newTransactionTemplate.execute(status -> {
+                work.run();
+                return null;
+            }));
+        } catch (RuntimeException e) {
+            LOGGER.error("Error writing to shard {} after a transaction's commit.", shard, e);
+        }
+    }
+
+    /**
+     * Restores the shard bound before it when closed.
+     */
+    public static final class Binding implements AutoCloseable {
+        private final Integer previous;
+
+        private Binding(final Integer previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (previous == null) {
+                CURRENT_SHARD.remove();
+            } else {
+                CURRENT_SHARD.set(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.immunopass.datasource;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+
+/**
+ * Routes to the shard bound to the current thread by the {@link ShardRouter}, or to shard 0 when none is. Shard 0 is
+ * the primary database: besides its share of the sharded tables it keeps every table that isn't sharded, and the
+ * rows written before sharding was enabled.
+ *
+ * The shard is resolved when the physical connection is fetched, so like the {@link ReplicaRoutingDataSource} this
+ * data source has to be wrapped in a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}: a
+ * transaction then runs on the shard bound when its first statement is issued.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    private final List<DataSource> shards;
+
+    public ShardRoutingDataSource(final List<DataSource> shards) {
+        if (shards.isEmpty() || shards.size() > ShardDirectory.MAX_SHARDS) {
+            throw new IllegalArgumentException("Between 1 and " + ShardDirectory.MAX_SHARDS + " shards are supported.");
+        }
+        Map<Object, Object> targetDataSources = new HashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            targetDataSources.put(i, shards.get(i));
+        }
+        this.shards = Collections.unmodifiableList(shards);
+        setTargetDataSources(targetDataSources);
+        setDefaultTargetDataSource(shards.get(0));
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardRouter.currentShard();
+    }
+
+    public List<DataSource> getShards() {
+        return shards;
+    }
+}
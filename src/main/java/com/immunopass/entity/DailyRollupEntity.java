@@ -0,0 +1,47 @@
+package com.immunopass.entity;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import org.hibernate.annotations.UpdateTimestamp;
+import com.immunopass.enums.RollupMetric;
+import com.immunopass.enums.RollupOwnerType;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+
+@Entity
+@Table(schema = "immunopass", name = "daily_rollup")
+@Builder
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+@NoArgsConstructor(access = AccessLevel.PACKAGE)
+@Data
+public class DailyRollupEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(value = EnumType.STRING)
+    private RollupOwnerType ownerType;
+
+    private Long ownerId;
+
+    private LocalDate day;
+
+    @Enumerated(value = EnumType.STRING)
+    private RollupMetric metric;
+
+    private Long value;
+
+    @UpdateTimestamp
+    private LocalDateTime updatedAt;
+}
@@ -44,6 +44,8 @@ public class OrganizationEntity {
 
     private Integer redeemedVouchers;
 
+    private int shard;
+
     @CreationTimestamp
     private LocalDateTime createdAt;
 
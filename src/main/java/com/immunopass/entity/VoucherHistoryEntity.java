@@ -0,0 +1,70 @@
+package com.immunopass.entity;
+
+import java.time.LocalDateTime;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import com.immunopass.enums.IDType;
+import com.immunopass.enums.VoucherStatus;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+
+/**
+ * A redeemed or expired voucher moved out of the voucher table by the archive job. Rows keep their voucher id.
+ */
+@Entity
+@Table(schema = "immunopass", name = "voucher_history")
+@Builder
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+@NoArgsConstructor(access = AccessLevel.PACKAGE)
+@Data
+public class VoucherHistoryEntity {
+    @Id
+    private Long id;
+
+    private String voucherCode;
+
+    private Long issuerAccountId;
+
+    private Long issuerOrganizationId;
+
+    private String userName;
+
+    private String userMobile;
+
+    private String userEmpId;
+
+    private String userGovernmentId;
+
+    @Enumerated(value = EnumType.STRING)
+    private IDType userGovtIdType;
+
+    private String userLocation;
+
+    @Enumerated(value = EnumType.STRING)
+    private VoucherStatus status;
+
+    private Long redeemedAccountId;
+
+    private Long redeemedPathologyLabId;
+
+    private Long orderId;
+
+    private Long immunopassId;
+
+    private Integer retryCount;
+
+    private String lastFailureReason;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime updatedAt;
+
+    private LocalDateTime archivedAt;
+}
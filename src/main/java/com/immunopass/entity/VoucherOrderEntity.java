@@ -40,6 +40,11 @@ public class VoucherOrderEntity {
 
     private Long createdOrganizationId;
 
+    private String contentSha256;
+
+    // Same as contentSha256 while the order is inside the upload dedup window, cleared afterwards.
+    private String dedupKey;
+
     @CreationTimestamp
     private LocalDateTime createdAt;
 
@@ -0,0 +1,5 @@
+package com.immunopass.enums;
+
+public enum AuditEntityType {
+    VOUCHER, OTP
+}
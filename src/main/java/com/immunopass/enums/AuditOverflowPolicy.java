@@ -0,0 +1,11 @@
+package com.immunopass.enums;
+
+/**
+ * What the audit trail does with an event when its queue is full.
+ */
+public enum AuditOverflowPolicy {
+    /** Drop the event and count it, the caller never waits. */
+    DROP,
+    /** Write the event synchronously on the caller's thread. */
+    CALLER_WRITES
+}
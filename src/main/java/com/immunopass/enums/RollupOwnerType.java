@@ -0,0 +1,5 @@
+package com.immunopass.enums;
+
+public enum RollupOwnerType {
+    ORGANIZATION, PATHOLOGY_LAB
+}
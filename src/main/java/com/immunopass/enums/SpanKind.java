@@ -0,0 +1,23 @@
+package com.immunopass.enums;
+
+/**
+ * The role of a traced operation, numbered as in OpenTelemetry's {@code SpanKind}.
+ */
+public enum SpanKind {
+    /** Work inside the service. */
+    INTERNAL(1),
+    /** An incoming HTTP request. */
+    SERVER(2),
+    /** A call out to the database, the SMS gateway or the blob store. */
+    CLIENT(3);
+
+    private final int otlpValue;
+
+    SpanKind(final int otlpValue) {
+        this.otlpValue = otlpValue;
+    }
+
+    public int getOtlpValue() {
+        return otlpValue;
+    }
+}
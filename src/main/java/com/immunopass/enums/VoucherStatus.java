@@ -1,5 +1,5 @@
 package com.immunopass.enums;
 
 public enum VoucherStatus {
-    ALLOTTED, PROCESSED, REDEEMED
+    ALLOTTED, PROCESSED, REDEEMED, EXPIRED
 }
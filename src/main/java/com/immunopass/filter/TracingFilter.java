@@ -0,0 +1,51 @@
+package com.immunopass.filter;
+
+import java.io.IOException;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import com.immunopass.tracing.Span;
+import com.immunopass.tracing.Tracer;
+
+
+/**
+ * Runs every request in a server span, ahead of the security filters so authentication is traced too. The span
+ * continues the caller's trace when the request carries a {@code traceparent} header, and the trace id is returned
+ * in {@code X-Trace-Id}.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class TracingFilter extends OncePerRequestFilter {
+
+    private final Tracer tracer;
+
+    public TracingFilter(final Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    @Override
+    protected void doFilterInternal(final HttpServletRequest httpServletRequest,
+            final HttpServletResponse httpServletResponse, final FilterChain filterChain)
+            throws ServletException, IOException {
+        String target = httpServletRequest.getRequestURI();
+        try (Span span = tracer.startServerSpan(httpServletRequest.getMethod() + " " + target,
+                httpServletRequest.getHeader("traceparent"))) {
+            span.setAttribute("http.method", httpServletRequest.getMethod());
+            span.setAttribute("http.target", target);
+            httpServletResponse.setHeader("X-Trace-Id", span.getTraceId());
+            try {
+                filterChain.doFilter(httpServletRequest, httpServletResponse);
+            } catch (IOException | ServletException | RuntimeException e) {
+                span.recordError(e);
+                throw e;
+            } finally {
+                span.setAttribute("http.status_code", httpServletResponse.getStatus());
+            }
+        }
+    }
+}
@@ -8,6 +8,10 @@ import lombok.experimental.UtilityClass;
 @UtilityClass
 public class ImmunopassMapper {
     public Immunopass map(ImmunopassEntity immunopassEntity) {
+        return map(immunopassEntity, null);
+    }
+
+    public Immunopass map(ImmunopassEntity immunopassEntity, String token) {
         return Immunopass.builder()
                 .id(immunopassEntity.getId())
                 .userName(immunopassEntity.getUserName())
@@ -17,6 +21,7 @@ public class ImmunopassMapper {
                 .userLocation(immunopassEntity.getUserLocation())
                 .immunopassCode(immunopassEntity.getImmunopassCode())
                 .immunoTestResult(immunopassEntity.getImmunoTestResult())
+                .token(token)
                 .build();
     }
 }
@@ -1,6 +1,7 @@
 package com.immunopass.mapper;
 
 import com.immunopass.entity.VoucherEntity;
+import com.immunopass.entity.VoucherHistoryEntity;
 import com.immunopass.model.Voucher;
 import lombok.experimental.UtilityClass;
 
@@ -22,7 +23,26 @@ public class VoucherMapper {
                 .status(voucherEntity.getStatus())
                 .redeemedAccountId(voucherEntity.getRedeemedAccountId())
                 .redeemedPathologyLabId(voucherEntity.getRedeemedPathologyLabId())
-                .orderId(voucherEntity.getIssuerAccountId())
+                .orderId(voucherEntity.getOrderId())
+                .build();
+    }
+
+    public Voucher map(VoucherHistoryEntity voucherHistoryEntity) {
+        return Voucher.builder()
+                .id(voucherHistoryEntity.getId())
+                .voucherCode(voucherHistoryEntity.getVoucherCode())
+                .issuerAccountId(voucherHistoryEntity.getIssuerAccountId())
+                .issuerOrganizationId(voucherHistoryEntity.getIssuerOrganizationId())
+                .userName(voucherHistoryEntity.getUserName())
+                .userMobile(voucherHistoryEntity.getUserMobile())
+                .userEmpId(voucherHistoryEntity.getUserEmpId())
+                .userGovernmentId(voucherHistoryEntity.getUserGovernmentId())
+                .userGovtIDType(voucherHistoryEntity.getUserGovtIdType())
+                .userLocation(voucherHistoryEntity.getUserLocation())
+                .status(voucherHistoryEntity.getStatus())
+                .redeemedAccountId(voucherHistoryEntity.getRedeemedAccountId())
+                .redeemedPathologyLabId(voucherHistoryEntity.getRedeemedPathologyLabId())
+                .orderId(voucherHistoryEntity.getOrderId())
                 .build();
     }
 }
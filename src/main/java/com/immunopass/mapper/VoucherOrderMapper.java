@@ -1,13 +1,19 @@
 package com.immunopass.mapper;
 
+import java.util.List;
 import com.immunopass.entity.VoucherOrderEntity;
 import com.immunopass.model.VoucherOrder;
+import com.immunopass.model.VoucherOrderRowReport;
 import lombok.experimental.UtilityClass;
 
 
 @UtilityClass
 public class VoucherOrderMapper {
     public VoucherOrder map(VoucherOrderEntity voucherOrderEntity) {
+        return map(voucherOrderEntity, null);
+    }
+
+    public VoucherOrder map(VoucherOrderEntity voucherOrderEntity, List<VoucherOrderRowReport> skippedRows) {
         return VoucherOrder.builder()
                 .id(voucherOrderEntity.getId())
                 .uploadedFile(voucherOrderEntity.getUploadedFile())
@@ -16,6 +22,7 @@ public class VoucherOrderMapper {
                 .createdAccountId(voucherOrderEntity.getCreatedAccountId())
                 .createdOrganizationId(voucherOrderEntity.getCreatedOrganizationId())
                 .createdAt(voucherOrderEntity.getCreatedAt())
+                .skippedRows(skippedRows)
                 .build();
     }
 }
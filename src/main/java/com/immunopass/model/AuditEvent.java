@@ -0,0 +1,23 @@
+package com.immunopass.model;
+
+import java.time.LocalDateTime;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.immunopass.enums.AuditEntityType;
+import lombok.Builder;
+import lombok.Getter;
+
+
+@Getter
+@Builder
+@JsonIgnoreProperties(ignoreUnknown=true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AuditEvent {
+    private final AuditEntityType entityType;
+    private final Long entityId;
+    private final String fromStatus;
+    private final String toStatus;
+    private final Long actorAccountId;
+    private final Long actorPathologyLabId;
+    private final LocalDateTime occurredAt;
+}
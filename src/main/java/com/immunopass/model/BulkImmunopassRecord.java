@@ -0,0 +1,25 @@
+package com.immunopass.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.immunopass.enums.ImmunoTestResult;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+
+@Getter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown=true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkImmunopassRecord {
+    private String userName;
+    private String userMobile;
+    private ImmunoTestResult immunoTestResult;
+    private String userEmpId;
+    private String userGovernmentId;
+    private String userLocation;
+}
@@ -0,0 +1,21 @@
+package com.immunopass.model;
+
+import java.util.List;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Getter;
+
+
+@Getter
+@Builder
+@JsonIgnoreProperties(ignoreUnknown=true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkImmunopassResponse {
+    private final Integer total;
+    private final Integer created;
+    private final Integer duplicates;
+    private final Integer invalid;
+    private final Integer failed;
+    private final List<BulkImmunopassResult> results;
+}
@@ -0,0 +1,20 @@
+package com.immunopass.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.immunopass.enums.BulkRowStatus;
+import lombok.Builder;
+import lombok.Getter;
+
+
+@Getter
+@Builder
+@JsonIgnoreProperties(ignoreUnknown=true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkImmunopassResult {
+    private final Integer row;
+    private final String userMobile;
+    private final BulkRowStatus status;
+    private final String immunopassCode;
+    private final String reason;
+}
@@ -0,0 +1,19 @@
+package com.immunopass.model;
+
+import java.time.LocalDate;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Getter;
+
+
+@Getter
+@Builder
+@JsonIgnoreProperties(ignoreUnknown=true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class DailyStats {
+    private final LocalDate day;
+    private final Long issued;
+    private final Long sent;
+    private final Long redeemed;
+}
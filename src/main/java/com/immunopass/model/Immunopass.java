@@ -25,5 +25,7 @@ public class Immunopass {
     private final String userLocation;
     private final ImmunoTestResult immunoTestResult;
     private final String immunopassCode;
+    // Signed, offline-verifiable pass for the QR code. Only returned when the pass is created.
+    private final String token;
 
 }
@@ -0,0 +1,21 @@
+package com.immunopass.model;
+
+import java.time.Instant;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.immunopass.enums.ImmunoTestResult;
+import lombok.Builder;
+import lombok.Getter;
+
+
+@Getter
+@Builder
+@JsonIgnoreProperties(ignoreUnknown=true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ImmunopassToken {
+    private final String immunopassCode;
+    private final String maskedUserName;
+    private final ImmunoTestResult immunoTestResult;
+    private final Instant issuedAt;
+    private final Instant expiresAt;
+}
@@ -1,6 +1,7 @@
 package com.immunopass.model;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.immunopass.enums.OrderStatus;
@@ -20,4 +21,6 @@ public class VoucherOrder {
     private final Long createdAccountId;
     private final Long createdOrganizationId;
     private final LocalDateTime createdAt;
+    // Rows of the uploaded file that didn't become vouchers. Only returned when the order is created.
+    private final List<VoucherOrderRowReport> skippedRows;
 }
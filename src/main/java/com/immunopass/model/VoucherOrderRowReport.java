@@ -0,0 +1,17 @@
+package com.immunopass.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Getter;
+
+
+@Getter
+@Builder
+@JsonIgnoreProperties(ignoreUnknown=true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class VoucherOrderRowReport {
+    private final Integer row;
+    private final String userMobile;
+    private final String reason;
+}
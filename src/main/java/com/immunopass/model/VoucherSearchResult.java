@@ -0,0 +1,19 @@
+package com.immunopass.model;
+
+import java.util.List;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Getter;
+
+
+@Getter
+@Builder
+@JsonIgnoreProperties(ignoreUnknown=true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class VoucherSearchResult {
+    private final List<Voucher> vouchers;
+    private final Integer page;
+    private final Integer size;
+    private final Boolean hasMore;
+}
@@ -0,0 +1,25 @@
+package com.immunopass.model;
+
+import java.time.LocalDateTime;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.immunopass.enums.VoucherStatus;
+import lombok.Builder;
+import lombok.Getter;
+
+
+@Getter
+@Builder
+@JsonIgnoreProperties(ignoreUnknown=true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class VoucherSummary {
+    private final Long id;
+    private final String voucherCode;
+    private final String userName;
+    private final String userMobile;
+    private final String userEmpId;
+    private final VoucherStatus status;
+    private final Long orderId;
+    private final LocalDateTime createdAt;
+    private final LocalDateTime updatedAt;
+}
@@ -0,0 +1,18 @@
+package com.immunopass.model;
+
+import java.util.List;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Getter;
+
+
+@Getter
+@Builder
+@JsonIgnoreProperties(ignoreUnknown=true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class VoucherSummaryPage {
+    private final List<VoucherSummary> vouchers;
+    /** Pass as {@code cursor} to get the next page, absent on the last page. */
+    private final String nextCursor;
+}
@@ -0,0 +1,87 @@
+package com.immunopass.repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+import com.immunopass.entity.DailyRollupEntity;
+import com.immunopass.enums.RollupOwnerType;
+
+
+public interface DailyRollupRepository extends JpaRepository<DailyRollupEntity, Long> {
+
+    List<DailyRollupEntity> findAllByOwnerTypeAndOwnerIdAndDayBetweenOrderByDay(RollupOwnerType ownerType,
+            Long ownerId, LocalDate from, LocalDate to);
+
+    @Modifying
+    @Transactional
+    @Query(value = "insert into immunopass.daily_rollup (owner_type, owner_id, day, metric, value)"
+            + " values (:ownerType, :ownerId, :day, :metric, :delta)"
+            + " on conflict (owner_type, owner_id, day, metric)"
+            + " do update set value = daily_rollup.value + excluded.value, updated_at = now()", nativeQuery = true)
+    void increment(String ownerType, Long ownerId, LocalDate day, String metric, long delta);
+
+    /*
+     * The backfill queries below recompute one window from the live and archived vouchers and overwrite whatever is
+     * stored for it. Vouchers have no per-transition timestamps, so SENT is attributed to the day the voucher was
+     * created, as RollupService counts it, and REDEEMED to the day it was last updated. Expired vouchers had been
+     * sent, and archived ones are all redeemed or expired.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "insert into immunopass.daily_rollup (owner_type, owner_id, day, metric, value)"
+            + " select 'ORGANIZATION', issuer_organization_id, cast(created_at as date), 'ISSUED', count(*) from ("
+            + " select issuer_organization_id, created_at from immunopass.voucher"
+            + " where created_at >= :from and created_at < :to"
+            + " union all select issuer_organization_id, created_at from immunopass.voucher_history"
+            + " where created_at >= :from and created_at < :to) vouchers"
+            + " group by issuer_organization_id, cast(created_at as date)"
+            + " on conflict (owner_type, owner_id, day, metric)"
+            + " do update set value = excluded.value, updated_at = now()", nativeQuery = true)
+    int backfillIssued(LocalDateTime from, LocalDateTime to);
+
+    @Modifying
+    @Transactional
+    @Query(value = "insert into immunopass.daily_rollup (owner_type, owner_id, day, metric, value)"
+            + " select 'ORGANIZATION', issuer_organization_id, cast(created_at as date), 'SENT', count(*) from ("
+            + " select issuer_organization_id, created_at from immunopass.voucher"
+            + " where created_at >= :from and created_at < :to and status in ('PROCESSED', 'REDEEMED', 'EXPIRED')"
+            + " union all select issuer_organization_id, created_at from immunopass.voucher_history"
+            + " where created_at >= :from and created_at < :to) vouchers"
+            + " group by issuer_organization_id, cast(created_at as date)"
+            + " on conflict (owner_type, owner_id, day, metric)"
+            + " do update set value = excluded.value, updated_at = now()", nativeQuery = true)
+    int backfillSent(LocalDateTime from, LocalDateTime to);
+
+    @Modifying
+    @Transactional
+    @Query(value = "insert into immunopass.daily_rollup (owner_type, owner_id, day, metric, value)"
+            + " select 'ORGANIZATION', issuer_organization_id, cast(updated_at as date), 'REDEEMED', count(*) from ("
+            + " select issuer_organization_id, updated_at from immunopass.voucher"
+            + " where updated_at >= :from and updated_at < :to and status = 'REDEEMED'"
+            + " union all select issuer_organization_id, updated_at from immunopass.voucher_history"
+            + " where updated_at >= :from and updated_at < :to and status = 'REDEEMED') vouchers"
+            + " group by issuer_organization_id, cast(updated_at as date)"
+            + " on conflict (owner_type, owner_id, day, metric)"
+            + " do update set value = excluded.value, updated_at = now()", nativeQuery = true)
+    int backfillOrganizationRedeemed(LocalDateTime from, LocalDateTime to);
+
+    @Modifying
+    @Transactional
+    @Query(value = "insert into immunopass.daily_rollup (owner_type, owner_id, day, metric, value)"
+            + " select 'PATHOLOGY_LAB', redeemed_pathology_lab_id, cast(updated_at as date), 'REDEEMED', count(*)"
+            + " from (select redeemed_pathology_lab_id, updated_at from immunopass.voucher"
+            + " where updated_at >= :from and updated_at < :to and status = 'REDEEMED'"
+            + " and redeemed_pathology_lab_id is not null"
+            + " union all select redeemed_pathology_lab_id, updated_at from immunopass.voucher_history"
+            + " where updated_at >= :from and updated_at < :to and status = 'REDEEMED'"
+            + " and redeemed_pathology_lab_id is not null) vouchers"
+            + " group by redeemed_pathology_lab_id, cast(updated_at as date)"
+            + " on conflict (owner_type, owner_id, day, metric)"
+            + " do update set value = excluded.value, updated_at = now()", nativeQuery = true)
+    int backfillPathologyLabRedeemed(LocalDateTime from, LocalDateTime to);
+
+}
@@ -2,7 +2,10 @@ package com.immunopass.repository;
 
 import com.immunopass.entity.ImmunopassEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 
@@ -12,4 +15,10 @@ public interface ImmunopassRepository extends JpaRepository<ImmunopassEntity, Lo
 
     Optional<ImmunopassEntity> findByImmunopassCode(String ImmunopassCode);
 
+    @Query("select i.userMobile from ImmunopassEntity i where i.userMobile in :userMobiles")
+    List<String> findExistingUserMobiles(Collection<String> userMobiles);
+
+    @Query("select i.immunopassCode from ImmunopassEntity i where i.immunopassCode in :immunopassCodes")
+    List<String> findExistingImmunopassCodes(Collection<String> immunopassCodes);
+
 }
@@ -13,4 +13,19 @@ public interface OrganizationRepository extends JpaRepository<OrganizationEntity
     @Query(value = "update immunopass.organization set redeemed_vouchers = redeemed_vouchers + 1"
             + " where id = :organizationId", nativeQuery = true)
     void increaseRedeemedVoucherCount(Long organizationId);
+
+    /**
+     * @return 0 if the organization has fewer than {@code count} vouchers left, which are then not allotted.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "update immunopass.organization set alloted_vouchers = alloted_vouchers + :count"
+            + " where id = :organizationId and alloted_vouchers + :count <= total_vouchers", nativeQuery = true)
+    int allotVouchers(Long organizationId, int count);
+
+    @Modifying
+    @Transactional
+    @Query(value = "update immunopass.organization set alloted_vouchers = alloted_vouchers - :count"
+            + " where id = :organizationId", nativeQuery = true)
+    void releaseAllotedVouchers(Long organizationId, int count);
 }
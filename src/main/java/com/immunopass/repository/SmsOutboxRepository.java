@@ -0,0 +1,39 @@
+package com.immunopass.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+import com.immunopass.entity.SmsOutboxEntity;
+
+
+public interface SmsOutboxRepository extends JpaRepository<SmsOutboxEntity, Long> {
+
+    /*
+     * SKIP LOCKED lets every instance run the dispatcher without two of them claiming the same row.
+     * Must be called inside a transaction; the row locks are held until it commits, which should be right after the
+     * rows are leased.
+     */
+    @Query(value = "select * from immunopass.sms_outbox where status = 'PENDING' and next_attempt_at <= now()"
+            + " and sms_type in (:smsTypes) order by id limit :batchSize for update skip locked", nativeQuery = true)
+    List<SmsOutboxEntity> lockPendingBatch(Collection<String> smsTypes, int batchSize);
+
+    /*
+     * A leased row isn't due again until the lease runs out, so it can be delivered outside the claiming transaction.
+     */
+    @Modifying
+    @Query(value = "update immunopass.sms_outbox set next_attempt_at = :leasedUntil, updated_at = now()"
+            + " where id in (:ids)", nativeQuery = true)
+    void lease(Collection<Long> ids, LocalDateTime leasedUntil);
+
+    @Modifying
+    @Transactional
+    @Query(value = "update immunopass.sms_outbox set status = :status, attempts = :attempts,"
+            + " next_attempt_at = :nextAttemptAt, last_failure_reason = :lastFailureReason, updated_at = now()"
+            + " where id = :id", nativeQuery = true)
+    void recordAttempt(Long id, String status, int attempts, LocalDateTime nextAttemptAt, String lastFailureReason);
+
+}
@@ -0,0 +1,13 @@
+package com.immunopass.repository;
+
+import java.util.Optional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import com.immunopass.entity.VoucherHistoryEntity;
+
+
+public interface VoucherHistoryRepository extends JpaRepository<VoucherHistoryEntity, Long> {
+
+    // A code can be issued again once its voucher is archived, so the latest archived voucher wins.
+    Optional<VoucherHistoryEntity> findFirstByVoucherCodeOrderByIdDesc(String voucherCode);
+
+}
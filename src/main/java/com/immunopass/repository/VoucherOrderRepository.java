@@ -1,7 +1,12 @@
 package com.immunopass.repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 import com.immunopass.entity.VoucherOrderEntity;
 import com.immunopass.enums.OrderStatus;
 
@@ -10,4 +15,12 @@ public interface VoucherOrderRepository extends JpaRepository<VoucherOrderEntity
 
     List<VoucherOrderEntity> findAllByStatus(OrderStatus orderStatus);
 
+    Optional<VoucherOrderEntity> findByCreatedOrganizationIdAndDedupKey(Long createdOrganizationId, String dedupKey);
+
+    @Modifying
+    @Transactional
+    @Query(value = "update immunopass.voucher_order set dedup_key = null"
+            + " where dedup_key is not null and created_at < :createdBefore", nativeQuery = true)
+    int clearDedupKeys(LocalDateTime createdBefore);
+
 }
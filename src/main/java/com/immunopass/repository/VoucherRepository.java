@@ -1,8 +1,14 @@
 package com.immunopass.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import javax.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
 import com.immunopass.entity.VoucherEntity;
 
 
@@ -10,6 +16,36 @@ public interface VoucherRepository extends JpaRepository<VoucherEntity, Long> {
 
     List<VoucherEntity> findAllByOrderId(Long orderID);
 
+    /*
+     * The statuses below are literals rather than parameters so the partial indexes match even when PostgreSQL plans
+     * the prepared statement generically.
+     */
+    @Query("select v from VoucherEntity v where v.orderId = :orderId and v.status = 'ALLOTTED' and v.id > :afterId")
+    List<VoucherEntity> findAllottedByOrderIdAndIdGreaterThan(Long orderId, Long afterId, Pageable pageable);
+
     Optional<VoucherEntity> findByVoucherCode(String voucherCode);
 
+    /*
+     * Archived codes stay valid for lookups, so they are taken too.
+     */
+    @Query(value = "select voucher_code from immunopass.voucher where voucher_code in (:voucherCodes)"
+            + " union select voucher_code from immunopass.voucher_history where voucher_code in (:voucherCodes)",
+            nativeQuery = true)
+    List<String> findExistingVoucherCodes(Collection<String> voucherCodes);
+
+    /*
+     * Locks the voucher until the transaction ends, so the expiry job, which skips locked rows, can't expire a voucher
+     * that is being redeemed.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<VoucherEntity> findForUpdateByVoucherCode(String voucherCode);
+
+    @Query("select v from VoucherEntity v where v.userMobile = :userMobile and v.status = 'PROCESSED'")
+    Slice<VoucherEntity> findRedeemableByUserMobile(String userMobile, Pageable pageable);
+
+    @Query("select v from VoucherEntity v where v.issuerOrganizationId = :issuerOrganizationId"
+            + " and v.userEmpId = :userEmpId and v.status = 'PROCESSED'")
+    Slice<VoucherEntity> findRedeemableByIssuerOrganizationIdAndUserEmpId(Long issuerOrganizationId, String userEmpId,
+            Pageable pageable);
+
 }
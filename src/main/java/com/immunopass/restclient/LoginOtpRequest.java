@@ -15,4 +15,5 @@ public class LoginOtpRequest {
     private String to;
     private String otp;
     private String userName;
+    private String idempotencyKey;
 }
@@ -3,9 +3,19 @@ package com.immunopass.restclient;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import javax.annotation.PreDestroy;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -15,26 +25,90 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.RequestEntity;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.stereotype.Service;
+import org.springframework.util.function.SingletonSupplier;
 import org.springframework.web.client.RestTemplate;
+import com.immunopass.enums.SpanKind;
 import com.immunopass.model.Voucher;
+import com.immunopass.tracing.Span;
+import com.immunopass.tracing.Tracer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 
 
+/**
+ * Sends SMS through one or more providers, {@code sms.endpoints} with a matching {@code sms.auths} (a single auth is
+ * shared by all), falling back to {@code sms.endpoint} and {@code sms.auth}. Providers are ranked by the moving p95
+ * of their latency.
+ *
+ * Login OTPs are hedged: if the fastest provider hasn't acknowledged within {@code sms.otp.hedge_after_ms}, or fails,
+ * the request also goes to the next one. Every OTP carries an idempotency key so the SMS gateway sends it only once
+ * however many requests reach it.
+ *
+ * Every request is a client span of the caller's trace and carries it to the gateway in a {@code traceparent} header.
+ */
 @Service
 public class SMSService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SMSService.class);
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final String TRACEPARENT_HEADER = "traceparent";
 
-    private final RestTemplate restTemplate;
-    private final String endpoint;
-    private final String auth;
+    private final List<SmsProvider> providers;
+    private final int timeoutMs;
+    private final long hedgeAfterNanos;
+    private final long otpTimeoutNanos;
+    // Built on first use, creating the Jackson converter is a noticeable part of startup.
+    private final SingletonSupplier<RestTemplate> restTemplate = SingletonSupplier.of(this::createRestTemplate);
+    private final ThreadPoolExecutor hedgeExecutor;
+    private final Tracer tracer;
 
-    public SMSService(@Value("${sms.endpoint}") final String endpoint, @Value("${sms.auth}") final String auth) {
-        this.endpoint = endpoint;
-        this.auth = auth;
-        restTemplate = new RestTemplate();
+    public SMSService(@Value("${sms.endpoints:${sms.endpoint}}") final String endpoints,
+            @Value("${sms.auths:${sms.auth}}") final String auths,
+            @Value("${sms.timeout_ms:10000}") final int timeoutMs,
+            @Value("${sms.otp.hedge_after_ms:3000}") final long hedgeAfterMs,
+            @Value("${sms.otp.timeout_ms:15000}") final long otpTimeoutMs,
+            final MeterRegistry meterRegistry,
+            final Tracer tracer) {
+        String[] endpointList = StringUtils.split(endpoints, ',');
+        String[] authList = StringUtils.split(auths, ',');
+        if (authList.length != 1 && authList.length != endpointList.length) {
+            throw new IllegalArgumentException("sms.auths must have a single auth or one per endpoint.");
+        }
+        List<SmsProvider> providerList = new ArrayList<>(endpointList.length);
+        for (int i = 0; i < endpointList.length; i++) {
+            SmsProvider provider = new SmsProvider("provider-" + i, endpointList[i].trim(),
+                    authList[authList.length == 1 ? 0 : i].trim());
+            Gauge.builder("sms.provider.latency.p95", provider, SmsProvider::p95LatencyMs)
+                    .tag("provider", provider.getName())
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+            providerList.add(provider);
+        }
+        this.providers = Collections.unmodifiableList(providerList);
+        this.timeoutMs = timeoutMs;
+        this.hedgeAfterNanos = TimeUnit.MILLISECONDS.toNanos(hedgeAfterMs);
+        this.otpTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(otpTimeoutMs);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.hedgeExecutor = new ThreadPoolExecutor(0, 4 * providerList.size() + 4, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "sms-send-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.tracer = tracer;
+    }
+
+    private RestTemplate createRestTemplate() {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(timeoutMs);
+        requestFactory.setReadTimeout(timeoutMs);
+        RestTemplate restTemplate = new RestTemplate(requestFactory);
         List<HttpMessageConverter<?>> messageConverters = new ArrayList<>();
         //Add the Jackson Message converter
         MappingJackson2HttpMessageConverter converter = new MappingJackson2HttpMessageConverter();
@@ -43,14 +117,16 @@ public class SMSService {
         converter.setSupportedMediaTypes(Collections.singletonList(MediaType.ALL));
         messageConverters.add(converter);
         restTemplate.setMessageConverters(messageConverters);
+        return restTemplate;
     }
 
-    public boolean sendOTPSMS(String userName, String to, String otp) {
+    public boolean sendOTPSMS(String userName, String to, String otp, String idempotencyKey) {
         LoginOtpRequest otpRequest = LoginOtpRequest.builder()
                 .otp(otp)
                 .to(to)
-                .userName(userName).build();
-        return restExchange(otpRequest, "/v1/sms/login-otp");
+                .userName(userName)
+                .idempotencyKey(idempotencyKey).build();
+        return hedgedExchange(otpRequest, "/v1/sms/login-otp", idempotencyKey);
     }
 
     public boolean sendVoucherSMS(Voucher voucher) {
@@ -61,41 +137,131 @@ public class SMSService {
                 .voucherCode(voucher.getVoucherCode())
                 .userDOB("xx/yy/zzzz") // todo: make DOB optional.
                 .build();
-        return restExchange(request, "/v1/sms/send-voucher");
+        return restExchange(rankedProviders().get(0), request, "/v1/sms/send-voucher", null, tracer.currentSpan());
     }
 
-    public void sendImmunoPassSMS(String to, String token, String status) {
+    public boolean sendImmunoPassSMS(String to, String token, String status) {
         ImmunoPassRequest passRequest = ImmunoPassRequest.builder()
                 .to(to)
                 .token(token)
                 .userStatus(status).build();
-        restExchange(passRequest, "/v1/sms/send-pass");
+        return restExchange(rankedProviders().get(0), passRequest, "/v1/sms/send-pass", null, tracer.currentSpan());
+    }
+
+    List<SmsProvider> rankedProviders() {
+        if (providers.size() == 1) {
+            return providers;
+        }
+        // Stable sort, ties keep the configured order.
+        return providers.stream()
+                .sorted(Comparator.comparingLong(SmsProvider::p95LatencyMs))
+                .collect(Collectors.toList());
     }
 
-    private boolean restExchange(Object request, String endpointPath) {
+    /*
+     * Sends to the fastest provider and brings in the next one whenever the requests in flight fail or none has
+     * acknowledged within the hedge budget. Returns as soon as one provider acknowledges; slower requests still
+     * complete in the background so their latency gets recorded.
+     */
+    private boolean hedgedExchange(Object request, String endpointPath, String idempotencyKey) {
+        List<SmsProvider> ranked = rankedProviders();
+        // The requests run on the hedge threads, they need the caller's span to join its trace.
+        Span parent = tracer.currentSpan();
+        ExecutorCompletionService<Boolean> completion = new ExecutorCompletionService<>(hedgeExecutor);
+        long deadline = System.nanoTime() + otpTimeoutNanos;
+        int next = 0;
+        int inFlight = 0;
+        do {
+            if (next < ranked.size() && (inFlight == 0 || System.nanoTime() < deadline)) {
+                SmsProvider provider = ranked.get(next++);
+                if (inFlight > 0) {
+                    LOGGER.warn("No acknowledgement within the hedge budget, also sending through {}.",
+                            provider.getName());
+                }
+                completion.submit(() -> restExchange(provider, request, endpointPath, idempotencyKey, parent));
+                inFlight++;
+            }
+            long waitNanos = deadline - System.nanoTime();
+            if (next < ranked.size()) {
+                waitNanos = Math.min(waitNanos, hedgeAfterNanos);
+            }
+            Future<Boolean> done;
+            try {
+                done = completion.poll(Math.max(waitNanos, 0), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            if (done != null) {
+                inFlight--;
+                if (isAcknowledged(done)) {
+                    return true;
+                }
+            }
+        } while (inFlight > 0 ? System.nanoTime() < deadline : next < ranked.size());
+        LOGGER.error("OTP SMS wasn't acknowledged by any provider.");
+        return false;
+    }
 
-        HttpHeaders requestHeaders = setHTTPHeaders();
+    private static boolean isAcknowledged(Future<Boolean> done) {
+        try {
+            return Boolean.TRUE.equals(done.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            return false;
+        }
+    }
+
+    private boolean restExchange(SmsProvider provider, Object request, String endpointPath, String idempotencyKey,
+            Span parent) {
+
+        HttpHeaders requestHeaders = setHTTPHeaders(provider, idempotencyKey);
+        long start = System.nanoTime();
+        boolean acknowledged = false;
+        Span span = parent == null ? Span.NOOP : tracer.startSpan("SMSService.restExchange", SpanKind.CLIENT, parent);
+        span.setAttribute("sms.provider", provider.getName());
+        span.setAttribute("http.target", endpointPath);
+        if (span.isRecording()) {
+            requestHeaders.set(TRACEPARENT_HEADER, span.traceparent());
+        }
         try {
             RequestEntity requestEntity =
                     new RequestEntity(request, requestHeaders, HttpMethod.POST,
-                            new URI(endpoint + endpointPath)
+                            new URI(provider.getEndpoint() + endpointPath)
                     );
-            ResponseEntity<SendSMSResponse> otpResponse = restTemplate.exchange(
+            ResponseEntity<SendSMSResponse> otpResponse = restTemplate.get().exchange(
                     requestEntity, SendSMSResponse.class);
 
-            return otpResponse.getStatusCode() == HttpStatus.OK;
+            span.setAttribute("http.status_code", otpResponse.getStatusCodeValue());
+            acknowledged = otpResponse.getStatusCode() == HttpStatus.OK;
+            return acknowledged;
         } catch (Exception e) {
-            LOGGER.error("Error in sending the SMS.", e);
+            LOGGER.error("Error in sending the SMS through {}.", provider.getName(), e);
+            span.recordError(e);
             return false;
+        } finally {
+            provider.recordLatency(acknowledged
+                    ? TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) : timeoutMs);
+            span.close();
         }
     }
 
-    private HttpHeaders setHTTPHeaders() {
+    private HttpHeaders setHTTPHeaders(SmsProvider provider, String idempotencyKey) {
         HttpHeaders requestHeaders = new HttpHeaders();
-        requestHeaders.set("Authentication", auth);
+        requestHeaders.set("Authentication", provider.getAuth());
         requestHeaders.setContentType(MediaType.APPLICATION_JSON);
         requestHeaders.setAccept(Stream.of(MediaType.ALL).collect(Collectors.toList()));
+        if (idempotencyKey != null) {
+            requestHeaders.set(IDEMPOTENCY_KEY_HEADER, idempotencyKey);
+        }
         return requestHeaders;
     }
 
+    @PreDestroy
+    public void shutdown() {
+        hedgeExecutor.shutdown();
+    }
+
 }
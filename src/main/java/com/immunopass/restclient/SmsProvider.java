@@ -0,0 +1,57 @@
+package com.immunopass.restclient;
+
+import java.util.Arrays;
+
+
+/**
+ * One SMS provider endpoint and a moving window of its latest request latencies, failures counted as the request
+ * timeout so a failing provider sinks in the ranking.
+ */
+class SmsProvider {
+
+    private static final int WINDOW = 128;
+
+    private final String name;
+    private final String endpoint;
+    private final String auth;
+    private final long[] latencies = new long[WINDOW];
+    private int samples;
+    private int next;
+
+    SmsProvider(final String name, final String endpoint, final String auth) {
+        this.name = name;
+        this.endpoint = endpoint;
+        this.auth = auth;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    String getEndpoint() {
+        return endpoint;
+    }
+
+    String getAuth() {
+        return auth;
+    }
+
+    synchronized void recordLatency(long latencyMs) {
+        latencies[next] = latencyMs;
+        next = (next + 1) % WINDOW;
+        samples = Math.min(samples + 1, WINDOW);
+    }
+
+    /**
+     * @return the 95th percentile of the latencies in the window, 0 before the first sample so unused providers get
+     * tried.
+     */
+    synchronized long p95LatencyMs() {
+        if (samples == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, samples);
+        Arrays.sort(sorted);
+        return sorted[(int) Math.ceil(samples * 0.95) - 1];
+    }
+}
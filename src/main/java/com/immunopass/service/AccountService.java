@@ -7,6 +7,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 import com.immunopass.controller.AccountController;
 import com.immunopass.entity.AccountEntity;
@@ -28,7 +29,9 @@ public class AccountService implements AccountController {
         this.accountRepository = accountRepository;
     }
 
-    @Override public Account getAccount(final @NotNull String id) {
+    @Override
+    @Transactional(readOnly = true)
+    public Account getAccount(final @NotNull String id) {
         if (StringUtils.equals(ResourceType.CURRENT.toString(), id)) {
             Account account =
                     (Account) SecurityContextHolder
@@ -0,0 +1,133 @@
+package com.immunopass.service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import com.immunopass.enums.AuditEntityType;
+import com.immunopass.enums.AuditOverflowPolicy;
+import com.immunopass.model.AuditEvent;
+import com.immunopass.util.BatchingWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+
+/**
+ * Append-only history of voucher and OTP state changes, kept off the request path: recording an event is an enqueue
+ * on a {@link BatchingWriter}, whose background thread writes the events in batches.
+ *
+ * Events recorded inside a transaction are only queued once it commits. When the queue is full the
+ * {@code audit.overflow_policy} decides: {@code DROP} (default) counts and drops the event, {@code CALLER_WRITES}
+ * writes it on the caller's thread. Queued events are flushed on shutdown.
+ */
+@Service
+public class AuditService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AuditService.class);
+    private static final String INSERT_EVENT = "insert into immunopass.audit_event"
+            + " (entity_type, entity_id, from_status, to_status, actor_account_id, actor_pathology_lab_id,"
+            + " occurred_at) values (?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AuditOverflowPolicy overflowPolicy;
+    private final Counter written;
+    private final Counter dropped;
+    private final Counter failed;
+    private final BatchingWriter<AuditEvent> writer;
+
+    public AuditService(final JdbcTemplate jdbcTemplate,
+            final MeterRegistry meterRegistry,
+            @Value("${audit.queue_capacity:10000}") final int capacity,
+            @Value("${audit.batch_size:500}") final int batchSize,
+            @Value("${audit.flush_interval_ms:200}") final long flushIntervalMs,
+            @Value("${audit.overflow_policy:DROP}") final AuditOverflowPolicy overflowPolicy) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.overflowPolicy = overflowPolicy;
+        this.written = meterRegistry.counter("audit.events", "outcome", "written");
+        this.dropped = meterRegistry.counter("audit.events", "outcome", "dropped");
+        this.failed = meterRegistry.counter("audit.events", "outcome", "failed");
+        this.writer = new BatchingWriter<>("audit-writer", capacity, batchSize, flushIntervalMs, this::write);
+        Gauge.builder("audit.queue.size", writer, BatchingWriter::size).register(meterRegistry);
+        this.writer.start();
+    }
+
+    public void recordVoucherTransition(Long voucherId, String fromStatus, String toStatus, Long actorAccountId,
+            Long actorPathologyLabId) {
+        record(AuditEvent.builder()
+                .entityType(AuditEntityType.VOUCHER)
+                .entityId(voucherId)
+                .fromStatus(fromStatus)
+                .toStatus(toStatus)
+                .actorAccountId(actorAccountId)
+                .actorPathologyLabId(actorPathologyLabId)
+                .occurredAt(LocalDateTime.now())
+                .build());
+    }
+
+    public void recordOtpTransition(Long otpId, String fromStatus, String toStatus) {
+        record(AuditEvent.builder()
+                .entityType(AuditEntityType.OTP)
+                .entityId(otpId)
+                .fromStatus(fromStatus)
+                .toStatus(toStatus)
+                .occurredAt(LocalDateTime.now())
+                .build());
+    }
+
+    public void record(AuditEvent event) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(event);
+                }
+            });
+        } else {
+            enqueue(event);
+        }
+    }
+
+    private void enqueue(AuditEvent event) {
+        if (writer.offer(event)) {
+            return;
+        }
+        if (overflowPolicy == AuditOverflowPolicy.CALLER_WRITES) {
+            write(Collections.singletonList(event));
+        } else {
+            dropped.increment();
+            LOGGER.warn("Audit queue is full, dropped a {} {} event.", event.getEntityType(), event.getToStatus());
+        }
+    }
+
+    private void write(List<AuditEvent> batch) {
+        try {
+            jdbcTemplate.batchUpdate(INSERT_EVENT, batch, batch.size(), (preparedStatement, event) -> {
+                preparedStatement.setString(1, event.getEntityType().name());
+                preparedStatement.setObject(2, event.getEntityId());
+                preparedStatement.setString(3, event.getFromStatus());
+                preparedStatement.setString(4, event.getToStatus());
+                preparedStatement.setObject(5, event.getActorAccountId());
+                preparedStatement.setObject(6, event.getActorPathologyLabId());
+                preparedStatement.setTimestamp(7, Timestamp.valueOf(event.getOccurredAt()));
+            });
+            written.increment(batch.size());
+        } catch (Exception e) {
+            LOGGER.error("Error writing {} audit events, they are lost.", batch.size(), e);
+            failed.increment(batch.size());
+        }
+    }
+
+    @PreDestroy
+    public void flush() {
+        writer.close();
+    }
+}
@@ -0,0 +1,371 @@
+package com.immunopass.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import org.apache.commons.lang3.EnumUtils;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.immunopass.controller.BulkImmunopassController;
+import com.immunopass.datasource.ShardRouter;
+import com.immunopass.entity.ImmunopassEntity;
+import com.immunopass.enums.BulkRowStatus;
+import com.immunopass.enums.ImmunoTestResult;
+import com.immunopass.model.Account;
+import com.immunopass.model.BulkImmunopassRecord;
+import com.immunopass.model.BulkImmunopassResponse;
+import com.immunopass.model.BulkImmunopassResult;
+import com.immunopass.repository.ImmunopassRepository;
+import com.immunopass.util.MobileNumberUtil;
+
+
+@Service
+public class BulkImmunopassService implements BulkImmunopassController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkImmunopassService.class);
+    private static final int NAME_INDEX = 0;
+    private static final int MOBILE_NUMBER_INDEX = 1;
+    private static final int TEST_RESULT_INDEX = 2;
+    private static final int EMP_ID_INDEX = 3;
+    private static final int GOVERNMENT_ID_INDEX = 4;
+    private static final int LOCATION_INDEX = 5;
+    private static final String INSERT_IMMUNOPASS = "insert into immunopass.immunopass"
+            + " (immunopass_code, user_name, user_mobile, user_emp_id, user_government_id, user_location,"
+            + " immuno_test_result) values (?, ?, ?, ?, ?, ?, ?) on conflict (immunopass_code) do nothing";
+
+    private final ImmunopassRepository immunopassRepository;
+    private final SmsOutboxService smsOutboxService;
+    private final CodeFilterService codeFilterService;
+    private final ShardRouter shardRouter;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+
+    public BulkImmunopassService(final ImmunopassRepository immunopassRepository,
+            final SmsOutboxService smsOutboxService,
+            final CodeFilterService codeFilterService,
+            final ShardRouter shardRouter,
+            final JdbcTemplate jdbcTemplate,
+            final TransactionTemplate transactionTemplate,
+            final ObjectMapper objectMapper,
+            @Value("${immunopass.bulk.batch_size:500}") final int batchSize) {
+        this.immunopassRepository = immunopassRepository;
+        this.smsOutboxService = smsOutboxService;
+        this.codeFilterService = codeFilterService;
+        this.shardRouter = shardRouter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public BulkImmunopassResponse createImmunopasses(final List<BulkImmunopassRecord> records) {
+        checkPathologyLabAccount();
+        List<ParsedRow> rows = new ArrayList<>(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            rows.add(new ParsedRow(i + 1, records.get(i), null));
+        }
+        return process(rows.iterator());
+    }
+
+    @Override
+    public BulkImmunopassResponse uploadImmunopasses(final MultipartFile file) {
+        checkPathologyLabAccount();
+        try (BufferedReader br =
+                new BufferedReader(new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8))) {
+            Iterator<String> lines = br.lines().iterator();
+            if (!lines.hasNext()) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The uploaded file is empty.");
+            }
+            String firstLine = lines.next();
+            boolean jsonLines = firstLine.trim().startsWith("{");
+            Iterator<ParsedRow> rows = new Iterator<ParsedRow>() {
+                // For CSV the first line is the header, for JSON lines it's already a record.
+                private String pending = jsonLines ? firstLine : null;
+                private int rowNumber = 0;
+
+                @Override
+                public boolean hasNext() {
+                    while (pending == null && lines.hasNext()) {
+                        String line = lines.next();
+                        if (StringUtils.isNotBlank(line)) {
+                            pending = line;
+                        }
+                    }
+                    return pending != null;
+                }
+
+                @Override
+                public ParsedRow next() {
+                    hasNext();
+                    String line = pending;
+                    pending = null;
+                    rowNumber++;
+                    return jsonLines ? parseJsonLine(rowNumber, line) : parseCsvLine(rowNumber, line);
+                }
+            };
+            return process(rows);
+        } catch (IOException e) {
+            LOGGER.error("Error reading the bulk immunopass file.", e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error reading the file.", e);
+        }
+    }
+
+    private void checkPathologyLabAccount() {
+        Account account =
+                (Account) SecurityContextHolder
+                        .getContext()
+                        .getAuthentication()
+                        .getPrincipal();
+        if (account.getPathologyLabId() == null) {
+            LOGGER.error("LoggedIn User doesn't belong to any pathology lab.");
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "User doesn't belong to any pathology lab.");
+        }
+    }
+
+    private BulkImmunopassResponse process(Iterator<ParsedRow> rows) {
+        List<BulkImmunopassResult> results = new ArrayList<>();
+        // Mobiles seen earlier in the same upload, so duplicates across batches are caught without a query.
+        Set<String> seenMobiles = new HashSet<>();
+        List<ParsedRow> batch = new ArrayList<>(batchSize);
+        while (rows.hasNext()) {
+            batch.add(rows.next());
+            if (batch.size() == batchSize || !rows.hasNext()) {
+                List<ParsedRow> currentBatch = batch;
+                results.addAll(processBatch(currentBatch, seenMobiles));
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        Map<BulkRowStatus, Integer> counts = new HashMap<>();
+        results.forEach(result -> counts.merge(result.getStatus(), 1, Integer::sum));
+        LOGGER.info("Bulk immunopass upload processed {} rows: {}", results.size(), counts);
+        return BulkImmunopassResponse.builder()
+                .total(results.size())
+                .created(counts.getOrDefault(BulkRowStatus.CREATED, 0))
+                .duplicates(counts.getOrDefault(BulkRowStatus.DUPLICATE, 0))
+                .invalid(counts.getOrDefault(BulkRowStatus.INVALID, 0))
+                .failed(counts.getOrDefault(BulkRowStatus.FAILED, 0))
+                .results(results)
+                .build();
+    }
+
+    /*
+     * The mobile numbers are checked on every shard, then the batch's immunopasses are inserted in one transaction
+     * per shard they are placed on.
+     */
+    private List<BulkImmunopassResult> processBatch(List<ParsedRow> batch, Set<String> seenMobiles) {
+        List<BulkImmunopassResult> results = new ArrayList<>(batch.size());
+        List<ParsedRow> candidates = new ArrayList<>(batch.size());
+        for (ParsedRow row : batch) {
+            String error = row.error != null ? row.error : validate(row.record);
+            if (error != null) {
+                results.add(result(row, null, BulkRowStatus.INVALID, null, error));
+            } else if (!seenMobiles.add(row.mobile)) {
+                results.add(result(row, row.mobile, BulkRowStatus.DUPLICATE, null,
+                        "Mobile number appears more than once in the upload."));
+            } else {
+                candidates.add(row);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return results;
+        }
+
+        Set<String> mobiles = new HashSet<>();
+        candidates.forEach(row -> mobiles.add(row.mobile));
+        Set<String> existingMobiles = new HashSet<>(
+                shardRouter.collectFromEachShard(() -> immunopassRepository.findExistingUserMobiles(mobiles)));
+        Map<Integer, List<ParsedRow>> toCreateByShard = new TreeMap<>();
+        for (ParsedRow row : candidates) {
+            if (existingMobiles.contains(row.mobile)) {
+                results.add(result(row, row.mobile, BulkRowStatus.DUPLICATE, null,
+                        "Immunopass with this mobile number already exists."));
+            } else {
+                toCreateByShard.computeIfAbsent(shardRouter.getDirectory().placeImmunopass(row.mobile),
+                        shard -> new ArrayList<>()).add(row);
+            }
+        }
+        toCreateByShard.forEach((shard, toCreate) -> results.addAll(shardRouter.callOnShard(shard, () ->
+                transactionTemplate.execute(status -> insertImmunopasses(toCreate, shard)))));
+        return results;
+    }
+
+    private List<BulkImmunopassResult> insertImmunopasses(List<ParsedRow> toCreate, int shard) {
+        List<BulkImmunopassResult> results = new ArrayList<>(toCreate.size());
+        List<String> codes = generateUniqueCodes(toCreate.size(), shard);
+        List<ImmunopassEntity> entities = new ArrayList<>(toCreate.size());
+        List<Object[]> params = new ArrayList<>(toCreate.size());
+        for (int i = 0; i < toCreate.size(); i++) {
+            BulkImmunopassRecord record = toCreate.get(i).record;
+            ImmunopassEntity immunopassEntity = ImmunopassEntity.builder()
+                    .userName(record.getUserName().trim())
+                    .userMobile(toCreate.get(i).mobile)
+                    .userEmpId(StringUtils.trimToNull(record.getUserEmpId()))
+                    .userGovernmentId(StringUtils.trimToNull(record.getUserGovernmentId()))
+                    .userLocation(StringUtils.trimToNull(record.getUserLocation()))
+                    .immunoTestResult(record.getImmunoTestResult())
+                    .immunopassCode(codes.get(i))
+                    .build();
+            entities.add(immunopassEntity);
+            params.add(new Object[] {
+                    immunopassEntity.getImmunopassCode(),
+                    immunopassEntity.getUserName(),
+                    immunopassEntity.getUserMobile(),
+                    immunopassEntity.getUserEmpId(),
+                    immunopassEntity.getUserGovernmentId(),
+                    immunopassEntity.getUserLocation(),
+                    immunopassEntity.getImmunoTestResult().name()
+            });
+        }
+        int[] updateCounts = jdbcTemplate.batchUpdate(INSERT_IMMUNOPASS, params);
+
+        List<ImmunopassEntity> created = new ArrayList<>(entities.size());
+        for (int i = 0; i < entities.size(); i++) {
+            ImmunopassEntity immunopassEntity = entities.get(i);
+            if (updateCounts[i] == 0) {
+                // Lost a race on the immunopass code with a concurrent insert.
+                results.add(result(toCreate.get(i), immunopassEntity.getUserMobile(), BulkRowStatus.FAILED, null,
+                        "Could not allocate a unique immunopass code, please retry."));
+            } else {
+                created.add(immunopassEntity);
+                codeFilterService.addImmunopassCode(immunopassEntity.getImmunopassCode());
+                results.add(result(toCreate.get(i), immunopassEntity.getUserMobile(), BulkRowStatus.CREATED,
+                        immunopassEntity.getImmunopassCode(), null));
+            }
+        }
+        if (!created.isEmpty()) {
+            smsOutboxService.enqueueImmunoPassSms(created);
+        }
+        return results;
+    }
+
+    private List<String> generateUniqueCodes(int count, int shard) {
+        Set<String> codes = new HashSet<>(count * 2);
+        while (codes.size() < count) {
+            Set<String> generated = new HashSet<>();
+            while (codes.size() + generated.size() < count) {
+                String code = shardRouter.getDirectory().codeOnShard(shard, RandomStringUtils.randomAlphabetic(8));
+                if (!codes.contains(code)) {
+                    generated.add(code);
+                }
+            }
+            generated.removeAll(immunopassRepository.findExistingImmunopassCodes(generated));
+            generated.removeAll(findTakenOnShardZero(generated, shard));
+            codes.addAll(generated);
+        }
+        return new ArrayList<>(codes);
+    }
+
+    /*
+     * Codes issued on shard 0 before sharding can have any first letter, so the shard's unique index doesn't cover
+     * them. Only the codes the filter can't rule out, all of them while it is still being built, are looked up there.
+     */
+    private List<String> findTakenOnShardZero(Set<String> generated, int shard) {
+        if (shard == 0) {
+            return Collections.emptyList();
+        }
+        List<String> suspects = generated.stream()
+                .filter(codeFilterService::mightContainImmunopassCode)
+                .collect(Collectors.toList());
+        if (suspects.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return shardRouter.readOnShard(0, () -> immunopassRepository.findExistingImmunopassCodes(suspects));
+    }
+
+    private String validate(BulkImmunopassRecord record) {
+        if (record == null) {
+            return "Record is empty.";
+        }
+        if (StringUtils.isBlank(record.getUserName()) || record.getUserName().trim().length() > 255) {
+            return "Name is invalid.";
+        }
+        if (MobileNumberUtil.normalize(record.getUserMobile()) == null) {
+            return "Mobile phone number is invalid.";
+        }
+        if (record.getImmunoTestResult() == null) {
+            return "Immuno test result is invalid.";
+        }
+        return null;
+    }
+
+    private ParsedRow parseCsvLine(int rowNumber, String line) {
+        String[] fields = line.split(",", -1);
+        if (fields.length <= TEST_RESULT_INDEX) {
+            return new ParsedRow(rowNumber, null, "Row doesn't have the mandatory columns.");
+        }
+        String testResult = StringUtils.trim(fields[TEST_RESULT_INDEX]);
+        if (!EnumUtils.isValidEnum(ImmunoTestResult.class, testResult)) {
+            return new ParsedRow(rowNumber, null, "Immuno test result is invalid.");
+        }
+        return new ParsedRow(rowNumber, BulkImmunopassRecord.builder()
+                .userName(fields[NAME_INDEX])
+                .userMobile(fields[MOBILE_NUMBER_INDEX])
+                .immunoTestResult(ImmunoTestResult.valueOf(testResult))
+                .userEmpId(field(fields, EMP_ID_INDEX))
+                .userGovernmentId(field(fields, GOVERNMENT_ID_INDEX))
+                .userLocation(field(fields, LOCATION_INDEX))
+                .build(), null);
+    }
+
+    private ParsedRow parseJsonLine(int rowNumber, String line) {
+        try {
+            return new ParsedRow(rowNumber, objectMapper.readValue(line, BulkImmunopassRecord.class), null);
+        } catch (IOException e) {
+            return new ParsedRow(rowNumber, null, "Row isn't valid JSON.");
+        }
+    }
+
+    private static String field(String[] fields, int index) {
+        return index < fields.length ? fields[index] : null;
+    }
+
+    private static BulkImmunopassResult result(ParsedRow row, String mobile, BulkRowStatus status, String code,
+            String reason) {
+        return BulkImmunopassResult.builder()
+                .row(row.rowNumber)
+                .userMobile(mobile)
+                .status(status)
+                .immunopassCode(code)
+                .reason(reason)
+                .build();
+    }
+
+    private static final class ParsedRow {
+        private final int rowNumber;
+        private final BulkImmunopassRecord record;
+        private final String error;
+        private final String mobile;
+
+        private ParsedRow(int rowNumber, BulkImmunopassRecord record, String error) {
+            this.rowNumber = rowNumber;
+            this.record = record;
+            this.error = error;
+            this.mobile = record != null ? MobileNumberUtil.normalize(record.getUserMobile()) : null;
+        }
+    }
+}
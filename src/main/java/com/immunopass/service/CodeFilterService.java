@@ -0,0 +1,304 @@
+package com.immunopass.service;
+
+import java.sql.Timestamp;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import com.immunopass.datasource.ShardRouter;
+import com.immunopass.util.BloomFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+
+/**
+ * In-memory Bloom filters over every issued voucher and immunopass code, used to answer lookups for codes that were
+ * never issued without going to the database.
+ *
+ * Until a filter has been built every code is let through. Codes created on other instances are picked up by a
+ * periodic scan of the rows created since the newest one seen, less {@code code_filter.refresh_overlap_seconds}: ids
+ * and creation times are taken before commit, so a batch or a whole staged order can commit after rows created later.
+ * The overlap has to be longer than the longest transaction that creates codes. As a backstop the filters are rebuilt
+ * from scratch every {@code code_filter.rebuild_interval_ms}. With sharding the filters cover the codes of every
+ * shard, and each shard is scanned from the newest row seen on it.
+ *
+ * A code a client holds may have been created elsewhere since the last scan, so before a lookup rules it out the
+ * filter is refreshed once more, at most once per {@code code_filter.refresh_interval_ms}.
+ */
+@Service
+@Lazy(false)
+public class CodeFilterService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CodeFilterService.class);
+    private static final long MIN_EXPECTED_INSERTIONS = 100_000;
+    private static final double HEADROOM = 1.5;
+
+    private final boolean enabled;
+    private final double falsePositiveRate;
+    private final long refreshOverlapMs;
+    private final long refreshIntervalMs;
+    private final long rebuildIntervalMs;
+    private final JdbcTemplate streamingJdbcTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final ShardRouter shardRouter;
+    private final CodeFilter voucherCodes;
+    private final CodeFilter immunopassCodes;
+
+    public CodeFilterService(final DataSource dataSource,
+            final TransactionTemplate transactionTemplate,
+            final ShardRouter shardRouter,
+            final MeterRegistry meterRegistry,
+            @Value("${code_filter.enabled:true}") final boolean enabled,
+            @Value("${code_filter.false_positive_rate:0.01}") final double falsePositiveRate,
+            @Value("${code_filter.fetch_size:5000}") final int fetchSize,
+            @Value("${code_filter.refresh_overlap_seconds:300}") final long refreshOverlapSeconds,
+            @Value("${code_filter.refresh_interval_ms:5000}") final long refreshIntervalMs,
+            @Value("${code_filter.rebuild_interval_ms:21600000}") final long rebuildIntervalMs) {
+        this.enabled = enabled;
+        this.falsePositiveRate = falsePositiveRate;
+        this.refreshOverlapMs = refreshOverlapSeconds * 1000;
+        this.refreshIntervalMs = refreshIntervalMs;
+        this.rebuildIntervalMs = rebuildIntervalMs;
+        this.streamingJdbcTemplate = new JdbcTemplate(dataSource);
+        this.streamingJdbcTemplate.setFetchSize(fetchSize);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.shardRouter = shardRouter;
+        this.voucherCodes = new CodeFilter("voucher", "voucher_code", "voucher_history", meterRegistry);
+        this.immunopassCodes = new CodeFilter("immunopass", "immunopass_code", null, meterRegistry);
+    }
+
+    public boolean mightContainVoucherCode(String voucherCode) {
+        return voucherCodes.mightContain(voucherCode);
+    }
+
+    public boolean mightContainImmunopassCode(String immunopassCode) {
+        return immunopassCodes.mightContain(immunopassCode);
+    }
+
+    /**
+     * Like {@link #mightContainVoucherCode}, for a code looked up by a client: a code the filter doesn't know is only
+     * ruled out after catching up with the codes created elsewhere.
+     */
+    public boolean mightBeIssuedVoucherCode(String voucherCode) {
+        return voucherCodes.mightBeIssued(voucherCode);
+    }
+
+    public boolean mightBeIssuedImmunopassCode(String immunopassCode) {
+        return immunopassCodes.mightBeIssued(immunopassCode);
+    }
+
+    public void addVoucherCode(String voucherCode) {
+        voucherCodes.put(voucherCode);
+    }
+
+    public void addImmunopassCode(String immunopassCode) {
+        immunopassCodes.put(immunopassCode);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildFilters() {
+        if (!enabled) {
+            LOGGER.info("Code filters are disabled.");
+            return;
+        }
+        Thread builder = new Thread(this::rebuildFilters, "code-filter-builder");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    void rebuildFilters() {
+        voucherCodes.rebuild();
+        immunopassCodes.rebuild();
+    }
+
+    @Scheduled(fixedDelayString = "${code_filter.refresh_interval_ms:5000}")
+    public void refreshFilters() {
+        voucherCodes.refresh();
+        immunopassCodes.refresh();
+    }
+
+    private final class CodeFilter {
+        private final String table;
+        private final String column;
+        // Rows moved here keep their codes valid for lookups; only read on rebuilds, as nothing new is inserted.
+        private final String archiveTable;
+        // Creation time of the newest row seen on each shard.
+        private final Timestamp[] highWaterMarks = new Timestamp[shardRouter.getDirectory().getShardCount()];
+        private final AtomicLong insertions = new AtomicLong();
+        private final AtomicLong lastMissRefreshAt = new AtomicLong();
+        private final Counter rejected;
+        private final Counter passed;
+        private volatile BloomFilter filter;
+        // The filter a rebuild is filling, so the codes put meanwhile aren't lost with the old one.
+        private volatile BloomFilter building;
+        private long builtAt;
+
+        private CodeFilter(String table, String column, String archiveTable, MeterRegistry meterRegistry) {
+            this.table = table;
+            this.column = column;
+            this.archiveTable = archiveTable;
+            this.rejected = Counter.builder("code_filter.lookups")
+                    .tag("filter", table)
+                    .tag("result", "rejected")
+                    .register(meterRegistry);
+            this.passed = Counter.builder("code_filter.lookups")
+                    .tag("filter", table)
+                    .tag("result", "passed")
+                    .register(meterRegistry);
+            Gauge.builder("code_filter.size.bytes", this, codeFilter ->
+                    codeFilter.filter == null ? 0 : codeFilter.filter.getSizeInBytes())
+                    .tag("filter", table)
+                    .register(meterRegistry);
+            Gauge.builder("code_filter.insertions", insertions, AtomicLong::get)
+                    .tag("filter", table)
+                    .register(meterRegistry);
+        }
+
+        private boolean mightContain(String code) {
+            BloomFilter current = filter;
+            if (current == null || current.mightContain(code)) {
+                passed.increment();
+                return true;
+            }
+            rejected.increment();
+            return false;
+        }
+
+        private boolean mightBeIssued(String code) {
+            BloomFilter current = filter;
+            if (current == null || current.mightContain(code)) {
+                passed.increment();
+                return true;
+            }
+            long now = System.currentTimeMillis();
+            long last = lastMissRefreshAt.get();
+            if (now - last >= refreshIntervalMs && lastMissRefreshAt.compareAndSet(last, now)) {
+                refresh();
+            }
+            return mightContain(code);
+        }
+
+        private void put(String code) {
+            BloomFilter current = filter;
+            if (current != null) {
+                current.put(code);
+            }
+            BloomFilter rebuilt = building;
+            if (rebuilt != null) {
+                rebuilt.put(code);
+            }
+        }
+
+        private synchronized void rebuild() {
+            try {
+                long count = 0;
+                for (int shard = 0; shard < highWaterMarks.length; shard++) {
+                    try (ShardRouter.Binding binding = shardRouter.bind(shard)) {
+                        count += streamingJdbcTemplate.queryForObject(
+                                "select count(*) from immunopass." + table, Long.class);
+                        if (archiveTable != null) {
+                            count += streamingJdbcTemplate.queryForObject(
+                                    "select count(*) from immunopass." + archiveTable, Long.class);
+                        }
+                    }
+                }
+                long expected = Math.max(MIN_EXPECTED_INSERTIONS, (long) (count * HEADROOM));
+                BloomFilter rebuilt = new BloomFilter(expected, falsePositiveRate);
+                building = rebuilt;
+                long start = System.currentTimeMillis();
+                Timestamp[] scannedUpTo = new Timestamp[highWaterMarks.length];
+                for (int shard = 0; shard < scannedUpTo.length; shard++) {
+                    try (ShardRouter.Binding binding = shardRouter.bind(shard)) {
+                        scannedUpTo[shard] = scan(rebuilt, table, null, null);
+                        if (archiveTable != null) {
+                            scan(rebuilt, archiveTable, null, null);
+                        }
+                    }
+                }
+                System.arraycopy(scannedUpTo, 0, highWaterMarks, 0, scannedUpTo.length);
+                insertions.set(count);
+                builtAt = System.currentTimeMillis();
+                filter = rebuilt;
+                LOGGER.info("Built {} code filter with {} codes ({} bytes) in {} ms.", table, count,
+                        rebuilt.getSizeInBytes(), System.currentTimeMillis() - start);
+            } catch (Exception e) {
+                LOGGER.error("Error building the {} code filter, lookups will go to the database.", table, e);
+                filter = null;
+            } finally {
+                building = null;
+            }
+        }
+
+        private synchronized void refresh() {
+            BloomFilter current = filter;
+            if (current == null) {
+                return;
+            }
+            if (insertions.get() > current.getExpectedInsertions()) {
+                LOGGER.info("The {} code filter is over capacity, rebuilding it.", table);
+                rebuild();
+                return;
+            }
+            if (System.currentTimeMillis() - builtAt >= rebuildIntervalMs) {
+                LOGGER.info("The {} code filter is due for its periodic rebuild.", table);
+                rebuild();
+                return;
+            }
+            try {
+                for (int shard = 0; shard < highWaterMarks.length; shard++) {
+                    try (ShardRouter.Binding binding = shardRouter.bind(shard)) {
+                        Timestamp highWaterMark = highWaterMarks[shard];
+                        Timestamp createdAfter = highWaterMark == null
+                                ? null : new Timestamp(highWaterMark.getTime() - refreshOverlapMs);
+                        Timestamp scannedUpTo = scan(current, table, createdAfter, highWaterMark);
+                        if (highWaterMark == null || (scannedUpTo != null && scannedUpTo.after(highWaterMark))) {
+                            highWaterMarks[shard] = scannedUpTo;
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                LOGGER.error("Error refreshing the {} code filter.", table, e);
+            }
+        }
+
+        /*
+         * Scans the rows created at or after createdAfter, or all of them when it is null, and returns the newest
+         * creation time seen. Rows newer than countAfter, or all of them when it is null, count as new insertions.
+         */
+        private Timestamp scan(BloomFilter target, String scannedTable, Timestamp createdAfter,
+                Timestamp countAfter) {
+            AtomicReference<Timestamp> newest = new AtomicReference<>();
+            readOnlyTransactionTemplate.execute(status -> {
+                String sql = "select created_at, " + column + " from immunopass." + scannedTable;
+                Object[] args = new Object[0];
+                if (createdAfter != null) {
+                    sql += " where created_at >= ?";
+                    args = new Object[] {createdAfter};
+                }
+                streamingJdbcTemplate.query(sql, resultSet -> {
+                    Timestamp createdAt = resultSet.getTimestamp(1);
+                    target.put(resultSet.getString(2));
+                    if (newest.get() == null || createdAt.after(newest.get())) {
+                        newest.set(createdAt);
+                    }
+                    if (countAfter == null || createdAt.after(countAfter)) {
+                        insertions.incrementAndGet();
+                    }
+                }, args);
+                return null;
+            });
+            return newest.get();
+        }
+    }
+}
@@ -1,19 +1,28 @@
 package com.immunopass.service;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 import com.immunopass.controller.ImmunopassController;
+import com.immunopass.datasource.ShardRouter;
 import com.immunopass.entity.ImmunopassEntity;
 import com.immunopass.mapper.ImmunopassMapper;
 import com.immunopass.model.Immunopass;
+import com.immunopass.model.ImmunopassToken;
 import com.immunopass.model.VerifyImmunopassRequest;
+import com.immunopass.model.VerifyImmunopassTokenRequest;
 import com.immunopass.repository.ImmunopassRepository;
-import com.immunopass.restclient.SMSService;
+import com.immunopass.util.ImmunopassTokenUtil;
+import com.immunopass.util.MobileNumberUtil;
+import io.jsonwebtoken.JwtException;
 
 
 @Service
@@ -22,32 +31,57 @@ public class ImmunopassService implements ImmunopassController {
     private static final Logger LOGGER = LoggerFactory.getLogger(ImmunopassService.class);
 
     private final ImmunopassRepository immunopassRepository;
-    private final SMSService smsService;
+    private final SmsOutboxService smsOutboxService;
+    private final ImmunopassTokenUtil immunopassTokenUtil;
+    private final CodeFilterService codeFilterService;
+    private final ShardRouter shardRouter;
+    private final TransactionTemplate transactionTemplate;
 
-    public ImmunopassService(final ImmunopassRepository immunopassRepository, final SMSService smsService) {
+    public ImmunopassService(final ImmunopassRepository immunopassRepository,
+            final SmsOutboxService smsOutboxService,
+            final ImmunopassTokenUtil immunopassTokenUtil,
+            final CodeFilterService codeFilterService,
+            final ShardRouter shardRouter,
+            final TransactionTemplate transactionTemplate) {
         this.immunopassRepository = immunopassRepository;
-        this.smsService = smsService;
+        this.smsOutboxService = smsOutboxService;
+        this.immunopassTokenUtil = immunopassTokenUtil;
+        this.codeFilterService = codeFilterService;
+        this.shardRouter = shardRouter;
+        this.transactionTemplate = transactionTemplate;
     }
 
-    @Override public Immunopass createImmunopass(final Immunopass immunopass) {
-        if (immunopassRepository
-                .findByUserMobile(immunopass.getUserMobile()).isPresent()) {
+    /*
+     * The mobile number is normalized like the bulk upload's and checked on every shard, then the immunopass is
+     * created in a transaction on the shard its mobile number is placed on.
+     */
+    @Override
+    public Immunopass createImmunopass(final Immunopass immunopass) {
+        String userMobile = normalizeMobile(immunopass.getUserMobile());
+        if (findByUserMobile(userMobile).isPresent()) {
             LOGGER.error("Immunopass with same mobile number already exists in the system.");
             throw new ResponseStatusException(
                     HttpStatus.CONFLICT,
                     "Resource with this mobile number already exists.");
         }
+        int shard = shardRouter.getDirectory().placeImmunopass(userMobile);
+        return shardRouter.callOnShard(shard, () ->
+                transactionTemplate.execute(status -> createImmunopass(immunopass, userMobile, shard)));
+    }
+
+    private Immunopass createImmunopass(Immunopass immunopass, String userMobile, int shard) {
         // Generate unique immunopass code
         String immunopassCode;
         do {
-            immunopassCode = RandomStringUtils.randomAlphabetic(8);
-        } while (immunopassRepository.findByImmunopassCode(immunopassCode).isPresent());
+            immunopassCode = shardRouter.getDirectory().codeOnShard(shard, RandomStringUtils.randomAlphabetic(8));
+        } while (isTakenOnShardZero(immunopassCode, shard)
+                || immunopassRepository.findByImmunopassCode(immunopassCode).isPresent());
 
         LOGGER.info("Creating Immunopass for the user");
         ImmunopassEntity immunopassEntity =
                 ImmunopassEntity.builder()
                         .userName(immunopass.getUserName())
-                        .userMobile(immunopass.getUserMobile())
+                        .userMobile(userMobile)
                         .userEmpId(immunopass.getUserEmpId())
                         .userGovernmentId(immunopass.getUserGovernmentId())
                         .userLocation(immunopass.getUserLocation())
@@ -55,24 +89,41 @@ public class ImmunopassService implements ImmunopassController {
                         .immunoTestResult(immunopass.getImmunoTestResult())
                         .build();
         immunopassEntity = immunopassRepository.save(immunopassEntity);
-        LOGGER.info("Sending Immunopass SMS to the user.");
-        smsService.sendImmunoPassSMS(immunopassEntity.getUserMobile(), immunopassEntity.getImmunopassCode(),
+        codeFilterService.addImmunopassCode(immunopassCode);
+        LOGGER.info("Queueing Immunopass SMS to the user.");
+        smsOutboxService.enqueueImmunoPassSms(immunopassEntity.getUserMobile(), immunopassEntity.getImmunopassCode(),
                 immunopassEntity.getImmunoTestResult().toString());
-        return ImmunopassMapper.map(immunopassEntity);
+        return ImmunopassMapper.map(immunopassEntity, immunopassTokenUtil.generateToken(immunopassEntity));
+    }
+
+    /*
+     * Codes issued on shard 0 before sharding can have any first letter, so the shard's unique index doesn't cover
+     * them. The filter rules most codes out without a query; whatever it can't rule out, everything while it is still
+     * being built, is looked up on shard 0.
+     */
+    private boolean isTakenOnShardZero(String immunopassCode, int shard) {
+        return shard != 0 && codeFilterService.mightContainImmunopassCode(immunopassCode)
+                && shardRouter.readOnShard(0, () -> immunopassRepository.findByImmunopassCode(immunopassCode))
+                        .isPresent();
     }
 
-    @Override public Immunopass verifyImmunopass(final VerifyImmunopassRequest immunopass) {
+    @Override
+    public Immunopass verifyImmunopass(final VerifyImmunopassRequest immunopass) {
         if (StringUtils.isNotBlank(immunopass.getImmunopassCode())) {
-            return immunopassRepository
-                    .findByImmunopassCode(immunopass.getImmunopassCode())
+            if (!codeFilterService.mightBeIssuedImmunopassCode(immunopass.getImmunopassCode())) {
+                LOGGER.error("No immunopass found in the system!");
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No immunopass found!");
+            }
+            return shardRouter
+                    .findByCode(immunopass.getImmunopassCode(),
+                            () -> immunopassRepository.findByImmunopassCode(immunopass.getImmunopassCode()))
                     .map(ImmunopassMapper::map)
                     .orElseThrow(() -> {
                         LOGGER.error("No immunopass found in the system!");
                         return new ResponseStatusException(HttpStatus.NOT_FOUND, "No immunopass found!");
                     });
         } else if (StringUtils.isNotBlank(immunopass.getUserMobile())) {
-            return immunopassRepository
-                    .findByUserMobile(immunopass.getUserMobile())
+            return findByUserMobile(normalizeMobile(immunopass.getUserMobile()))
                     .map(ImmunopassMapper::map)
                     .orElseThrow(() -> {
                         LOGGER.error("No immunopass found in the system!");
@@ -85,4 +136,41 @@ public class ImmunopassService implements ImmunopassController {
         }
     }
 
+    private static String normalizeMobile(String userMobile) {
+        String normalizedMobile = MobileNumberUtil.normalize(userMobile);
+        if (normalizedMobile == null) {
+            LOGGER.error("Mobile phone number is invalid.");
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Mobile phone number is invalid.");
+        }
+        return normalizedMobile;
+    }
+
+    /*
+     * Immunopasses are placed by a hash of the mobile number over the shards configured at the time, so a mobile
+     * number is looked up on every shard.
+     */
+    private Optional<ImmunopassEntity> findByUserMobile(String userMobile) {
+        return shardRouter
+                .collectFromEachShard(() -> immunopassRepository.findByUserMobile(userMobile)
+                        .map(Collections::singletonList)
+                        .orElse(Collections.emptyList()))
+                .stream()
+                .findFirst();
+    }
+
+    @Override
+    public ImmunopassToken verifyImmunopassToken(final VerifyImmunopassTokenRequest request) {
+        try {
+            return immunopassTokenUtil.verifyToken(request.getToken());
+        } catch (JwtException | IllegalArgumentException e) {
+            LOGGER.error("Immunopass token verification failed: {}", e.getMessage());
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Immunopass token is invalid or has expired.");
+        }
+    }
+
+    @Override
+    public Map<String, String> getImmunopassTokenKeys() {
+        return immunopassTokenUtil.getPublicKeys();
+    }
+
 }
@@ -1,18 +1,33 @@
 package com.immunopass.service;
 
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 import com.immunopass.controller.OrganizationController;
+import com.immunopass.datasource.ShardRouter;
 import com.immunopass.entity.OrganizationEntity;
 import com.immunopass.enums.EntityStatus;
 import com.immunopass.enums.ResourceType;
+import com.immunopass.enums.RollupOwnerType;
+import com.immunopass.enums.VoucherStatus;
 import com.immunopass.mapper.OrganizationMapper;
 import com.immunopass.model.Account;
+import com.immunopass.model.DailyStats;
 import com.immunopass.model.Organization;
+import com.immunopass.model.VoucherSummary;
+import com.immunopass.model.VoucherSummaryPage;
 import com.immunopass.repository.OrganizationRepository;
 
 
@@ -20,11 +35,23 @@ import com.immunopass.repository.OrganizationRepository;
 public class OrganizationService implements OrganizationController {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(OrganizationService.class);
+    private static final int MAX_VOUCHER_PAGE_SIZE = 200;
+    private static final String VOUCHER_SUMMARY_COLUMNS = "id, voucher_code, user_name, user_mobile, user_emp_id,"
+            + " status, order_id, created_at, updated_at";
 
     private final OrganizationRepository organizationRepository;
+    private final RollupService rollupService;
+    private final JdbcTemplate jdbcTemplate;
+    private final ShardRouter shardRouter;
 
-    public OrganizationService(final OrganizationRepository organizationRepository) {
+    public OrganizationService(final OrganizationRepository organizationRepository,
+            final RollupService rollupService,
+            final JdbcTemplate jdbcTemplate,
+            final ShardRouter shardRouter) {
         this.organizationRepository = organizationRepository;
+        this.rollupService = rollupService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.shardRouter = shardRouter;
     }
 
     @Override
@@ -37,12 +64,14 @@ public class OrganizationService implements OrganizationController {
                         .totalVouchers(organization.getTotalVouchers())
                         .allotedVouchers(0)
                         .redeemedVouchers(0)
+                        .shard(shardRouter.getDirectory().placeOrganization())
                         .build();
         organizationEntity = organizationRepository.save(organizationEntity);
         return OrganizationMapper.map(organizationEntity);
     }
 
     @Override
+    @Transactional(readOnly = true)
     public Organization getOrganization(final String id) {
         if (ResourceType.CURRENT.toString().equals(id)) {
             Account account = (Account) SecurityContextHolder.getContext().getAuthentication()
@@ -68,4 +97,129 @@ public class OrganizationService implements OrganizationController {
         }
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public List<DailyStats> getDailyStats(final String id, final LocalDate from, final LocalDate to) {
+        if (ResourceType.CURRENT.toString().equals(id)) {
+            Account account = (Account) SecurityContextHolder.getContext().getAuthentication()
+                    .getPrincipal();
+            if (account.getOrganizationId() != null) {
+                return rollupService.getDailyStats(RollupOwnerType.ORGANIZATION, account.getOrganizationId(), from, to);
+            } else {
+                LOGGER.error("User doesn't belong to any organization.");
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "User doesn't belong to any organization.");
+            }
+        } else {
+            LOGGER.error("Organization daily stats API doesn't support non logged in user right now.");
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid Organization ID.");
+        }
+    }
+
+    /*
+     * Keyset pagination: every page is a range scan of idx_voucher_issuer_organization_id below the last id of the
+     * previous page. Only the listed columns are read, never whole voucher rows.
+     *
+     * Redeemed and expired vouchers are moved to voucher_history by the archive job, keeping their ids, so unless the
+     * status filter rules them out the page is merged by id from a range scan of each table.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public VoucherSummaryPage getVouchers(final String id, final VoucherStatus status, final Long orderId,
+            final LocalDateTime createdFrom, final LocalDateTime createdTo, final String cursor, final int limit) {
+        if (!ResourceType.CURRENT.toString().equals(id)) {
+            LOGGER.error("Organization vouchers API doesn't support non logged in user right now.");
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid Organization ID.");
+        }
+        Account account = (Account) SecurityContextHolder.getContext().getAuthentication()
+                .getPrincipal();
+        if (account.getOrganizationId() == null) {
+            LOGGER.error("User doesn't belong to any organization.");
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "User doesn't belong to any organization.");
+        }
+        if (limit < 1 || limit > MAX_VOUCHER_PAGE_SIZE) {
+            LOGGER.error("Invalid voucher page limit: {}", limit);
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Invalid limit, it must be between 1 and " + MAX_VOUCHER_PAGE_SIZE + ".");
+        }
+        StringBuilder filters = new StringBuilder(" where issuer_organization_id = ?");
+        List<Object> filterArgs = new ArrayList<>();
+        filterArgs.add(account.getOrganizationId());
+        if (cursor != null) {
+            filters.append(" and id < ?");
+            filterArgs.add(decodeCursor(cursor));
+        }
+        if (status != null) {
+            filters.append(" and status = ?");
+            filterArgs.add(status.name());
+        }
+        if (orderId != null) {
+            filters.append(" and order_id = ?");
+            filterArgs.add(orderId);
+        }
+        if (createdFrom != null) {
+            filters.append(" and created_at >= ?");
+            filterArgs.add(Timestamp.valueOf(createdFrom));
+        }
+        if (createdTo != null) {
+            filters.append(" and created_at < ?");
+            filterArgs.add(Timestamp.valueOf(createdTo));
+        }
+        // One extra row tells whether there is a next page.
+        filters.append(" order by id desc limit ?");
+        filterArgs.add(limit + 1);
+        String liveVouchers = "select " + VOUCHER_SUMMARY_COLUMNS + " from immunopass.voucher" + filters;
+        List<Object> args = new ArrayList<>(filterArgs);
+        String sql;
+        if (status == null || status == VoucherStatus.REDEEMED || status == VoucherStatus.EXPIRED) {
+            sql = "select " + VOUCHER_SUMMARY_COLUMNS + " from ((" + liveVouchers + ") union all (select "
+                    + VOUCHER_SUMMARY_COLUMNS + " from immunopass.voucher_history" + filters + ")) vouchers"
+                    + " order by id desc limit ?";
+            args.addAll(filterArgs);
+            args.add(limit + 1);
+        } else {
+            sql = liveVouchers;
+        }
+        List<VoucherSummary> vouchers = shardRouter.callForOrganization(account.getOrganizationId(), () ->
+                jdbcTemplate.query(sql, (resultSet, rowNum) ->
+                VoucherSummary.builder()
+                        .id(resultSet.getLong("id"))
+                        .voucherCode(resultSet.getString("voucher_code"))
+                        .userName(resultSet.getString("user_name"))
+                        .userMobile(resultSet.getString("user_mobile"))
+                        .userEmpId(resultSet.getString("user_emp_id"))
+                        .status(VoucherStatus.valueOf(resultSet.getString("status")))
+                        .orderId(resultSet.getLong("order_id"))
+                        .createdAt(toLocalDateTime(resultSet.getTimestamp("created_at")))
+                        .updatedAt(toLocalDateTime(resultSet.getTimestamp("updated_at")))
+                        .build(),
+                args.toArray()));
+        String nextCursor = null;
+        if (vouchers.size() > limit) {
+            vouchers = vouchers.subList(0, limit);
+            nextCursor = encodeCursor(vouchers.get(limit - 1).getId());
+        }
+        return VoucherSummaryPage.builder()
+                .vouchers(vouchers)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+
+    private static String encodeCursor(long voucherId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(Long.toString(voucherId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long decodeCursor(String cursor) {
+        try {
+            return Long.parseLong(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("Invalid voucher page cursor: {}", cursor);
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor.");
+        }
+    }
+
 }
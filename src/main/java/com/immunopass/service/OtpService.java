@@ -1,11 +1,16 @@
 package com.immunopass.service;
 
 import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.server.ResponseStatusException;
 import com.immunopass.controller.OtpController;
@@ -20,7 +25,6 @@ import com.immunopass.model.VerifyOtpRequest;
 import com.immunopass.model.VerifyOtpResponse;
 import com.immunopass.repository.AccountRepository;
 import com.immunopass.repository.OtpRepository;
-import com.immunopass.restclient.SMSService;
 import com.immunopass.util.JwtUtil;
 
 
@@ -32,18 +36,62 @@ public class OtpService implements OtpController {
     private final AccountRepository accountRepository;
     private final OtpRepository otpRepository;
     private final JwtUtil jwtUtil;
-    private final SMSService smsService;
+    private final SmsOutboxService smsOutboxService;
+    private final AuditService auditService;
+    private final TransactionTemplate transactionTemplate;
+    private final ConcurrentMap<String, CompletableFuture<SendOtpResponse>> sendOtpInFlight =
+            new ConcurrentHashMap<>();
 
     public OtpService(final AccountRepository accountRepository, final OtpRepository otpRepository,
-            final JwtUtil jwtUtil, final SMSService smsService) {
+            final JwtUtil jwtUtil, final SmsOutboxService smsOutboxService, final AuditService auditService,
+            final TransactionTemplate transactionTemplate) {
         this.accountRepository = accountRepository;
         this.otpRepository = otpRepository;
         this.jwtUtil = jwtUtil;
-        this.smsService = smsService;
+        this.smsOutboxService = smsOutboxService;
+        this.auditService = auditService;
+        this.transactionTemplate = transactionTemplate;
     }
 
+    /**
+     * Concurrent requests for the same identifier, double taps and client retries, are coalesced: the first one does
+     * the work and the others wait for it and get the same response or error. The request is released only after its
+     * transaction commits, so a later request sees the OTP it created.
+     */
     @Override
     public SendOtpResponse sendOtp(@RequestBody SendOtpRequest otpRequest) {
+        String key = otpRequest.getIdentifierType() + ":" + otpRequest.getIdentifier() + ":"
+                + otpRequest.getAccountType();
+        CompletableFuture<SendOtpResponse> flight = new CompletableFuture<>();
+        CompletableFuture<SendOtpResponse> leader = sendOtpInFlight.putIfAbsent(key, flight);
+        if (leader != null) {
+            LOGGER.debug("Send OTP request is already in flight, waiting for it.");
+            try {
+                return leader.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e;
+            }
+        }
+        try {
+            SendOtpResponse response = transactionTemplate.execute(status -> sendOtpInTransaction(otpRequest));
+            flight.complete(response);
+            return response;
+        } catch (Throwable e) {
+            // Errors too, or the requests waiting for this one would wait forever.
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            sendOtpInFlight.remove(key, flight);
+        }
+    }
+
+    private SendOtpResponse sendOtpInTransaction(SendOtpRequest otpRequest) {
         return accountRepository
                 .findByIdentifierAndIdentifierType(otpRequest.getIdentifier(), otpRequest.getIdentifierType())
                 .filter(accountEntity -> {
@@ -111,19 +159,15 @@ public class OtpService implements OtpController {
     }
 
     private SendOtpResponse sendOtp(String name, OtpEntity otpEntity) {
-        boolean otpSendSuccess = smsService.sendOTPSMS(name, otpEntity.getIdentifier(), otpEntity.getOtp());
-        if (otpSendSuccess) {
-            return SendOtpResponse.builder()
-                    .identifier(otpEntity.getIdentifier())
-                    .identifierType(otpEntity.getIdentifierType())
-                    .status(otpEntity.getStatus())
-                    .retryCount(otpEntity.getRetryCount())
-                    .validTill(otpEntity.getValidTill().toString())
-                    .build();
-        } else {
-            LOGGER.error("Failure while sending the OTP SMS to the user.");
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Something went wrong while sending OTP.");
-        }
+        // Delivered by the outbox dispatcher once this transaction commits.
+        smsOutboxService.enqueueOtpSms(name, otpEntity.getIdentifier(), otpEntity.getOtp());
+        return SendOtpResponse.builder()
+                .identifier(otpEntity.getIdentifier())
+                .identifierType(otpEntity.getIdentifierType())
+                .status(otpEntity.getStatus())
+                .retryCount(otpEntity.getRetryCount())
+                .validTill(otpEntity.getValidTill().toString())
+                .build();
     }
 
     @Override
@@ -136,7 +180,10 @@ public class OtpService implements OtpController {
                     if (otpEntity.getOtp().equals(otpRequest.getOtp())) {
                         otpEntity.setVerificationAttempts(otpEntity.getVerificationAttempts() + 1);
                         otpEntity.setStatus(OtpStatus.VERIFIED);
-                        return otpRepository.save(otpEntity);
+                        otpEntity = otpRepository.save(otpEntity);
+                        auditService.recordOtpTransition(otpEntity.getId(), OtpStatus.UNVERIFIED.name(),
+                                OtpStatus.VERIFIED.name());
+                        return otpEntity;
                     } else if (otpEntity.getVerificationAttempts() < 3) {
                         LOGGER.error("OTP verification failed! Still some attempts left.");
                         otpEntity.setVerificationAttempts(otpEntity.getVerificationAttempts() + 1);
@@ -147,6 +194,8 @@ public class OtpService implements OtpController {
                         otpEntity.setVerificationAttempts(otpEntity.getVerificationAttempts() + 1);
                         otpEntity.setStatus(OtpStatus.INVALID);
                         otpRepository.save(otpEntity);
+                        auditService.recordOtpTransition(otpEntity.getId(), OtpStatus.UNVERIFIED.name(),
+                                OtpStatus.INVALID.name());
                         return null;
                     }
                 })
@@ -1,18 +1,23 @@
 package com.immunopass.service;
 
+import java.time.LocalDate;
+import java.util.List;
 import javax.validation.constraints.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 import com.immunopass.controller.PathologyLabController;
 import com.immunopass.entity.PathologyLabEntity;
 import com.immunopass.enums.EntityStatus;
 import com.immunopass.enums.ResourceType;
+import com.immunopass.enums.RollupOwnerType;
 import com.immunopass.mapper.PathologyLabMapper;
 import com.immunopass.model.Account;
+import com.immunopass.model.DailyStats;
 import com.immunopass.model.PathologyLab;
 import com.immunopass.repository.PathologyLabRepository;
 
@@ -23,9 +28,12 @@ public class PathologyLabService implements PathologyLabController {
     private static final Logger LOGGER = LoggerFactory.getLogger(PathologyLabService.class);
 
     private final PathologyLabRepository pathologyLabRepository;
+    private final RollupService rollupService;
 
-    public PathologyLabService(final PathologyLabRepository pathologyLabRepository) {
+    public PathologyLabService(final PathologyLabRepository pathologyLabRepository,
+            final RollupService rollupService) {
         this.pathologyLabRepository = pathologyLabRepository;
+        this.rollupService = rollupService;
     }
 
     @Override
@@ -39,7 +47,9 @@ public class PathologyLabService implements PathologyLabController {
         return PathologyLabMapper.map(pathologyLabEntity);
     }
 
-    @Override public PathologyLab getPathologyLab(final @NotNull String id) {
+    @Override
+    @Transactional(readOnly = true)
+    public PathologyLab getPathologyLab(final @NotNull String id) {
         if (ResourceType.CURRENT.toString().equals(id)) {
             Account account = (Account) SecurityContextHolder.getContext().getAuthentication()
                     .getPrincipal();
@@ -64,4 +74,23 @@ public class PathologyLabService implements PathologyLabController {
         }
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public List<DailyStats> getDailyStats(final String id, final LocalDate from, final LocalDate to) {
+        if (ResourceType.CURRENT.toString().equals(id)) {
+            Account account = (Account) SecurityContextHolder.getContext().getAuthentication()
+                    .getPrincipal();
+            if (account.getPathologyLabId() != null) {
+                return rollupService.getDailyStats(RollupOwnerType.PATHOLOGY_LAB, account.getPathologyLabId(), from,
+                        to);
+            } else {
+                LOGGER.error("User doesn't belong to any pathology lab.");
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "User doesn't belong to any pathology lab.");
+            }
+        } else {
+            LOGGER.error("Pathology lab daily stats API doesn't support non logged in user right now.");
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid Pathology Lab ID.");
+        }
+    }
+
 }
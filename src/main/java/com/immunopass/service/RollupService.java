@@ -0,0 +1,146 @@
+package com.immunopass.service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import com.immunopass.datasource.ShardRouter;
+import com.immunopass.entity.DailyRollupEntity;
+import com.immunopass.enums.RollupMetric;
+import com.immunopass.enums.RollupOwnerType;
+import com.immunopass.model.DailyStats;
+import com.immunopass.repository.DailyRollupRepository;
+
+
+/**
+ * Keeps the per-day dashboard counters in {@code daily_rollup} up to date as vouchers change state, so the dashboards
+ * never have to aggregate over {@code voucher}.
+ *
+ * The counters are written on the shard of the voucher, in its transaction. Redemptions are the exception: every
+ * redemption of an organization's vouchers on a day bumps the same rows, so they are bumped in a short transaction of
+ * their own once the redemption has committed, and redemptions don't queue on each other's row locks. A counter
+ * write that fails after the commit is logged and the counter comes up short until the next backfill. An
+ * organization's counters are all on its shard, a pathology lab's are summed over the shards.
+ *
+ * Vouchers have no per-transition timestamps, so for the backfill to agree with the counters a sent voucher is
+ * counted on the day it was created, like an issued one, and a redeemed one on the day it was redeemed.
+ */
+@Service
+public class RollupService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RollupService.class);
+    private static final int MAX_RANGE_DAYS = 366;
+    private static final String BACKFILL_JOB = "rollup_backfill";
+    private static final String JOB_COMPLETED_QUERY = "select count(*) from immunopass.completed_job where name = ?";
+    private static final String COMPLETE_JOB_QUERY = "insert into immunopass.completed_job (name) values (?)"
+            + " on conflict (name) do nothing";
+
+    private final DailyRollupRepository dailyRollupRepository;
+    private final ShardRouter shardRouter;
+    private final JdbcTemplate jdbcTemplate;
+
+    public RollupService(final DailyRollupRepository dailyRollupRepository, final ShardRouter shardRouter,
+            final JdbcTemplate jdbcTemplate) {
+        this.dailyRollupRepository = dailyRollupRepository;
+        this.shardRouter = shardRouter;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void recordIssued(Long organizationId, long count) {
+        increment(RollupOwnerType.ORGANIZATION, organizationId, LocalDate.now(), RollupMetric.ISSUED, count);
+    }
+
+    /**
+     * Counts vouchers sent, on the day they were created.
+     */
+    public void recordSent(Long organizationId, LocalDate createdOn, long count) {
+        increment(RollupOwnerType.ORGANIZATION, organizationId, createdOn, RollupMetric.SENT, count);
+    }
+
+    /**
+     * Counts a redemption once the current transaction commits.
+     */
+    public void recordRedeemed(Long organizationId, Long pathologyLabId) {
+        shardRouter.runOnShardAfterCommit(() -> {
+            LocalDate today = LocalDate.now();
+            increment(RollupOwnerType.ORGANIZATION, organizationId, today, RollupMetric.REDEEMED, 1);
+            increment(RollupOwnerType.PATHOLOGY_LAB, pathologyLabId, today, RollupMetric.REDEEMED, 1);
+        });
+    }
+
+    private void increment(RollupOwnerType ownerType, Long ownerId, LocalDate day, RollupMetric metric,
+            long count) {
+        if (ownerId == null || count == 0) {
+            return;
+        }
+        dailyRollupRepository.increment(ownerType.name(), ownerId, day, metric.name(), count);
+    }
+
+    public List<DailyStats> getDailyStats(RollupOwnerType ownerType, Long ownerId, LocalDate from, LocalDate to) {
+        if (from.isAfter(to) || from.plusDays(MAX_RANGE_DAYS).isBefore(to)) {
+            LOGGER.error("Invalid date range for daily stats: {} - {}", from, to);
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Invalid date range, it must be at most " + MAX_RANGE_DAYS + " days.");
+        }
+        List<DailyRollupEntity> rollups;
+        if (ownerType == RollupOwnerType.ORGANIZATION) {
+            rollups = shardRouter.callForOrganization(ownerId, () ->
+                    dailyRollupRepository.findAllByOwnerTypeAndOwnerIdAndDayBetweenOrderByDay(ownerType, ownerId,
+                            from, to));
+        } else {
+            rollups = shardRouter.collectFromEachShard(() ->
+                    dailyRollupRepository.findAllByOwnerTypeAndOwnerIdAndDayBetweenOrderByDay(ownerType, ownerId,
+                            from, to));
+        }
+        Map<LocalDate, long[]> valuesByDay = new TreeMap<>();
+        for (DailyRollupEntity rollup : rollups) {
+            long[] values = valuesByDay.computeIfAbsent(rollup.getDay(),
+                    day -> new long[RollupMetric.values().length]);
+            values[rollup.getMetric().ordinal()] += rollup.getValue();
+        }
+        List<DailyStats> dailyStats = new ArrayList<>(valuesByDay.size());
+        valuesByDay.forEach((day, values) -> dailyStats.add(DailyStats.builder()
+                .day(day)
+                .issued(values[RollupMetric.ISSUED.ordinal()])
+                .sent(values[RollupMetric.SENT.ordinal()])
+                .redeemed(values[RollupMetric.REDEEMED.ordinal()])
+                .build()));
+        return dailyStats;
+    }
+
+    /**
+     * Recomputes the rollups for each day in [from, to) from the live and archived vouchers, one day per transaction
+     * to keep the scans short. Each shard backfills the vouchers it holds, once: a shard records in
+     * {@code completed_job} that it completed the backfill and skips it from then on.
+     */
+    public void backfill(LocalDate from, LocalDate to) {
+        shardRouter.runOnEachShard(() -> {
+            if (jdbcTemplate.queryForObject(JOB_COMPLETED_QUERY, Integer.class, BACKFILL_JOB) > 0) {
+                LOGGER.info("Daily rollups of the shard were backfilled already.");
+                return;
+            }
+            backfillShard(from, to);
+            jdbcTemplate.update(COMPLETE_JOB_QUERY, BACKFILL_JOB);
+        });
+    }
+
+    private void backfillShard(LocalDate from, LocalDate to) {
+        for (LocalDate day = from; day.isBefore(to); day = day.plusDays(1)) {
+            LocalDateTime start = day.atStartOfDay();
+            LocalDateTime end = day.plusDays(1).atStartOfDay();
+            int rows = dailyRollupRepository.backfillIssued(start, end)
+                    + dailyRollupRepository.backfillSent(start, end)
+                    + dailyRollupRepository.backfillOrganizationRedeemed(start, end)
+                    + dailyRollupRepository.backfillPathologyLabRedeemed(start, end);
+            LOGGER.info("Backfilled {} rollup rows for {}.", rows, day);
+        }
+    }
+}
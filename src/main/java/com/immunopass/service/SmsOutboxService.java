@@ -0,0 +1,229 @@
+package com.immunopass.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.immunopass.entity.ImmunopassEntity;
+import com.immunopass.entity.SmsOutboxEntity;
+import com.immunopass.enums.OutboxStatus;
+import com.immunopass.enums.SmsType;
+import com.immunopass.repository.SmsOutboxRepository;
+import com.immunopass.restclient.SMSService;
+import com.immunopass.util.TokenBucket;
+
+
+/**
+ * Transactional outbox for the SMS sent from the request path. The outbox row is written in the caller's transaction,
+ * so it commits (or rolls back) together with the business row, and is delivered later by
+ * {@link #dispatchBatch(Set)} on the cron instance.
+ *
+ * Login OTPs are dispatched in a lane of their own, so a backlog of bulk immunopass SMS never holds them up. Both
+ * lanes take a token from the instance's SMS rate limiter before every SMS, like voucher dispatch does.
+ */
+@Service
+public class SmsOutboxService {
+
+    public static final Set<SmsType> OTP_LANE = Collections.unmodifiableSet(EnumSet.of(SmsType.LOGIN_OTP));
+    public static final Set<SmsType> BULK_LANE =
+            Collections.unmodifiableSet(EnumSet.complementOf(EnumSet.of(SmsType.LOGIN_OTP)));
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SmsOutboxService.class);
+    private static final String USER_NAME = "userName";
+    private static final String OTP = "otp";
+    private static final String TOKEN = "token";
+    private static final String USER_STATUS = "userStatus";
+    private static final int MAX_BACKOFF_SECONDS = 300;
+    /*
+     * Longer than a hedged OTP send can take: a row is only sent while at least this much of its lease is left.
+     */
+    private static final int LEASE_MARGIN_SECONDS = 60;
+    private static final String INSERT_PENDING = "insert into immunopass.sms_outbox"
+            + " (sms_type, recipient, payload, status, attempts, next_attempt_at)"
+            + " values (?, ?, ?, 'PENDING', 0, now())";
+
+    private final SmsOutboxRepository smsOutboxRepository;
+    private final SMSService smsService;
+    private final TokenBucket smsRateLimiter;
+    private final ObjectMapper objectMapper;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final int leaseSeconds;
+
+    public SmsOutboxService(final SmsOutboxRepository smsOutboxRepository,
+            final SMSService smsService,
+            final TokenBucket smsRateLimiter,
+            final ObjectMapper objectMapper,
+            final JdbcTemplate jdbcTemplate,
+            final TransactionTemplate transactionTemplate,
+            @Value("${sms.outbox.batch_size:100}") final int batchSize,
+            @Value("${sms.outbox.max_attempts:5}") final int maxAttempts,
+            @Value("${sms.outbox.lease_seconds:600}") final int leaseSeconds) {
+        this.smsOutboxRepository = smsOutboxRepository;
+        this.smsService = smsService;
+        this.smsRateLimiter = smsRateLimiter;
+        this.objectMapper = objectMapper;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.leaseSeconds = leaseSeconds;
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueueOtpSms(String userName, String to, String otp) {
+        Map<String, String> payload = new HashMap<>();
+        payload.put(USER_NAME, userName);
+        payload.put(OTP, otp);
+        enqueue(SmsType.LOGIN_OTP, to, payload);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueueImmunoPassSms(String to, String token, String status) {
+        enqueue(SmsType.IMMUNOPASS, to, immunoPassPayload(token, status));
+    }
+
+    /**
+     * Queues the immunopass SMS for a batch of passes with a single JDBC batch insert.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueueImmunoPassSms(List<ImmunopassEntity> immunopassEntities) {
+        List<Object[]> rows = new ArrayList<>(immunopassEntities.size());
+        for (ImmunopassEntity immunopassEntity : immunopassEntities) {
+            rows.add(new Object[] {
+                    SmsType.IMMUNOPASS.name(),
+                    immunopassEntity.getUserMobile(),
+                    serialize(immunoPassPayload(immunopassEntity.getImmunopassCode(),
+                            immunopassEntity.getImmunoTestResult().toString()))
+            });
+        }
+        jdbcTemplate.batchUpdate(INSERT_PENDING, rows);
+    }
+
+    private Map<String, String> immunoPassPayload(String token, String status) {
+        Map<String, String> payload = new HashMap<>();
+        payload.put(TOKEN, token);
+        payload.put(USER_STATUS, status);
+        return payload;
+    }
+
+    private void enqueue(SmsType smsType, String to, Map<String, String> payload) {
+        smsOutboxRepository.save(SmsOutboxEntity.builder()
+                .smsType(smsType)
+                .recipient(to)
+                .payload(serialize(payload))
+                .status(OutboxStatus.PENDING)
+                .attempts(0)
+                .nextAttemptAt(LocalDateTime.now())
+                .build());
+    }
+
+    private String serialize(Map<String, String> payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unable to serialize the SMS payload.", e);
+        }
+    }
+
+    /**
+     * Claims one batch of due outbox rows of the lane by leasing them in a short transaction, then delivers them
+     * outside it, recording each attempt as soon as it is made. Rows whose lease runs out before they are sent are
+     * left for the next claim; a row whose instance dies is claimed again once its lease runs out.
+     *
+     * @param lane the SMS types to dispatch, {@link #OTP_LANE} or {@link #BULK_LANE}.
+     * @return the number of rows claimed, so the caller can keep draining while batches come back full, or 0 if
+     *         interrupted while waiting for the rate limiter.
+     */
+    public int dispatchBatch(Set<SmsType> lane) {
+        LocalDateTime leasedUntil = LocalDateTime.now().plusSeconds(leaseSeconds);
+        List<SmsOutboxEntity> batch = transactionTemplate.execute(status -> claim(lane, leasedUntil));
+        LocalDateTime sendBefore = leasedUntil.minusSeconds(LEASE_MARGIN_SECONDS);
+        for (SmsOutboxEntity outboxEntity : batch) {
+            if (!LocalDateTime.now().isBefore(sendBefore)) {
+                LOGGER.warn("Lease on outbox SMS {} is running out, leaving it for the next claim.",
+                        outboxEntity.getId());
+                break;
+            }
+            try {
+                smsRateLimiter.acquire();
+            } catch (InterruptedException e) {
+                // Shutting down: the rest of the batch is claimed again once its lease runs out.
+                Thread.currentThread().interrupt();
+                return 0;
+            }
+            String failureReason;
+            try {
+                failureReason = deliver(outboxEntity) ? null : "Failed to send sms";
+            } catch (Exception e) {
+                LOGGER.error("Error occured while sending the outbox SMS.", e);
+                failureReason = StringUtils.defaultString(e.getLocalizedMessage(), e.getClass().getName());
+            }
+            outboxEntity.setAttempts(outboxEntity.getAttempts() + 1);
+            if (failureReason == null) {
+                outboxEntity.setStatus(OutboxStatus.SENT);
+            } else if (outboxEntity.getAttempts() >= maxAttempts) {
+                LOGGER.error("Giving up on outbox SMS {} after {} attempts.", outboxEntity.getId(),
+                        outboxEntity.getAttempts());
+                outboxEntity.setStatus(OutboxStatus.FAILED);
+                outboxEntity.setLastFailureReason(StringUtils.abbreviate(failureReason, 255));
+            } else {
+                long backoffSeconds = Math.min(MAX_BACKOFF_SECONDS, 1L << outboxEntity.getAttempts());
+                outboxEntity.setNextAttemptAt(LocalDateTime.now().plusSeconds(backoffSeconds));
+                outboxEntity.setLastFailureReason(StringUtils.abbreviate(failureReason, 255));
+            }
+            smsOutboxRepository.recordAttempt(outboxEntity.getId(), outboxEntity.getStatus().name(),
+                    outboxEntity.getAttempts(), outboxEntity.getNextAttemptAt(), outboxEntity.getLastFailureReason());
+        }
+        return batch.size();
+    }
+
+    private List<SmsOutboxEntity> claim(Set<SmsType> lane, LocalDateTime leasedUntil) {
+        List<SmsOutboxEntity> batch = smsOutboxRepository.lockPendingBatch(
+                lane.stream().map(SmsType::name).collect(Collectors.toList()), batchSize);
+        if (!batch.isEmpty()) {
+            smsOutboxRepository.lease(
+                    batch.stream().map(SmsOutboxEntity::getId).collect(Collectors.toList()), leasedUntil);
+        }
+        return batch;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    private boolean deliver(SmsOutboxEntity outboxEntity) throws JsonProcessingException {
+        Map<String, String> payload =
+                objectMapper.readValue(outboxEntity.getPayload(), new TypeReference<Map<String, String>>() {});
+        switch (outboxEntity.getSmsType()) {
+            case LOGIN_OTP:
+                // Keyed by the outbox row, so neither hedged requests nor retries of the row send a second OTP.
+                return smsService.sendOTPSMS(payload.get(USER_NAME), outboxEntity.getRecipient(), payload.get(OTP),
+                        "sms-outbox-" + outboxEntity.getId());
+            case IMMUNOPASS:
+                return smsService.sendImmunoPassSMS(outboxEntity.getRecipient(), payload.get(TOKEN),
+                        payload.get(USER_STATUS));
+            default:
+                throw new IllegalStateException("Unsupported SMS type " + outboxEntity.getSmsType());
+        }
+    }
+}
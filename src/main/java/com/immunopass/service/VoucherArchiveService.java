@@ -0,0 +1,132 @@
+package com.immunopass.service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import com.immunopass.datasource.ShardRouter;
+import com.immunopass.enums.VoucherStatus;
+
+
+/**
+ * Expires vouchers that were sent but never redeemed, handing their quota back to the organization, and moves
+ * redeemed and expired vouchers to the voucher_history table. Both work in small batches, each in a transaction of
+ * its own, so neither holds locks for long nor writes a burst of WAL the replicas have to replay at once.
+ *
+ * Candidates are claimed with SKIP LOCKED: a voucher that is being redeemed is left for the next batch.
+ *
+ * Batches run on the shard bound by the caller. The quota goes back to the organization on the primary database
+ * before the batch commits, and is taken again if the batch then rolls back, so a failed update fails the batch
+ * instead of losing the quota.
+ */
+@Service
+public class VoucherArchiveService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VoucherArchiveService.class);
+    private static final String EXPIRE_BATCH_QUERY =
+            "with candidates as (select id from immunopass.voucher where status = 'PROCESSED' and created_at < ?"
+                    + " order by created_at, id limit ? for update skip locked),"
+                    + " expired as (update immunopass.voucher v set status = 'EXPIRED', updated_at = now()"
+                    + " from candidates c where v.id = c.id returning v.id, v.issuer_organization_id)"
+                    + " select id, issuer_organization_id from expired";
+    private static final String RELEASE_QUOTA_QUERY = "update immunopass.organization"
+            + " set alloted_vouchers = alloted_vouchers - ? where id = ? and alloted_vouchers >= ?";
+    private static final String RETAKE_QUOTA_QUERY =
+            "update immunopass.organization set alloted_vouchers = alloted_vouchers + ? where id = ?";
+    private static final String VOUCHER_COLUMNS = "id, voucher_code, issuer_account_id, issuer_organization_id,"
+            + " user_name, user_mobile, user_emp_id, user_government_id, user_govt_id_type, user_location, status,"
+            + " order_id, immunopass_id, redeemed_account_id, redeemed_pathology_lab_id, retry_count,"
+            + " last_failure_reason, created_at, updated_at";
+    private static final String ARCHIVE_BATCH_QUERY =
+            "with candidates as (select id from immunopass.voucher where status in ('REDEEMED', 'EXPIRED')"
+                    + " and updated_at < ? order by updated_at, id limit ? for update skip locked),"
+                    + " moved as (delete from immunopass.voucher v using candidates c where v.id = c.id"
+                    + " returning v.*)"
+                    + " insert into immunopass.voucher_history (" + VOUCHER_COLUMNS + ", archived_at)"
+                    + " select " + VOUCHER_COLUMNS + ", now() from moved";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final AuditService auditService;
+    private final ShardRouter shardRouter;
+    private final int batchSize;
+
+    public VoucherArchiveService(final JdbcTemplate jdbcTemplate,
+            final TransactionTemplate transactionTemplate,
+            final AuditService auditService,
+            final ShardRouter shardRouter,
+            @Value("${voucher.archive.batch_size:500}") final int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.auditService = auditService;
+        this.shardRouter = shardRouter;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Expires one batch of vouchers sent before {@code createdBefore} and not redeemed since.
+     *
+     * @return the number of vouchers expired, less than the batch size once none are left.
+     */
+    public int expireBatch(LocalDateTime createdBefore) {
+        Integer expired = transactionTemplate.execute(status -> {
+            Map<Long, Integer> expiredPerOrganization = new HashMap<>();
+            List<Long> voucherIds = new ArrayList<>();
+            jdbcTemplate.query(EXPIRE_BATCH_QUERY, resultSet -> {
+                voucherIds.add(resultSet.getLong(1));
+                expiredPerOrganization.merge(resultSet.getLong(2), 1, Integer::sum);
+            }, Timestamp.valueOf(createdBefore), batchSize);
+            if (!expiredPerOrganization.isEmpty()) {
+                releaseQuota(expiredPerOrganization);
+            }
+            for (Long voucherId : voucherIds) {
+                auditService.recordVoucherTransition(voucherId, VoucherStatus.PROCESSED.name(),
+                        VoucherStatus.EXPIRED.name(), null, null);
+            }
+            return voucherIds.size();
+        });
+        return expired == null ? 0 : expired;
+    }
+
+    private void releaseQuota(Map<Long, Integer> expiredPerOrganization) {
+        List<Object[]> releases = new ArrayList<>(expiredPerOrganization.size());
+        List<Object[]> retakes = new ArrayList<>(expiredPerOrganization.size());
+        shardRouter.applyOnPrimary(() -> {
+            expiredPerOrganization.forEach((organizationId, count) ->
+                    releases.add(new Object[] {count, organizationId, count}));
+            int[] released = jdbcTemplate.batchUpdate(RELEASE_QUOTA_QUERY, releases);
+            for (int i = 0; i < released.length; i++) {
+                if (released[i] == 0) {
+                    LOGGER.warn("Organization {} has fewer vouchers allotted than the {} that expired, its quota"
+                            + " is left as is.", releases.get(i)[1], releases.get(i)[0]);
+                } else {
+                    retakes.add(new Object[] {releases.get(i)[0], releases.get(i)[1]});
+                }
+            }
+            return true;
+        }, () -> jdbcTemplate.batchUpdate(RETAKE_QUOTA_QUERY, retakes));
+    }
+
+    /**
+     * Moves one batch of vouchers redeemed or expired before {@code updatedBefore} to the history table.
+     *
+     * @return the number of vouchers moved, less than the batch size once none are left.
+     */
+    public int archiveBatch(LocalDateTime updatedBefore) {
+        Integer archived = transactionTemplate.execute(status ->
+                jdbcTemplate.update(ARCHIVE_BATCH_QUERY, Timestamp.valueOf(updatedBefore), batchSize));
+        return archived == null ? 0 : archived;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+}
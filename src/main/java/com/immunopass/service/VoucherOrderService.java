@@ -1,25 +1,62 @@
 package com.immunopass.service;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.net.URL;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import javax.sql.DataSource;
 import org.apache.commons.lang3.EnumUtils;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.postgresql.PGConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import com.immunopass.controller.VoucherOrderController;
+import com.immunopass.datasource.ShardRouter;
 import com.immunopass.entity.OrganizationEntity;
 import com.immunopass.entity.VoucherEntity;
 import com.immunopass.entity.VoucherOrderEntity;
@@ -31,11 +68,21 @@ import com.immunopass.mapper.VoucherMapper;
 import com.immunopass.mapper.VoucherOrderMapper;
 import com.immunopass.model.Account;
 import com.immunopass.model.VoucherOrder;
+import com.immunopass.model.VoucherOrderRowReport;
 import com.immunopass.repository.OrganizationRepository;
 import com.immunopass.repository.VoucherOrderRepository;
 import com.immunopass.repository.VoucherRepository;
 import com.immunopass.restclient.SMSService;
-import com.immunopass.util.S3Util;
+import com.immunopass.storage.BlobStore;
+import com.immunopass.util.GzipUtil;
+import com.immunopass.util.LongHashSet;
+import com.immunopass.util.MobileNumberUtil;
+import com.immunopass.util.TokenBucket;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 
 
 @Service
@@ -47,25 +94,116 @@ public class VoucherOrderService implements VoucherOrderController {
     private static final int ID_CARD_TYPE_INDEX = 2;
     private static final int ID_CARD_NUMBER_INDEX = 3;
     private static final int EMP_ID_INDEX = 4;
+    private static final String EXPORT_HEADER =
+            "voucher_code,user_name,user_mobile,user_emp_id,status,retry_count,last_failure_reason,created_at,"
+                    + "updated_at\n";
+    private static final String EXPORT_COLUMNS = "voucher_code, user_name, user_mobile, user_emp_id, status,"
+            + " retry_count, last_failure_reason, created_at, updated_at";
+    // Archived vouchers of the order are exported too.
+    private static final String EXPORT_QUERY = "select " + EXPORT_COLUMNS + " from ("
+            + "select id, " + EXPORT_COLUMNS + " from immunopass.voucher where order_id = ?"
+            + " union all select id, " + EXPORT_COLUMNS + " from immunopass.voucher_history where order_id = ?"
+            + ") vouchers order by id";
+    private static final String CLAIM_ORDER_QUERY =
+            "insert into immunopass.voucher_order (voucher_count, uploaded_file, created_account_id,"
+                    + " created_organization_id, status, content_sha256, dedup_key)"
+                    + " values (?, '', ?, ?, 'CREATED', ?, ?)"
+                    + " on conflict (created_organization_id, dedup_key) where dedup_key is not null do nothing"
+                    + " returning id";
+    private static final String STAGE_ROWS_COPY =
+            "copy immunopass.voucher_order_row (order_id, row_number, user_name, user_mobile, user_govt_id_type,"
+                    + " user_government_id, user_emp_id) from stdin with (format csv)";
+    private static final String CREATE_STAGED_VOUCHERS_QUERY =
+            "with staged as (delete from immunopass.voucher_order_row where order_id = ?"
+                    + " returning row_number, user_name, user_mobile, user_govt_id_type, user_government_id,"
+                    + " user_emp_id)"
+                    + " insert into immunopass.voucher (voucher_code, order_id, user_name, user_mobile,"
+                    + " user_govt_id_type, user_government_id, user_emp_id, status, retry_count, issuer_account_id,"
+                    + " issuer_organization_id)"
+                    + " select substr(?, 1 + cast(floor(random() * ?) as integer), 1)"
+                    + " || substr(immunopass.random_voucher_code(), 2), ?, user_name, user_mobile, user_govt_id_type,"
+                    + " user_government_id, user_emp_id, 'ALLOTTED', 0, ?, ? from staged order by row_number"
+                    + " returning id, voucher_code";
+    private static final int MAX_STAGED_INSERT_ATTEMPTS = 3;
+    // The vouchers not redeemed yet, and the staged rows of the orders whose vouchers aren't created yet.
+    private static final String OUTSTANDING_MOBILES_QUERY =
+            "select cast(user_mobile as bigint) from immunopass.voucher where issuer_organization_id = ?"
+                    + " and status in ('ALLOTTED', 'PROCESSED') and user_mobile ~ '^[0-9]{1,18}$'"
+                    + " union all select cast(r.user_mobile as bigint) from immunopass.voucher_order_row r"
+                    + " join immunopass.voucher_order o on o.id = r.order_id where o.created_organization_id = ?"
+                    + " and o.status = 'CREATED' and r.user_mobile ~ '^[0-9]{1,18}$'";
+    private static final String UNSTAGED_PENDING_ORDER_FILES_QUERY =
+            "select o.uploaded_file from immunopass.voucher_order o where o.created_organization_id = ?"
+                    + " and o.status = 'CREATED' and o.uploaded_file <> ''"
+                    + " and not exists (select 1 from immunopass.voucher_order_row r where r.order_id = o.id)";
 
     private final VoucherOrderRepository voucherOrderRepository;
     private final OrganizationRepository organizationRepository;
     private final VoucherRepository voucherRepository;
     private final SMSService smsService;
-    private final S3Util s3Utill;
+    private final BlobStore blobStore;
+    private final RollupService rollupService;
+    private final CodeFilterService codeFilterService;
+    private final AuditService auditService;
+    private final ShardRouter shardRouter;
+    private final DataSource dataSource;
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcTemplate streamingJdbcTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final Duration dedupWindow;
+    private final Timer orderFileUploadTimer;
+    private final Timer orderFileReadTimer;
+    private final DistributionSummary orderFileSavedBytes;
+    private final boolean stagingEnabled;
+    private final int dispatchChunkSize;
 
     public VoucherOrderService(final VoucherOrderRepository voucherOrderRepository,
             final OrganizationRepository organizationRepository,
             final VoucherRepository voucherRepository,
             final SMSService smsService,
-            final S3Util s3Utill) {
+            final BlobStore blobStore,
+            final RollupService rollupService,
+            final CodeFilterService codeFilterService,
+            final AuditService auditService,
+            final ShardRouter shardRouter,
+            final DataSource dataSource,
+            final TransactionTemplate transactionTemplate,
+            final MeterRegistry meterRegistry,
+            @Value("${voucher_order.export.fetch_size:1000}") final int exportFetchSize,
+            @Value("${voucher_order.dedup_window_minutes:1440}") final long dedupWindowMinutes,
+            @Value("${voucher_order.staging.enabled:false}") final boolean stagingEnabled,
+            @Value("${voucher_order.dispatch.chunk_size:500}") final int dispatchChunkSize) {
         this.voucherOrderRepository = voucherOrderRepository;
         this.organizationRepository = organizationRepository;
         this.voucherRepository = voucherRepository;
         this.smsService = smsService;
-        this.s3Utill = s3Utill;
+        this.blobStore = blobStore;
+        this.rollupService = rollupService;
+        this.codeFilterService = codeFilterService;
+        this.auditService = auditService;
+        this.shardRouter = shardRouter;
+        this.dataSource = dataSource;
+        this.transactionTemplate = transactionTemplate;
+        // PostgreSQL only streams with a cursor when a fetch size is set and auto-commit is off, hence the
+        // dedicated template and the transaction around the export query.
+        this.streamingJdbcTemplate = new JdbcTemplate(dataSource);
+        this.streamingJdbcTemplate.setFetchSize(exportFetchSize);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.dedupWindow = Duration.ofMinutes(dedupWindowMinutes);
+        this.orderFileUploadTimer = meterRegistry.timer("voucher_order.file.upload");
+        this.orderFileReadTimer = meterRegistry.timer("voucher_order.file.read");
+        this.orderFileSavedBytes = DistributionSummary.builder("voucher_order.file.saved_bytes")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.stagingEnabled = stagingEnabled;
+        this.dispatchChunkSize = dispatchChunkSize;
     }
 
+    /*
+     * The organization is read from the primary database, the order is created in a transaction on the
+     * organization's shard.
+     */
     @Override
     public VoucherOrder createVoucherOrder(MultipartFile file) {
         Account account = (Account) SecurityContextHolder.getContext().getAuthentication()
@@ -80,15 +218,60 @@ public class VoucherOrderService implements VoucherOrderController {
                                     HttpStatus.FORBIDDEN,
                                     "User account isn't linked to any active organization.");
                         });
-        List<String> csvRecords;
+        return shardRouter.callForOrganization(organizationEntity.getId(), () ->
+                transactionTemplate.execute(status -> createVoucherOrder(account, organizationEntity, file)));
+    }
+
+    private VoucherOrder createVoucherOrder(Account account, OrganizationEntity organizationEntity,
+            MultipartFile file) {
+        LongHashSet mobiles = loadOutstandingMobiles(organizationEntity.getId());
+        List<String> csvRecords = new ArrayList<>();
+        List<VoucherOrderRowReport> skippedRows = new ArrayList<>();
+        MessageDigest digest = sha256();
         try (BufferedReader br =
-                new BufferedReader(new InputStreamReader(file.getInputStream()))) {
-            csvRecords = br.lines().skip(1).map(this::validateCsvRecord).collect(Collectors.toList());
+                new BufferedReader(new InputStreamReader(GzipUtil.decompressIfGzipped(
+                        new DigestInputStream(file.getInputStream(), digest)), StandardCharsets.UTF_8))) {
+            Iterator<String> lines = br.lines().skip(1).iterator();
+            // Row numbers are 1-based and count the header row.
+            int row = 1;
+            while (lines.hasNext()) {
+                row++;
+                String record = validateCsvRecord(lines.next());
+                if (mobiles.add(parseMobileNumber(record))) {
+                    csvRecords.add(record);
+                } else {
+                    skippedRows.add(VoucherOrderRowReport.builder()
+                            .row(row)
+                            .userMobile(record.split(",")[MOBILE_NUMBER_INDEX])
+                            .reason("Duplicate mobile number, a voucher is already issued or requested for it.")
+                            .build());
+                }
+            }
         } catch (IOException e) {
             LOGGER.error("Error reading the voucher order file.", e);
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error reading the file.", e);
         }
-        if (csvRecords.size() > organizationEntity.getTotalVouchers() - organizationEntity.getAllotedVouchers()) {
+        String contentSha256 = toHex(digest.digest());
+        Optional<VoucherOrder> existingOrder = findRecentOrder(account.getOrganizationId(), contentSha256);
+        if (existingOrder.isPresent()) {
+            return existingOrder.get();
+        }
+        // The unique index on (created_organization_id, dedup_key) decides which of two concurrent uploads of the
+        // same file wins; the loser blocks here until the winner commits and then returns the winner's order.
+        List<Long> claimedIds = streamingJdbcTemplate.queryForList(CLAIM_ORDER_QUERY, Long.class,
+                csvRecords.size(), account.getId(), account.getOrganizationId(), contentSha256, contentSha256);
+        if (claimedIds.isEmpty()) {
+            return findRecentOrder(account.getOrganizationId(), contentSha256)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.CONFLICT,
+                            "The same file is being uploaded concurrently, please retry."));
+        }
+        // Allotted with one conditional update, so concurrent uploads of an organization can't both take its last
+        // vouchers. With sharding it commits on the primary before the order does, and is given back if the order
+        // then rolls back.
+        int voucherCount = csvRecords.size();
+        if (!shardRouter.applyOnPrimary(
+                () -> organizationRepository.allotVouchers(organizationEntity.getId(), voucherCount) > 0,
+                () -> organizationRepository.releaseAllotedVouchers(organizationEntity.getId(), voucherCount))) {
             LOGGER.error("The number of records present in the CSV file is greater than the available vouchers to the "
                     + "organization.");
             throw new ResponseStatusException(
@@ -96,31 +279,217 @@ public class VoucherOrderService implements VoucherOrderController {
                     "The number of records present in the CSV file is greater than the available vouchers to the "
                             + "organization.");
         }
-        URL s3URL;
+        String uploadedFile;
         try {
-            ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(
-                    String.join("\n", csvRecords).getBytes(StandardCharsets.UTF_8));
-            s3URL = s3Utill.uploadDocumentSync(
-                    byteArrayInputStream,
-                    "text/csv",
-                    String.format("voucher_order_%s.csv", UUID.randomUUID().toString()));
+            byte[] orderFile = String.join("\n", csvRecords).getBytes(StandardCharsets.UTF_8);
+            byte[] compressedOrderFile = GzipUtil.compress(orderFile);
+            long start = System.nanoTime();
+            uploadedFile = blobStore.put(
+                    String.format("voucher_order_%s.csv.gz", UUID.randomUUID().toString()),
+                    new ByteArrayInputStream(compressedOrderFile),
+                    compressedOrderFile.length,
+                    "application/gzip");
+            long elapsed = System.nanoTime() - start;
+            orderFileUploadTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            orderFileSavedBytes.record(orderFile.length - compressedOrderFile.length);
+            LOGGER.info("Uploaded voucher order file: {} bytes gzip-compressed to {} bytes in {} ms.",
+                    orderFile.length, compressedOrderFile.length, TimeUnit.NANOSECONDS.toMillis(elapsed));
         } catch (Exception e) {
             LOGGER.error("Error uploading the file to the server.", e);
             throw new ResponseStatusException(
                     HttpStatus.INTERNAL_SERVER_ERROR, "Error uploading the file to the server.", e);
         }
-        VoucherOrderEntity voucherOrderEntity = VoucherOrderEntity.builder()
-                .status(OrderStatus.CREATED)
-                .uploadedFile(s3URL.toString())
-                .voucherCount(csvRecords.size())
-                .uploadedFile(s3URL.toString())
-                .createdAccountId(account.getId())
-                .createdOrganizationId(account.getOrganizationId())
-                .build();
-        organizationRepository.save(organizationEntity);
-        organizationEntity.setAllotedVouchers(organizationEntity.getAllotedVouchers() + csvRecords.size());
+        if (stagingEnabled) {
+            stageRows(claimedIds.get(0), csvRecords);
+        }
+        VoucherOrderEntity voucherOrderEntity = voucherOrderRepository
+                .findById(claimedIds.get(0))
+                .orElseThrow(() -> new IllegalStateException("Claimed voucher order row is missing."));
+        voucherOrderEntity.setUploadedFile(uploadedFile);
         voucherOrderEntity = voucherOrderRepository.save(voucherOrderEntity);
-        return VoucherOrderMapper.map(voucherOrderEntity);
+        if (!skippedRows.isEmpty()) {
+            LOGGER.info("Skipped {} duplicate rows in the voucher order.", skippedRows.size());
+        }
+        return VoucherOrderMapper.map(voucherOrderEntity, skippedRows);
+    }
+
+    /*
+     * Bulk loads the validated rows into the staging table on the connection of the current transaction, so they
+     * are committed or rolled back together with the order itself.
+     */
+    private void stageRows(Long orderId, List<String> csvRecords) {
+        StringBuilder rows = new StringBuilder(csvRecords.size() * 64);
+        int row = 0;
+        for (String record : csvRecords) {
+            String[] fields = record.split(",");
+            rows.append(orderId).append(',').append(++row);
+            for (String field : fields) {
+                rows.append(',').append(csvEscape(field));
+            }
+            rows.append('\n');
+        }
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            long staged = connection.unwrap(PGConnection.class)
+                    .getCopyAPI()
+                    .copyIn(STAGE_ROWS_COPY, new StringReader(rows.toString()));
+            LOGGER.info("Staged {} rows of voucher order {}.", staged, orderId);
+        } catch (SQLException | IOException e) {
+            LOGGER.error("Error staging the voucher order rows.", e);
+            throw new ResponseStatusException(
+                    HttpStatus.INTERNAL_SERVER_ERROR, "Error uploading the file to the server.", e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    private Optional<VoucherOrder> findRecentOrder(Long organizationId, String contentSha256) {
+        return voucherOrderRepository
+                .findByCreatedOrganizationIdAndDedupKey(organizationId, contentSha256)
+                .map(voucherOrderEntity -> {
+                    LOGGER.info("Voucher order file was already uploaded as order {}, returning it.",
+                            voucherOrderEntity.getId());
+                    return VoucherOrderMapper.map(voucherOrderEntity);
+                });
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    public void clearExpiredDedupKeys() {
+        LocalDateTime expiredBefore = LocalDateTime.now().minus(dedupWindow);
+        shardRouter.runOnEachShard(() -> {
+            int cleared = voucherOrderRepository.clearDedupKeys(expiredBefore);
+            if (cleared > 0) {
+                LOGGER.debug("Cleared the upload dedup key of {} voucher orders.", cleared);
+            }
+        });
+    }
+
+    /*
+     * Seeds the dedup set with the mobiles of the organization's vouchers that haven't been redeemed yet, streamed
+     * as numbers so no per-row objects are kept around, and with those of its orders still waiting for the pipeline
+     * to create their vouchers: their staged rows, or their files when they weren't staged.
+     */
+    private LongHashSet loadOutstandingMobiles(Long organizationId) {
+        LongHashSet mobiles = new LongHashSet(1024);
+        streamingJdbcTemplate.query(OUTSTANDING_MOBILES_QUERY,
+                resultSet -> {
+                    mobiles.add(resultSet.getLong(1));
+                },
+                organizationId, organizationId);
+        List<String> pendingOrderFiles =
+                streamingJdbcTemplate.queryForList(UNSTAGED_PENDING_ORDER_FILES_QUERY, String.class, organizationId);
+        for (String orderFile : pendingOrderFiles) {
+            long start = System.nanoTime();
+            try (Stream<String> records = blobStore.lines(orderFile)) {
+                records.forEach(record -> mobiles.add(parseMobileNumber(record)));
+            } catch (UncheckedIOException e) {
+                LOGGER.error("Error reading the file of a pending voucher order.", e);
+                throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error reading the file.", e);
+            } finally {
+                orderFileReadTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+        return mobiles;
+    }
+
+    /*
+     * Parses the already validated, digits only, mobile number column without splitting the record.
+     */
+    private static long parseMobileNumber(String record) {
+        int column = 0;
+        long mobile = 0;
+        for (int i = 0; i < record.length(); i++) {
+            char c = record.charAt(i);
+            if (c == ',') {
+                if (++column > MOBILE_NUMBER_INDEX) {
+                    break;
+                }
+            } else if (column == MOBILE_NUMBER_INDEX) {
+                mobile = mobile * 10 + (c - '0');
+            }
+        }
+        return mobile;
+    }
+
+    @Override
+    public ResponseEntity<StreamingResponseBody> exportVouchers(final Long id, final String acceptEncoding) {
+        Account account = (Account) SecurityContextHolder.getContext().getAuthentication()
+                .getPrincipal();
+        int shard = shardRouter.getDirectory().shardOfOrganization(account.getOrganizationId());
+        VoucherOrderEntity voucherOrderEntity =
+                shardRouter.callOnShard(shard, () -> voucherOrderRepository.findById(id))
+                        .filter(order -> order.getCreatedOrganizationId().equals(account.getOrganizationId()))
+                        .orElseThrow(() -> {
+                            LOGGER.error("Voucher order doesn't exist or doesn't belong to the user's organization.");
+                            return new ResponseStatusException(HttpStatus.NOT_FOUND, "Voucher order doesn't exist.");
+                        });
+        boolean gzip = GzipUtil.acceptsGzip(acceptEncoding);
+        StreamingResponseBody body = outputStream -> {
+            // Written on another thread, which has to be bound to the shard again.
+            try (ShardRouter.Binding binding = shardRouter.bind(shard)) {
+                writeVouchersCsv(voucherOrderEntity.getId(), outputStream, gzip);
+            }
+        };
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        String.format("attachment; filename=\"voucher_order_%d_vouchers.csv\"", id))
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
+
+    private void writeVouchersCsv(Long orderId, OutputStream outputStream, boolean gzip) throws IOException {
+        OutputStream target = gzip ? new GZIPOutputStream(outputStream, 8192) : outputStream;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8));
+        writer.write(EXPORT_HEADER);
+        readOnlyTransactionTemplate.execute(status -> {
+            streamingJdbcTemplate.query(EXPORT_QUERY, resultSet -> {
+                try {
+                    for (int column = 1; column <= 9; column++) {
+                        if (column > 1) {
+                            writer.write(',');
+                        }
+                        writer.write(csvEscape(resultSet.getString(column)));
+                    }
+                    writer.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, orderId, orderId);
+            return null;
+        });
+        writer.flush();
+        if (gzip) {
+            ((GZIPOutputStream) target).finish();
+        }
+    }
+
+    private static String csvEscape(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (StringUtils.containsAny(value, ',', '"', '\n', '\r')) {
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+        return value;
     }
 
     private String validateCsvRecord(String record) {
@@ -140,8 +509,8 @@ public class VoucherOrderService implements VoucherOrderController {
         fields[NAME_INDEX] = name;
 
         // Validate mobile phone number
-        mobileNumber = mobileNumber.replaceAll("[^0-9]", "").trim();
-        if (mobileNumber.length() != 10) {
+        mobileNumber = MobileNumberUtil.normalize(mobileNumber);
+        if (mobileNumber == null) {
             LOGGER.error("Mobile phone number is invalid.");
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Mobile phone number is invalid.");
         }
@@ -174,73 +543,274 @@ public class VoucherOrderService implements VoucherOrderController {
     }
 
     public void createVouchers() {
-        voucherOrderRepository
-                .findAllByStatus(OrderStatus.CREATED)
-                .forEach(this::createVouchers);
+        findOrdersByStatus(OrderStatus.CREATED)
+                .forEach(voucherOrderEntity -> createVouchers(voucherOrderEntity, null));
+    }
+
+    /**
+     * @return the orders in the status on every shard.
+     */
+    public List<VoucherOrderEntity> findOrdersByStatus(OrderStatus status) {
+        return shardRouter.collectFromEachShard(() -> voucherOrderRepository.findAllByStatus(status));
+    }
+
+    /**
+     * Downloads the order's file ahead of {@link #createVouchers(VoucherOrderEntity, List)}, so the download of one
+     * order can overlap with creating the vouchers of another.
+     *
+     * @return the order's records, or null if its vouchers will be created from staged rows.
+     */
+    public List<String> readOrderRecords(VoucherOrderEntity voucherOrderEntity) {
+        if (stagingEnabled) {
+            return null;
+        }
+        long start = System.nanoTime();
+        try (Stream<String> records = blobStore.lines(voucherOrderEntity.getUploadedFile())) {
+            return records.collect(Collectors.toList());
+        } finally {
+            orderFileReadTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Creates the order's vouchers from records returned by {@link #readOrderRecords}, or reads them itself when
+     * {@code records} is null.
+     */
+    public void createVouchers(VoucherOrderEntity voucherOrderEntity, List<String> records) {
+        shardRouter.runForOrganization(voucherOrderEntity.getCreatedOrganizationId(), () -> {
+            if (records == null) {
+                createVouchers(voucherOrderEntity);
+            } else {
+                issueVouchers(voucherOrderEntity, records.stream());
+            }
+        });
     }
 
     private void createVouchers(VoucherOrderEntity voucherOrderEntity) {
-        s3Utill.getRecords(voucherOrderEntity.getUploadedFile())
-                .forEach(record -> {
-                    String[] fields = record.split(",");
-                    String voucherCode;
-                    do {
-                        voucherCode = RandomStringUtils.randomAlphabetic(8);
-                    } while (voucherRepository.findByVoucherCode(voucherCode).isPresent());
-                    VoucherEntity voucherEntity = VoucherEntity.builder()
-                            .voucherCode(voucherCode)
-                            .orderId(voucherOrderEntity.getId())
-                            .userName(fields[NAME_INDEX])
-                            .userMobile(fields[MOBILE_NUMBER_INDEX])
-                            .userGovtIdType(IDType.valueOf(fields[ID_CARD_TYPE_INDEX]))
-                            .userGovernmentId(fields[ID_CARD_NUMBER_INDEX])
-                            .userEmpId(fields[EMP_ID_INDEX])
-                            .status(VoucherStatus.ALLOTTED)
-                            .retryCount(0)
-                            .issuerAccountId(voucherOrderEntity.getCreatedAccountId())
-                            .issuerOrganizationId(voucherOrderEntity.getCreatedOrganizationId())
-                            .build();
-                    voucherRepository.save(voucherEntity);
-                });
+        // Orders uploaded while staging was off, or whose rows weren't staged, are still read from their file.
+        if (stagingEnabled && createStagedVouchers(voucherOrderEntity)) {
+            return;
+        }
+        long start = System.nanoTime();
+        try (Stream<String> records = blobStore.lines(voucherOrderEntity.getUploadedFile())) {
+            issueVouchers(voucherOrderEntity, records);
+        } finally {
+            orderFileReadTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void issueVouchers(VoucherOrderEntity voucherOrderEntity, Stream<String> records) {
+        int shard = shardRouter.getDirectory().shardOfOrganization(voucherOrderEntity.getCreatedOrganizationId());
+        AtomicInteger issued = new AtomicInteger();
+        long start = System.nanoTime();
+        records.forEach(record -> {
+            String[] fields = record.split(",");
+            String voucherCode;
+            do {
+                voucherCode = shardRouter.getDirectory().codeOnShard(shard, RandomStringUtils.randomAlphabetic(8));
+            } while (!findTakenOnShardZero(Collections.singletonList(voucherCode), shard).isEmpty()
+                    || voucherRepository.findByVoucherCode(voucherCode).isPresent());
+            VoucherEntity voucherEntity = VoucherEntity.builder()
+                    .voucherCode(voucherCode)
+                    .orderId(voucherOrderEntity.getId())
+                    .userName(fields[NAME_INDEX])
+                    .userMobile(fields[MOBILE_NUMBER_INDEX])
+                    .userGovtIdType(IDType.valueOf(fields[ID_CARD_TYPE_INDEX]))
+                    .userGovernmentId(fields[ID_CARD_NUMBER_INDEX])
+                    .userEmpId(fields[EMP_ID_INDEX])
+                    .status(VoucherStatus.ALLOTTED)
+                    .retryCount(0)
+                    .issuerAccountId(voucherOrderEntity.getCreatedAccountId())
+                    .issuerOrganizationId(voucherOrderEntity.getCreatedOrganizationId())
+                    .build();
+            voucherEntity = voucherRepository.save(voucherEntity);
+            codeFilterService.addVoucherCode(voucherCode);
+            auditService.recordVoucherTransition(voucherEntity.getId(), null, VoucherStatus.ALLOTTED.name(),
+                    voucherOrderEntity.getCreatedAccountId(), null);
+            issued.incrementAndGet();
+        });
+        LOGGER.info("Created {} vouchers of voucher order {} in {} ms.", issued.get(),
+                voucherOrderEntity.getId(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        rollupService.recordIssued(voucherOrderEntity.getCreatedOrganizationId(), issued.get());
         voucherOrderEntity.setStatus(OrderStatus.PROCESSING);
         voucherOrderRepository.save(voucherOrderEntity);
     }
 
+    /*
+     * Creates the order's vouchers from its staged rows with a single INSERT ... SELECT, removing the rows in the
+     * same statement. A voucher code collision fails the whole statement, so it is retried with fresh codes. The
+     * codes start with a letter of the organization's shard, and off shard 0 a code taken by a voucher issued there
+     * before sharding rolls the statement back the same way.
+     *
+     * @return false if the order has no staged rows.
+     */
+    private boolean createStagedVouchers(VoucherOrderEntity voucherOrderEntity) {
+        int shard = shardRouter.getDirectory().shardOfOrganization(voucherOrderEntity.getCreatedOrganizationId());
+        String codePrefixes = shardRouter.getDirectory().codePrefixes(shard);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                long start = System.nanoTime();
+                Integer issued = transactionTemplate.execute(status -> {
+                    List<Long> voucherIds = new ArrayList<>();
+                    List<String> voucherCodes = new ArrayList<>();
+                    streamingJdbcTemplate.query(CREATE_STAGED_VOUCHERS_QUERY,
+                            resultSet -> {
+                                voucherIds.add(resultSet.getLong(1));
+                                voucherCodes.add(resultSet.getString(2));
+                            },
+                            voucherOrderEntity.getId(),
+                            codePrefixes,
+                            codePrefixes.length(),
+                            voucherOrderEntity.getId(),
+                            voucherOrderEntity.getCreatedAccountId(),
+                            voucherOrderEntity.getCreatedOrganizationId());
+                    List<String> taken = findTakenOnShardZero(voucherCodes, shard);
+                    if (!taken.isEmpty()) {
+                        throw new DuplicateKeyException("Voucher codes " + taken + " are taken on shard 0.");
+                    }
+                    for (int i = 0; i < voucherIds.size(); i++) {
+                        codeFilterService.addVoucherCode(voucherCodes.get(i));
+                        auditService.recordVoucherTransition(voucherIds.get(i), null, VoucherStatus.ALLOTTED.name(),
+                                voucherOrderEntity.getCreatedAccountId(), null);
+                    }
+                    if (!voucherIds.isEmpty()) {
+                        voucherOrderEntity.setStatus(OrderStatus.PROCESSING);
+                        voucherOrderRepository.save(voucherOrderEntity);
+                    }
+                    return voucherIds.size();
+                });
+                if (issued == null || issued == 0) {
+                    return false;
+                }
+                LOGGER.info("Created {} vouchers of voucher order {} from staged rows in {} ms.", issued,
+                        voucherOrderEntity.getId(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                rollupService.recordIssued(voucherOrderEntity.getCreatedOrganizationId(), issued);
+                return true;
+            } catch (DuplicateKeyException e) {
+                if (attempt >= MAX_STAGED_INSERT_ATTEMPTS) {
+                    throw e;
+                }
+                LOGGER.warn("Voucher code collision creating vouchers of order {}, retrying.",
+                        voucherOrderEntity.getId());
+            }
+        }
+    }
+
+    /*
+     * Vouchers issued on shard 0 before sharding can have any first letter, so the shard's unique index doesn't cover
+     * them. Only the codes the filter can't rule out, all of them while it is still being built, are looked up there.
+     */
+    private List<String> findTakenOnShardZero(List<String> voucherCodes, int shard) {
+        if (shard == 0) {
+            return Collections.emptyList();
+        }
+        List<String> suspects = voucherCodes.stream()
+                .filter(codeFilterService::mightContainVoucherCode)
+                .collect(Collectors.toList());
+        if (suspects.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return shardRouter.readOnShard(0, () -> voucherRepository.findExistingVoucherCodes(suspects));
+    }
+
     public void processOrders() {
-        voucherOrderRepository
-                .findAllByStatus(OrderStatus.PROCESSING)
+        findOrdersByStatus(OrderStatus.PROCESSING)
                 .forEach(this::processOrder);
     }
 
-    private void processOrder(VoucherOrderEntity voucherOrderEntity) {
-        List<VoucherEntity> vouchers = voucherRepository.findAllByOrderId(voucherOrderEntity.getId());
+    public void processOrder(VoucherOrderEntity voucherOrderEntity) {
+        long afterVoucherId = 0;
         boolean failure = false;
+        DispatchChunk chunk;
+        do {
+            chunk = dispatchVouchers(voucherOrderEntity, afterVoucherId, dispatchChunkSize, null);
+            afterVoucherId = chunk.getLastVoucherId();
+            failure |= chunk.getFailed() > 0;
+        } while (!chunk.isExhausted());
+        if (!failure) {
+            completeOrder(voucherOrderEntity);
+        }
+    }
+
+    /**
+     * Sends the SMS of up to {@code limit} allotted vouchers of the order, in id order starting after
+     * {@code afterVoucherId}. Vouchers that fail stay allotted with their retry count bumped.
+     *
+     * @param rateLimiter taken once before every SMS, or null to send unthrottled.
+     */
+    public DispatchChunk dispatchVouchers(VoucherOrderEntity voucherOrderEntity, long afterVoucherId, int limit,
+            TokenBucket rateLimiter) {
+        return shardRouter.callForOrganization(voucherOrderEntity.getCreatedOrganizationId(),
+                () -> dispatchVouchersOnShard(voucherOrderEntity, afterVoucherId, limit, rateLimiter));
+    }
+
+    private DispatchChunk dispatchVouchersOnShard(VoucherOrderEntity voucherOrderEntity, long afterVoucherId,
+            int limit, TokenBucket rateLimiter) {
+        List<VoucherEntity> vouchers = voucherRepository.findAllottedByOrderIdAndIdGreaterThan(
+                voucherOrderEntity.getId(), afterVoucherId, PageRequest.of(0, limit, Sort.by("id")));
+        int sent = 0;
+        int failed = 0;
+        Map<LocalDate, Long> sentByCreationDay = new TreeMap<>();
+        long lastVoucherId = afterVoucherId;
         for (VoucherEntity voucherEntity : vouchers) {
-            if (voucherEntity.getStatus() == VoucherStatus.ALLOTTED) {
-                try {
-                    if (smsService.sendVoucherSMS(VoucherMapper.map(voucherEntity))) {
-                        voucherEntity.setStatus(VoucherStatus.PROCESSED);
-                        voucherRepository.save(voucherEntity);
-                    } else {
-                        LOGGER.error("Failure in sending voucher SMS.");
-                        failure = true;
-                        voucherEntity.setRetryCount(voucherEntity.getRetryCount() + 1);
-                        voucherEntity.setLastFailureReason("Failed to send sms");
-                        voucherRepository.save(voucherEntity);
-                    }
-                } catch (Exception e) {
-                    LOGGER.error("Error occured while updating the voucher entity.", e);
-                    failure = true;
+            lastVoucherId = voucherEntity.getId();
+            try {
+                if (rateLimiter != null) {
+                    rateLimiter.acquire();
+                }
+                if (smsService.sendVoucherSMS(VoucherMapper.map(voucherEntity))) {
+                    voucherEntity.setStatus(VoucherStatus.PROCESSED);
+                    voucherRepository.save(voucherEntity);
+                    auditService.recordVoucherTransition(voucherEntity.getId(), VoucherStatus.ALLOTTED.name(),
+                            VoucherStatus.PROCESSED.name(), null, null);
+                    sent++;
+                    sentByCreationDay.merge(voucherEntity.getCreatedAt().toLocalDate(), 1L, Long::sum);
+                } else {
+                    LOGGER.error("Failure in sending voucher SMS.");
+                    failed++;
                     voucherEntity.setRetryCount(voucherEntity.getRetryCount() + 1);
-                    voucherEntity.setLastFailureReason(e.getLocalizedMessage());
+                    voucherEntity.setLastFailureReason("Failed to send sms");
                     voucherRepository.save(voucherEntity);
                 }
+            } catch (InterruptedException e) {
+                // Shutting down: the voucher stays allotted and is sent by the next run.
+                Thread.currentThread().interrupt();
+                failed++;
+                break;
+            } catch (Exception e) {
+                LOGGER.error("Error occured while updating the voucher entity.", e);
+                failed++;
+                voucherEntity.setRetryCount(voucherEntity.getRetryCount() + 1);
+                voucherEntity.setLastFailureReason(e.getLocalizedMessage());
+                voucherRepository.save(voucherEntity);
             }
         }
-        if (!failure) {
-            voucherOrderEntity.setStatus(OrderStatus.PROCESSED);
-            voucherOrderRepository.save(voucherOrderEntity);
-        }
+        sentByCreationDay.forEach((createdOn, count) ->
+                rollupService.recordSent(voucherOrderEntity.getCreatedOrganizationId(), createdOn, count));
+        return new DispatchChunk(lastVoucherId, sent, failed, vouchers.size() < limit);
+    }
+
+    /**
+     * Marks an order whose vouchers were all sent as processed.
+     */
+    public void completeOrder(VoucherOrderEntity voucherOrderEntity) {
+        voucherOrderEntity.setStatus(OrderStatus.PROCESSED);
+        shardRouter.runForOrganization(voucherOrderEntity.getCreatedOrganizationId(),
+                () -> voucherOrderRepository.save(voucherOrderEntity));
+    }
+
+    public int getDispatchChunkSize() {
+        return dispatchChunkSize;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class DispatchChunk {
+        private final long lastVoucherId;
+        private final int sent;
+        private final int failed;
+        // No allotted vouchers are left after lastVoucherId.
+        private final boolean exhausted;
     }
 
 }
@@ -1,36 +1,79 @@
 package com.immunopass.service;
 
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
 import javax.validation.Valid;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 import com.immunopass.controller.VoucherController;
+import com.immunopass.datasource.ShardRouter;
+import com.immunopass.entity.VoucherEntity;
 import com.immunopass.enums.VoucherStatus;
 import com.immunopass.mapper.VoucherMapper;
 import com.immunopass.model.Account;
 import com.immunopass.model.Voucher;
 import com.immunopass.model.VoucherRequest;
+import com.immunopass.model.VoucherSearchResult;
 import com.immunopass.repository.OrganizationRepository;
+import com.immunopass.repository.VoucherHistoryRepository;
 import com.immunopass.repository.VoucherRepository;
+import com.immunopass.util.MobileNumberUtil;
 
 
 @Service
 public class VoucherService implements VoucherController {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(VoucherService.class);
+    private static final int MAX_SEARCH_PAGE_SIZE = 50;
 
     private final VoucherRepository voucherRepository;
+    private final VoucherHistoryRepository voucherHistoryRepository;
     private final OrganizationRepository organizationRepository;
+    private final RollupService rollupService;
+    private final CodeFilterService codeFilterService;
+    private final AuditService auditService;
+    private final ShardRouter shardRouter;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
 
     public VoucherService(final VoucherRepository voucherRepository,
-            final OrganizationRepository organizationRepository) {
+            final VoucherHistoryRepository voucherHistoryRepository,
+            final OrganizationRepository organizationRepository,
+            final RollupService rollupService,
+            final CodeFilterService codeFilterService,
+            final AuditService auditService,
+            final ShardRouter shardRouter,
+            final TransactionTemplate transactionTemplate) {
         this.voucherRepository = voucherRepository;
+        this.voucherHistoryRepository = voucherHistoryRepository;
         this.organizationRepository = organizationRepository;
+        this.rollupService = rollupService;
+        this.codeFilterService = codeFilterService;
+        this.auditService = auditService;
+        this.shardRouter = shardRouter;
+        this.transactionTemplate = transactionTemplate;
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTransactionTemplate.setReadOnly(true);
     }
 
+    /*
+     * The voucher is redeemed in a transaction on its shard; the organization's counter is on the primary database and
+     * follows once that transaction has committed, as do the daily rollups on the shard.
+     */
     @Override
     public Voucher redeemVoucher(@Valid VoucherRequest voucherRequest) {
         Account account =
@@ -39,17 +82,29 @@ public class VoucherService implements VoucherController {
                         .getAuthentication()
                         .getPrincipal();
         if (account.getPathologyLabId() != null) {
-            return voucherRepository.findByVoucherCode(voucherRequest.getVoucherCode())
-                    .filter(voucherEntity -> voucherEntity.getStatus() == VoucherStatus.PROCESSED)
-                    .map(voucherEntity -> {
-                        // Update redeemed voucher count in the organization.
-                        organizationRepository.increaseRedeemedVoucherCount(voucherEntity.getIssuerOrganizationId());
-                        // Update the status of the voucher.
-                        voucherEntity.setStatus(VoucherStatus.REDEEMED);
-                        voucherEntity.setRedeemedAccountId(account.getId());
-                        voucherEntity.setRedeemedPathologyLabId(account.getPathologyLabId());
-                        return voucherRepository.save(voucherEntity);
-                    })
+            if (!codeFilterService.mightBeIssuedVoucherCode(voucherRequest.getVoucherCode())) {
+                LOGGER.error("Input voucher isn't valid!");
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "No valid voucher found!");
+            }
+            String voucherCode = voucherRequest.getVoucherCode();
+            return shardRouter.findByCode(voucherCode, () -> transactionTemplate.execute(status ->
+                    voucherRepository.findForUpdateByVoucherCode(voucherCode)
+                            .filter(voucherEntity -> voucherEntity.getStatus() == VoucherStatus.PROCESSED)
+                            .map(voucherEntity -> {
+                                // Update redeemed voucher count in the organization.
+                                Long organizationId = voucherEntity.getIssuerOrganizationId();
+                                shardRouter.runOnPrimaryAfterCommit(() ->
+                                        organizationRepository.increaseRedeemedVoucherCount(organizationId));
+                                rollupService.recordRedeemed(organizationId, account.getPathologyLabId());
+                                // Update the status of the voucher.
+                                voucherEntity.setStatus(VoucherStatus.REDEEMED);
+                                voucherEntity.setRedeemedAccountId(account.getId());
+                                voucherEntity.setRedeemedPathologyLabId(account.getPathologyLabId());
+                                auditService.recordVoucherTransition(voucherEntity.getId(),
+                                        VoucherStatus.PROCESSED.name(), VoucherStatus.REDEEMED.name(), account.getId(),
+                                        account.getPathologyLabId());
+                                return voucherRepository.save(voucherEntity);
+                            })))
                     .map(VoucherMapper::map)
                     .orElseThrow(() -> {
                         LOGGER.error("Input voucher isn't valid!");
@@ -69,8 +124,22 @@ public class VoucherService implements VoucherController {
                         .getAuthentication()
                         .getPrincipal();
         if (account.getPathologyLabId() != null) {
-            return voucherRepository.findByVoucherCode(voucherRequest.getVoucherCode())
-                    .map(VoucherMapper::map)
+            if (!codeFilterService.mightBeIssuedVoucherCode(voucherRequest.getVoucherCode())) {
+                LOGGER.error("Input voucher isn't valid!");
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No valid voucher found!");
+            }
+            String voucherCode = voucherRequest.getVoucherCode();
+            return shardRouter.findByCode(voucherCode, () -> readOnlyTransactionTemplate.execute(status -> {
+                Optional<Voucher> voucher = voucherRepository.findByVoucherCode(voucherCode)
+                        .map(VoucherMapper::map);
+                if (!voucher.isPresent()) {
+                    // Archived vouchers are all redeemed or expired, so only a miss in the voucher table needs the
+                    // history.
+                    voucher = voucherHistoryRepository.findFirstByVoucherCodeOrderByIdDesc(voucherCode)
+                            .map(VoucherMapper::map);
+                }
+                return voucher;
+            }))
                     .orElseThrow(() -> {
                         LOGGER.error("Input voucher isn't valid!");
                         return new ResponseStatusException(HttpStatus.NOT_FOUND, "No valid voucher found!");
@@ -81,4 +150,72 @@ public class VoucherService implements VoucherController {
         }
     }
 
+    /*
+     * Both lookups are served by partial indexes over the PROCESSED vouchers ordered by id, and fetch one row past the
+     * page instead of counting, so the cost doesn't grow with the table. An organization's vouchers are all on its
+     * shard, a mobile's may be on any of them.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public VoucherSearchResult searchVouchers(final String mobile, final String empId, final Long organizationId,
+            final int page, final int size) {
+        Account account =
+                (Account) SecurityContextHolder
+                        .getContext()
+                        .getAuthentication()
+                        .getPrincipal();
+        if (account.getPathologyLabId() == null) {
+            LOGGER.error("LoggedIn User doesn't belong to any pathology lab.");
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "User doesn't belong to any pathology lab.");
+        }
+        if (page < 0 || size < 1 || size > MAX_SEARCH_PAGE_SIZE) {
+            LOGGER.error("Invalid voucher search page: {}, size: {}", page, size);
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Invalid page, the size must be between 1 and " + MAX_SEARCH_PAGE_SIZE + ".");
+        }
+        Pageable pageable = PageRequest.of(page, size, Sort.by("id"));
+        Slice<VoucherEntity> vouchers;
+        if (StringUtils.isNotBlank(mobile)) {
+            String normalizedMobile = MobileNumberUtil.normalize(mobile);
+            if (normalizedMobile == null) {
+                LOGGER.error("Mobile phone number is invalid.");
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Mobile phone number is invalid.");
+            }
+            if (shardRouter.isSharded()) {
+                vouchers = searchEachShard(normalizedMobile, pageable);
+            } else {
+                vouchers = voucherRepository.findRedeemableByUserMobile(normalizedMobile, pageable);
+            }
+        } else if (StringUtils.isNotBlank(empId) && organizationId != null) {
+            vouchers = shardRouter.callForOrganization(organizationId, () ->
+                    voucherRepository.findRedeemableByIssuerOrganizationIdAndUserEmpId(organizationId,
+                            StringUtils.trim(empId), pageable));
+        } else {
+            LOGGER.error("Voucher search request is invalid!");
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Missing required parameters: Either the Mobile Number or the Employee Id with the Organization "
+                            + "Id is mandatory!");
+        }
+        return VoucherSearchResult.builder()
+                .vouchers(vouchers.getContent().stream().map(VoucherMapper::map).collect(Collectors.toList()))
+                .page(page)
+                .size(size)
+                .hasMore(vouchers.hasNext())
+                .build();
+    }
+
+    /*
+     * Every shard returns its rows up to the end of the page plus one, and the page is cut from the merged rows.
+     */
+    private Slice<VoucherEntity> searchEachShard(String mobile, Pageable pageable) {
+        int end = (int) pageable.getOffset() + pageable.getPageSize();
+        Pageable upToEnd = PageRequest.of(0, end + 1, pageable.getSort());
+        List<VoucherEntity> vouchers = shardRouter.collectFromEachShard(() ->
+                voucherRepository.findRedeemableByUserMobile(mobile, upToEnd).getContent());
+        vouchers.sort(Comparator.comparing(VoucherEntity::getId));
+        int start = Math.min((int) pageable.getOffset(), vouchers.size());
+        return new SliceImpl<>(vouchers.subList(start, Math.min(end, vouchers.size())), pageable,
+                vouchers.size() > end);
+    }
+
 }
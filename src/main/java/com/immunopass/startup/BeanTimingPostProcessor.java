@@ -0,0 +1,73 @@
+package com.immunopass.startup;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import org.springframework.beans.factory.config.InstantiationAwareBeanPostProcessor;
+
+
+/**
+ * Times the creation of every bean, from instantiation to the end of its initialization. The total time includes the
+ * dependencies created along the way, the self time doesn't.
+ *
+ * Beans can be created on several threads, e.g. the deferred JPA bootstrap, so every thread keeps its own stack.
+ */
+class BeanTimingPostProcessor implements InstantiationAwareBeanPostProcessor {
+
+    private final ThreadLocal<Deque<Frame>> stacks = ThreadLocal.withInitial(ArrayDeque::new);
+    private final List<BeanTiming> timings = new ArrayList<>();
+
+    @Override
+    public Object postProcessBeforeInstantiation(Class<?> beanClass, String beanName) {
+        stacks.get().push(new Frame(beanName, System.nanoTime()));
+        return null;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        Deque<Frame> stack = stacks.get();
+        // Objects exposed by a FactoryBean pass through here again without a matching instantiation.
+        if (stack.isEmpty() || !stack.peek().beanName.equals(beanName)) {
+            return bean;
+        }
+        Frame frame = stack.pop();
+        long totalNanos = System.nanoTime() - frame.startNanos;
+        if (!stack.isEmpty()) {
+            stack.peek().dependencyNanos += totalNanos;
+        }
+        synchronized (timings) {
+            timings.add(new BeanTiming(beanName, totalNanos, totalNanos - frame.dependencyNanos));
+        }
+        return bean;
+    }
+
+    List<BeanTiming> getTimings() {
+        synchronized (timings) {
+            return new ArrayList<>(timings);
+        }
+    }
+
+    private static final class Frame {
+        private final String beanName;
+        private final long startNanos;
+        private long dependencyNanos;
+
+        private Frame(String beanName, long startNanos) {
+            this.beanName = beanName;
+            this.startNanos = startNanos;
+        }
+    }
+
+    static final class BeanTiming {
+        final String beanName;
+        final long totalNanos;
+        final long selfNanos;
+
+        private BeanTiming(String beanName, long totalNanos, long selfNanos) {
+            this.beanName = beanName;
+            this.totalNanos = totalNanos;
+            this.selfNanos = selfNanos;
+        }
+    }
+}
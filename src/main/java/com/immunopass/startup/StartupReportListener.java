@@ -0,0 +1,106 @@
+package com.immunopass.startup;
+
+import java.lang.management.ManagementFactory;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.SpringApplicationRunListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.ConfigurableEnvironment;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+
+/**
+ * Logs how long each startup phase took and the slowest beans once the application is running, and records the
+ * phases as {@code application.startup.phase} timers so startup regressions show up in the metrics.
+ *
+ * Setting {@code startup.exit_on_ready=true} stops the application right after startup, which is what a training
+ * run for a class data sharing archive needs.
+ */
+public class StartupReportListener implements SpringApplicationRunListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StartupReportListener.class);
+
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+    private final BeanTimingPostProcessor beanTimingPostProcessor = new BeanTimingPostProcessor();
+    private long lastPhaseEndNanos = startNanos;
+
+    public StartupReportListener(final SpringApplication application, final String[] args) {
+        // JVM startup and class loading up to here, the part a class data sharing archive speeds up.
+        phaseNanos.put("jvm", TimeUnit.MILLISECONDS.toNanos(ManagementFactory.getRuntimeMXBean().getUptime()));
+    }
+
+    @Override
+    public void environmentPrepared(ConfigurableEnvironment environment) {
+        endPhase("environment");
+    }
+
+    @Override
+    public void contextPrepared(ConfigurableApplicationContext context) {
+        endPhase("context_prepare");
+        context.getBeanFactory().addBeanPostProcessor(beanTimingPostProcessor);
+    }
+
+    @Override
+    public void contextLoaded(ConfigurableApplicationContext context) {
+        endPhase("context_load");
+    }
+
+    @Override
+    public void started(ConfigurableApplicationContext context) {
+        endPhase("context_refresh");
+    }
+
+    @Override
+    public void running(ConfigurableApplicationContext context) {
+        endPhase("runners");
+        int topBeans = context.getEnvironment().getProperty("startup.report.top_beans", Integer.class, 20);
+        report(topBeans);
+        context.getBeanProvider(MeterRegistry.class).ifAvailable(this::recordPhases);
+        if (context.getEnvironment().getProperty("startup.exit_on_ready", Boolean.class, false)) {
+            LOGGER.info("Exiting after startup as startup.exit_on_ready is set.");
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+
+    private void endPhase(String phase) {
+        long now = System.nanoTime();
+        phaseNanos.put(phase, now - lastPhaseEndNanos);
+        lastPhaseEndNanos = now;
+    }
+
+    private void report(int topBeans) {
+        StringBuilder report = new StringBuilder("Startup took ")
+                .append(toMillis(lastPhaseEndNanos - startNanos + phaseNanos.get("jvm")))
+                .append(" ms.\nPhases:");
+        phaseNanos.forEach((phase, nanos) ->
+                report.append(String.format("%n  %-16s %8d ms", phase, toMillis(nanos))));
+        List<BeanTimingPostProcessor.BeanTiming> timings = beanTimingPostProcessor.getTimings();
+        timings.sort(Comparator.comparingLong((BeanTimingPostProcessor.BeanTiming timing) -> timing.selfNanos)
+                .reversed());
+        report.append(String.format("%nSlowest of %d beans (self / total):", timings.size()));
+        timings.stream()
+                .limit(topBeans)
+                .forEach(timing -> report.append(String.format("%n  %8d ms %8d ms  %s",
+                        toMillis(timing.selfNanos), toMillis(timing.totalNanos), timing.beanName)));
+        LOGGER.info(report.toString());
+    }
+
+    private void recordPhases(MeterRegistry meterRegistry) {
+        phaseNanos.forEach((phase, nanos) -> Timer.builder("application.startup.phase")
+                .tag("phase", phase)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS));
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
@@ -0,0 +1,64 @@
+package com.immunopass.storage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+import com.immunopass.util.GzipUtil;
+
+
+/**
+ * Stores uploaded files. Blobs are addressed by the location returned from {@link #put}; for backwards compatibility
+ * only the last path segment of a location is significant, so S3 URLs stored before this abstraction still resolve.
+ *
+ * Every stream returned by a BlobStore must be closed by the caller.
+ */
+public interface BlobStore {
+
+    /**
+     * @return the location to persist and later pass to the read methods.
+     */
+    String put(String key, InputStream content, long contentLength, String contentType);
+
+    InputStream get(String location);
+
+    /**
+     * Reads {@code length} bytes starting at {@code offset}, or fewer if the blob ends first.
+     */
+    InputStream get(String location, long offset, long length);
+
+    /**
+     * Returns the blob's lines as UTF-8 text, transparently decompressing gzip blobs. Closing the stream closes the
+     * underlying connection or file.
+     */
+    default Stream<String> lines(String location) {
+        InputStream content = get(location);
+        BufferedReader reader;
+        try {
+            reader = new BufferedReader(new InputStreamReader(GzipUtil.decompressIfGzipped(content),
+                    StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            try {
+                content.close();
+            } catch (IOException closeException) {
+                e.addSuppressed(closeException);
+            }
+            throw new UncheckedIOException(e);
+        }
+        return reader.lines().onClose(() -> {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    static String keyOf(String location) {
+        String[] locationParts = location.split("/");
+        return locationParts[locationParts.length - 1];
+    }
+}
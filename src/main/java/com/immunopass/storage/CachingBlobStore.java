@@ -0,0 +1,141 @@
+package com.immunopass.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Keeps recently read blobs of a remote store on local disk, so a retried order doesn't download its file again.
+ * Writes go straight to the remote store. The cache is bounded by total size and evicts the least recently read
+ * files first; a blob larger than the whole cache is read through it but not kept.
+ */
+public class CachingBlobStore implements BlobStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachingBlobStore.class);
+
+    private final BlobStore delegate;
+    private final LocalBlobStore cache;
+    private final Path cacheDirectory;
+    private final long maxBytes;
+
+    public CachingBlobStore(final BlobStore delegate, final Path cacheDirectory, final long maxBytes) {
+        this(delegate, new LocalBlobStore(cacheDirectory), cacheDirectory, maxBytes);
+    }
+
+    CachingBlobStore(final BlobStore delegate, final LocalBlobStore cache, final Path cacheDirectory,
+            final long maxBytes) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.cacheDirectory = cacheDirectory.toAbsolutePath().normalize();
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public String put(String key, InputStream content, long contentLength, String contentType) {
+        return delegate.put(key, content, contentLength, contentType);
+    }
+
+    @Override
+    public InputStream get(String location) {
+        if (cache.contains(location)) {
+            touch(location);
+            try {
+                return cache.get(location);
+            } catch (UncheckedIOException e) {
+                // Evicted since the lookup.
+                LOGGER.debug("Unable to read blob {} from the local cache, downloading it again.", location, e);
+            }
+        }
+        return download(location);
+    }
+
+    @Override
+    public InputStream get(String location, long offset, long length) {
+        if (cache.contains(location)) {
+            touch(location);
+            try {
+                return cache.get(location, offset, length);
+            } catch (UncheckedIOException e) {
+                LOGGER.debug("Unable to read blob {} from the local cache, reading it directly.", location, e);
+            }
+        }
+        // Don't pull a whole blob into the cache for a partial read.
+        return delegate.get(location, offset, length);
+    }
+
+    private InputStream download(String location) {
+        String key = BlobStore.keyOf(location);
+        try (InputStream content = delegate.get(location)) {
+            cache.put(key, content, -1, null);
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.warn("Unable to cache blob {}, reading it directly.", location, e);
+            return delegate.get(location);
+        }
+        try {
+            InputStream content = cache.get(location);
+            Path cached = cache.resolve(key);
+            if (Files.size(cached) > maxBytes) {
+                // Keeping it would evict everything else and then itself. The open stream still reads the
+                // deleted file.
+                Files.deleteIfExists(cached);
+            } else {
+                evict();
+            }
+            return content;
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.debug("Unable to read blob {} from the local cache, reading it directly.", location, e);
+            return delegate.get(location);
+        }
+    }
+
+    private void touch(String location) {
+        try {
+            Files.setLastModifiedTime(cache.resolve(BlobStore.keyOf(location)),
+                    FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            LOGGER.debug("Unable to update the cache timestamp of {}.", location, e);
+        }
+    }
+
+    private synchronized void evict() {
+        try (Stream<Path> files = Files.list(cacheDirectory)) {
+            List<Path> cached = files
+                    .filter(Files::isRegularFile)
+                    // Skip files that are still being written.
+                    .filter(path -> !path.getFileName().toString().endsWith(".part"))
+                    .sorted(Comparator.comparing(CachingBlobStore::lastModified))
+                    .collect(Collectors.toList());
+            long total = 0;
+            for (Path path : cached) {
+                total += Files.size(path);
+            }
+            for (Path path : cached) {
+                if (total <= maxBytes) {
+                    break;
+                }
+                total -= Files.size(path);
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to evict blobs from the local cache.", e);
+        }
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+}
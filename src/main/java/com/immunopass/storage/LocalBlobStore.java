@@ -0,0 +1,94 @@
+package com.immunopass.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Keeps blobs as files under a root directory, for on-prem deployments and test runs. Reads are served from
+ * memory-mapped regions of the file.
+ */
+public class LocalBlobStore implements BlobStore {
+
+    private final Path root;
+
+    public LocalBlobStore(final Path root) {
+        this.root = root.toAbsolutePath().normalize();
+        try {
+            Files.createDirectories(this.root);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to create the blob store directory " + root, e);
+        }
+    }
+
+    @Override
+    public String put(String key, InputStream content, long contentLength, String contentType) {
+        Path target = resolve(key);
+        try {
+            // Write to a temporary file and move it into place, so readers never see a partial blob.
+            Path temporary = Files.createTempFile(root, key, ".part");
+            try (ReadableByteChannel source = Channels.newChannel(content);
+                    FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                long position = 0;
+                long transferred;
+                while ((transferred = channel.transferFrom(source, position, 1 << 20)) > 0) {
+                    position += transferred;
+                }
+            } catch (IOException e) {
+                Files.deleteIfExists(temporary);
+                throw e;
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return target.toUri().toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to store blob " + key, e);
+        }
+    }
+
+    @Override
+    public InputStream get(String location) {
+        return get(location, 0, Long.MAX_VALUE);
+    }
+
+    @Override
+    public InputStream get(String location, long offset, long length) {
+        Path path = resolve(BlobStore.keyOf(location));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = Math.min(offset, size);
+            long count = Math.min(length, size - start);
+            if (count > Integer.MAX_VALUE) {
+                // Too large for a single mapping; fall back to a plain channel stream that reads to the end.
+                FileChannel streamChannel = FileChannel.open(path, StandardOpenOption.READ);
+                streamChannel.position(start);
+                return Channels.newInputStream(streamChannel);
+            }
+            // The mapping stays valid after the channel is closed.
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, count);
+            return new ByteBufferInputStream(mapped);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read blob " + location, e);
+        }
+    }
+
+    public boolean contains(String location) {
+        return Files.isRegularFile(resolve(BlobStore.keyOf(location)));
+    }
+
+    Path resolve(String key) {
+        Path path = root.resolve(key).normalize();
+        if (!root.equals(path.getParent())) {
+            throw new IllegalArgumentException("Invalid blob key " + key);
+        }
+        return path;
+    }
+}
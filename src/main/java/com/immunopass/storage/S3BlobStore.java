@@ -0,0 +1,45 @@
+package com.immunopass.storage;
+
+import java.io.InputStream;
+import java.util.function.Supplier;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+
+
+/**
+ * The client is taken from a supplier so building it, which loads most of the AWS SDK, can be deferred to the first
+ * use instead of slowing down startup.
+ */
+public class S3BlobStore implements BlobStore {
+
+    private final Supplier<AmazonS3> s3Client;
+    private final String bucket;
+
+    public S3BlobStore(final Supplier<AmazonS3> s3Client, final String bucket) {
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+    }
+
+    @Override
+    public String put(String key, InputStream content, long contentLength, String contentType) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType(contentType);
+        // Without the length the SDK buffers the whole stream in memory to compute it.
+        metadata.setContentLength(contentLength);
+        s3Client.get().putObject(bucket, key, content, metadata);
+        return s3Client.get().getUrl(bucket, key).toString();
+    }
+
+    @Override
+    public InputStream get(String location) {
+        return s3Client.get().getObject(new GetObjectRequest(bucket, BlobStore.keyOf(location))).getObjectContent();
+    }
+
+    @Override
+    public InputStream get(String location, long offset, long length) {
+        GetObjectRequest request = new GetObjectRequest(bucket, BlobStore.keyOf(location))
+                .withRange(offset, offset + length - 1);
+        return s3Client.get().getObject(request).getObjectContent();
+    }
+}
@@ -0,0 +1,49 @@
+package com.immunopass.storage;
+
+import java.io.InputStream;
+import java.util.function.Supplier;
+import com.immunopass.enums.SpanKind;
+import com.immunopass.tracing.Span;
+import com.immunopass.tracing.Tracer;
+
+
+/**
+ * Adds a client span around every call of another store. A read's span covers opening the stream, not reading it.
+ */
+public class TracingBlobStore implements BlobStore {
+
+    private final BlobStore delegate;
+    private final Tracer tracer;
+
+    public TracingBlobStore(final BlobStore delegate, final Tracer tracer) {
+        this.delegate = delegate;
+        this.tracer = tracer;
+    }
+
+    @Override
+    public String put(String key, InputStream content, long contentLength, String contentType) {
+        return traced("BlobStore.put", key, () -> delegate.put(key, content, contentLength, contentType));
+    }
+
+    @Override
+    public InputStream get(String location) {
+        return traced("BlobStore.get", BlobStore.keyOf(location), () -> delegate.get(location));
+    }
+
+    @Override
+    public InputStream get(String location, long offset, long length) {
+        return traced("BlobStore.getRange", BlobStore.keyOf(location), () -> delegate.get(location, offset, length));
+    }
+
+    private <T> T traced(String name, String key, Supplier<T> call) {
+        try (Span span = tracer.startChildSpan(name, SpanKind.CLIENT)) {
+            span.setAttribute("blob.key", key);
+            try {
+                return call.get();
+            } catch (RuntimeException e) {
+                span.recordError(e);
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.immunopass.tracing;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.immunopass.util.BatchingWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+
+/**
+ * Exports ended spans in the OTLP/JSON encoding of OpenTelemetry: every batch is one {@code ExportTraceServiceRequest}
+ * document. Batches are appended as lines to {@code tracing.export.file}, which the collector's {@code otlpjsonfile}
+ * receiver reads, and/or posted to the OTLP/HTTP endpoint {@code tracing.export.otlp_endpoint}, e.g.
+ * {@code http://localhost:4318/v1/traces}. With neither configured spans are discarded.
+ *
+ * Exporting is an enqueue on a {@link BatchingWriter}; spans beyond its capacity are counted and dropped.
+ */
+@Component
+public class OtlpJsonSpanExporter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OtlpJsonSpanExporter.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final int STATUS_CODE_ERROR = 2;
+
+    private final Path file;
+    private final String endpoint;
+    private final String serviceName;
+    private final RestTemplate restTemplate;
+    private final Counter exported;
+    private final Counter dropped;
+    private final Counter failed;
+    private final BatchingWriter<Span> writer;
+
+    public OtlpJsonSpanExporter(final MeterRegistry meterRegistry,
+            @Value("${tracing.export.file:}") final String file,
+            @Value("${tracing.export.otlp_endpoint:}") final String endpoint,
+            @Value("${tracing.service_name:immunopass}") final String serviceName,
+            @Value("${tracing.export.queue_capacity:10000}") final int capacity,
+            @Value("${tracing.export.batch_size:512}") final int batchSize,
+            @Value("${tracing.export.flush_interval_ms:1000}") final long flushIntervalMs,
+            @Value("${tracing.export.timeout_ms:5000}") final int timeoutMs) {
+        this.file = file.isEmpty() ? null : Paths.get(file);
+        this.endpoint = endpoint.isEmpty() ? null : endpoint;
+        this.serviceName = serviceName;
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(timeoutMs);
+        requestFactory.setReadTimeout(timeoutMs);
+        this.restTemplate = new RestTemplate(requestFactory);
+        this.exported = meterRegistry.counter("tracing.spans", "outcome", "exported");
+        this.dropped = meterRegistry.counter("tracing.spans", "outcome", "dropped");
+        this.failed = meterRegistry.counter("tracing.spans", "outcome", "failed");
+        this.writer = new BatchingWriter<>("span-exporter", capacity, batchSize, flushIntervalMs, this::write);
+        Gauge.builder("tracing.export.queue.size", writer, BatchingWriter::size).register(meterRegistry);
+        if (isEnabled()) {
+            this.writer.start();
+        }
+    }
+
+    private boolean isEnabled() {
+        return file != null || endpoint != null;
+    }
+
+    void export(Span span) {
+        if (isEnabled() && !writer.offer(span)) {
+            dropped.increment();
+        }
+    }
+
+    private void write(List<Span> batch) {
+        try {
+            String document = OBJECT_MAPPER.writeValueAsString(toExportRequest(batch));
+            if (file != null) {
+                try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND)) {
+                    out.write(document);
+                    out.write('\n');
+                }
+            }
+            if (endpoint != null) {
+                HttpHeaders headers = new HttpHeaders();
+                headers.setContentType(MediaType.APPLICATION_JSON);
+                restTemplate.postForEntity(endpoint, new HttpEntity<>(document, headers), String.class);
+            }
+            exported.increment(batch.size());
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Error exporting {} spans, they are lost.", batch.size(), e);
+            failed.increment(batch.size());
+        }
+    }
+
+    private ObjectNode toExportRequest(List<Span> batch) {
+        ObjectNode request = OBJECT_MAPPER.createObjectNode();
+        ObjectNode resourceSpans = request.putArray("resourceSpans").addObject();
+        ArrayNode resourceAttributes = resourceSpans.putObject("resource").putArray("attributes");
+        addAttribute(resourceAttributes, "service.name", serviceName);
+        ObjectNode scopeSpans = resourceSpans.putArray("scopeSpans").addObject();
+        scopeSpans.putObject("scope").put("name", Tracer.class.getName());
+        ArrayNode spans = scopeSpans.putArray("spans");
+        for (Span span : batch) {
+            ObjectNode node = spans.addObject();
+            node.put("traceId", span.getTraceId());
+            node.put("spanId", span.getSpanId());
+            if (span.getParentSpanId() != null) {
+                node.put("parentSpanId", span.getParentSpanId());
+            }
+            node.put("name", span.getName());
+            node.put("kind", span.getKind().getOtlpValue());
+            // 64-bit integers are strings in OTLP/JSON.
+            node.put("startTimeUnixNano", Long.toString(span.getStartEpochNanos()));
+            node.put("endTimeUnixNano", Long.toString(span.getEndEpochNanos()));
+            ArrayNode attributes = node.putArray("attributes");
+            for (Map.Entry<String, Object> attribute : span.getAttributes().entrySet()) {
+                addAttribute(attributes, attribute.getKey(), attribute.getValue());
+            }
+            if (span.getErrorMessage() != null) {
+                node.putObject("status")
+                        .put("code", STATUS_CODE_ERROR)
+                        .put("message", span.getErrorMessage());
+            }
+        }
+        return request;
+    }
+
+    private static void addAttribute(ArrayNode attributes, String key, Object value) {
+        ObjectNode attribute = attributes.addObject();
+        attribute.put("key", key);
+        ObjectNode anyValue = attribute.putObject("value");
+        if (value instanceof Boolean) {
+            anyValue.put("boolValue", (Boolean) value);
+        } else if (value instanceof Integer || value instanceof Long) {
+            anyValue.put("intValue", value.toString());
+        } else if (value instanceof Number) {
+            anyValue.put("doubleValue", ((Number) value).doubleValue());
+        } else {
+            anyValue.put("stringValue", value.toString());
+        }
+    }
+
+    @PreDestroy
+    public void flush() {
+        if (isEnabled()) {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.immunopass.tracing;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.Advised;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.Repository;
+import org.springframework.stereotype.Component;
+import com.immunopass.enums.SpanKind;
+
+
+/**
+ * Adds a client span around every call of a Spring Data repository, named after the repository interface and method,
+ * e.g. {@code VoucherRepository.findByVoucherCode}. Calls outside a traced operation aren't recorded.
+ *
+ * The tracer is looked up on first call, post processors are created before the beans they could depend on.
+ */
+@Component
+public class RepositoryTracingPostProcessor implements BeanPostProcessor {
+
+    private final ObjectProvider<Tracer> tracer;
+
+    public RepositoryTracingPostProcessor(final ObjectProvider<Tracer> tracer) {
+        this.tracer = tracer;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof Repository) || !(bean instanceof Advised) || ((Advised) bean).isFrozen()) {
+            return bean;
+        }
+        Advised repository = (Advised) bean;
+        // Spring Data proxies list the repository interface first.
+        String repositoryName = repository.getProxiedInterfaces()[0].getSimpleName();
+        MethodInterceptor interceptor = invocation -> {
+            try (Span span = tracer.getObject().startChildSpan(
+                    repositoryName + "." + invocation.getMethod().getName(), SpanKind.CLIENT)) {
+                span.setAttribute("db.system", "postgresql");
+                try {
+                    return invocation.proceed();
+                } catch (Throwable e) {
+                    span.recordError(e);
+                    throw e;
+                }
+            }
+        };
+        repository.addAdvice(0, interceptor);
+        return bean;
+    }
+}
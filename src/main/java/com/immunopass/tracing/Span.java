@@ -0,0 +1,134 @@
+package com.immunopass.tracing;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import com.immunopass.enums.SpanKind;
+
+
+/**
+ * A timed operation within a trace. Spans are started by the {@link Tracer} and end when closed, so they belong in a
+ * try-with-resources block. A span started as the current one must be closed on the thread that started it.
+ *
+ * {@link #NOOP} stands in for spans that aren't recorded, e.g. a repository call outside any traced operation.
+ */
+public class Span implements AutoCloseable {
+
+    public static final Span NOOP = new Span(null, null, null, null, "noop", SpanKind.INTERNAL, null, false);
+
+    private final Tracer tracer;
+    private final String traceId;
+    private final String spanId;
+    private final String parentSpanId;
+    private final String name;
+    private final SpanKind kind;
+    private final Span previous;
+    private final boolean current;
+    private final long startEpochNanos;
+    private final long startNanoTime;
+    private final Map<String, Object> attributes = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final AtomicBoolean ended = new AtomicBoolean();
+    private volatile long endEpochNanos;
+    private volatile String errorMessage;
+
+    Span(final Tracer tracer, final String traceId, final String spanId, final String parentSpanId,
+            final String name, final SpanKind kind, final Span previous, final boolean current) {
+        this.tracer = tracer;
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        this.name = name;
+        this.kind = kind;
+        this.previous = previous;
+        this.current = current;
+        this.startEpochNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        this.startNanoTime = System.nanoTime();
+    }
+
+    public Span setAttribute(String key, Object value) {
+        if (isRecording() && value != null) {
+            attributes.put(key, value);
+        }
+        return this;
+    }
+
+    public void recordError(Throwable error) {
+        if (isRecording()) {
+            errorMessage = error.getClass().getSimpleName() + ": " + error.getMessage();
+        }
+    }
+
+    public void recordError(String message) {
+        if (isRecording()) {
+            errorMessage = message;
+        }
+    }
+
+    public boolean isRecording() {
+        return tracer != null;
+    }
+
+    /**
+     * @return the W3C {@code traceparent} header value that makes this span the parent of a remote operation.
+     */
+    public String traceparent() {
+        return "00-" + traceId + "-" + spanId + "-01";
+    }
+
+    @Override
+    public void close() {
+        if (isRecording() && ended.compareAndSet(false, true)) {
+            // Offsetting the start keeps durations monotonic when the wall clock is adjusted mid-span.
+            endEpochNanos = startEpochNanos + (System.nanoTime() - startNanoTime);
+            tracer.end(this);
+        }
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public String getSpanId() {
+        return spanId;
+    }
+
+    String getParentSpanId() {
+        return parentSpanId;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    SpanKind getKind() {
+        return kind;
+    }
+
+    Span getPrevious() {
+        return previous;
+    }
+
+    boolean isCurrent() {
+        return current;
+    }
+
+    long getStartEpochNanos() {
+        return startEpochNanos;
+    }
+
+    long getEndEpochNanos() {
+        return endEpochNanos;
+    }
+
+    Map<String, Object> getAttributes() {
+        synchronized (attributes) {
+            return new LinkedHashMap<>(attributes);
+        }
+    }
+
+    String getErrorMessage() {
+        return errorMessage;
+    }
+}
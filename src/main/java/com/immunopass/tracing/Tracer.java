@@ -0,0 +1,132 @@
+package com.immunopass.tracing;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.MDC;
+import org.springframework.stereotype.Component;
+import com.immunopass.enums.SpanKind;
+
+
+/**
+ * Starts spans and keeps track of the current one on every thread. The current span's trace and span ids are in the
+ * logging MDC as {@code traceId} and {@code spanId}. Ended spans go to the {@link OtlpJsonSpanExporter}.
+ */
+@Component
+public class Tracer {
+
+    public static final String TRACE_ID_KEY = "traceId";
+    public static final String SPAN_ID_KEY = "spanId";
+    private static final Pattern TRACEPARENT = Pattern.compile("00-([0-9a-f]{32})-([0-9a-f]{16})-[0-9a-f]{2}");
+    private static final String INVALID_TRACE_ID = "00000000000000000000000000000000";
+    private static final String INVALID_SPAN_ID = "0000000000000000";
+
+    private final ThreadLocal<Span> current = new ThreadLocal<>();
+    private final OtlpJsonSpanExporter exporter;
+
+    public Tracer(final OtlpJsonSpanExporter exporter) {
+        this.exporter = exporter;
+    }
+
+    /**
+     * @return the span current on this thread, or null.
+     */
+    public Span currentSpan() {
+        return current.get();
+    }
+
+    /**
+     * Starts a span as the current one, child of the current span or the root of a new trace.
+     */
+    public Span startSpan(String name, SpanKind kind) {
+        Span parent = current.get();
+        return parent == null ? start(name, kind, newTraceId(), null, true) : startSpan(name, kind, parent);
+    }
+
+    /**
+     * Starts a span as the current one, child of a span from another thread. Children of {@link Span#NOOP} aren't
+     * recorded either.
+     */
+    public Span startSpan(String name, SpanKind kind, Span parent) {
+        if (!parent.isRecording()) {
+            return Span.NOOP;
+        }
+        return start(name, kind, parent.getTraceId(), parent.getSpanId(), true);
+    }
+
+    /**
+     * Starts a span as the current one if this thread is in a traced operation. Instrumented calls use it so they
+     * don't start a trace of their own for every call made by an untraced background job.
+     */
+    public Span startChildSpan(String name, SpanKind kind) {
+        Span parent = current.get();
+        return parent == null ? Span.NOOP : startSpan(name, kind, parent);
+    }
+
+    /**
+     * Starts the root of a new trace without making it current, for an operation handed between threads. Its
+     * children are started with {@link #startSpan(String, SpanKind, Span)}.
+     */
+    public Span startDetachedSpan(String name) {
+        return start(name, SpanKind.INTERNAL, newTraceId(), null, false);
+    }
+
+    /**
+     * Starts the span of an incoming request as the current one, continuing the caller's trace when the request has
+     * a valid W3C {@code traceparent} header.
+     */
+    public Span startServerSpan(String name, String traceparent) {
+        if (traceparent != null) {
+            Matcher matcher = TRACEPARENT.matcher(traceparent.trim());
+            if (matcher.matches() && !matcher.group(1).equals(INVALID_TRACE_ID)
+                    && !matcher.group(2).equals(INVALID_SPAN_ID)) {
+                return start(name, SpanKind.SERVER, matcher.group(1), matcher.group(2), true);
+            }
+        }
+        return start(name, SpanKind.SERVER, newTraceId(), null, true);
+    }
+
+    private Span start(String name, SpanKind kind, String traceId, String parentSpanId, boolean makeCurrent) {
+        Span previous = makeCurrent ? current.get() : null;
+        Span span = new Span(this, traceId, newSpanId(), parentSpanId, name, kind, previous, makeCurrent);
+        if (makeCurrent) {
+            current.set(span);
+            putInMdc(span);
+        }
+        return span;
+    }
+
+    void end(Span span) {
+        // A span closed out of order leaves the current one alone.
+        if (span.isCurrent() && current.get() == span) {
+            Span previous = span.getPrevious();
+            if (previous == null) {
+                current.remove();
+                MDC.remove(TRACE_ID_KEY);
+                MDC.remove(SPAN_ID_KEY);
+            } else {
+                current.set(previous);
+                putInMdc(previous);
+            }
+        }
+        exporter.export(span);
+    }
+
+    private static void putInMdc(Span span) {
+        MDC.put(TRACE_ID_KEY, span.getTraceId());
+        MDC.put(SPAN_ID_KEY, span.getSpanId());
+    }
+
+    private static String newTraceId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return toHex(random.nextLong()) + toHex(random.nextLong() | 1L);
+    }
+
+    private static String newSpanId() {
+        return toHex(ThreadLocalRandom.current().nextLong() | 1L);
+    }
+
+    private static String toHex(long value) {
+        return String.format("%016x", value);
+    }
+}
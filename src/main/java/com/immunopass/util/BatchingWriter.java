@@ -0,0 +1,117 @@
+package com.immunopass.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Takes writes off the caller's thread: items are offered to a bounded lock-free queue, and a background thread hands
+ * them to the sink in batches, as soon as a batch is full or else every flush interval. {@link #close()} stops the
+ * thread and hands over whatever is still queued.
+ *
+ * The sink runs on the background thread, and on the closing thread once closed. It should deal with its own
+ * failures; anything it throws is logged and the batch is lost.
+ */
+public class BatchingWriter<T> implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchingWriter.class);
+
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final Consumer<List<T>> sink;
+    private final Queue<T> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    public BatchingWriter(final String threadName, final int capacity, final int batchSize,
+            final long flushIntervalMs, final Consumer<List<T>> sink) {
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.sink = sink;
+        this.writer = new Thread(this::writeLoop, threadName);
+        this.writer.setDaemon(true);
+    }
+
+    public void start() {
+        writer.start();
+    }
+
+    /**
+     * @return false if the queue already holds {@code capacity} items; the item is left to the caller.
+     */
+    public boolean offer(T item) {
+        if (queued.incrementAndGet() > capacity) {
+            queued.decrementAndGet();
+            return false;
+        }
+        queue.offer(item);
+        if (queued.get() >= batchSize) {
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    public int size() {
+        return queued.get();
+    }
+
+    private void writeLoop() {
+        while (running) {
+            if (drainBatch() < batchSize) {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+        }
+    }
+
+    /*
+     * Hands up to one batch of queued items to the sink.
+     *
+     * @return the number of items taken from the queue.
+     */
+    private int drainBatch() {
+        List<T> batch = new ArrayList<>(Math.min(batchSize, Math.max(queued.get(), 1)));
+        T item;
+        while (batch.size() < batchSize && (item = queue.poll()) != null) {
+            batch.add(item);
+        }
+        if (!batch.isEmpty()) {
+            queued.addAndGet(-batch.size());
+            try {
+                sink.accept(batch);
+            } catch (RuntimeException e) {
+                LOGGER.error("Error writing a batch of {} items on {}, they are lost.", batch.size(),
+                        writer.getName(), e);
+            }
+        }
+        return batch.size();
+    }
+
+    /**
+     * Stops the background thread, waiting up to 10 seconds for the batch it is writing, then writes what is left
+     * on the calling thread.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        while (drainBatch() > 0) {
+            LOGGER.debug("Flushed a batch of {} on shutdown.", writer.getName());
+        }
+    }
+}
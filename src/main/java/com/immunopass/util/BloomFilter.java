@@ -0,0 +1,81 @@
+package com.immunopass.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * A thread-safe Bloom filter over strings. {@link #mightContain(String)} never returns {@code false} for a value that
+ * was {@link #put(String) put}, and returns {@code true} for an absent value with roughly the configured probability.
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashFunctions;
+    private final long expectedInsertions;
+
+    public BloomFilter(final long expectedInsertions, final double falsePositiveRate) {
+        long insertions = Math.max(1, expectedInsertions);
+        long bitCount = (long) Math.ceil(-insertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bits = new AtomicLongArray((int) ((Math.max(64, bitCount) + 63) / 64));
+        this.bitCount = bits.length() * 64L;
+        this.hashFunctions = Math.max(1, (int) Math.round((double) this.bitCount / insertions * Math.log(2)));
+        this.expectedInsertions = insertions;
+    }
+
+    public void put(final String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashFunctions; i++) {
+            long bitIndex = Math.floorMod(h1 + (long) i * h2, bitCount);
+            int word = (int) (bitIndex >>> 6);
+            long mask = 1L << bitIndex;
+            long current;
+            do {
+                current = bits.get(word);
+                if ((current & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    public boolean mightContain(final String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashFunctions; i++) {
+            long bitIndex = Math.floorMod(h1 + (long) i * h2, bitCount);
+            if ((bits.get((int) (bitIndex >>> 6)) & (1L << bitIndex)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getExpectedInsertions() {
+        return expectedInsertions;
+    }
+
+    public long getSizeInBytes() {
+        return bits.length() * 8L;
+    }
+
+    /*
+     * 64-bit FNV-1a followed by the MurmurHash3 finalizer, which spreads the entropy of short codes across all bits.
+     */
+    private static long hash(final String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
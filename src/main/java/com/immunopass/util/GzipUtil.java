@@ -0,0 +1,83 @@
+package com.immunopass.util;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.lang3.StringUtils;
+import lombok.experimental.UtilityClass;
+
+
+@UtilityClass
+public class GzipUtil {
+
+    private static final int GZIP_MAGIC_FIRST_BYTE = 0x1f;
+    private static final int GZIP_MAGIC_SECOND_BYTE = 0x8b;
+
+    /**
+     * Returns a stream of the decompressed content if the input starts with the gzip magic bytes, otherwise the
+     * input as is. Closing the returned stream closes the input.
+     */
+    public InputStream decompressIfGzipped(InputStream inputStream) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(inputStream);
+        buffered.mark(2);
+        int first = buffered.read();
+        int second = buffered.read();
+        buffered.reset();
+        if (first == GZIP_MAGIC_FIRST_BYTE && second == GZIP_MAGIC_SECOND_BYTE) {
+            return new GZIPInputStream(buffered, 8192);
+        }
+        return buffered;
+    }
+
+    /**
+     * Whether an Accept-Encoding header accepts gzip: gzip (or x-gzip) is listed, or else {@code *} is, with a
+     * q-value above 0. A coding with a q-value that can't be parsed is taken as not acceptable.
+     */
+    public boolean acceptsGzip(String acceptEncoding) {
+        Double gzipQuality = null;
+        Double anyQuality = null;
+        for (String element : StringUtils.split(StringUtils.defaultString(acceptEncoding), ',')) {
+            String[] parts = element.split(";");
+            String coding = parts[0].trim();
+            double quality = quality(parts);
+            if ("gzip".equalsIgnoreCase(coding) || "x-gzip".equalsIgnoreCase(coding)) {
+                gzipQuality = gzipQuality == null ? quality : Math.max(gzipQuality, quality);
+            } else if ("*".equals(coding)) {
+                anyQuality = quality;
+            }
+        }
+        if (gzipQuality != null) {
+            return gzipQuality > 0;
+        }
+        return anyQuality != null && anyQuality > 0;
+    }
+
+    private double quality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.length() > 2 && "q=".equalsIgnoreCase(parameter.substring(0, 2))) {
+                try {
+                    double quality = Double.parseDouble(parameter.substring(2).trim());
+                    return quality >= 0 && quality <= 1 ? quality : 0;
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    public byte[] compress(byte[] content) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, content.length / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed, 8192)) {
+            gzip.write(content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return compressed.toByteArray();
+    }
+}
@@ -0,0 +1,144 @@
+package com.immunopass.util;
+
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+import org.springframework.stereotype.Component;
+import com.immunopass.entity.ImmunopassEntity;
+import com.immunopass.model.ImmunopassToken;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+
+
+/**
+ * Issues ES256 signed immunopass tokens small enough for a QR code.
+ *
+ * Keys are parsed once and kept in memory. To rotate, configure the new pair as the active key and move the previous
+ * public key to {@code immunopass.token.retired_public_keys} ({@code kid:base64,...}) until the passes it signed have
+ * expired; tokens carry their key id, so both keep verifying.
+ *
+ * Without a configured key the application fails to start, unless a development profile is active, in which case an
+ * ephemeral key is generated.
+ */
+@Component
+public class ImmunopassTokenUtil {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ImmunopassTokenUtil.class);
+    private static final Profiles DEV_PROFILES = Profiles.of("local", "dev");
+
+    private final String keyId;
+    private final PrivateKey privateKey;
+    private final Map<String, String> publicKeys;
+    private final ImmunopassTokenVerifier verifier;
+    private final Duration validity;
+
+    public ImmunopassTokenUtil(
+            @Value("${immunopass.token.key_id:}") final String keyId,
+            @Value("${immunopass.token.private_key:}") final String privateKey,
+            @Value("${immunopass.token.public_key:}") final String publicKey,
+            @Value("${immunopass.token.retired_public_keys:}") final String retiredPublicKeys,
+            @Value("${immunopass.token.validity_days:90}") final long validityDays,
+            final Environment environment) {
+        Map<String, String> keys = new LinkedHashMap<>();
+        if (StringUtils.isAnyBlank(keyId, privateKey, publicKey)) {
+            if (!environment.acceptsProfiles(DEV_PROFILES)) {
+                throw new IllegalStateException("No immunopass token signing key configured, set "
+                        + "immunopass.token.key_id, immunopass.token.private_key and immunopass.token.public_key.");
+            }
+            LOGGER.warn("No immunopass token signing key configured, using an ephemeral key. Tokens issued by this "
+                    + "instance won't verify after a restart.");
+            KeyPair keyPair = generateKeyPair();
+            this.keyId = "ephemeral";
+            this.privateKey = keyPair.getPrivate();
+            keys.put(this.keyId, Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded()));
+        } else {
+            this.keyId = keyId;
+            this.privateKey = decodePrivateKey(privateKey);
+            keys.put(keyId, publicKey.trim());
+        }
+        for (String retiredKey : StringUtils.split(retiredPublicKeys, ',')) {
+            String[] parts = retiredKey.split(":", 2);
+            if (parts.length != 2 || StringUtils.isAnyBlank(parts)) {
+                throw new IllegalArgumentException("Invalid immunopass token retired public key '" + retiredKey.trim()
+                        + "', expected kid:base64.");
+            }
+            keys.putIfAbsent(parts[0].trim(), parts[1].trim());
+        }
+        this.publicKeys = Collections.unmodifiableMap(keys);
+        this.verifier = new ImmunopassTokenVerifier(this.publicKeys);
+        this.validity = Duration.ofDays(validityDays);
+    }
+
+    public String generateToken(ImmunopassEntity immunopassEntity) {
+        long now = System.currentTimeMillis();
+        return Jwts.builder()
+                .setHeaderParam("kid", keyId)
+                .setSubject(immunopassEntity.getImmunopassCode())
+                .claim(ImmunopassTokenVerifier.MASKED_NAME, maskName(immunopassEntity.getUserName()))
+                .claim(ImmunopassTokenVerifier.TEST_RESULT, immunopassEntity.getImmunoTestResult().name())
+                .setIssuedAt(new Date(now))
+                .setExpiration(new Date(now + validity.toMillis()))
+                .signWith(privateKey, SignatureAlgorithm.ES256)
+                .compact();
+    }
+
+    public ImmunopassToken verifyToken(String token) {
+        return verifier.verify(token);
+    }
+
+    /**
+     * The trusted public keys by key id, published so scanners can verify offline.
+     */
+    public Map<String, String> getPublicKeys() {
+        return publicKeys;
+    }
+
+    static String maskName(String name) {
+        StringBuilder masked = new StringBuilder(name.length());
+        boolean wordStart = true;
+        for (char c : name.trim().toCharArray()) {
+            if (Character.isWhitespace(c)) {
+                masked.append(c);
+                wordStart = true;
+            } else {
+                masked.append(wordStart ? c : '*');
+                wordStart = false;
+            }
+        }
+        return masked.toString();
+    }
+
+    private static PrivateKey decodePrivateKey(String encodedKey) {
+        try {
+            return KeyFactory.getInstance("EC").generatePrivate(new PKCS8EncodedKeySpec(Base64.getDecoder().decode(
+                    encodedKey.trim())));
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid immunopass token private key.", e);
+        }
+    }
+
+    private static KeyPair generateKeyPair() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+            return generator.generateKeyPair();
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to generate an immunopass token key.", e);
+        }
+    }
+}
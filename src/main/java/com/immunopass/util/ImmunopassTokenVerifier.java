@@ -0,0 +1,76 @@
+package com.immunopass.util;
+
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import com.immunopass.enums.ImmunoTestResult;
+import com.immunopass.model.ImmunopassToken;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+
+
+/**
+ * Verifies immunopass tokens with nothing but the issuer's public keys, so gate scanners can check a QR code without
+ * calling the service. Instances are immutable and thread-safe; verification is pure CPU work.
+ */
+public class ImmunopassTokenVerifier {
+
+    static final String MASKED_NAME = "n";
+    static final String TEST_RESULT = "r";
+
+    private final Map<String, PublicKey> publicKeys;
+    private final JwtParser parser;
+
+    /**
+     * @param publicKeys the trusted keys by key id, each a base64 encoded X.509 EC public key.
+     */
+    public ImmunopassTokenVerifier(final Map<String, String> publicKeys) {
+        Map<String, PublicKey> keys = new HashMap<>();
+        publicKeys.forEach((keyId, encodedKey) -> keys.put(keyId, decodePublicKey(encodedKey)));
+        this.publicKeys = Collections.unmodifiableMap(keys);
+        this.parser = Jwts.parserBuilder()
+                .setSigningKeyResolver(new SigningKeyResolverAdapter() {
+                    @Override
+                    public Key resolveSigningKey(final JwsHeader header, final Claims claims) {
+                        PublicKey key = ImmunopassTokenVerifier.this.publicKeys.get(header.getKeyId());
+                        if (key == null) {
+                            throw new JwtException("Unknown immunopass token key id " + header.getKeyId());
+                        }
+                        return key;
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * @throws JwtException if the token is malformed, expired, or not signed by one of the trusted keys.
+     */
+    public ImmunopassToken verify(final String token) {
+        Claims claims = parser.parseClaimsJws(token).getBody();
+        return ImmunopassToken.builder()
+                .immunopassCode(claims.getSubject())
+                .maskedUserName(claims.get(MASKED_NAME, String.class))
+                .immunoTestResult(ImmunoTestResult.valueOf(claims.get(TEST_RESULT, String.class)))
+                .issuedAt(claims.getIssuedAt().toInstant())
+                .expiresAt(claims.getExpiration().toInstant())
+                .build();
+    }
+
+    static PublicKey decodePublicKey(final String encodedKey) {
+        try {
+            return KeyFactory.getInstance("EC").generatePublic(new X509EncodedKeySpec(Base64.getDecoder().decode(
+                    encodedKey.trim())));
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid immunopass token public key.", e);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.immunopass.util;
+
+/**
+ * An open-addressing hash set of primitive {@code long} values with linear probing. Values are stored inline in a
+ * single {@code long[]}, so adding a value never allocates, apart from the occasional resize.
+ */
+public class LongHashSet {
+
+    private static final long EMPTY = 0L;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] table;
+    private int mask;
+    private int resizeThreshold;
+    private int size;
+    // Zero marks an empty slot, so it's tracked separately.
+    private boolean containsZero;
+
+    public LongHashSet(final int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * @return {@code true} if the value wasn't present yet.
+     */
+    public boolean add(final long value) {
+        if (value == EMPTY) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+        int index = slot(value);
+        while (table[index] != EMPTY) {
+            if (table[index] == value) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        table[index] = value;
+        if (++size > resizeThreshold) {
+            resize();
+        }
+        return true;
+    }
+
+    public boolean contains(final long value) {
+        if (value == EMPTY) {
+            return containsZero;
+        }
+        int index = slot(value);
+        while (table[index] != EMPTY) {
+            if (table[index] == value) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int slot(final long value) {
+        long hash = value;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return (int) hash & mask;
+    }
+
+    private void resize() {
+        long[] previous = table;
+        allocate(previous.length << 1);
+        for (long value : previous) {
+            if (value != EMPTY) {
+                int index = slot(value);
+                while (table[index] != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                table[index] = value;
+            }
+        }
+    }
+
+    private void allocate(final int capacity) {
+        table = new long[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+}
@@ -0,0 +1,29 @@
+package com.immunopass.util;
+
+import lombok.experimental.UtilityClass;
+
+
+@UtilityClass
+public class MobileNumberUtil {
+
+    private static final int LENGTH = 10;
+
+    /**
+     * Normalizes a mobile number to the 10 digit form vouchers are stored and searched by, dropping formatting and a
+     * leading 0 or 91 country code.
+     *
+     * @return the normalized number, or null if it isn't a valid mobile number.
+     */
+    public String normalize(String mobileNumber) {
+        if (mobileNumber == null) {
+            return null;
+        }
+        String digits = mobileNumber.replaceAll("[^0-9]", "");
+        if (digits.length() == LENGTH + 1 && digits.startsWith("0")) {
+            digits = digits.substring(1);
+        } else if (digits.length() == LENGTH + 2 && digits.startsWith("91")) {
+            digits = digits.substring(2);
+        }
+        return digits.length() == LENGTH ? digits : null;
+    }
+}
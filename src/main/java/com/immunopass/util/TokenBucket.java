@@ -0,0 +1,47 @@
+package com.immunopass.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket rate limiter shared by any number of threads. Tokens refill continuously at {@code permitsPerSecond}
+ * and up to one second's worth can be saved, so short bursts are allowed but the long-run rate is not exceeded.
+ */
+public class TokenBucket {
+
+    private final double permitsPerNano;
+    private final double capacity;
+    private double tokens;
+    private long lastRefillNanos;
+
+    public TokenBucket(final double permitsPerSecond) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive");
+        }
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.capacity = Math.max(1, permitsPerSecond);
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Takes one token, waiting for it to refill if the bucket is empty.
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            refill();
+            tokens -= 1;
+            // A negative balance reserves the token: the caller sleeps until it would have refilled.
+            waitNanos = tokens >= 0 ? 0 : (long) (-tokens / permitsPerNano);
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * permitsPerNano);
+        lastRefillNanos = now;
+    }
+}
@@ -0,0 +1,3 @@
+-- The shard holding the organization's vouchers and voucher orders. Organizations from before sharding stay on the
+-- primary database, shard 0.
+ALTER TABLE immunopass.organization ADD COLUMN IF NOT EXISTS shard integer DEFAULT 0 NOT NULL;
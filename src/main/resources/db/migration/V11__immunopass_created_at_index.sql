@@ -0,0 +1,6 @@
+--
+-- CodeFilterService refreshes its immunopass code filter from the rows created since the newest one it has seen.
+-- Built concurrently, so Flyway runs this migration outside of a transaction.
+--
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_immunopass_created_at ON immunopass.immunopass USING btree (created_at);
@@ -0,0 +1,7 @@
+--
+-- SmsOutboxService claims the pending rows of each dispatch lane separately, so login OTPs are found without walking
+-- past a backlog of bulk immunopass SMS. Built concurrently, so Flyway runs this migration outside of a transaction.
+--
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_sms_outbox_pending_type ON immunopass.sms_outbox
+    USING btree (sms_type, next_attempt_at, id) WHERE ((status)::text = 'PENDING'::text);
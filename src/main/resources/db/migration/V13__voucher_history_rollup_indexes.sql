@@ -0,0 +1,9 @@
+--
+-- The rollup backfill reads one window of archived vouchers by creation or, for redemptions, by last update, like it
+-- does for live ones. Built concurrently, so Flyway runs this migration outside of a transaction.
+--
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_voucher_history_created_at ON immunopass.voucher_history
+    USING btree (created_at);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_voucher_history_redeemed_updated_at ON immunopass.voucher_history
+    USING btree (updated_at) WHERE ((status)::text = 'REDEEMED'::text);
@@ -0,0 +1,49 @@
+-- Immunopasses are created and looked up by the 10 digit mobile number MobileNumberUtil.normalize gives: formatting
+-- dropped, then a leading 0 or 91 country code. Passes stored before that as sent are rewritten the same way.
+--
+-- A pass whose normalized number already belongs to another pass keeps its number, so a person is never found with
+-- two passes; it is reported along with the numbers that don't normalize.
+--
+
+DO $$
+DECLARE
+    normalized_count integer;
+    leftover record;
+BEGIN
+    CREATE TEMPORARY TABLE immunopass_mobile ON COMMIT DROP AS
+    SELECT id, user_mobile,
+           CASE
+               WHEN length(digits) = 10 THEN digits
+               WHEN length(digits) = 11 AND digits LIKE '0%' THEN substr(digits, 2)
+               WHEN length(digits) = 12 AND digits LIKE '91%' THEN substr(digits, 3)
+           END AS normalized
+    FROM (SELECT id, user_mobile, regexp_replace(user_mobile, '[^0-9]', '', 'g') AS digits
+          FROM immunopass.immunopass
+          WHERE user_mobile !~ '^[0-9]{10}$') mobiles;
+
+    UPDATE immunopass.immunopass i
+    SET user_mobile = m.normalized
+    FROM immunopass_mobile m
+    WHERE i.id = m.id
+      AND m.normalized IS NOT NULL
+      AND NOT EXISTS (SELECT 1 FROM immunopass.immunopass other WHERE other.user_mobile = m.normalized)
+      AND m.id = (SELECT min(same.id) FROM immunopass_mobile same WHERE same.normalized = m.normalized);
+    GET DIAGNOSTICS normalized_count = ROW_COUNT;
+    RAISE NOTICE 'Normalized the mobile number of % immunopasses.', normalized_count;
+
+    FOR leftover IN
+        SELECT m.id, m.user_mobile, m.normalized
+        FROM immunopass_mobile m
+        JOIN immunopass.immunopass i ON i.id = m.id AND i.user_mobile = m.user_mobile
+        ORDER BY m.id
+    LOOP
+        IF leftover.normalized IS NULL THEN
+            RAISE WARNING 'Immunopass % keeps mobile number "%", it is not a valid mobile number.',
+                leftover.id, leftover.user_mobile;
+        ELSE
+            RAISE WARNING 'Immunopass % keeps mobile number "%", % belongs to another immunopass.',
+                leftover.id, leftover.user_mobile, leftover.normalized;
+        END IF;
+    END LOOP;
+END
+$$;
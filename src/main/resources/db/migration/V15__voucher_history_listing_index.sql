@@ -0,0 +1,7 @@
+--
+-- The organization's voucher listing pages through archived vouchers by id like through live ones, see
+-- idx_voucher_issuer_organization_id. Built concurrently, so Flyway runs this migration outside of a transaction.
+--
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_voucher_history_issuer_organization_id ON immunopass.voucher_history
+    USING btree (issuer_organization_id, id);
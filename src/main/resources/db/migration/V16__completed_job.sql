@@ -0,0 +1,9 @@
+--
+-- One-off jobs record here that they completed on a shard, so they don't run again on the next start.
+--
+
+CREATE TABLE IF NOT EXISTS immunopass.completed_job (
+    name character varying(64) NOT NULL,
+    completed_at timestamp with time zone DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    CONSTRAINT completed_job_pkey PRIMARY KEY (name)
+);
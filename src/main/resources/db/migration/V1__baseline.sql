@@ -0,0 +1,248 @@
+--
+-- Schema of the original pg_dump, with its missing commas fixed. Databases created from that dump are baselined at
+-- this version and skip it.
+--
+
+CREATE SCHEMA IF NOT EXISTS immunopass;
+
+CREATE SEQUENCE immunopass.account_id_seq
+    START WITH 1
+    INCREMENT BY 1
+    NO MINVALUE
+    NO MAXVALUE
+    CACHE 1;
+
+CREATE TABLE immunopass.account (
+    id bigint DEFAULT nextval('immunopass.account_id_seq'::regclass) NOT NULL,
+    name character varying(255) NOT NULL,
+    identifier character varying(255) NOT NULL,
+    identifier_type character varying(255) NOT NULL,
+    password_hash character varying(255),
+    organization_id bigint,
+    pathology_lab_id bigint,
+    status character varying(255) NOT NULL,
+    created_at timestamp(0) with time zone DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    updated_at timestamp(0) with time zone DEFAULT CURRENT_TIMESTAMP NOT NULL
+);
+
+CREATE SEQUENCE immunopass.immunopass_id_seq
+    START WITH 1
+    INCREMENT BY 1
+    NO MINVALUE
+    NO MAXVALUE
+    CACHE 1;
+
+CREATE TABLE immunopass.immunopass (
+    id bigint DEFAULT nextval('immunopass.immunopass_id_seq'::regclass) NOT NULL,
+    immunopass_code character varying(255) NOT NULL,
+    user_name character varying(255) NOT NULL,
+    user_mobile character varying(255) NOT NULL,
+    user_emp_id character varying(255),
+    user_government_id character varying(255),
+    user_location character varying(255),
+    immuno_test_result character varying(255) NOT NULL,
+    created_at timestamp(0) with time zone DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    updated_at timestamp(0) with time zone DEFAULT CURRENT_TIMESTAMP NOT NULL
+);
+
+CREATE SEQUENCE immunopass.voucher_order_id_seq
+    START WITH 1
+    INCREMENT BY 1
+    NO MINVALUE
+    NO MAXVALUE
+    CACHE 1;
+
+CREATE SEQUENCE immunopass.organization_id_seq
+    START WITH 1
+    INCREMENT BY 1
+    NO MINVALUE
+    NO MAXVALUE
+    CACHE 1;
+
+CREATE TABLE immunopass.organization (
+    id bigint DEFAULT nextval('immunopass.organization_id_seq'::regclass) NOT NULL,
+    name character varying(255) NOT NULL,
+    type character varying(255) NOT NULL,
+    status character varying(255) NOT NULL,
+    total_vouchers integer DEFAULT 0 NOT NULL,
+    alloted_vouchers integer DEFAULT 0 NOT NULL,
+    redeemed_vouchers integer DEFAULT 0 NOT NULL,
+    created_at timestamp(0) with time zone DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    updated_at timestamp(0) with time zone DEFAULT CURRENT_TIMESTAMP NOT NULL
+);
+
+CREATE TABLE immunopass.otp (
+    id bigint NOT NULL,
+    identifier character varying(255),
+    identifier_type character varying(255) NOT NULL,
+    otp character varying(255) NOT NULL,
+    status character varying(255) NOT NULL,
+    retry_count integer NOT NULL,
+    verification_attempts integer DEFAULT 0 NOT NULL,
+    valid_till timestamp with time zone DEFAULT (CURRENT_TIMESTAMP + '01:00:00'::interval) NOT NULL,
+    created_at timestamp with time zone DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    updated_at timestamp with time zone DEFAULT CURRENT_TIMESTAMP NOT NULL
+);
+
+CREATE SEQUENCE immunopass.otp_id_seq
+    START WITH 1
+    INCREMENT BY 1
+    NO MINVALUE
+    NO MAXVALUE
+    CACHE 1;
+
+ALTER SEQUENCE immunopass.otp_id_seq OWNED BY immunopass.otp.id;
+
+CREATE SEQUENCE immunopass.pathology_lab_id_seq
+    START WITH 1
+    INCREMENT BY 1
+    NO MINVALUE
+    NO MAXVALUE
+    CACHE 1;
+
+CREATE TABLE immunopass.pathology_lab (
+    id bigint DEFAULT nextval('immunopass.pathology_lab_id_seq'::regclass) NOT NULL,
+    name character varying(255) NOT NULL,
+    status character varying(255) NOT NULL,
+    created_at timestamp(0) with time zone DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    updated_at timestamp(0) with time zone DEFAULT CURRENT_TIMESTAMP NOT NULL
+);
+
+CREATE SEQUENCE immunopass.voucher_id_seq
+    START WITH 1
+    INCREMENT BY 1
+    NO MINVALUE
+    NO MAXVALUE
+    CACHE 1;
+
+CREATE TABLE immunopass.voucher (
+    id bigint DEFAULT nextval('immunopass.voucher_id_seq'::regclass) NOT NULL,
+    voucher_code character varying(255) NOT NULL,
+    issuer_account_id bigint NOT NULL,
+    issuer_organization_id bigint NOT NULL,
+    user_name character varying(255) NOT NULL,
+    user_mobile character varying(255) NOT NULL,
+    user_emp_id character varying(255),
+    user_government_id character varying(255),
+    user_govt_id_type character varying(255),
+    user_location character varying(255),
+    status character varying(255) NOT NULL,
+    order_id bigint NOT NULL,
+    immunopass_id bigint,
+    redeemed_account_id bigint,
+    redeemed_pathology_lab_id bigint,
+    retry_count integer DEFAULT 0 NOT NULL,
+    last_failure_reason character varying(255),
+    created_at timestamp(0) with time zone DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    updated_at timestamp(0) with time zone DEFAULT CURRENT_TIMESTAMP NOT NULL
+);
+
+CREATE TABLE immunopass.voucher_order (
+    id bigint DEFAULT nextval('immunopass.voucher_order_id_seq'::regclass) NOT NULL,
+    voucher_count integer NOT NULL,
+    uploaded_file character varying(255) NOT NULL,
+    created_account_id bigint NOT NULL,
+    created_organization_id bigint NOT NULL,
+    status character varying(255) NOT NULL,
+    created_at timestamp(0) with time zone DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    updated_at timestamp(0) with time zone DEFAULT CURRENT_TIMESTAMP NOT NULL
+);
+
+ALTER TABLE ONLY immunopass.otp ALTER COLUMN id SET DEFAULT nextval('immunopass.otp_id_seq'::regclass);
+
+ALTER TABLE ONLY immunopass.account
+    ADD CONSTRAINT account_pkey PRIMARY KEY (id);
+
+ALTER TABLE ONLY immunopass.account
+    ADD CONSTRAINT identifier_uniq UNIQUE (identifier);
+
+ALTER TABLE ONLY immunopass.immunopass
+    ADD CONSTRAINT immunopass_code_uniq UNIQUE (immunopass_code);
+
+ALTER TABLE ONLY immunopass.immunopass
+    ADD CONSTRAINT immunopass_pkey PRIMARY KEY (id);
+
+ALTER TABLE ONLY immunopass.voucher_order
+    ADD CONSTRAINT order_pkey PRIMARY KEY (id);
+
+ALTER TABLE ONLY immunopass.organization
+    ADD CONSTRAINT organization_pkey PRIMARY KEY (id);
+
+ALTER TABLE ONLY immunopass.otp
+    ADD CONSTRAINT otp_pkey PRIMARY KEY (id);
+
+ALTER TABLE ONLY immunopass.pathology_lab
+    ADD CONSTRAINT pathology_lab_pkey PRIMARY KEY (id);
+
+ALTER TABLE ONLY immunopass.voucher
+    ADD CONSTRAINT uniq_voucher_code UNIQUE (voucher_code);
+
+ALTER TABLE ONLY immunopass.voucher
+    ADD CONSTRAINT voucher_pkey PRIMARY KEY (id);
+
+CREATE INDEX fki_fk_acct_organization_id ON immunopass.account USING btree (organization_id);
+
+CREATE INDEX fki_fk_acct_path_lab_id ON immunopass.account USING btree (pathology_lab_id);
+
+CREATE INDEX fki_fk_created_created_account_id ON immunopass.voucher_order USING btree (created_account_id);
+
+CREATE INDEX fki_fk_created_created_organization_id ON immunopass.voucher_order USING btree (created_organization_id);
+
+CREATE INDEX fki_fk_immunopass_id ON immunopass.voucher USING btree (immunopass_id);
+
+CREATE INDEX fki_fk_issuer_account_id ON immunopass.voucher USING btree (issuer_account_id);
+
+CREATE INDEX fki_fk_issuer_organization_id ON immunopass.voucher USING btree (issuer_organization_id);
+
+CREATE INDEX fki_fk_order_id ON immunopass.voucher USING btree (order_id);
+
+CREATE INDEX fki_fk_pathology_lab_id ON immunopass.voucher USING btree (redeemed_pathology_lab_id);
+
+CREATE INDEX fki_fk_redeemed_account_id ON immunopass.voucher USING btree (redeemed_account_id);
+
+CREATE INDEX fki_fk_redeemed_pathology_lab_id ON immunopass.voucher USING btree (redeemed_pathology_lab_id);
+
+CREATE INDEX idx_immunopass_mobile ON immunopass.immunopass USING btree (user_mobile);
+
+CREATE INDEX idx_otp_identifier ON immunopass.otp USING btree (identifier);
+
+CREATE UNIQUE INDEX idx_uniq_acct_identifier ON immunopass.account USING btree (identifier);
+
+CREATE UNIQUE INDEX idx_uniq_immunopass_code ON immunopass.immunopass USING btree (immunopass_code);
+
+CREATE UNIQUE INDEX idx_uniq_voucher_code ON immunopass.voucher USING btree (voucher_code);
+
+CREATE INDEX idx_voucher_order_status ON immunopass.voucher_order USING btree (status);
+
+ALTER TABLE ONLY immunopass.account
+    ADD CONSTRAINT fk_acct_organization_id FOREIGN KEY (organization_id) REFERENCES immunopass.organization(id);
+
+ALTER TABLE ONLY immunopass.account
+    ADD CONSTRAINT fk_acct_path_lab_id FOREIGN KEY (pathology_lab_id) REFERENCES immunopass.pathology_lab(id);
+
+ALTER TABLE ONLY immunopass.voucher_order
+    ADD CONSTRAINT fk_created_account_id FOREIGN KEY (created_account_id) REFERENCES immunopass.account(id);
+
+ALTER TABLE ONLY immunopass.voucher_order
+    ADD CONSTRAINT fk_created_organization_id FOREIGN KEY (created_organization_id) REFERENCES immunopass.organization(id);
+
+ALTER TABLE ONLY immunopass.voucher
+    ADD CONSTRAINT fk_immunopass_id FOREIGN KEY (immunopass_id) REFERENCES immunopass.immunopass(id);
+
+ALTER TABLE ONLY immunopass.voucher
+    ADD CONSTRAINT fk_issuer_account_id FOREIGN KEY (issuer_account_id) REFERENCES immunopass.account(id);
+
+ALTER TABLE ONLY immunopass.voucher
+    ADD CONSTRAINT fk_issuer_organization_id FOREIGN KEY (issuer_organization_id) REFERENCES immunopass.organization(id);
+
+ALTER TABLE ONLY immunopass.voucher
+    ADD CONSTRAINT fk_order_id FOREIGN KEY (order_id) REFERENCES immunopass.voucher_order(id);
+
+ALTER TABLE ONLY immunopass.voucher
+    ADD CONSTRAINT fk_pathology_lab_id FOREIGN KEY (redeemed_pathology_lab_id) REFERENCES immunopass.pathology_lab(id);
+
+ALTER TABLE ONLY immunopass.voucher
+    ADD CONSTRAINT fk_redeemed_account_id FOREIGN KEY (redeemed_account_id) REFERENCES immunopass.account(id);
+
+ALTER TABLE ONLY immunopass.voucher
+    ADD CONSTRAINT fk_redeemed_pathology_lab_id FOREIGN KEY (redeemed_pathology_lab_id) REFERENCES immunopass.pathology_lab(id);
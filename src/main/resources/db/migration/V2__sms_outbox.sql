@@ -0,0 +1,21 @@
+--
+-- Transactional outbox for the SMS sent from the request path. Databases that already ran the old ddl.sql have the
+-- objects of V2 to V7, hence the IF NOT EXISTS.
+--
+
+CREATE TABLE IF NOT EXISTS immunopass.sms_outbox (
+    id bigserial NOT NULL,
+    sms_type character varying(255) NOT NULL,
+    recipient character varying(255) NOT NULL,
+    payload text NOT NULL,
+    status character varying(255) NOT NULL,
+    attempts integer DEFAULT 0 NOT NULL,
+    next_attempt_at timestamp with time zone DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    last_failure_reason character varying(255),
+    created_at timestamp with time zone DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    updated_at timestamp with time zone DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    CONSTRAINT sms_outbox_pkey PRIMARY KEY (id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_sms_outbox_pending ON immunopass.sms_outbox USING btree (next_attempt_at, id)
+    WHERE ((status)::text = 'PENDING'::text);
@@ -0,0 +1,11 @@
+CREATE TABLE IF NOT EXISTS immunopass.daily_rollup (
+    id bigserial NOT NULL,
+    owner_type character varying(32) NOT NULL,
+    owner_id bigint NOT NULL,
+    day date NOT NULL,
+    metric character varying(32) NOT NULL,
+    value bigint DEFAULT 0 NOT NULL,
+    updated_at timestamp with time zone DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    CONSTRAINT daily_rollup_pkey PRIMARY KEY (id),
+    CONSTRAINT uniq_daily_rollup UNIQUE (owner_type, owner_id, day, metric)
+);
@@ -0,0 +1,5 @@
+ALTER TABLE immunopass.voucher_order ADD COLUMN IF NOT EXISTS content_sha256 character varying(64);
+ALTER TABLE immunopass.voucher_order ADD COLUMN IF NOT EXISTS dedup_key character varying(64);
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_uniq_voucher_order_dedup_key ON immunopass.voucher_order
+    USING btree (created_organization_id, dedup_key) WHERE (dedup_key IS NOT NULL);
@@ -0,0 +1,18 @@
+CREATE TABLE IF NOT EXISTS immunopass.voucher_order_row (
+    order_id bigint NOT NULL,
+    row_number integer NOT NULL,
+    user_name character varying(255) NOT NULL,
+    user_mobile character varying(255) NOT NULL,
+    user_govt_id_type character varying(255) NOT NULL,
+    user_government_id character varying(255) NOT NULL,
+    user_emp_id character varying(255) NOT NULL,
+    CONSTRAINT voucher_order_row_pkey PRIMARY KEY (order_id, row_number),
+    CONSTRAINT fk_voucher_order_row_order_id FOREIGN KEY (order_id) REFERENCES immunopass.voucher_order(id)
+);
+
+CREATE OR REPLACE FUNCTION immunopass.random_voucher_code() RETURNS text
+    LANGUAGE sql VOLATILE
+    AS $$
+    SELECT string_agg(substr('ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz', 1 + floor(random() * 52)::integer, 1), '')
+    FROM generate_series(1, 8)
+$$;
@@ -0,0 +1,14 @@
+CREATE TABLE IF NOT EXISTS immunopass.audit_event (
+    id bigserial NOT NULL,
+    entity_type character varying(32) NOT NULL,
+    entity_id bigint NOT NULL,
+    from_status character varying(32),
+    to_status character varying(32) NOT NULL,
+    actor_account_id bigint,
+    actor_pathology_lab_id bigint,
+    occurred_at timestamp with time zone NOT NULL,
+    CONSTRAINT audit_event_pkey PRIMARY KEY (id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_audit_event_entity ON immunopass.audit_event
+    USING btree (entity_type, entity_id, occurred_at);
@@ -0,0 +1,14 @@
+-- Lab-side voucher search
+CREATE INDEX IF NOT EXISTS idx_voucher_redeemable_user_mobile ON immunopass.voucher USING btree (user_mobile, id)
+    WHERE ((status)::text = 'PROCESSED'::text);
+
+CREATE INDEX IF NOT EXISTS idx_voucher_redeemable_user_emp_id ON immunopass.voucher
+    USING btree (issuer_organization_id, user_emp_id, id) WHERE ((status)::text = 'PROCESSED'::text);
+
+-- Keyset pages of GET /v1/organizations/current/vouchers
+CREATE INDEX IF NOT EXISTS idx_voucher_issuer_organization_id ON immunopass.voucher
+    USING btree (issuer_organization_id, id);
+
+-- Chunked voucher SMS dispatch reads the allotted vouchers of an order in id order
+CREATE INDEX IF NOT EXISTS idx_voucher_allotted_order_id ON immunopass.voucher USING btree (order_id, id)
+    WHERE ((status)::text = 'ALLOTTED'::text);
@@ -0,0 +1,5 @@
+--
+-- fk_pathology_lab_id duplicates fk_redeemed_pathology_lab_id. Split from V8, which runs outside of a transaction.
+--
+
+ALTER TABLE immunopass.voucher DROP CONSTRAINT IF EXISTS fk_pathology_lab_id;
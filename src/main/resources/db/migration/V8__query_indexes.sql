@@ -0,0 +1,43 @@
+--
+-- Indexes for the repository queries that had none, and removal of the redundant ones. QueryPlanTests checks the
+-- plan of every repository query against this schema.
+--
+-- Built and dropped concurrently so writes to the tables aren't blocked, which makes Flyway run this migration
+-- outside of a transaction; V8_1 holds the change that can't run that way. Every statement can be re-run after a
+-- failure, which may also leave an invalid index behind to drop by hand.
+--
+
+-- OtpRepository.findFirstByIdentifierOrderByCreatedAtDesc: the newest OTP is the first index entry, no sort.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_otp_identifier_created_at ON immunopass.otp
+    USING btree (identifier, created_at DESC);
+DROP INDEX CONCURRENTLY IF EXISTS immunopass.idx_otp_identifier;
+
+-- VoucherRepository.findAllByOrderId and the order's vouchers by status. Also serves the order_id foreign key.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_voucher_order_id_status ON immunopass.voucher
+    USING btree (order_id, status);
+DROP INDEX CONCURRENTLY IF EXISTS immunopass.fki_fk_order_id;
+
+-- VoucherOrderRepository.findAllByStatus, oldest first.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_voucher_order_status_created_at ON immunopass.voucher_order
+    USING btree (status, created_at);
+DROP INDEX CONCURRENTLY IF EXISTS immunopass.idx_voucher_order_status;
+
+-- VoucherOrderRepository.clearDedupKeys only looks at orders that still hold a key.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_voucher_order_dedup_created_at ON immunopass.voucher_order
+    USING btree (created_at) WHERE (dedup_key IS NOT NULL);
+
+-- DailyRollupRepository backfills read one window of vouchers by creation or, for redemptions, by last update.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_voucher_created_at ON immunopass.voucher USING btree (created_at);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_voucher_redeemed_updated_at ON immunopass.voucher
+    USING btree (updated_at) WHERE ((status)::text = 'REDEEMED'::text);
+
+-- fki_fk_pathology_lab_id duplicates fki_fk_redeemed_pathology_lab_id, its foreign key is dropped by V8_1.
+DROP INDEX CONCURRENTLY IF EXISTS immunopass.fki_fk_pathology_lab_id;
+
+-- idx_voucher_issuer_organization_id (issuer_organization_id, id) covers the foreign key.
+DROP INDEX CONCURRENTLY IF EXISTS immunopass.fki_fk_issuer_organization_id;
+
+-- The unique constraints already have an index each.
+DROP INDEX CONCURRENTLY IF EXISTS immunopass.idx_uniq_acct_identifier;
+DROP INDEX CONCURRENTLY IF EXISTS immunopass.idx_uniq_immunopass_code;
+DROP INDEX CONCURRENTLY IF EXISTS immunopass.idx_uniq_voucher_code;
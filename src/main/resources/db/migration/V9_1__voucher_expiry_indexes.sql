@@ -0,0 +1,14 @@
+--
+-- The expiry and archive jobs' candidates, on the voucher table. Built and dropped concurrently so writes to the
+-- table aren't blocked, which makes Flyway run this migration outside of a transaction. Every statement can be
+-- re-run after a failure, which may also leave an invalid index behind to drop by hand.
+--
+
+-- Expiry candidates: sent, not redeemed, oldest first.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_voucher_processed_created_at ON immunopass.voucher
+    USING btree (created_at, id) WHERE ((status)::text = 'PROCESSED'::text);
+
+-- Archive candidates. Also serves the redeemed rollup backfill, which idx_voucher_redeemed_updated_at was for.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_voucher_terminal_updated_at ON immunopass.voucher
+    USING btree (updated_at, id) WHERE (status IN ('REDEEMED', 'EXPIRED'));
+DROP INDEX CONCURRENTLY IF EXISTS immunopass.idx_voucher_redeemed_updated_at;
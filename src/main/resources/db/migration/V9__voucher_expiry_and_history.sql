@@ -0,0 +1,35 @@
+--
+-- Redeemed and expired vouchers are moved here by the archive job, keeping their ids. No foreign keys, so orders and
+-- accounts of archived vouchers can still be changed freely. The indexes of the voucher table the expiry and archive
+-- jobs need are built concurrently by V9_1.
+--
+
+CREATE TABLE IF NOT EXISTS immunopass.voucher_history (
+    id bigint NOT NULL,
+    voucher_code character varying(255) NOT NULL,
+    issuer_account_id bigint NOT NULL,
+    issuer_organization_id bigint NOT NULL,
+    user_name character varying(255) NOT NULL,
+    user_mobile character varying(255) NOT NULL,
+    user_emp_id character varying(255),
+    user_government_id character varying(255),
+    user_govt_id_type character varying(255),
+    user_location character varying(255),
+    status character varying(255) NOT NULL,
+    order_id bigint NOT NULL,
+    immunopass_id bigint,
+    redeemed_account_id bigint,
+    redeemed_pathology_lab_id bigint,
+    retry_count integer DEFAULT 0 NOT NULL,
+    last_failure_reason character varying(255),
+    created_at timestamp(0) with time zone NOT NULL,
+    updated_at timestamp(0) with time zone NOT NULL,
+    archived_at timestamp with time zone DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    CONSTRAINT voucher_history_pkey PRIMARY KEY (id)
+);
+
+-- Codes are only unique among live vouchers: one can be issued again after its voucher is archived.
+CREATE INDEX IF NOT EXISTS idx_voucher_history_voucher_code ON immunopass.voucher_history
+    USING btree (voucher_code, id);
+CREATE INDEX IF NOT EXISTS idx_voucher_history_order_id ON immunopass.voucher_history
+    USING btree (order_id, id);
@@ -0,0 +1,56 @@
+package com.immunopass.configuration;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import javax.sql.DataSource;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.flyway.FlywayAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import com.immunopass.datasource.ReplicaRoutingDataSource;
+
+
+/**
+ * Starts the data source, its initializer and Flyway with read replicas on, against in-memory H2 databases.
+ */
+@SpringBootTest(classes = DataSourceConfigTests.Config.class, properties = {
+        "datasource.replica.enabled=true",
+        "datasource.replica.urls=jdbc:h2:mem:replica_config_replica;DB_CLOSE_DELAY=-1",
+        "spring.datasource.url=jdbc:h2:mem:replica_config_primary;DB_CLOSE_DELAY=-1",
+        "spring.flyway.locations=classpath:db/no_migrations",
+        "spring.flyway.check-location=false"
+})
+class DataSourceConfigTests {
+
+    @Configuration
+    @Import(DataSourceConfig.class)
+    @ImportAutoConfiguration({DataSourceAutoConfiguration.class, FlywayAutoConfiguration.class})
+    static class Config {
+    }
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Test
+    void primaryPropertiesWinOverSpringBoots() {
+        assertSame(applicationContext.getBean("primaryDataSourceProperties"),
+                applicationContext.getBean(DataSourceProperties.class));
+    }
+
+    @Test
+    void flywayMigratesThroughTheRoutingDataSource() {
+        DataSource dataSource = applicationContext.getBean(DataSource.class);
+        assertTrue(dataSource instanceof LazyConnectionDataSourceProxy);
+        assertSame(applicationContext.getBean(ReplicaRoutingDataSource.class),
+                ((LazyConnectionDataSourceProxy) dataSource).getTargetDataSource());
+        assertSame(dataSource, applicationContext.getBean(Flyway.class).getConfiguration().getDataSource());
+    }
+}
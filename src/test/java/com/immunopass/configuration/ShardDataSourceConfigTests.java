@@ -0,0 +1,56 @@
+package com.immunopass.configuration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.flyway.FlywayAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import com.immunopass.datasource.ShardRoutingDataSource;
+
+
+/**
+ * Starts the data source and its initializer with sharding on, against in-memory H2 databases. The shard migration
+ * strategy runs PostgreSQL-only statements, so Flyway itself is off.
+ */
+@SpringBootTest(classes = ShardDataSourceConfigTests.Config.class, properties = {
+        "datasource.shards.enabled=true",
+        "datasource.shards.urls=jdbc:h2:mem:shard_config_1;DB_CLOSE_DELAY=-1",
+        "spring.datasource.url=jdbc:h2:mem:shard_config_0;DB_CLOSE_DELAY=-1",
+        "spring.flyway.enabled=false"
+})
+class ShardDataSourceConfigTests {
+
+    @Configuration
+    @Import(ShardDataSourceConfig.class)
+    @ImportAutoConfiguration({DataSourceAutoConfiguration.class, FlywayAutoConfiguration.class})
+    static class Config {
+    }
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Test
+    void primaryPropertiesWinOverSpringBoots() {
+        assertSame(applicationContext.getBean("primaryDataSourceProperties"),
+                applicationContext.getBean(DataSourceProperties.class));
+    }
+
+    @Test
+    void dataSourceRoutesToEveryShard() {
+        DataSource dataSource = applicationContext.getBean(DataSource.class);
+        assertTrue(dataSource instanceof LazyConnectionDataSourceProxy);
+        ShardRoutingDataSource shardRoutingDataSource = applicationContext.getBean(ShardRoutingDataSource.class);
+        assertSame(shardRoutingDataSource, ((LazyConnectionDataSourceProxy) dataSource).getTargetDataSource());
+        assertEquals(2, shardRoutingDataSource.getShards().size());
+    }
+}
@@ -0,0 +1,169 @@
+package com.immunopass.cron;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import com.immunopass.entity.VoucherOrderEntity;
+import com.immunopass.service.VoucherOrderService;
+import com.immunopass.service.VoucherOrderService.DispatchChunk;
+import com.immunopass.tracing.OtlpJsonSpanExporter;
+import com.immunopass.tracing.Span;
+import com.immunopass.tracing.Tracer;
+import com.immunopass.util.TokenBucket;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+
+/**
+ * Dispatches with one worker and chunks of 50, so the order of the chunks is the scheduling order. The first chunk
+ * waits until every order is offered.
+ */
+class FairDispatcherTests {
+
+    private static final int QUANTUM = 100;
+    private static final int CHUNK_SIZE = 50;
+
+    private VoucherOrderService voucherOrderService;
+    private Map<Long, Integer> remainingVouchers;
+    // Order id and limit of every chunk, in the order they were sent.
+    private List<long[]> chunks;
+    private CountDownLatch offered;
+    private FairDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        voucherOrderService = mock(VoucherOrderService.class);
+        remainingVouchers = new ConcurrentHashMap<>();
+        chunks = Collections.synchronizedList(new ArrayList<>());
+        offered = new CountDownLatch(1);
+        when(voucherOrderService.getDispatchChunkSize()).thenReturn(CHUNK_SIZE);
+        when(voucherOrderService.dispatchVouchers(any(), anyLong(), anyInt(), any())).thenAnswer(invocation -> {
+            offered.await();
+            VoucherOrderEntity voucherOrderEntity = invocation.getArgument(0);
+            long afterVoucherId = invocation.getArgument(1);
+            int limit = invocation.getArgument(2);
+            chunks.add(new long[] {voucherOrderEntity.getId(), limit});
+            int sent = Math.min(limit, remainingVouchers.get(voucherOrderEntity.getId()));
+            remainingVouchers.merge(voucherOrderEntity.getId(), -sent, Integer::sum);
+            return new DispatchChunk(afterVoucherId + sent, sent, 0, sent < limit);
+        });
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (dispatcher != null) {
+            dispatcher.shutdown(1000);
+        }
+    }
+
+    @Test
+    void organizationsTakeTurnsByWeight() throws InterruptedException {
+        Map<Long, Integer> weights = new HashMap<>();
+        weights.put(2L, 2);
+        VoucherOrderEntity big = order(1L, 1L, 300);
+        VoucherOrderEntity heavy = order(2L, 2L, 300);
+        VoucherOrderEntity small = order(3L, 3L, 40);
+
+        dispatch(weights, big, heavy, small);
+
+        // Organization 2 sends twice as much per round, the small order only waits for the first round.
+        assertEquals(Arrays.asList(1L, 1L, 2L, 2L, 2L, 2L, 3L, 1L, 1L, 2L, 2L, 2L, 1L, 1L, 1L), chunkOrderIds());
+        verify(voucherOrderService).completeOrder(big);
+        verify(voucherOrderService).completeOrder(heavy);
+        verify(voucherOrderService).completeOrder(small);
+    }
+
+    @Test
+    void ordersOfAnOrganizationShareItsTurn() throws InterruptedException {
+        VoucherOrderEntity big = order(1L, 1L, 300);
+        VoucherOrderEntity small = order(2L, 1L, 30);
+        VoucherOrderEntity other = order(3L, 2L, 60);
+
+        dispatch(Collections.emptyMap(), big, small, other);
+
+        assertEquals(Arrays.asList(1L, 2L, 1L, 3L, 3L, 1L, 1L, 1L, 1L, 1L), chunkOrderIds());
+        // The 20 vouchers the small order didn't have are spent on the big order in the same turn.
+        assertEquals(20L, chunks.get(2)[1]);
+        verify(voucherOrderService).completeOrder(big);
+        verify(voucherOrderService).completeOrder(small);
+        verify(voucherOrderService).completeOrder(other);
+    }
+
+    @Test
+    void releasesAnOrderWhoseChunkFailsWithAnError() throws InterruptedException {
+        VoucherOrderEntity order = order(1L, 1L, 100);
+        when(voucherOrderService.dispatchVouchers(any(), anyLong(), anyInt(), any()))
+                .thenThrow(new NoClassDefFoundError("com.example.SmsClient"));
+
+        dispatch(Collections.emptyMap(), order);
+
+        assertEquals(0, dispatcher.getQueuedOrders());
+        assertEquals(0, dispatcher.getActiveOrganizations());
+        verify(voucherOrderService, never()).completeOrder(order);
+    }
+
+    @Test
+    void rejectsOrdersBeyondCapacityAndAfterShutdown() throws InterruptedException {
+        dispatcher = dispatcher(Collections.emptyMap(), 2, new CountDownLatch(0));
+
+        assertTrue(dispatcher.offer(order(1L, 1L, 100), Span.NOOP));
+        assertTrue(dispatcher.offer(order(2L, 2L, 100), Span.NOOP));
+        assertFalse(dispatcher.offer(order(3L, 3L, 100), Span.NOOP));
+        assertEquals(2, dispatcher.getQueuedOrders());
+
+        offered.countDown();
+        dispatcher.shutdown(1000);
+        assertFalse(dispatcher.offer(order(4L, 4L, 100), Span.NOOP));
+    }
+
+    private void dispatch(Map<Long, Integer> weights, VoucherOrderEntity... orders) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(orders.length);
+        dispatcher = dispatcher(weights, orders.length, done);
+        for (VoucherOrderEntity order : orders) {
+            assertTrue(dispatcher.offer(order, Span.NOOP));
+        }
+        offered.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    private FairDispatcher dispatcher(Map<Long, Integer> weights, int capacity, CountDownLatch onDone) {
+        OtlpJsonSpanExporter exporter =
+                new OtlpJsonSpanExporter(new SimpleMeterRegistry(), "", "", "immunopass", 100, 10, 60000, 1000);
+        return new FairDispatcher(voucherOrderService, weights, QUANTUM, 1, capacity, new TokenBucket(1000),
+                voucherOrderEntity -> onDone.countDown(), new Tracer(exporter), new SimpleMeterRegistry());
+    }
+
+    private VoucherOrderEntity order(Long id, Long organizationId, int vouchers) {
+        remainingVouchers.put(id, vouchers);
+        return VoucherOrderEntity.builder()
+                .id(id)
+                .voucherCount(vouchers)
+                .createdOrganizationId(organizationId)
+                .build();
+    }
+
+    private List<Long> chunkOrderIds() {
+        synchronized (chunks) {
+            return chunks.stream().map(chunk -> chunk[0]).collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.immunopass.cron;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+
+class PipelineStageTests {
+
+    @Test
+    void runsTasksUntilTheQueueIsFull() throws InterruptedException {
+        PipelineStage stage = new PipelineStage("test", 1, 1, new SimpleMeterRegistry());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch ran = new CountDownLatch(2);
+
+        assertTrue(stage.offer(() -> {
+            started.countDown();
+            await(release);
+            ran.countDown();
+        }));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        // The worker is busy and the queue holds one task.
+        assertTrue(stage.offer(ran::countDown));
+        assertFalse(stage.offer(ran::countDown));
+
+        release.countDown();
+        assertTrue(ran.await(10, TimeUnit.SECONDS));
+        stage.shutdown(1000);
+    }
+
+    @Test
+    void rejectsTasksAfterShutdown() throws InterruptedException {
+        PipelineStage stage = new PipelineStage("test", 1, 1, new SimpleMeterRegistry());
+        stage.shutdown(1000);
+
+        assertFalse(stage.offer(() -> { }));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.immunopass.cron;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+
+class VoucherOrderPipelineTests {
+
+    @Test
+    void parsesDispatchWeights() {
+        Map<Long, Integer> weights = new HashMap<>();
+        weights.put(1L, 3);
+        weights.put(42L, 1);
+
+        assertEquals(weights, VoucherOrderPipeline.parseWeights(" 1:3, 42 : 1"));
+        assertTrue(VoucherOrderPipeline.parseWeights("").isEmpty());
+    }
+
+    @Test
+    void rejectsMalformedAndNonPositiveWeights() {
+        assertThrows(IllegalArgumentException.class, () -> VoucherOrderPipeline.parseWeights("1"));
+        assertThrows(IllegalArgumentException.class, () -> VoucherOrderPipeline.parseWeights("1:2:3"));
+        assertThrows(IllegalArgumentException.class, () -> VoucherOrderPipeline.parseWeights("1:x"));
+        assertThrows(IllegalArgumentException.class, () -> VoucherOrderPipeline.parseWeights("1:0"));
+        assertThrows(IllegalArgumentException.class, () -> VoucherOrderPipeline.parseWeights("1:-2"));
+    }
+}
@@ -0,0 +1,72 @@
+package com.immunopass.datasource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.util.Collections;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+
+class ReplicaRoutingDataSourceTests {
+
+    private ReplicaRoutingDataSource routingDataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        DataSource primary = embeddedDatabase("primary");
+        DataSource replica = embeddedDatabase("replica");
+        routingDataSource = new ReplicaRoutingDataSource(primary, Collections.singletonList(replica));
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    @Test
+    void readOnlyTransactionsGoToReplica() {
+        assertEquals("replica", currentDatabase(true));
+    }
+
+    @Test
+    void readWriteTransactionsGoToPrimary() {
+        assertEquals("primary", currentDatabase(false));
+    }
+
+    @Test
+    void readOnlyTransactionsFallBackToPrimaryWhenReplicaIsDown() {
+        routingDataSource.markReplicaHealth("replica-0", false);
+        assertEquals("primary", currentDatabase(true));
+        routingDataSource.markReplicaHealth("replica-0", true);
+        assertEquals("replica", currentDatabase(true));
+    }
+
+    @Test
+    void healthCheckTakesLaggingReplicaOutOfRotation() {
+        new ReplicaHealthChecker(routingDataSource, "select 30", 10).checkReplicas();
+        assertEquals("primary", currentDatabase(true));
+        new ReplicaHealthChecker(routingDataSource, "select 1", 10).checkReplicas();
+        assertEquals("replica", currentDatabase(true));
+    }
+
+    private String currentDatabase(final boolean readOnly) {
+        transactionTemplate.setReadOnly(readOnly);
+        return transactionTemplate.execute(status ->
+                jdbcTemplate.queryForObject("select name from whoami", String.class));
+    }
+
+    private static DataSource embeddedDatabase(final String name) {
+        DataSource dataSource =
+                new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table if not exists whoami (name varchar(32))");
+        jdbcTemplate.execute("delete from whoami");
+        jdbcTemplate.update("insert into whoami values (?)", name);
+        return dataSource;
+    }
+}
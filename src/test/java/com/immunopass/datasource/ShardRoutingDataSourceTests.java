@@ -0,0 +1,193 @@
+package com.immunopass.datasource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+
+class ShardRoutingDataSourceTests {
+
+    private ShardRouter shardRouter;
+    private JdbcTemplate jdbcTemplate;
+    private JdbcTemplate primaryJdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        DataSource primary = embeddedDatabase("shard0");
+        ShardRoutingDataSource routingDataSource = new ShardRoutingDataSource(
+                Arrays.asList(primary, embeddedDatabase("shard1"), embeddedDatabase("shard2")));
+        primaryJdbcTemplate = new JdbcTemplate(primary);
+        primaryJdbcTemplate.execute("create schema if not exists immunopass");
+        primaryJdbcTemplate.execute("create table if not exists immunopass.organization (id bigint, shard integer)");
+        primaryJdbcTemplate.execute("delete from immunopass.organization");
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("shardRoutingDataSource", routingDataSource);
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        shardRouter = new ShardRouter(new ShardDirectory(beanFactory.getBeanProvider(ShardRoutingDataSource.class)),
+                transactionManager);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Test
+    void unboundWorkGoesToShardZero() {
+        assertEquals("shard0", currentDatabase());
+    }
+
+    @Test
+    void boundWorkGoesToItsShard() {
+        assertEquals("shard2", shardRouter.callOnShard(2, this::currentDatabase));
+        try (ShardRouter.Binding binding = shardRouter.bind(1)) {
+            assertEquals("shard1", currentDatabase());
+            assertEquals("shard2", shardRouter.callOnShard(2, this::currentDatabase));
+            assertEquals("shard1", currentDatabase());
+        }
+        assertEquals("shard0", currentDatabase());
+    }
+
+    @Test
+    void organizationsGoToTheirShard() {
+        primaryJdbcTemplate.update("insert into immunopass.organization values (1, 2)");
+        assertEquals("shard2", shardRouter.callForOrganization(1L, this::currentDatabase));
+        assertEquals("shard0", shardRouter.callForOrganization(2L, this::currentDatabase));
+    }
+
+    @Test
+    void newOrganizationsGoToTheLeastUsedShard() {
+        primaryJdbcTemplate.update("insert into immunopass.organization values (1, 0), (2, 2)");
+        assertEquals(1, shardRouter.getDirectory().placeOrganization());
+    }
+
+    @Test
+    void codesNameTheirShard() {
+        ShardDirectory directory = shardRouter.getDirectory();
+        String code = directory.codeOnShard(1, "xxxxxxxx");
+        assertTrue(code.startsWith("B") || code.startsWith("b"), code);
+        assertEquals("xxxxxxx", code.substring(1));
+        assertEquals(1, directory.shardOfCode(code));
+        assertEquals(2, directory.shardOfCode("cxxxxxxx"));
+        // Only shards A to C exist, older codes are on shard 0.
+        assertEquals(0, directory.shardOfCode("Zxxxxxxx"));
+    }
+
+    @Test
+    void codesNotFoundOnTheirShardAreLookedUpOnShardZero() {
+        assertEquals(Optional.of("shard1"), shardRouter.findByCode("Bxxxxxxx", () -> findDatabase("shard1")));
+        assertEquals(Optional.of("shard0"), shardRouter.findByCode("Bxxxxxxx", () -> findDatabase("shard0")));
+        assertEquals(Optional.empty(), shardRouter.findByCode("Bxxxxxxx", () -> findDatabase("shard2")));
+    }
+
+    @Test
+    void collectsFromEachShardInOrder() {
+        List<String> databases = shardRouter.collectFromEachShard(() -> Arrays.asList(currentDatabase()));
+        assertEquals(Arrays.asList("shard0", "shard1", "shard2"), databases);
+    }
+
+    @Test
+    void readsOnAnotherShardFromInsideAShardTransaction() {
+        String databases = shardRouter.callOnShard(1, () -> transactionTemplate.execute(status -> currentDatabase()
+                + "," + shardRouter.readOnShard(0, this::currentDatabase) + "," + currentDatabase()));
+        assertEquals("shard1,shard0,shard1", databases);
+    }
+
+    @Test
+    void primaryWritesRunAfterTheShardCommits() {
+        AtomicReference<String> primaryWrite = new AtomicReference<>();
+        shardRouter.runOnShard(1, () -> transactionTemplate.execute(status -> {
+            currentDatabase();
+            shardRouter.runOnPrimaryAfterCommit(() -> primaryWrite.set(currentDatabase()));
+            assertNull(primaryWrite.get());
+            return null;
+        }));
+        assertEquals("shard0", primaryWrite.get());
+    }
+
+    @Test
+    void primaryWritesAppliedBeforeTheShardCommitsAreUndoneOnRollback() {
+        List<String> primaryWrites = new ArrayList<>();
+        shardRouter.runOnShard(1, () -> transactionTemplate.execute(status -> {
+            currentDatabase();
+            assertTrue(shardRouter.applyOnPrimary(() -> primaryWrites.add("apply " + currentDatabase()),
+                    () -> primaryWrites.add("undo " + currentDatabase())));
+            assertEquals("shard1", currentDatabase());
+            return null;
+        }));
+        assertEquals(Collections.singletonList("apply shard0"), primaryWrites);
+
+        primaryWrites.clear();
+        shardRouter.runOnShard(1, () -> transactionTemplate.execute(status -> {
+            shardRouter.applyOnPrimary(() -> primaryWrites.add("apply " + currentDatabase()),
+                    () -> primaryWrites.add("undo " + currentDatabase()));
+            status.setRollbackOnly();
+            return null;
+        }));
+        assertEquals(Arrays.asList("apply shard0", "undo shard0"), primaryWrites);
+
+        // Work that didn't apply isn't undone.
+        primaryWrites.clear();
+        shardRouter.runOnShard(1, () -> transactionTemplate.execute(status -> {
+            assertFalse(shardRouter.applyOnPrimary(() -> false, () -> primaryWrites.add("undo")));
+            status.setRollbackOnly();
+            return null;
+        }));
+        assertTrue(primaryWrites.isEmpty());
+    }
+
+    @Test
+    void shardWritesAfterCommitRunOnTheSameShardInTheirOwnTransaction() {
+        AtomicReference<String> shardWrite = new AtomicReference<>();
+        shardRouter.runOnShard(2, () -> transactionTemplate.execute(status -> {
+            currentDatabase();
+            shardRouter.runOnShardAfterCommit(() -> shardWrite.set(currentDatabase()
+                    + "," + TransactionSynchronizationManager.isActualTransactionActive()));
+            assertNull(shardWrite.get());
+            return null;
+        }));
+        assertEquals("shard2,true", shardWrite.get());
+
+        shardWrite.set(null);
+        shardRouter.runOnShard(2, () -> transactionTemplate.execute(status -> {
+            shardRouter.runOnShardAfterCommit(() -> shardWrite.set(currentDatabase()));
+            status.setRollbackOnly();
+            return null;
+        }));
+        assertNull(shardWrite.get());
+    }
+
+    private String currentDatabase() {
+        return jdbcTemplate.queryForObject("select name from whoami", String.class);
+    }
+
+    private Optional<String> findDatabase(final String name) {
+        return Optional.of(currentDatabase()).filter(name::equals);
+    }
+
+    private static DataSource embeddedDatabase(final String name) {
+        DataSource dataSource =
+                new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table if not exists whoami (name varchar(32))");
+        jdbcTemplate.execute("delete from whoami");
+        jdbcTemplate.update("insert into whoami values (?)", name);
+        return dataSource;
+    }
+}
@@ -0,0 +1,184 @@
+package com.immunopass.restclient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.StreamUtils;
+import com.immunopass.tracing.OtlpJsonSpanExporter;
+import com.immunopass.tracing.Tracer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+
+/**
+ * The providers are stubbed by a local HTTP server, each answering under its own path after a configured delay.
+ * OTPs are hedged after 200 ms unless a test says otherwise; a slow provider takes 2 s.
+ */
+class SMSServiceTests {
+
+    private static final long HEDGE_AFTER_MS = 200;
+    private static final long SLOW_MS = 2000;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private StubProvider first;
+    private StubProvider second;
+    private SMSService smsService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        serverExecutor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(serverExecutor);
+        first = new StubProvider("/first");
+        second = new StubProvider("/second");
+        server.start();
+        smsService = smsService(HEDGE_AFTER_MS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        smsService.shutdown();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    void sendsThroughTheFastestProviderOnly() {
+        assertTrue(smsService.sendOTPSMS("John", "9876543210", "123456", "otp-1"));
+
+        assertEquals(1, first.requests.get());
+        assertEquals(0, second.requests.get());
+    }
+
+    @Test
+    void hedgesToTheNextProviderAfterTheDelay() {
+        first.delayMs = SLOW_MS;
+
+        long start = System.nanoTime();
+        assertTrue(smsService.sendOTPSMS("John", "9876543210", "123456", "otp-1"));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsedMs >= HEDGE_AFTER_MS, "Hedged after " + elapsedMs + " ms");
+        assertTrue(elapsedMs < SLOW_MS, "Waited " + elapsedMs + " ms for the slow provider");
+        assertEquals(1, first.requests.get());
+        assertEquals(1, second.requests.get());
+        // The gateway sends the OTP once, whichever requests reach it.
+        assertEquals(first.idempotencyKeys, second.idempotencyKeys);
+    }
+
+    @Test
+    void hedgesRightAwayWhenAProviderFails() {
+        smsService.shutdown();
+        smsService = smsService(SLOW_MS);
+        first.status = 500;
+
+        long start = System.nanoTime();
+        assertTrue(smsService.sendOTPSMS("John", "9876543210", "123456", "otp-1"));
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < SLOW_MS);
+        assertEquals(1, second.requests.get());
+    }
+
+    @Test
+    void ignoresTheLoserOnceAProviderAcknowledges() throws InterruptedException {
+        first.delayMs = SLOW_MS;
+        first.status = 500;
+
+        long start = System.nanoTime();
+        assertTrue(smsService.sendOTPSMS("John", "9876543210", "123456", "otp-1"));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < SLOW_MS);
+
+        // The loser's failure arrives later and changes nothing.
+        assertTrue(first.answered.await(10, TimeUnit.SECONDS));
+        assertEquals(1, second.requests.get());
+    }
+
+    @Test
+    void failsWhenNoProviderAcknowledges() {
+        first.status = 500;
+        second.status = 503;
+
+        assertFalse(smsService.sendOTPSMS("John", "9876543210", "123456", "otp-1"));
+        assertEquals(1, first.requests.get());
+        assertEquals(1, second.requests.get());
+    }
+
+    @Test
+    void ranksASlowProviderBehindOnceItsSamplesComeIn() throws InterruptedException {
+        first.delayMs = SLOW_MS;
+        assertTrue(smsService.sendOTPSMS("John", "9876543210", "123456", "otp-1"));
+        assertTrue(first.answered.await(10, TimeUnit.SECONDS));
+        awaitFastestProvider("provider-1");
+
+        first.delayMs = 0;
+        assertTrue(smsService.sendOTPSMS("John", "9876543210", "654321", "otp-2"));
+
+        assertEquals(1, first.requests.get());
+        assertEquals(2, second.requests.get());
+        assertEquals("otp-2", second.idempotencyKeys.get(1));
+    }
+
+    private SMSService smsService(long hedgeAfterMs) {
+        String base = "http://localhost:" + server.getAddress().getPort();
+        return new SMSService(base + "/first," + base + "/second", "auth", 10000, hedgeAfterMs, 15000,
+                new SimpleMeterRegistry(), new Tracer(new OtlpJsonSpanExporter(new SimpleMeterRegistry(), "", "",
+                        "immunopass", 100, 10, 60000, 1000)));
+    }
+
+    /*
+     * The latency of the losing request is recorded after the stub answers it.
+     */
+    private void awaitFastestProvider(String name) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!smsService.rankedProviders().get(0).getName().equals(name)) {
+            assertTrue(System.nanoTime() < deadline, name + " never became the fastest provider");
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+
+    private final class StubProvider {
+        private final AtomicInteger requests = new AtomicInteger();
+        private final List<String> idempotencyKeys = new CopyOnWriteArrayList<>();
+        private final CountDownLatch answered = new CountDownLatch(1);
+        private volatile long delayMs;
+        private volatile int status = 200;
+
+        private StubProvider(String path) {
+            server.createContext(path, this::handle);
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            requests.incrementAndGet();
+            idempotencyKeys.add(exchange.getRequestHeaders().getFirst("Idempotency-Key"));
+            StreamUtils.drain(exchange.getRequestBody());
+            try {
+                TimeUnit.MILLISECONDS.sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "{\"status\":\"sent\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                responseBody.write(body);
+            }
+            answered.countDown();
+        }
+    }
+}
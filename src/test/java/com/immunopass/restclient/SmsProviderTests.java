@@ -0,0 +1,46 @@
+package com.immunopass.restclient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+
+class SmsProviderTests {
+
+    @Test
+    void startsAtZeroSoUnusedProvidersGetTried() {
+        assertEquals(0, new SmsProvider("provider-0", "http://localhost", "auth").p95LatencyMs());
+    }
+
+    @Test
+    void takesThe95thPercentileOfTheWindow() {
+        SmsProvider provider = new SmsProvider("provider-0", "http://localhost", "auth");
+        for (int i = 1; i <= 20; i++) {
+            provider.recordLatency(i * 10);
+        }
+        assertEquals(190, provider.p95LatencyMs());
+    }
+
+    /*
+     * The p95 of 128 samples is the 122nd smallest, so it takes 7 slow samples to move it.
+     */
+    @Test
+    void movesWithTheLatest128Samples() {
+        SmsProvider provider = new SmsProvider("provider-0", "http://localhost", "auth");
+        for (int i = 0; i < 128; i++) {
+            provider.recordLatency(10);
+        }
+        for (int i = 0; i < 6; i++) {
+            provider.recordLatency(10000);
+        }
+        assertEquals(10, provider.p95LatencyMs());
+
+        provider.recordLatency(10000);
+        assertEquals(10000, provider.p95LatencyMs());
+
+        // The slow samples leave the window.
+        for (int i = 0; i < 128; i++) {
+            provider.recordLatency(20);
+        }
+        assertEquals(20, provider.p95LatencyMs());
+    }
+}
@@ -0,0 +1,124 @@
+package com.immunopass.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+import com.immunopass.enums.AuditOverflowPolicy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+
+/**
+ * The writer's flush interval is far longer than a test, so events stay queued until the queue fills up a batch or
+ * the service is flushed.
+ */
+class AuditServiceTests {
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private AuditService auditService;
+
+    @BeforeEach
+    void setUp() {
+        DataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:audit;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create schema if not exists immunopass");
+        jdbcTemplate.execute("create table if not exists immunopass.audit_event (entity_type varchar(32),"
+                + " entity_id bigint, from_status varchar(32), to_status varchar(32), actor_account_id bigint,"
+                + " actor_pathology_lab_id bigint, occurred_at timestamp)");
+        jdbcTemplate.execute("delete from immunopass.audit_event");
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (auditService != null) {
+            auditService.flush();
+        }
+    }
+
+    @Test
+    void flushWritesTheQueuedEvents() throws InterruptedException {
+        auditService = auditService(100, AuditOverflowPolicy.DROP);
+        for (long id = 1; id <= 3; id++) {
+            auditService.recordVoucherTransition(id, "PROCESSED", "REDEEMED", 1L, 2L);
+        }
+        assertEquals(0, countEvents());
+
+        auditService.flush();
+
+        assertEquals(3, countEvents());
+        assertEquals(3, count("written"));
+    }
+
+    @Test
+    void dropsEventsBeyondCapacity() throws InterruptedException {
+        auditService = auditService(2, AuditOverflowPolicy.DROP);
+        for (long id = 1; id <= 5; id++) {
+            auditService.recordOtpTransition(id, "UNVERIFIED", "VERIFIED");
+        }
+        assertEquals(3, count("dropped"));
+
+        auditService.flush();
+
+        assertEquals(2, countEvents());
+    }
+
+    @Test
+    void writesEventsBeyondCapacityOnTheCallersThread() throws InterruptedException {
+        auditService = auditService(2, AuditOverflowPolicy.CALLER_WRITES);
+        for (long id = 1; id <= 5; id++) {
+            auditService.recordOtpTransition(id, "UNVERIFIED", "VERIFIED");
+        }
+        assertEquals(3, countEvents());
+        assertEquals(0, count("dropped"));
+
+        auditService.flush();
+
+        assertEquals(5, countEvents());
+    }
+
+    @Test
+    void queuesEventsOnlyOnceTheirTransactionCommits() throws InterruptedException {
+        auditService = auditService(100, AuditOverflowPolicy.DROP);
+        transactionTemplate.execute(status -> {
+            auditService.recordOtpTransition(1L, "UNVERIFIED", "INVALID");
+            status.setRollbackOnly();
+            return null;
+        });
+        transactionTemplate.execute(status -> {
+            auditService.recordOtpTransition(2L, "UNVERIFIED", "VERIFIED");
+            return null;
+        });
+
+        auditService.flush();
+
+        assertEquals(1, countEvents());
+        assertEquals(2L, jdbcTemplate.queryForObject("select entity_id from immunopass.audit_event", Long.class));
+    }
+
+    /*
+     * Waits for the writer to find the queue empty and park, so it doesn't take events off the queue before the
+     * test fills it.
+     */
+    private AuditService auditService(int capacity, AuditOverflowPolicy overflowPolicy) throws InterruptedException {
+        AuditService service = new AuditService(jdbcTemplate, meterRegistry, capacity, 100, 60000, overflowPolicy);
+        Thread.sleep(200);
+        return service;
+    }
+
+    private int countEvents() {
+        return jdbcTemplate.queryForObject("select count(*) from immunopass.audit_event", Integer.class);
+    }
+
+    private long count(String outcome) {
+        return (long) meterRegistry.counter("audit.events", "outcome", outcome).count();
+    }
+}
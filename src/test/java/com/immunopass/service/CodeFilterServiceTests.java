@@ -0,0 +1,151 @@
+package com.immunopass.service;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+import com.immunopass.datasource.ShardDirectory;
+import com.immunopass.datasource.ShardRouter;
+import com.immunopass.datasource.ShardRoutingDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+
+class CodeFilterServiceTests {
+
+    private JdbcTemplate jdbcTemplate;
+    private DataSource dataSource;
+    private TransactionTemplate transactionTemplate;
+    private ShardRouter shardRouter;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:code_filter;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create schema if not exists immunopass");
+        for (String table : new String[] {"voucher", "voucher_history"}) {
+            jdbcTemplate.execute("create table if not exists immunopass." + table
+                    + " (id bigint, voucher_code varchar(16), created_at timestamp)");
+            jdbcTemplate.execute("delete from immunopass." + table);
+        }
+        jdbcTemplate.execute("create table if not exists immunopass.immunopass"
+                + " (id bigint, immunopass_code varchar(16), created_at timestamp)");
+        jdbcTemplate.execute("delete from immunopass.immunopass");
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        shardRouter = new ShardRouter(
+                new ShardDirectory(new DefaultListableBeanFactory().getBeanProvider(ShardRoutingDataSource.class)),
+                transactionManager);
+    }
+
+    @Test
+    void letsEveryCodeThroughUntilBuilt() {
+        CodeFilterService codeFilterService = codeFilterService(TimeUnit.HOURS.toMillis(6));
+        assertTrue(codeFilterService.mightContainVoucherCode("NEVERSEEN"));
+        assertTrue(codeFilterService.mightContainImmunopassCode("NEVERSEEN"));
+    }
+
+    @Test
+    void rejectsCodesThatWereNeverIssued() {
+        insert("voucher", 1, "VOUCHER1", secondsAgo(60));
+        insert("voucher_history", 2, "ARCHIVED", secondsAgo(60));
+        insert("immunopass", 1, "PASS0001", secondsAgo(60));
+        CodeFilterService codeFilterService = codeFilterService(TimeUnit.HOURS.toMillis(6));
+        codeFilterService.rebuildFilters();
+
+        assertTrue(codeFilterService.mightContainVoucherCode("VOUCHER1"));
+        assertTrue(codeFilterService.mightContainVoucherCode("ARCHIVED"));
+        assertTrue(codeFilterService.mightContainImmunopassCode("PASS0001"));
+        assertFalse(codeFilterService.mightContainVoucherCode("NEVERSEEN"));
+        assertFalse(codeFilterService.mightContainImmunopassCode("NEVERSEEN"));
+    }
+
+    @Test
+    void addsCodesCreatedOnThisInstanceRightAway() {
+        CodeFilterService codeFilterService = codeFilterService(TimeUnit.HOURS.toMillis(6));
+        codeFilterService.rebuildFilters();
+        codeFilterService.addVoucherCode("VOUCHER1");
+        codeFilterService.addImmunopassCode("PASS0001");
+
+        assertTrue(codeFilterService.mightContainVoucherCode("VOUCHER1"));
+        assertTrue(codeFilterService.mightContainImmunopassCode("PASS0001"));
+    }
+
+    @Test
+    void refreshPicksUpCodesCreatedElsewhere() {
+        insert("voucher", 1, "VOUCHER1", secondsAgo(60));
+        CodeFilterService codeFilterService = codeFilterService(TimeUnit.HOURS.toMillis(6));
+        codeFilterService.rebuildFilters();
+        insert("voucher", 2, "VOUCHER2", secondsAgo(0));
+        insert("immunopass", 1, "PASS0001", secondsAgo(0));
+        codeFilterService.refreshFilters();
+
+        assertTrue(codeFilterService.mightContainVoucherCode("VOUCHER2"));
+        assertTrue(codeFilterService.mightContainImmunopassCode("PASS0001"));
+    }
+
+    @Test
+    void refreshPicksUpCodesCommittedOutOfOrder() {
+        // A later transaction has committed far higher ids and newer rows...
+        insert("voucher", 5000, "VOUCHER5", secondsAgo(10));
+        CodeFilterService codeFilterService = codeFilterService(TimeUnit.HOURS.toMillis(6));
+        codeFilterService.rebuildFilters();
+        // ...before a long one, e.g. a staged order, commits rows with lower ids, created when it started.
+        insert("voucher", 1, "VOUCHER1", secondsAgo(120));
+        codeFilterService.refreshFilters();
+
+        assertTrue(codeFilterService.mightContainVoucherCode("VOUCHER1"));
+    }
+
+    @Test
+    void periodicRebuildPicksUpCodesCommittedAfterTheOverlap() {
+        insert("voucher", 5000, "VOUCHER5", secondsAgo(0));
+        CodeFilterService codeFilterService = codeFilterService(0);
+        codeFilterService.rebuildFilters();
+        insert("voucher", 1, "VOUCHER1", secondsAgo(3600));
+        codeFilterService.refreshFilters();
+
+        assertTrue(codeFilterService.mightContainVoucherCode("VOUCHER1"));
+    }
+
+    @Test
+    void lookupsRefreshOnceBeforeRulingACodeOut() {
+        CodeFilterService codeFilterService = codeFilterService(TimeUnit.HOURS.toMillis(6));
+        codeFilterService.rebuildFilters();
+        // Created on another instance since the last refresh.
+        insert("voucher", 1, "VOUCHER1", secondsAgo(0));
+        insert("immunopass", 1, "PASS0001", secondsAgo(0));
+
+        assertTrue(codeFilterService.mightBeIssuedVoucherCode("VOUCHER1"));
+        assertTrue(codeFilterService.mightBeIssuedImmunopassCode("PASS0001"));
+        assertFalse(codeFilterService.mightBeIssuedVoucherCode("NEVERSEEN"));
+
+        // Misses don't refresh again within the refresh interval.
+        insert("voucher", 2, "VOUCHER2", secondsAgo(0));
+        assertFalse(codeFilterService.mightBeIssuedVoucherCode("VOUCHER2"));
+        codeFilterService.refreshFilters();
+        assertTrue(codeFilterService.mightBeIssuedVoucherCode("VOUCHER2"));
+    }
+
+    private CodeFilterService codeFilterService(long rebuildIntervalMs) {
+        return new CodeFilterService(dataSource, transactionTemplate, shardRouter, new SimpleMeterRegistry(), true,
+                0.000001, 100, 300, TimeUnit.HOURS.toMillis(1), rebuildIntervalMs);
+    }
+
+    private void insert(String table, long id, String code, Timestamp createdAt) {
+        String column = table.equals("immunopass") ? "immunopass_code" : "voucher_code";
+        jdbcTemplate.update("insert into immunopass." + table + " (id, " + column + ", created_at) values (?, ?, ?)",
+                id, code, createdAt);
+    }
+
+    private static Timestamp secondsAgo(long seconds) {
+        return new Timestamp(System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(seconds));
+    }
+}
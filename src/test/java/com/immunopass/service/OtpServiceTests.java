@@ -0,0 +1,180 @@
+package com.immunopass.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import com.immunopass.entity.AccountEntity;
+import com.immunopass.entity.OtpEntity;
+import com.immunopass.enums.AccountType;
+import com.immunopass.enums.IdentifierType;
+import com.immunopass.model.SendOtpRequest;
+import com.immunopass.model.SendOtpResponse;
+import com.immunopass.repository.AccountRepository;
+import com.immunopass.repository.OtpRepository;
+import com.immunopass.util.JwtUtil;
+
+
+/**
+ * The account lookup of the first request blocks until released, so the requests started meanwhile find it in flight.
+ */
+class OtpServiceTests {
+
+    private static final String MOBILE = "9876543210";
+    private static final int FOLLOWERS = 3;
+
+    private AccountRepository accountRepository;
+    private OtpRepository otpRepository;
+    private OtpService otpService;
+    private CountDownLatch leaderStarted;
+    private CountDownLatch leaderReleased;
+
+    @BeforeEach
+    void setUp() {
+        accountRepository = mock(AccountRepository.class);
+        otpRepository = mock(OtpRepository.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any()))
+                .thenAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        when(otpRepository.findFirstByIdentifierOrderByCreatedAtDesc(anyString())).thenReturn(Optional.empty());
+        when(otpRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        otpService = new OtpService(accountRepository, otpRepository, mock(JwtUtil.class),
+                mock(SmsOutboxService.class), mock(AuditService.class), transactionTemplate);
+        leaderStarted = new CountDownLatch(1);
+        leaderReleased = new CountDownLatch(1);
+    }
+
+    @Test
+    void concurrentRequestsShareTheFirstOnesResponse() throws InterruptedException {
+        AccountEntity account = AccountEntity.builder()
+                .name("Jane")
+                .identifier(MOBILE)
+                .identifierType(IdentifierType.MOBILE)
+                .organizationId(1L)
+                .build();
+        blockAccountLookup(() -> Optional.of(account));
+
+        List<Call> calls = coalescedCalls();
+
+        SendOtpResponse response = (SendOtpResponse) calls.get(0).result;
+        assertEquals(MOBILE, response.getIdentifier());
+        for (Call call : calls) {
+            assertSame(response, call.result);
+        }
+        verify(accountRepository, times(1)).findByIdentifierAndIdentifierType(MOBILE, IdentifierType.MOBILE);
+        verify(otpRepository, times(1)).save(any(OtpEntity.class));
+    }
+
+    @Test
+    void concurrentRequestsShareTheFirstOnesError() throws InterruptedException {
+        blockAccountLookup(Optional::empty);
+
+        List<Call> calls = coalescedCalls();
+
+        ResponseStatusException error = (ResponseStatusException) calls.get(0).error;
+        assertEquals(HttpStatus.BAD_REQUEST, error.getStatus());
+        for (Call call : calls) {
+            assertSame(error, call.error);
+        }
+    }
+
+    @Test
+    void concurrentRequestsShareTheFirstOnesErrorEvenIfNotAnException() throws InterruptedException {
+        LinkageError linkageError = new LinkageError("boom");
+        blockAccountLookup(() -> {
+            throw linkageError;
+        });
+
+        List<Call> calls = coalescedCalls();
+
+        for (Call call : calls) {
+            assertSame(linkageError, call.error);
+        }
+        // The request is no longer in flight, the next one does the work again.
+        doReturn(Optional.empty()).when(accountRepository)
+                .findByIdentifierAndIdentifierType(MOBILE, IdentifierType.MOBILE);
+        assertThrows(ResponseStatusException.class, () -> otpService.sendOtp(request()));
+    }
+
+    private void blockAccountLookup(Supplier<Optional<AccountEntity>> lookup) {
+        when(accountRepository.findByIdentifierAndIdentifierType(MOBILE, IdentifierType.MOBILE))
+                .thenAnswer(invocation -> {
+                    leaderStarted.countDown();
+                    leaderReleased.await(10, TimeUnit.SECONDS);
+                    return lookup.get();
+                });
+    }
+
+    /*
+     * Starts the first request and, once it is in flight, the others; releases the first once all the others wait
+     * for it. The first request's call comes first.
+     */
+    private List<Call> coalescedCalls() throws InterruptedException {
+        List<Call> calls = new ArrayList<>();
+        Call leader = new Call(otpService);
+        calls.add(leader);
+        leader.thread.start();
+        assertTrue(leaderStarted.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < FOLLOWERS; i++) {
+            Call follower = new Call(otpService);
+            calls.add(follower);
+            follower.thread.start();
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        for (Call follower : calls.subList(1, calls.size())) {
+            while (follower.thread.getState() != Thread.State.WAITING && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+        }
+        leaderReleased.countDown();
+        for (Call call : calls) {
+            call.thread.join(TimeUnit.SECONDS.toMillis(10));
+            assertFalse(call.thread.isAlive(), "a request is still waiting");
+        }
+        return calls;
+    }
+
+    private static SendOtpRequest request() {
+        return SendOtpRequest.builder()
+                .identifier(MOBILE)
+                .identifierType(IdentifierType.MOBILE)
+                .accountType(AccountType.ORGANIZATION)
+                .build();
+    }
+
+    private static class Call {
+        private final Thread thread;
+        private volatile Object result;
+        private volatile Throwable error;
+
+        private Call(OtpService otpService) {
+            this.thread = new Thread(() -> {
+                try {
+                    result = otpService.sendOtp(request());
+                } catch (Throwable e) {
+                    error = e;
+                }
+            });
+        }
+    }
+}
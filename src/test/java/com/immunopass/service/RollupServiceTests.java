@@ -0,0 +1,127 @@
+package com.immunopass.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.time.LocalDate;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import com.immunopass.datasource.ShardDirectory;
+import com.immunopass.datasource.ShardRouter;
+import com.immunopass.enums.RollupOwnerType;
+import com.immunopass.model.DailyStats;
+import com.immunopass.sql.PostgresTestDatabase;
+
+
+/**
+ * The counters are bumped with PostgreSQL's {@code insert ... on conflict}, so these run on PostgreSQL.
+ */
+@DataJpaTest(properties = "spring.jpa.show-sql=false")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({ShardDirectory.class, ShardRouter.class, RollupService.class})
+class RollupServiceTests {
+
+    private static final Long ORGANIZATION_ID = 1L;
+    private static final Long PATHOLOGY_LAB_ID = 7L;
+
+    @DynamicPropertySource
+    static void postgres(DynamicPropertyRegistry registry) {
+        PostgresTestDatabase.registerProperties(registry);
+    }
+
+    @Autowired
+    private RollupService rollupService;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("delete from immunopass.daily_rollup");
+    }
+
+    @Test
+    void countersAddUp() {
+        rollupService.recordIssued(ORGANIZATION_ID, 5);
+        rollupService.recordIssued(ORGANIZATION_ID, 3);
+        rollupService.recordSent(ORGANIZATION_ID, LocalDate.now(), 4);
+        rollupService.recordSent(ORGANIZATION_ID, LocalDate.now(), 0);
+        // Counted on the day the vouchers were created.
+        rollupService.recordSent(ORGANIZATION_ID, LocalDate.now().minusDays(1), 2);
+        rollupService.recordRedeemed(ORGANIZATION_ID, PATHOLOGY_LAB_ID);
+        rollupService.recordRedeemed(ORGANIZATION_ID, PATHOLOGY_LAB_ID);
+
+        DailyStats organizationStats = today(RollupOwnerType.ORGANIZATION, ORGANIZATION_ID);
+        assertEquals(8L, organizationStats.getIssued());
+        assertEquals(4L, organizationStats.getSent());
+        assertEquals(2L, organizationStats.getRedeemed());
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        assertEquals(2L, rollupService.getDailyStats(RollupOwnerType.ORGANIZATION, ORGANIZATION_ID, yesterday,
+                yesterday).get(0).getSent());
+        DailyStats pathologyLabStats = today(RollupOwnerType.PATHOLOGY_LAB, PATHOLOGY_LAB_ID);
+        assertEquals(0L, pathologyLabStats.getIssued());
+        assertEquals(2L, pathologyLabStats.getRedeemed());
+    }
+
+    @Test
+    void redemptionsAreCountedOnceCommitted() {
+        transactionTemplate.execute(status -> {
+            rollupService.recordRedeemed(ORGANIZATION_ID, PATHOLOGY_LAB_ID);
+            // Nothing is written, or locked, in the redeeming transaction.
+            assertEquals(0, countRollups());
+            return null;
+        });
+
+        assertEquals(2, countRollups());
+        assertEquals(1L, today(RollupOwnerType.ORGANIZATION, ORGANIZATION_ID).getRedeemed());
+    }
+
+    @Test
+    void rolledBackRedemptionsAreNotCounted() {
+        transactionTemplate.execute(status -> {
+            rollupService.recordRedeemed(ORGANIZATION_ID, PATHOLOGY_LAB_ID);
+            status.setRollbackOnly();
+            return null;
+        });
+
+        assertEquals(0, countRollups());
+    }
+
+    @Test
+    void rejectsInvalidRanges() {
+        LocalDate today = LocalDate.now();
+        assertThrows(ResponseStatusException.class, () -> rollupService.getDailyStats(
+                RollupOwnerType.ORGANIZATION, ORGANIZATION_ID, today, today.minusDays(1)));
+        assertThrows(ResponseStatusException.class, () -> rollupService.getDailyStats(
+                RollupOwnerType.ORGANIZATION, ORGANIZATION_ID, today.minusDays(400), today));
+        assertTrue(rollupService.getDailyStats(RollupOwnerType.ORGANIZATION, ORGANIZATION_ID,
+                today.minusDays(366), today).isEmpty());
+    }
+
+    private DailyStats today(RollupOwnerType ownerType, Long ownerId) {
+        List<DailyStats> dailyStats =
+                rollupService.getDailyStats(ownerType, ownerId, LocalDate.now(), LocalDate.now());
+        assertEquals(1, dailyStats.size());
+        return dailyStats.get(0);
+    }
+
+    private int countRollups() {
+        return jdbcTemplate.queryForObject("select count(*) from immunopass.daily_rollup", Integer.class);
+    }
+}
@@ -0,0 +1,146 @@
+package com.immunopass.sql;
+
+import static com.immunopass.sql.SqlStatementCounter.assertSqlCount;
+import static com.immunopass.sql.SqlStatementCounter.insert;
+import static com.immunopass.sql.SqlStatementCounter.select;
+import static com.immunopass.sql.SqlStatementCounter.update;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import com.immunopass.cron.SmsOutboxDispatcher;
+import com.immunopass.cron.VoucherArchiveJob;
+import com.immunopass.entity.AccountEntity;
+import com.immunopass.entity.SmsOutboxEntity;
+import com.immunopass.entity.VoucherEntity;
+import com.immunopass.entity.VoucherOrderEntity;
+import com.immunopass.enums.OrderStatus;
+import com.immunopass.enums.OutboxStatus;
+import com.immunopass.enums.SmsType;
+import com.immunopass.enums.VoucherStatus;
+import com.immunopass.service.RollupService;
+import com.immunopass.service.VoucherOrderService;
+
+
+/**
+ * Statement budgets of the cron stages and background jobs, for an order of three vouchers. The per voucher
+ * statements are visible in the budgets; a change that adds another one per voucher fails here.
+ */
+class CronSqlBudgetTests extends SqlBudgetTest {
+
+    @Autowired
+    private VoucherOrderService voucherOrderService;
+    @Autowired
+    private RollupService rollupService;
+    @Autowired
+    private SmsOutboxDispatcher smsOutboxDispatcher;
+    @Autowired
+    private VoucherArchiveJob voucherArchiveJob;
+
+    @Test
+    void createVouchers() {
+        AccountEntity issuer = account(organization().getId(), null);
+        voucherOrder(issuer, OrderStatus.CREATED);
+        when(blobStore.lines(anyString())).thenReturn(Stream.of(
+                "John,9876543210,PAN,ABCDE1234F,E1",
+                "Jane,9876543211,PAN,ABCDE1234G,E2",
+                "Jim,9876543212,AADHAAR,123412341234,E3"));
+        SqlStatementCounter.reset();
+        voucherOrderService.createVouchers();
+        // Orders, a code uniqueness check and an insert per voucher, the rollup upsert, then the order status.
+        assertSqlCount(select(5), insert(4), update(1));
+    }
+
+    @Test
+    void processOrders() {
+        AccountEntity issuer = account(organization().getId(), null);
+        VoucherOrderEntity order = voucherOrder(issuer, OrderStatus.PROCESSING);
+        voucher(order, "VOUCHR01", VoucherStatus.ALLOTTED);
+        voucher(order, "VOUCHR02", VoucherStatus.ALLOTTED);
+        voucher(order, "VOUCHR03", VoucherStatus.ALLOTTED);
+        SqlStatementCounter.reset();
+        voucherOrderService.processOrders();
+        // Orders and their vouchers, a reload and an update per voucher, the rollup upsert, then the order.
+        assertSqlCount(select(6), update(4), insert(1));
+    }
+
+    @Test
+    void dispatchVouchersInChunks() {
+        AccountEntity issuer = account(organization().getId(), null);
+        VoucherOrderEntity order = voucherOrder(issuer, OrderStatus.PROCESSING);
+        voucher(order, "VOUCHR01", VoucherStatus.ALLOTTED);
+        voucher(order, "VOUCHR02", VoucherStatus.ALLOTTED);
+        voucher(order, "VOUCHR03", VoucherStatus.ALLOTTED);
+        SqlStatementCounter.reset();
+        VoucherOrderService.DispatchChunk chunk = voucherOrderService.dispatchVouchers(order, 0, 2, null);
+        voucherOrderService.dispatchVouchers(order, chunk.getLastVoucherId(), 2, null);
+        // Per chunk, its vouchers and the rollup upsert; per voucher, a reload and an update.
+        assertSqlCount(select(5), update(3), insert(2));
+    }
+
+    @Test
+    void clearExpiredDedupKeys() {
+        SqlStatementCounter.reset();
+        voucherOrderService.clearExpiredDedupKeys();
+        assertSqlCount(update(1));
+    }
+
+    @Test
+    void dispatchSmsOutbox() {
+        outboxSms(SmsType.LOGIN_OTP, "{\"userName\":\"Jane\",\"otp\":\"123456\"}");
+        outboxSms(SmsType.LOGIN_OTP, "{\"userName\":\"Jim\",\"otp\":\"654321\"}");
+        outboxSms(SmsType.IMMUNOPASS, "{\"token\":\"PASSCODE\",\"userStatus\":\"GREEN\"}");
+        SqlStatementCounter.reset();
+        smsOutboxDispatcher.dispatchOtps();
+        smsOutboxDispatcher.dispatchBulk();
+        // Per lane, the claim and the lease; per SMS, the attempt.
+        assertSqlCount(select(2), update(5));
+    }
+
+    @Test
+    void expireAndArchiveVouchers() {
+        AccountEntity issuer = account(organization().getId(), null);
+        VoucherOrderEntity order = voucherOrder(issuer, OrderStatus.PROCESSED);
+        backdate(voucher(order, "VOUCHR01", VoucherStatus.PROCESSED));
+        backdate(voucher(order, "VOUCHR02", VoucherStatus.PROCESSED));
+        backdate(voucher(order, "VOUCHR03", VoucherStatus.REDEEMED));
+        SqlStatementCounter.reset();
+        voucherArchiveJob.run();
+        // Per batch, the replica lag check and the batch itself; expiring also hands the quota back.
+        assertSqlCount(select(2), update(2), insert(1));
+    }
+
+    @Test
+    void backfillRollups() {
+        SqlStatementCounter.reset();
+        rollupService.backfill(LocalDate.now().minusDays(2), LocalDate.now());
+        // The completion check, an upsert per metric and day, then the completion record.
+        assertSqlCount(select(1), insert(9));
+
+        SqlStatementCounter.reset();
+        rollupService.backfill(LocalDate.now().minusDays(2), LocalDate.now());
+        // Backfilled already.
+        assertSqlCount(select(1));
+    }
+
+    private void outboxSms(SmsType smsType, String payload) {
+        smsOutboxRepository.save(SmsOutboxEntity.builder()
+                .smsType(smsType)
+                .recipient("9876543210")
+                .payload(payload)
+                .status(OutboxStatus.PENDING)
+                .attempts(0)
+                .nextAttemptAt(LocalDateTime.now().minusMinutes(1))
+                .build());
+    }
+
+    private void backdate(VoucherEntity voucherEntity) {
+        Timestamp longAgo = Timestamp.valueOf(LocalDateTime.now().minusDays(60));
+        jdbcTemplate.update("update immunopass.voucher set created_at = ?, updated_at = ? where id = ?", longAgo,
+                longAgo, voucherEntity.getId());
+    }
+}
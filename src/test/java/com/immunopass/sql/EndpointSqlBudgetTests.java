@@ -0,0 +1,365 @@
+package com.immunopass.sql;
+
+import static com.immunopass.sql.SqlStatementCounter.assertSqlCount;
+import static com.immunopass.sql.SqlStatementCounter.insert;
+import static com.immunopass.sql.SqlStatementCounter.select;
+import static com.immunopass.sql.SqlStatementCounter.update;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MvcResult;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.immunopass.entity.AccountEntity;
+import com.immunopass.entity.ImmunopassEntity;
+import com.immunopass.entity.OtpEntity;
+import com.immunopass.entity.VoucherHistoryEntity;
+import com.immunopass.entity.VoucherOrderEntity;
+import com.immunopass.enums.AccountType;
+import com.immunopass.enums.IdentifierType;
+import com.immunopass.enums.ImmunoTestResult;
+import com.immunopass.enums.OrderStatus;
+import com.immunopass.enums.OtpStatus;
+import com.immunopass.enums.VoucherStatus;
+import com.immunopass.model.BulkImmunopassRecord;
+import com.immunopass.model.Immunopass;
+import com.immunopass.model.SendOtpRequest;
+import com.immunopass.model.VerifyImmunopassRequest;
+import com.immunopass.model.VerifyImmunopassTokenRequest;
+import com.immunopass.model.VerifyOtpRequest;
+import com.immunopass.model.VoucherRequest;
+import com.immunopass.service.VoucherArchiveService;
+import com.immunopass.util.ImmunopassTokenUtil;
+
+
+/**
+ * Statement budgets of the controller endpoints, called through MockMvc. Raising a budget should be a deliberate
+ * choice made in review.
+ */
+class EndpointSqlBudgetTests extends SqlBudgetTest {
+
+    @Autowired
+    private ImmunopassTokenUtil immunopassTokenUtil;
+    @Autowired
+    private VoucherArchiveService voucherArchiveService;
+
+    @Test
+    void getAccount() throws Exception {
+        logIn(account(organization().getId(), null));
+        SqlStatementCounter.reset();
+        mockMvc.perform(get("/v1/accounts/current")).andExpect(status().isOk());
+        assertSqlCount(select(1));
+    }
+
+    @Test
+    void getOrganization() throws Exception {
+        logIn(account(organization().getId(), null));
+        SqlStatementCounter.reset();
+        mockMvc.perform(get("/v1/organizations/current")).andExpect(status().isOk());
+        assertSqlCount(select(1));
+    }
+
+    @Test
+    void getOrganizationDailyStats() throws Exception {
+        logIn(account(organization().getId(), null));
+        SqlStatementCounter.reset();
+        mockMvc.perform(get("/v1/organizations/current/daily_stats")
+                .param("from", LocalDate.now().minusDays(7).toString())
+                .param("to", LocalDate.now().toString()))
+                .andExpect(status().isOk());
+        assertSqlCount(select(1));
+    }
+
+    @Test
+    void getOrganizationVouchers() throws Exception {
+        AccountEntity accountEntity = account(organization().getId(), null);
+        VoucherOrderEntity voucherOrderEntity = voucherOrder(accountEntity, OrderStatus.PROCESSED);
+        for (int i = 0; i < 3; i++) {
+            voucher(voucherOrderEntity, "LIST" + i, VoucherStatus.PROCESSED);
+        }
+        logIn(accountEntity);
+        SqlStatementCounter.reset();
+        MvcResult firstPage = mockMvc.perform(get("/v1/organizations/current/vouchers")
+                .param("status", VoucherStatus.PROCESSED.name())
+                .param("orderId", String.valueOf(voucherOrderEntity.getId()))
+                .param("limit", "2"))
+                .andExpect(status().isOk())
+                .andReturn();
+        String nextCursor = objectMapper.readTree(firstPage.getResponse().getContentAsString())
+                .get("nextCursor").asText();
+        mockMvc.perform(get("/v1/organizations/current/vouchers")
+                .param("status", VoucherStatus.PROCESSED.name())
+                .param("orderId", String.valueOf(voucherOrderEntity.getId()))
+                .param("cursor", nextCursor)
+                .param("limit", "2"))
+                .andExpect(status().isOk());
+        assertSqlCount(select(2));
+    }
+
+    @Test
+    void getOrganizationVouchersWithArchivedOnes() throws Exception {
+        AccountEntity accountEntity = account(organization().getId(), null);
+        VoucherOrderEntity voucherOrderEntity = voucherOrder(accountEntity, OrderStatus.PROCESSED);
+        voucher(voucherOrderEntity, "LIST1", VoucherStatus.PROCESSED);
+        voucher(voucherOrderEntity, "LIST2", VoucherStatus.PROCESSED);
+        voucher(voucherOrderEntity, "LIST3", VoucherStatus.REDEEMED);
+        assertEquals(1, voucherArchiveService.archiveBatch(LocalDateTime.now().plusDays(1)));
+        logIn(accountEntity);
+        SqlStatementCounter.reset();
+        JsonNode firstPage = objectMapper.readTree(mockMvc.perform(get("/v1/organizations/current/vouchers")
+                .param("limit", "2"))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString());
+        JsonNode secondPage = objectMapper.readTree(mockMvc.perform(get("/v1/organizations/current/vouchers")
+                .param("cursor", firstPage.get("nextCursor").asText())
+                .param("limit", "2"))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString());
+        assertSqlCount(select(2));
+        assertEquals("LIST3", firstPage.get("vouchers").get(0).get("voucherCode").asText());
+        assertEquals("LIST2", firstPage.get("vouchers").get(1).get("voucherCode").asText());
+        assertEquals(1, secondPage.get("vouchers").size());
+        assertEquals("LIST1", secondPage.get("vouchers").get(0).get("voucherCode").asText());
+    }
+
+    @Test
+    void getPathologyLab() throws Exception {
+        logIn(account(null, pathologyLab().getId()));
+        SqlStatementCounter.reset();
+        mockMvc.perform(get("/v1/pathology_labs/current")).andExpect(status().isOk());
+        assertSqlCount(select(1));
+    }
+
+    @Test
+    void getPathologyLabDailyStats() throws Exception {
+        logIn(account(null, pathologyLab().getId()));
+        SqlStatementCounter.reset();
+        mockMvc.perform(get("/v1/pathology_labs/current/daily_stats")
+                .param("from", LocalDate.now().minusDays(7).toString())
+                .param("to", LocalDate.now().toString()))
+                .andExpect(status().isOk());
+        assertSqlCount(select(1));
+    }
+
+    @Test
+    void getVoucher() throws Exception {
+        AccountEntity issuer = account(organization().getId(), null);
+        voucher(voucherOrder(issuer, OrderStatus.PROCESSED), "VOUCHR01", VoucherStatus.PROCESSED);
+        logIn(account(null, pathologyLab().getId()));
+        SqlStatementCounter.reset();
+        mockMvc.perform(post("/v1/fetch_voucher")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(new VoucherRequest("VOUCHR01"))))
+                .andExpect(status().isOk());
+        assertSqlCount(select(1));
+    }
+
+    @Test
+    void getArchivedVoucher() throws Exception {
+        LocalDateTime archivedAt = LocalDateTime.now();
+        voucherHistoryRepository.save(VoucherHistoryEntity.builder()
+                .id(1L)
+                .voucherCode("VOUCHR01")
+                .issuerAccountId(1L)
+                .issuerOrganizationId(1L)
+                .userName("John")
+                .userMobile("9876543201")
+                .status(VoucherStatus.REDEEMED)
+                .orderId(1L)
+                .retryCount(0)
+                .createdAt(archivedAt)
+                .updatedAt(archivedAt)
+                .archivedAt(archivedAt)
+                .build());
+        logIn(account(null, pathologyLab().getId()));
+        SqlStatementCounter.reset();
+        mockMvc.perform(post("/v1/fetch_voucher")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(new VoucherRequest("VOUCHR01"))))
+                .andExpect(status().isOk());
+        // The voucher table misses, then the history hits.
+        assertSqlCount(select(2));
+    }
+
+    @Test
+    void redeemVoucher() throws Exception {
+        AccountEntity issuer = account(organization().getId(), null);
+        voucher(voucherOrder(issuer, OrderStatus.PROCESSED), "VOUCHR01", VoucherStatus.PROCESSED);
+        logIn(account(null, pathologyLab().getId()));
+        SqlStatementCounter.reset();
+        mockMvc.perform(post("/v1/redeem_voucher")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(new VoucherRequest("VOUCHR01"))))
+                .andExpect(status().isOk());
+        // The voucher and the organization's counter, plus the organization's and the lab's rollup upserts.
+        assertSqlCount(select(1), update(2), insert(2));
+    }
+
+    @Test
+    void searchVouchers() throws Exception {
+        AccountEntity issuer = account(organization().getId(), null);
+        voucher(voucherOrder(issuer, OrderStatus.PROCESSED), "VOUCHR01", VoucherStatus.PROCESSED);
+        logIn(account(null, pathologyLab().getId()));
+        SqlStatementCounter.reset();
+        mockMvc.perform(get("/v1/vouchers/search").param("mobile", "+91 98765 43201"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/v1/vouchers/search")
+                .param("empId", "E1")
+                .param("organizationId", String.valueOf(issuer.getOrganizationId())))
+                .andExpect(status().isOk());
+        assertSqlCount(select(2));
+    }
+
+    @Test
+    void createVoucherOrder() throws Exception {
+        AccountEntity issuer = account(organization().getId(), null);
+        logIn(issuer);
+        MockMultipartFile file = new MockMultipartFile("file", "voucher_order.csv", "text/csv",
+                ("name,mobile,id_type,id_number,emp_id\n"
+                        + "John,9876543210,PAN,ABCDE1234F,E1\n"
+                        + "Jane,9876543211,PAN,ABCDE1234G,E2\n"
+                        + "Jim,9876543212,AADHAAR,123412341234,E3\n").getBytes(StandardCharsets.UTF_8));
+        SqlStatementCounter.reset();
+        mockMvc.perform(multipart("/v1/voucher_orders").file(file)).andExpect(status().isOk());
+        // The organization, its outstanding mobiles, the files of its orders not staged and not processed yet and a
+        // recent upload of the file, the claimed order row and its reload, then the organization's counter and the
+        // order's file.
+        assertSqlCount(select(5), insert(1), update(2));
+    }
+
+    @Test
+    void exportVouchers() throws Exception {
+        AccountEntity issuer = account(organization().getId(), null);
+        VoucherOrderEntity order = voucherOrder(issuer, OrderStatus.PROCESSED);
+        voucher(order, "VOUCHR01", VoucherStatus.PROCESSED);
+        voucher(order, "VOUCHR02", VoucherStatus.PROCESSED);
+        logIn(issuer);
+        SqlStatementCounter.reset();
+        MvcResult result = mockMvc.perform(get("/v1/voucher_orders/{id}/vouchers.csv", order.getId()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+        assertSqlCount(select(2));
+    }
+
+    @Test
+    void sendOtp() throws Exception {
+        account(organization().getId(), null);
+        SqlStatementCounter.reset();
+        mockMvc.perform(post("/v1/send_otp")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(SendOtpRequest.builder()
+                        .identifier("9000000000")
+                        .identifierType(IdentifierType.MOBILE)
+                        .accountType(AccountType.ORGANIZATION)
+                        .build())))
+                .andExpect(status().isOk());
+        assertSqlCount(select(2), insert(2));
+    }
+
+    @Test
+    void verifyOtp() throws Exception {
+        account(organization().getId(), null);
+        otpRepository.save(OtpEntity.builder()
+                .otp("123456")
+                .status(OtpStatus.UNVERIFIED)
+                .retryCount(0)
+                .verificationAttempts(0)
+                .validTill(LocalDateTime.now().plusMinutes(15))
+                .identifier("9000000000")
+                .identifierType(IdentifierType.MOBILE)
+                .build());
+        SqlStatementCounter.reset();
+        mockMvc.perform(post("/v1/verify_otp")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(VerifyOtpRequest.builder().otp("123456").identifier("9000000000").build())))
+                .andExpect(status().isOk());
+        // verifyOtp isn't transactional, so saving the detached OTP reloads it first.
+        assertSqlCount(select(3), update(1));
+    }
+
+    @Test
+    void createImmunopass() throws Exception {
+        SqlStatementCounter.reset();
+        mockMvc.perform(post("/v1/immunopasses")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(Immunopass.builder()
+                        .userName("John")
+                        .userMobile("9876543210")
+                        .immunoTestResult(ImmunoTestResult.GREEN)
+                        .build())))
+                .andExpect(status().isOk());
+        assertSqlCount(select(2), insert(2));
+    }
+
+    @Test
+    void createImmunopassesInBulk() throws Exception {
+        logIn(account(null, pathologyLab().getId()));
+        SqlStatementCounter.reset();
+        mockMvc.perform(post("/v1/immunopasses/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(Arrays.asList(
+                        bulkRecord("John", "9876543210"),
+                        bulkRecord("Jane", "9876543211"),
+                        bulkRecord("Jim", "9876543212")))))
+                .andExpect(status().isOk());
+        // The mobiles and the generated codes are each checked with one query, then the passes and their SMS are
+        // inserted with a JDBC batch each.
+        assertSqlCount(select(2), insert(2));
+    }
+
+    @Test
+    void verifyImmunopass() throws Exception {
+        immunopassRepository.save(immunopass());
+        SqlStatementCounter.reset();
+        mockMvc.perform(post("/v1/verify_immunopass")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(VerifyImmunopassRequest.builder().immunopassCode("PASSCODE").build())))
+                .andExpect(status().isOk());
+        assertSqlCount(select(1));
+    }
+
+    @Test
+    void verifyImmunopassToken() throws Exception {
+        String token = immunopassTokenUtil.generateToken(immunopassRepository.save(immunopass()));
+        SqlStatementCounter.reset();
+        mockMvc.perform(post("/v1/verify_immunopass_token")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(new VerifyImmunopassTokenRequest(token))))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/v1/immunopass_token_keys")).andExpect(status().isOk());
+        assertSqlCount();
+    }
+
+    private static BulkImmunopassRecord bulkRecord(String userName, String userMobile) {
+        return BulkImmunopassRecord.builder()
+                .userName(userName)
+                .userMobile(userMobile)
+                .immunoTestResult(ImmunoTestResult.GREEN)
+                .build();
+    }
+
+    private static ImmunopassEntity immunopass() {
+        return ImmunopassEntity.builder()
+                .userName("John")
+                .userMobile("9876543210")
+                .immunopassCode("PASSCODE")
+                .immunoTestResult(ImmunoTestResult.GREEN)
+                .build();
+    }
+}
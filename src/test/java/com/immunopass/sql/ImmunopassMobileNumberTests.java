@@ -0,0 +1,129 @@
+package com.immunopass.sql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.ResultActions;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.immunopass.entity.ImmunopassEntity;
+import com.immunopass.enums.BulkRowStatus;
+import com.immunopass.enums.ImmunoTestResult;
+import com.immunopass.model.BulkImmunopassRecord;
+import com.immunopass.model.Immunopass;
+import com.immunopass.model.VerifyImmunopassRequest;
+
+
+/**
+ * Immunopass mobile numbers are stored and looked up in the 10 digit form, whichever endpoint they come through and
+ * however they are written.
+ */
+class ImmunopassMobileNumberTests extends SqlBudgetTest {
+
+    @Test
+    void createStoresTheNormalizedMobileNumber() throws Exception {
+        JsonNode immunopass = read(create("+91 98765-43210").andExpect(status().isOk()));
+
+        assertEquals("9876543210", immunopass.get("userMobile").asText());
+        assertTrue(immunopassRepository.findByUserMobile("9876543210").isPresent());
+    }
+
+    @Test
+    void createRejectsAnInvalidMobileNumber() throws Exception {
+        create("98765").andExpect(status().isBadRequest());
+        create("phone").andExpect(status().isBadRequest());
+
+        assertEquals(0, immunopassRepository.count());
+    }
+
+    @Test
+    void createRejectsAMobileNumberTakenInAnotherForm() throws Exception {
+        create("9876543210").andExpect(status().isOk());
+
+        create("09876543210").andExpect(status().isConflict());
+        create("+919876543210").andExpect(status().isConflict());
+    }
+
+    @Test
+    void verifyFindsTheImmunopassByTheMobileNumberInAnyForm() throws Exception {
+        immunopassRepository.save(ImmunopassEntity.builder()
+                .userName("John")
+                .userMobile("9876543210")
+                .immunopassCode("PASSCODE")
+                .immunoTestResult(ImmunoTestResult.GREEN)
+                .build());
+
+        JsonNode immunopass = read(verify("+91-98765 43210").andExpect(status().isOk()));
+
+        assertEquals("PASSCODE", immunopass.get("immunopassCode").asText());
+        verify("98765").andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void bulkCreateNormalizesLikeSingleCreate() throws Exception {
+        logIn(account(null, pathologyLab().getId()));
+
+        JsonNode response = read(mockMvc.perform(post("/v1/immunopasses/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(Arrays.asList(
+                        bulkRecord("John", "+91 98765 43210"),
+                        bulkRecord("Jane", "09876543211"),
+                        bulkRecord("Jim", "98765"),
+                        // The same number as the first row.
+                        bulkRecord("Jack", "919876543210")))))
+                .andExpect(status().isOk()));
+
+        assertEquals(2, response.get("created").asInt());
+        assertEquals(1, response.get("invalid").asInt());
+        assertEquals(1, response.get("duplicates").asInt());
+        assertEquals("9876543210", row(response, 1).get("userMobile").asText());
+        assertEquals(BulkRowStatus.CREATED.name(), row(response, 1).get("status").asText());
+        assertEquals("9876543211", row(response, 2).get("userMobile").asText());
+        assertEquals(BulkRowStatus.DUPLICATE.name(), row(response, 4).get("status").asText());
+        assertTrue(immunopassRepository.findByUserMobile("9876543211").isPresent());
+        create("9876543211").andExpect(status().isConflict());
+    }
+
+    private ResultActions create(String userMobile) throws Exception {
+        return mockMvc.perform(post("/v1/immunopasses")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(Immunopass.builder()
+                        .userName("John")
+                        .userMobile(userMobile)
+                        .immunoTestResult(ImmunoTestResult.GREEN)
+                        .build())));
+    }
+
+    private ResultActions verify(String userMobile) throws Exception {
+        return mockMvc.perform(post("/v1/verify_immunopass")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(VerifyImmunopassRequest.builder().userMobile(userMobile).build())));
+    }
+
+    private JsonNode read(ResultActions resultActions) throws Exception {
+        return objectMapper.readTree(resultActions.andReturn().getResponse().getContentAsString());
+    }
+
+    /*
+     * Results aren't listed in row order, the rows left out of the inserts come first.
+     */
+    private static JsonNode row(JsonNode response, int row) {
+        for (JsonNode result : response.get("results")) {
+            if (result.get("row").asInt() == row) {
+                return result;
+            }
+        }
+        throw new AssertionError("No result for row " + row);
+    }
+
+    private static BulkImmunopassRecord bulkRecord(String userName, String userMobile) {
+        return BulkImmunopassRecord.builder()
+                .userName(userName)
+                .userMobile(userMobile)
+                .immunoTestResult(ImmunoTestResult.GREEN)
+                .build();
+    }
+}
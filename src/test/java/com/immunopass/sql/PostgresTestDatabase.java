@@ -0,0 +1,55 @@
+package com.immunopass.sql;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.utility.DockerImageName;
+
+
+/**
+ * The PostgreSQL database of the tests that need PostgreSQL-only SQL: the database at POSTGRES_TEST_DB_URL (plus
+ * POSTGRES_TEST_DB_USER and POSTGRES_TEST_DB_PASSWORD) when set, whose tables the tests empty as they go, so point
+ * it at a throwaway database; otherwise a container started once per test run, which needs Docker. The tests migrate
+ * it with Flyway.
+ */
+public final class PostgresTestDatabase {
+
+    private static final String IMAGE = "postgres:12-alpine";
+
+    private static PostgreSQLContainer<?> container;
+
+    private PostgresTestDatabase() {
+    }
+
+    public static void registerProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", PostgresTestDatabase::getUrl);
+        registry.add("spring.datasource.username", PostgresTestDatabase::getUsername);
+        registry.add("spring.datasource.password", PostgresTestDatabase::getPassword);
+    }
+
+    public static String getUrl() {
+        String url = System.getenv("POSTGRES_TEST_DB_URL");
+        return StringUtils.isNotBlank(url) ? url : container().getJdbcUrl();
+    }
+
+    public static String getUsername() {
+        return StringUtils.isNotBlank(System.getenv("POSTGRES_TEST_DB_URL"))
+                ? System.getenv("POSTGRES_TEST_DB_USER") : container().getUsername();
+    }
+
+    public static String getPassword() {
+        return StringUtils.isNotBlank(System.getenv("POSTGRES_TEST_DB_URL"))
+                ? System.getenv("POSTGRES_TEST_DB_PASSWORD") : container().getPassword();
+    }
+
+    /*
+     * Left running until the JVM exits, when Testcontainers removes it.
+     */
+    private static synchronized PostgreSQLContainer<?> container() {
+        if (container == null) {
+            container = new PostgreSQLContainer<>(DockerImageName.parse(IMAGE));
+            container.start();
+        }
+        return container;
+    }
+}
@@ -0,0 +1,343 @@
+package com.immunopass.sql;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.TestFactory;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.immunopass.enums.IdentifierType;
+import com.immunopass.enums.OrderStatus;
+import com.immunopass.enums.RollupOwnerType;
+import com.immunopass.repository.AccountRepository;
+import com.immunopass.repository.DailyRollupRepository;
+import com.immunopass.repository.ImmunopassRepository;
+import com.immunopass.repository.OrganizationRepository;
+import com.immunopass.repository.OtpRepository;
+import com.immunopass.repository.SmsOutboxRepository;
+import com.immunopass.repository.VoucherHistoryRepository;
+import com.immunopass.repository.VoucherOrderRepository;
+import com.immunopass.repository.VoucherRepository;
+
+
+/**
+ * Checks that every repository query, and the hand written queries of the hot paths, is served by an index of the
+ * schema the migrations build. Repository queries are checked as Hibernate sends them: each case calls the repository
+ * and plans every statement the call executed. The hand written queries are copied from their services, parameters
+ * and all.
+ *
+ * Statements are planned as prepared statements with a generic plan, which PostgreSQL may settle on for statements
+ * the driver prepares on the server. A generic plan can't look at the parameter values, so a partial index only
+ * matches when the query spells out its predicate. Sequential scans are disabled, so the planner only falls back to
+ * one when no index applies.
+ */
+@DataJpaTest(properties = "spring.jpa.show-sql=false")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(SqlCountingConfiguration.class)
+class QueryPlanTests {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final LocalDateTime TIME = LocalDateTime.of(2020, 4, 1, 0, 0);
+
+    @DynamicPropertySource
+    static void postgres(DynamicPropertyRegistry registry) {
+        PostgresTestDatabase.registerProperties(registry);
+    }
+
+    @Autowired
+    private AccountRepository accountRepository;
+    @Autowired
+    private DailyRollupRepository dailyRollupRepository;
+    @Autowired
+    private ImmunopassRepository immunopassRepository;
+    @Autowired
+    private OrganizationRepository organizationRepository;
+    @Autowired
+    private OtpRepository otpRepository;
+    @Autowired
+    private SmsOutboxRepository smsOutboxRepository;
+    @Autowired
+    private VoucherHistoryRepository voucherHistoryRepository;
+    @Autowired
+    private VoucherOrderRepository voucherOrderRepository;
+    @Autowired
+    private VoucherRepository voucherRepository;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private SingleConnectionDataSource planDataSource;
+    private JdbcTemplate planner;
+
+    @BeforeEach
+    void connectPlanner() {
+        planDataSource = new SingleConnectionDataSource(PostgresTestDatabase.getUrl(),
+                PostgresTestDatabase.getUsername(), PostgresTestDatabase.getPassword(), true);
+        planner = new JdbcTemplate(planDataSource);
+        planner.execute("set enable_seqscan = off");
+        planner.execute("set plan_cache_mode = force_generic_plan");
+    }
+
+    @AfterEach
+    void closePlanner() {
+        planDataSource.destroy();
+    }
+
+    @TestFactory
+    Stream<DynamicTest> repositoryQueriesUseIndexes() {
+        List<String> codes = Arrays.asList("abcdefgh", "bcdefghi");
+        return Stream.of(
+                repositoryQuery("AccountRepository.findByIdentifierAndIdentifierType",
+                        () -> accountRepository.findByIdentifierAndIdentifierType("9876543210",
+                                IdentifierType.MOBILE)),
+                repositoryQuery("DailyRollupRepository.findAllByOwnerTypeAndOwnerIdAndDayBetweenOrderByDay",
+                        () -> dailyRollupRepository.findAllByOwnerTypeAndOwnerIdAndDayBetweenOrderByDay(
+                                RollupOwnerType.ORGANIZATION, 1L, TIME.toLocalDate(), TIME.toLocalDate())),
+                repositoryQuery("DailyRollupRepository.increment",
+                        () -> dailyRollupRepository.increment("ORGANIZATION", 1L, LocalDate.of(2020, 4, 1),
+                                "ISSUED", 1)),
+                repositoryQuery("DailyRollupRepository.backfillIssued",
+                        () -> dailyRollupRepository.backfillIssued(TIME, TIME.plusDays(1))),
+                repositoryQuery("DailyRollupRepository.backfillSent",
+                        () -> dailyRollupRepository.backfillSent(TIME, TIME.plusDays(1))),
+                repositoryQuery("DailyRollupRepository.backfillOrganizationRedeemed",
+                        () -> dailyRollupRepository.backfillOrganizationRedeemed(TIME, TIME.plusDays(1))),
+                repositoryQuery("DailyRollupRepository.backfillPathologyLabRedeemed",
+                        () -> dailyRollupRepository.backfillPathologyLabRedeemed(TIME, TIME.plusDays(1))),
+                repositoryQuery("ImmunopassRepository.findByUserMobile",
+                        () -> immunopassRepository.findByUserMobile("9876543210")),
+                repositoryQuery("ImmunopassRepository.findByImmunopassCode",
+                        () -> immunopassRepository.findByImmunopassCode("abcdefgh")),
+                repositoryQuery("ImmunopassRepository.findExistingUserMobiles",
+                        () -> immunopassRepository.findExistingUserMobiles(Arrays.asList("9876543210",
+                                "9876543211"))),
+                repositoryQuery("ImmunopassRepository.findExistingImmunopassCodes",
+                        () -> immunopassRepository.findExistingImmunopassCodes(codes)),
+                repositoryQuery("OrganizationRepository.increaseRedeemedVoucherCount",
+                        () -> organizationRepository.increaseRedeemedVoucherCount(1L)),
+                repositoryQuery("OrganizationRepository.allotVouchers",
+                        () -> organizationRepository.allotVouchers(1L, 1)),
+                repositoryQuery("OrganizationRepository.releaseAllotedVouchers",
+                        () -> organizationRepository.releaseAllotedVouchers(1L, 1)),
+                repositoryQuery("OtpRepository.findFirstByIdentifierOrderByCreatedAtDesc",
+                        () -> otpRepository.findFirstByIdentifierOrderByCreatedAtDesc("9876543210")),
+                repositoryQuery("SmsOutboxRepository.lockPendingBatch",
+                        () -> smsOutboxRepository.lockPendingBatch(Collections.singletonList("LOGIN_OTP"), 100)),
+                repositoryQuery("SmsOutboxRepository.lease",
+                        () -> smsOutboxRepository.lease(Arrays.asList(1L, 2L), TIME)),
+                repositoryQuery("SmsOutboxRepository.recordAttempt",
+                        () -> smsOutboxRepository.recordAttempt(1L, "SENT", 1, TIME, null)),
+                repositoryQuery("VoucherHistoryRepository.findFirstByVoucherCodeOrderByIdDesc",
+                        () -> voucherHistoryRepository.findFirstByVoucherCodeOrderByIdDesc("abcdefgh")),
+                repositoryQuery("VoucherOrderRepository.findAllByStatus",
+                        () -> voucherOrderRepository.findAllByStatus(OrderStatus.CREATED)),
+                repositoryQuery("VoucherOrderRepository.findByCreatedOrganizationIdAndDedupKey",
+                        () -> voucherOrderRepository.findByCreatedOrganizationIdAndDedupKey(1L, "k")),
+                repositoryQuery("VoucherOrderRepository.clearDedupKeys",
+                        () -> voucherOrderRepository.clearDedupKeys(TIME)),
+                repositoryQuery("VoucherRepository.findAllByOrderId",
+                        () -> voucherRepository.findAllByOrderId(1L)),
+                repositoryQuery("VoucherRepository.findAllottedByOrderIdAndIdGreaterThan",
+                        () -> voucherRepository.findAllottedByOrderIdAndIdGreaterThan(1L, 0L,
+                                PageRequest.of(0, 500, Sort.by("id")))),
+                repositoryQuery("VoucherRepository.findByVoucherCode",
+                        () -> voucherRepository.findByVoucherCode("abcdefgh")),
+                repositoryQuery("VoucherRepository.findExistingVoucherCodes",
+                        () -> voucherRepository.findExistingVoucherCodes(codes)),
+                repositoryQuery("VoucherRepository.findForUpdateByVoucherCode",
+                        () -> voucherRepository.findForUpdateByVoucherCode("abcdefgh")),
+                repositoryQuery("VoucherRepository.findRedeemableByUserMobile",
+                        () -> voucherRepository.findRedeemableByUserMobile("9876543210",
+                                PageRequest.of(0, 20, Sort.by("id")))),
+                repositoryQuery("VoucherRepository.findRedeemableByIssuerOrganizationIdAndUserEmpId",
+                        () -> voucherRepository.findRedeemableByIssuerOrganizationIdAndUserEmpId(1L, "E1",
+                                PageRequest.of(0, 20, Sort.by("id")))));
+    }
+
+    static Stream<Arguments> handWrittenQueries() {
+        return Stream.of(
+                query("CodeFilterService.refresh voucher",
+                        "select created_at, voucher_code from immunopass.voucher where created_at >= ?"),
+                query("CodeFilterService.refresh voucher_history",
+                        "select created_at, voucher_code from immunopass.voucher_history where created_at >= ?"),
+                query("CodeFilterService.refresh immunopass",
+                        "select created_at, immunopass_code from immunopass.immunopass where created_at >= ?"),
+                query("OrganizationService.getVouchers",
+                        "select id, voucher_code, user_name, user_mobile, user_emp_id, status, order_id, created_at,"
+                                + " updated_at from immunopass.voucher where issuer_organization_id = ? and id < ?"
+                                + " and status = ? and order_id = ? and created_at >= ? and created_at < ?"
+                                + " order by id desc limit ?"),
+                query("OrganizationService.getVouchers with archived vouchers",
+                        "select id, voucher_code, status from ((select id, voucher_code, status"
+                                + " from immunopass.voucher where issuer_organization_id = ? and id < ?"
+                                + " order by id desc limit ?) union all (select id, voucher_code, status"
+                                + " from immunopass.voucher_history where issuer_organization_id = ? and id < ?"
+                                + " order by id desc limit ?)) vouchers order by id desc limit ?"),
+                query("VoucherOrderService.exportVouchers",
+                        "select voucher_code, status from (select id, voucher_code, status from immunopass.voucher"
+                                + " where order_id = ? union all select id, voucher_code, status"
+                                + " from immunopass.voucher_history where order_id = ?) vouchers order by id"),
+                query("VoucherOrderService.outstandingMobiles",
+                        "select cast(user_mobile as bigint) from immunopass.voucher where issuer_organization_id = ?"
+                                + " and status in ('ALLOTTED', 'PROCESSED') and user_mobile ~ '^[0-9]{1,18}$'"
+                                + " union all select cast(r.user_mobile as bigint)"
+                                + " from immunopass.voucher_order_row r join immunopass.voucher_order o"
+                                + " on o.id = r.order_id where o.created_organization_id = ?"
+                                + " and o.status = 'CREATED' and r.user_mobile ~ '^[0-9]{1,18}$'"),
+                query("VoucherOrderService.unstagedPendingOrderFiles",
+                        "select o.uploaded_file from immunopass.voucher_order o where o.created_organization_id = ?"
+                                + " and o.status = 'CREATED' and o.uploaded_file <> ''"
+                                + " and not exists (select 1 from immunopass.voucher_order_row r"
+                                + " where r.order_id = o.id)"),
+                query("VoucherOrderService.claimOrder",
+                        "insert into immunopass.voucher_order (voucher_count, uploaded_file, created_account_id,"
+                                + " created_organization_id, status, content_sha256, dedup_key)"
+                                + " values (?, '', ?, ?, 'CREATED', ?, ?)"
+                                + " on conflict (created_organization_id, dedup_key) where dedup_key is not null"
+                                + " do nothing returning id"),
+                query("VoucherOrderService.createStagedVouchers",
+                        "with staged as (delete from immunopass.voucher_order_row where order_id = ?"
+                                + " returning row_number, user_name) select user_name from staged"
+                                + " order by row_number"),
+                query("VoucherArchiveService.expireBatch",
+                        "with candidates as (select id from immunopass.voucher where status = 'PROCESSED'"
+                                + " and created_at < ? order by created_at, id limit ? for update skip locked),"
+                                + " expired as (update immunopass.voucher v set status = 'EXPIRED', updated_at = now()"
+                                + " from candidates c where v.id = c.id returning v.id, v.issuer_organization_id)"
+                                + " select id, issuer_organization_id from expired"),
+                query("VoucherArchiveService.releaseQuota",
+                        "update immunopass.organization set alloted_vouchers = alloted_vouchers - ? where id = ?"
+                                + " and alloted_vouchers >= ?"),
+                query("VoucherArchiveService.retakeQuota",
+                        "update immunopass.organization set alloted_vouchers = alloted_vouchers + ? where id = ?"),
+                query("VoucherArchiveService.archiveBatch",
+                        "with candidates as (select id from immunopass.voucher"
+                                + " where status in ('REDEEMED', 'EXPIRED') and updated_at < ?"
+                                + " order by updated_at, id limit ? for update skip locked),"
+                                + " moved as (delete from immunopass.voucher v using candidates c where v.id = c.id"
+                                + " returning v.*) select id from moved"));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("handWrittenQueries")
+    void handWrittenQueriesUseIndexes(String name, String sql) throws Exception {
+        assertUsesIndexes(name, sql);
+    }
+
+    private DynamicTest repositoryQuery(String name, Runnable call) {
+        return DynamicTest.dynamicTest(name, () -> {
+            SqlStatementCounter.reset();
+            transactionTemplate.execute(status -> {
+                call.run();
+                return null;
+            });
+            List<String> statements = SqlStatementCounter.statements();
+            assertFalse(statements.isEmpty(), name + " executed no statement.");
+            for (String sql : statements) {
+                assertUsesIndexes(name, sql);
+            }
+        });
+    }
+
+    private static Arguments query(String name, String sql) {
+        return Arguments.of(name, sql);
+    }
+
+    private void assertUsesIndexes(String name, String sql) throws Exception {
+        int parameters = countParameters(sql);
+        planner.execute("prepare query_plan_test as " + numberParameters(sql));
+        try {
+            StringBuilder execute = new StringBuilder("explain (format json) execute query_plan_test");
+            if (parameters > 0) {
+                execute.append('(').append(String.join(", ", Collections.nCopies(parameters, "null"))).append(')');
+            }
+            String plan = planner.queryForObject(execute.toString(), String.class);
+            List<String> unindexedScans = new ArrayList<>();
+            collectUnindexedScans(OBJECT_MAPPER.readTree(plan).get(0).get("Plan"), unindexedScans);
+            assertTrue(unindexedScans.isEmpty(),
+                    name + " scans without an index: " + unindexedScans + "\n" + sql + "\n" + plan);
+        } finally {
+            planner.execute("deallocate query_plan_test");
+        }
+    }
+
+    /*
+     * JDBC's ? placeholders, outside of string literals, become the $n parameters PREPARE takes.
+     */
+    private static String numberParameters(String sql) {
+        StringBuilder numbered = new StringBuilder(sql.length() + 16);
+        boolean quoted = false;
+        int parameter = 0;
+        for (char c : sql.toCharArray()) {
+            if (c == '\'') {
+                quoted = !quoted;
+            }
+            if (c == '?' && !quoted) {
+                numbered.append('$').append(++parameter);
+            } else {
+                numbered.append(c);
+            }
+        }
+        return numbered.toString();
+    }
+
+    private static int countParameters(String sql) {
+        int parameters = 0;
+        boolean quoted = false;
+        for (char c : sql.toCharArray()) {
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (c == '?' && !quoted) {
+                parameters++;
+            }
+        }
+        return parameters;
+    }
+
+    /*
+     * A sequential scan doesn't count as served by an index, nor does an index scan without an index condition (a walk
+     * of the whole index for its ordering) unless the index is partial and its predicate does the filtering.
+     */
+    private void collectUnindexedScans(JsonNode node, List<String> unindexedScans) {
+        String nodeType = node.path("Node Type").asText();
+        if (nodeType.equals("Seq Scan")) {
+            unindexedScans.add(nodeType + " on " + node.path("Relation Name").asText());
+        } else if ((nodeType.equals("Index Scan") || nodeType.equals("Index Only Scan")) && !node.has("Index Cond")
+                && !isPartialIndex(node.path("Index Name").asText())) {
+            unindexedScans.add(nodeType + " using " + node.path("Index Name").asText());
+        }
+        for (JsonNode child : node.path("Plans")) {
+            collectUnindexedScans(child, unindexedScans);
+        }
+    }
+
+    private boolean isPartialIndex(String indexName) {
+        return planner.queryForObject("select indpred is not null from pg_catalog.pg_index"
+                + " where indexrelid = cast(? as regclass)", Boolean.class, "immunopass." + indexName);
+    }
+}
@@ -0,0 +1,312 @@
+package com.immunopass.sql;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+import java.util.Collections;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.immunopass.configuration.SmsConfig;
+import com.immunopass.controller.AccountController;
+import com.immunopass.controller.BulkImmunopassController;
+import com.immunopass.controller.ImmunopassController;
+import com.immunopass.controller.OrganizationController;
+import com.immunopass.controller.OtpController;
+import com.immunopass.controller.PathologyLabController;
+import com.immunopass.controller.VoucherController;
+import com.immunopass.controller.VoucherOrderController;
+import com.immunopass.cron.SmsOutboxDispatcher;
+import com.immunopass.cron.VoucherArchiveJob;
+import com.immunopass.datasource.ShardDirectory;
+import com.immunopass.datasource.ShardRouter;
+import com.immunopass.entity.AccountEntity;
+import com.immunopass.entity.OrganizationEntity;
+import com.immunopass.entity.PathologyLabEntity;
+import com.immunopass.entity.VoucherEntity;
+import com.immunopass.entity.VoucherOrderEntity;
+import com.immunopass.enums.EntityStatus;
+import com.immunopass.enums.IDType;
+import com.immunopass.enums.IdentifierType;
+import com.immunopass.enums.OrderStatus;
+import com.immunopass.enums.OrganizationType;
+import com.immunopass.enums.VoucherStatus;
+import com.immunopass.model.Account;
+import com.immunopass.repository.AccountRepository;
+import com.immunopass.repository.DailyRollupRepository;
+import com.immunopass.repository.ImmunopassRepository;
+import com.immunopass.repository.OrganizationRepository;
+import com.immunopass.repository.OtpRepository;
+import com.immunopass.repository.PathologyLabRepository;
+import com.immunopass.repository.SmsOutboxRepository;
+import com.immunopass.repository.VoucherHistoryRepository;
+import com.immunopass.repository.VoucherOrderRepository;
+import com.immunopass.repository.VoucherRepository;
+import com.immunopass.restclient.SMSService;
+import com.immunopass.service.AccountService;
+import com.immunopass.service.AuditService;
+import com.immunopass.service.BulkImmunopassService;
+import com.immunopass.service.CodeFilterService;
+import com.immunopass.service.ImmunopassService;
+import com.immunopass.service.OrganizationService;
+import com.immunopass.service.OtpService;
+import com.immunopass.service.PathologyLabService;
+import com.immunopass.service.RollupService;
+import com.immunopass.service.SmsOutboxService;
+import com.immunopass.service.VoucherArchiveService;
+import com.immunopass.service.VoucherOrderService;
+import com.immunopass.service.VoucherService;
+import com.immunopass.storage.BlobStore;
+import com.immunopass.util.ImmunopassTokenUtil;
+import com.immunopass.util.JwtUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+
+/**
+ * Runs the endpoints and jobs against PostgreSQL, see {@link PostgresTestDatabase}, migrated by Flyway, so the
+ * PostgreSQL-only statements (upserts, SKIP LOCKED, COPY, data modifying CTEs) are counted like any other. Endpoints
+ * are called through {@link MockMvc} with the security filters left out; {@link #logIn} sets the caller.
+ * Tests don't run in a transaction of their own, so every statement a call issues, flushes included, is counted.
+ * The local profile lets immunopass tokens be signed with an ephemeral key.
+ *
+ * Collaborators that talk to the outside world are mocked, as is the audit trail whose writes are asynchronous.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.show-sql=false",
+        "jwt.secret_key=sql-budget-test-secret-key-that-is-long-enough-for-hs256-signatures",
+        "cronInstance=true",
+        "voucher.expiry_days=30",
+        "voucher.archive.after_days=30",
+        "voucher.archive.batch_pause_ms=0"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@ActiveProfiles("local")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({
+        SqlCountingConfiguration.class,
+        SqlBudgetTest.Beans.class,
+        SmsConfig.class,
+        ShardDirectory.class,
+        ShardRouter.class,
+        AccountService.class,
+        BulkImmunopassService.class,
+        ImmunopassService.class,
+        OrganizationService.class,
+        OtpService.class,
+        PathologyLabService.class,
+        RollupService.class,
+        SmsOutboxService.class,
+        VoucherArchiveService.class,
+        VoucherOrderService.class,
+        VoucherService.class,
+        SmsOutboxDispatcher.class,
+        VoucherArchiveJob.class,
+        ImmunopassTokenUtil.class,
+        JwtUtil.class
+})
+abstract class SqlBudgetTest {
+
+    @MockBean
+    protected CodeFilterService codeFilterService;
+    @MockBean
+    protected SMSService smsService;
+    @MockBean
+    protected BlobStore blobStore;
+    @MockBean
+    protected AuditService auditService;
+
+    @DynamicPropertySource
+    static void postgres(DynamicPropertyRegistry registry) {
+        PostgresTestDatabase.registerProperties(registry);
+    }
+
+    @Autowired
+    private AccountController accountController;
+    @Autowired
+    private BulkImmunopassController bulkImmunopassController;
+    @Autowired
+    private ImmunopassController immunopassController;
+    @Autowired
+    private OrganizationController organizationController;
+    @Autowired
+    private OtpController otpController;
+    @Autowired
+    private PathologyLabController pathologyLabController;
+    @Autowired
+    private VoucherController voucherController;
+    @Autowired
+    private VoucherOrderController voucherOrderController;
+    @Autowired
+    protected ObjectMapper objectMapper;
+
+    protected MockMvc mockMvc;
+
+    @Autowired
+    protected AccountRepository accountRepository;
+    @Autowired
+    protected OrganizationRepository organizationRepository;
+    @Autowired
+    protected PathologyLabRepository pathologyLabRepository;
+    @Autowired
+    protected VoucherRepository voucherRepository;
+    @Autowired
+    protected VoucherOrderRepository voucherOrderRepository;
+    @Autowired
+    protected VoucherHistoryRepository voucherHistoryRepository;
+    @Autowired
+    protected ImmunopassRepository immunopassRepository;
+    @Autowired
+    protected OtpRepository otpRepository;
+    @Autowired
+    protected SmsOutboxRepository smsOutboxRepository;
+    @Autowired
+    protected DailyRollupRepository dailyRollupRepository;
+    @Autowired
+    protected JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void stubCollaborators() {
+        when(codeFilterService.mightContainVoucherCode(anyString())).thenReturn(true);
+        when(codeFilterService.mightContainImmunopassCode(anyString())).thenReturn(true);
+        when(codeFilterService.mightBeIssuedVoucherCode(anyString())).thenReturn(true);
+        when(codeFilterService.mightBeIssuedImmunopassCode(anyString())).thenReturn(true);
+        when(smsService.sendVoucherSMS(any())).thenReturn(true);
+        when(smsService.sendOTPSMS(anyString(), anyString(), anyString(), anyString())).thenReturn(true);
+        when(smsService.sendImmunoPassSMS(anyString(), anyString(), anyString())).thenReturn(true);
+        when(blobStore.put(anyString(), any(), anyLong(), anyString()))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @BeforeEach
+    void setUpMockMvc() {
+        mockMvc = MockMvcBuilders
+                .standaloneSetup(accountController, bulkImmunopassController, immunopassController,
+                        organizationController, otpController, pathologyLabController, voucherController,
+                        voucherOrderController)
+                .setMessageConverters(new MappingJackson2HttpMessageConverter(objectMapper))
+                .build();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        SecurityContextHolder.clearContext();
+        voucherRepository.deleteAllInBatch();
+        voucherHistoryRepository.deleteAllInBatch();
+        jdbcTemplate.update("delete from immunopass.voucher_order_row");
+        voucherOrderRepository.deleteAllInBatch();
+        immunopassRepository.deleteAllInBatch();
+        otpRepository.deleteAllInBatch();
+        smsOutboxRepository.deleteAllInBatch();
+        dailyRollupRepository.deleteAllInBatch();
+        jdbcTemplate.update("delete from immunopass.completed_job");
+        accountRepository.deleteAllInBatch();
+        organizationRepository.deleteAllInBatch();
+        pathologyLabRepository.deleteAllInBatch();
+    }
+
+    protected OrganizationEntity organization() {
+        return organizationRepository.save(OrganizationEntity.builder()
+                .name("Acme")
+                .type(OrganizationType.OTHER)
+                .status(EntityStatus.ACTIVE)
+                .totalVouchers(100)
+                .allotedVouchers(0)
+                .redeemedVouchers(0)
+                .build());
+    }
+
+    protected PathologyLabEntity pathologyLab() {
+        return pathologyLabRepository.save(PathologyLabEntity.builder()
+                .name("Lab")
+                .status(EntityStatus.ACTIVE)
+                .build());
+    }
+
+    protected AccountEntity account(Long organizationId, Long pathologyLabId) {
+        return accountRepository.save(AccountEntity.builder()
+                .name("Jane")
+                .identifier("9000000000")
+                .identifierType(IdentifierType.MOBILE)
+                .organizationId(organizationId)
+                .pathologyLabId(pathologyLabId)
+                .status(EntityStatus.ACTIVE)
+                .build());
+    }
+
+    protected String json(Object body) throws JsonProcessingException {
+        return objectMapper.writeValueAsString(body);
+    }
+
+    protected void logIn(AccountEntity accountEntity) {
+        Account account = Account.builder()
+                .id(accountEntity.getId())
+                .name(accountEntity.getName())
+                .identifier(accountEntity.getIdentifier())
+                .identifierType(accountEntity.getIdentifierType())
+                .organizationId(accountEntity.getOrganizationId())
+                .pathologyLabId(accountEntity.getPathologyLabId())
+                .status(accountEntity.getStatus())
+                .build();
+        SecurityContextHolder.getContext()
+                .setAuthentication(new UsernamePasswordAuthenticationToken(account, null, Collections.emptyList()));
+    }
+
+    protected VoucherOrderEntity voucherOrder(AccountEntity accountEntity, OrderStatus status) {
+        return voucherOrderRepository.save(VoucherOrderEntity.builder()
+                .voucherCount(3)
+                .uploadedFile("voucher_order_test.csv.gz")
+                .status(status)
+                .createdAccountId(accountEntity.getId())
+                .createdOrganizationId(accountEntity.getOrganizationId())
+                .build());
+    }
+
+    protected VoucherEntity voucher(VoucherOrderEntity voucherOrderEntity, String voucherCode, VoucherStatus status) {
+        return voucherRepository.save(VoucherEntity.builder()
+                .voucherCode(voucherCode)
+                .orderId(voucherOrderEntity.getId())
+                .userName("John")
+                .userMobile("98765432" + voucherCode.substring(voucherCode.length() - 2))
+                .userGovtIdType(IDType.PAN)
+                .userGovernmentId("ABCDE1234F")
+                .userEmpId("E1")
+                .status(status)
+                .retryCount(0)
+                .issuerAccountId(voucherOrderEntity.getCreatedAccountId())
+                .issuerOrganizationId(voucherOrderEntity.getCreatedOrganizationId())
+                .build());
+    }
+
+    @TestConfiguration
+    static class Beans {
+
+        @Bean
+        public MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.immunopass.sql;
+
+import javax.sql.DataSource;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+
+/**
+ * Routes every {@link DataSource} in the test context through {@link SqlStatementCounter}.
+ */
+@TestConfiguration
+public class SqlCountingConfiguration {
+
+    @Bean
+    public static BeanPostProcessor sqlCountingDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                return bean instanceof DataSource ? SqlStatementCounter.wrap((DataSource) bean) : bean;
+            }
+        };
+    }
+}
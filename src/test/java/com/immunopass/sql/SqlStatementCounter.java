@@ -0,0 +1,219 @@
+package com.immunopass.sql;
+
+import static org.junit.jupiter.api.Assertions.fail;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+
+/**
+ * Counts the SQL statements executed through a wrapped {@link DataSource}, so tests can pin how many round trips a
+ * code path makes:
+ *
+ * <pre>
+ *     SqlStatementCounter.reset();
+ *     voucherService.redeemVoucher(request);
+ *     assertSqlCount(select(1), update(2));
+ * </pre>
+ *
+ * Statement types left out of the assertion are expected not to run at all. A JDBC batch counts as one statement.
+ */
+public final class SqlStatementCounter {
+
+    public enum StatementType {
+        SELECT, INSERT, UPDATE, DELETE, OTHER
+    }
+
+    private static final List<String> STATEMENTS = new ArrayList<>();
+
+    private SqlStatementCounter() {
+    }
+
+    public static DataSource wrap(DataSource dataSource) {
+        return new DelegatingDataSource(dataSource) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                return countingConnection(super.getConnection());
+            }
+
+            @Override
+            public Connection getConnection(String username, String password) throws SQLException {
+                return countingConnection(super.getConnection(username, password));
+            }
+        };
+    }
+
+    public static void reset() {
+        synchronized (STATEMENTS) {
+            STATEMENTS.clear();
+        }
+    }
+
+    /**
+     * The statements executed since the last reset, in order.
+     */
+    public static List<String> statements() {
+        synchronized (STATEMENTS) {
+            return new ArrayList<>(STATEMENTS);
+        }
+    }
+
+    public static Budget select(int count) {
+        return new Budget(StatementType.SELECT, count);
+    }
+
+    public static Budget insert(int count) {
+        return new Budget(StatementType.INSERT, count);
+    }
+
+    public static Budget update(int count) {
+        return new Budget(StatementType.UPDATE, count);
+    }
+
+    public static Budget delete(int count) {
+        return new Budget(StatementType.DELETE, count);
+    }
+
+    public static Budget other(int count) {
+        return new Budget(StatementType.OTHER, count);
+    }
+
+    public static void assertSqlCount(Budget... budgets) {
+        Map<StatementType, Integer> expected = emptyCounts();
+        for (Budget budget : budgets) {
+            expected.put(budget.type, budget.count);
+        }
+        Map<StatementType, Integer> actual = emptyCounts();
+        List<String> statements = statements();
+        for (String sql : statements) {
+            actual.merge(classify(sql), 1, Integer::sum);
+        }
+        if (!expected.equals(actual)) {
+            StringBuilder message = new StringBuilder("SQL statement budget exceeded or changed.")
+                    .append("\nExpected: ").append(expected)
+                    .append("\nActual:   ").append(actual)
+                    .append("\nStatements:");
+            statements.forEach(sql -> message.append("\n  ").append(sql));
+            fail(message.toString());
+        }
+    }
+
+    static StatementType classify(String sql) {
+        String normalized = sql.trim().toLowerCase(Locale.ROOT);
+        while (normalized.startsWith("/*") && normalized.contains("*/")) {
+            normalized = normalized.substring(normalized.indexOf("*/") + 2).trim();
+        }
+        if (normalized.startsWith("with")) {
+            // A data modifying CTE counts as the modification it performs.
+            if (normalized.contains("insert into")) {
+                return StatementType.INSERT;
+            } else if (normalized.contains("update ")) {
+                return StatementType.UPDATE;
+            } else if (normalized.contains("delete from")) {
+                return StatementType.DELETE;
+            }
+            return StatementType.SELECT;
+        }
+        for (StatementType type : StatementType.values()) {
+            if (normalized.startsWith(type.name().toLowerCase(Locale.ROOT))) {
+                return type;
+            }
+        }
+        return StatementType.OTHER;
+    }
+
+    private static Map<StatementType, Integer> emptyCounts() {
+        Map<StatementType, Integer> counts = new EnumMap<>(StatementType.class);
+        for (StatementType type : StatementType.values()) {
+            counts.put(type, 0);
+        }
+        return counts;
+    }
+
+    private static void record(String sql) {
+        synchronized (STATEMENTS) {
+            STATEMENTS.add(sql);
+        }
+    }
+
+    private static Connection countingConnection(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(SqlStatementCounter.class.getClassLoader(),
+                new Class<?>[] {Connection.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    if (result instanceof Statement) {
+                        String sql = method.getName().startsWith("prepare") ? (String) args[0] : null;
+                        return countingStatement((Statement) result, sql);
+                    }
+                    return result;
+                });
+    }
+
+    private static Statement countingStatement(Statement statement, String preparedSql) {
+        Class<?> type = statement instanceof CallableStatement ? CallableStatement.class
+                : statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        return (Statement) Proxy.newProxyInstance(SqlStatementCounter.class.getClassLoader(),
+                new Class<?>[] {type},
+                new CountingStatementHandler(statement, preparedSql));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static final class CountingStatementHandler implements InvocationHandler {
+        private final Statement statement;
+        private final String preparedSql;
+        private String lastBatchSql;
+
+        private CountingStatementHandler(Statement statement, String preparedSql) {
+            this.statement = statement;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            boolean sqlArgument = args != null && args.length > 0 && args[0] instanceof String;
+            if (name.equals("addBatch") && sqlArgument) {
+                lastBatchSql = (String) args[0];
+            } else if (name.startsWith("execute")) {
+                if (sqlArgument) {
+                    record((String) args[0]);
+                } else if (preparedSql != null) {
+                    record(preparedSql);
+                } else if (lastBatchSql != null) {
+                    record(lastBatchSql);
+                }
+            }
+            return SqlStatementCounter.invoke(statement, method, args);
+        }
+    }
+
+    public static final class Budget {
+        private final StatementType type;
+        private final int count;
+
+        private Budget(StatementType type, int count) {
+            this.type = type;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.immunopass.sql;
+
+import static com.immunopass.sql.SqlStatementCounter.assertSqlCount;
+import static com.immunopass.sql.SqlStatementCounter.insert;
+import static com.immunopass.sql.SqlStatementCounter.select;
+import static com.immunopass.sql.SqlStatementCounter.update;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.TestPropertySource;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.immunopass.service.VoucherOrderService;
+
+
+/**
+ * Statement budgets of a voucher order whose rows are staged with COPY, which goes around JDBC statements and so
+ * isn't counted, and whose vouchers are then created from the staged rows in one statement.
+ */
+@TestPropertySource(properties = "voucher_order.staging.enabled=true")
+class StagedVoucherOrderSqlBudgetTests extends SqlBudgetTest {
+
+    @Autowired
+    private VoucherOrderService voucherOrderService;
+
+    @Test
+    void createVoucherOrderAndItsVouchers() throws Exception {
+        logIn(account(organization().getId(), null));
+        MockMultipartFile file = new MockMultipartFile("file", "voucher_order.csv", "text/csv",
+                ("name,mobile,id_type,id_number,emp_id\n"
+                        + "John,9876543210,PAN,ABCDE1234F,E1\n"
+                        + "Jane,9876543211,PAN,ABCDE1234G,E2\n"
+                        + "Jim,9876543212,AADHAAR,123412341234,E3\n").getBytes(StandardCharsets.UTF_8));
+        SqlStatementCounter.reset();
+        mockMvc.perform(multipart("/v1/voucher_orders").file(file)).andExpect(status().isOk());
+        assertSqlCount(select(5), insert(1), update(2));
+
+        SqlStatementCounter.reset();
+        voucherOrderService.createVouchers();
+        // Orders, the insert of every voucher from the staged rows, the rollup upsert, then the order status.
+        assertSqlCount(select(2), insert(2), update(1));
+        assertEquals(3, voucherRepository.count());
+    }
+
+    @Test
+    void skipsMobilesOfAStagedOrder() throws Exception {
+        logIn(account(organization().getId(), null));
+        VoucherOrderDuplicateMobileTests.upload(this,
+                "John,9876543210,PAN,ABCDE1234F,E1",
+                "Jane,9876543211,PAN,ABCDE1234G,E2");
+
+        JsonNode secondOrder = VoucherOrderDuplicateMobileTests.upload(this,
+                "Jim,9876543212,PAN,ABCDE1234H,E3",
+                "Jane,9876543211,PAN,ABCDE1234G,E2");
+
+        assertEquals(1, secondOrder.get("voucherCount").asInt());
+        VoucherOrderDuplicateMobileTests.assertSkippedRows(secondOrder, 3);
+        // The first order's rows are read from the staging table, not from its file.
+        verify(blobStore, never()).lines(anyString());
+    }
+}
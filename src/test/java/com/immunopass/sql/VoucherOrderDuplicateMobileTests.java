@@ -0,0 +1,87 @@
+package com.immunopass.sql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.immunopass.entity.AccountEntity;
+import com.immunopass.entity.VoucherOrderEntity;
+import com.immunopass.enums.OrderStatus;
+import com.immunopass.enums.VoucherStatus;
+
+
+/**
+ * A voucher order skips the mobile numbers a voucher is already issued or requested for, and reports them as
+ * skipped rows. Orders are uploaded with staging off, so an order waiting for the pipeline is known by its file.
+ */
+class VoucherOrderDuplicateMobileTests extends SqlBudgetTest {
+
+    @Test
+    void skipsMobilesOfOutstandingVouchersAndRepeatedRows() throws Exception {
+        AccountEntity issuer = account(organization().getId(), null);
+        VoucherOrderEntity order = voucherOrder(issuer, OrderStatus.PROCESSED);
+        voucher(order, "VOUCHR01", VoucherStatus.PROCESSED);
+        voucher(order, "VOUCHR02", VoucherStatus.REDEEMED);
+        logIn(issuer);
+
+        JsonNode voucherOrder = upload(
+                "John,9876543201,PAN,ABCDE1234F,E1",
+                "Jane,9876543202,PAN,ABCDE1234G,E2",
+                "Jim,9876543203,PAN,ABCDE1234H,E3",
+                "Jack,+91 98765 43203,PAN,ABCDE1234I,E4");
+
+        assertEquals(2, voucherOrder.get("voucherCount").asInt());
+        assertSkippedRows(voucherOrder, 2, 5);
+    }
+
+    @Test
+    void skipsMobilesOfAnOrderWhoseVouchersAreNotCreatedYet() throws Exception {
+        logIn(account(organization().getId(), null));
+        String[] firstOrder = {
+                "John,9876543210,PAN,ABCDE1234F,E1",
+                "Jane,9876543211,PAN,ABCDE1234G,E2"};
+        upload(firstOrder);
+        when(blobStore.lines(anyString())).thenAnswer(invocation -> Stream.of(firstOrder));
+
+        JsonNode secondOrder = upload(
+                "Jim,9876543212,PAN,ABCDE1234H,E3",
+                "Jane,09876543211,PAN,ABCDE1234G,E2");
+
+        assertEquals(1, secondOrder.get("voucherCount").asInt());
+        assertSkippedRows(secondOrder, 3);
+    }
+
+    static JsonNode upload(SqlBudgetTest test, String... rows) throws Exception {
+        MockMultipartFile file = new MockMultipartFile("file", "voucher_order.csv", "text/csv",
+                ("name,mobile,id_type,id_number,emp_id\n" + String.join("\n", rows) + "\n")
+                        .getBytes(StandardCharsets.UTF_8));
+        return test.objectMapper.readTree(test.mockMvc.perform(multipart("/v1/voucher_orders").file(file))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString());
+    }
+
+    /*
+     * Row numbers count the header row.
+     */
+    static void assertSkippedRows(JsonNode voucherOrder, int... rows) {
+        JsonNode skippedRows = voucherOrder.get("skippedRows");
+        assertEquals(rows.length, skippedRows.size());
+        for (int i = 0; i < rows.length; i++) {
+            assertEquals(rows[i], skippedRows.get(i).get("row").asInt());
+            assertEquals("Duplicate mobile number, a voucher is already issued or requested for it.",
+                    skippedRows.get(i).get("reason").asText());
+        }
+    }
+
+    private JsonNode upload(String... rows) throws Exception {
+        return upload(this, rows);
+    }
+}
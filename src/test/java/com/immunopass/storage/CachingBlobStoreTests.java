@@ -0,0 +1,139 @@
+package com.immunopass.storage;
+
+import static com.immunopass.storage.LocalBlobStoreTests.read;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+/**
+ * The remote store is a mock serving the blobs in {@link #remote}.
+ */
+class CachingBlobStoreTests {
+
+    @TempDir
+    Path cacheDirectory;
+
+    private final Map<String, String> remote = new HashMap<>();
+    private BlobStore delegate;
+
+    @BeforeEach
+    void setUp() {
+        delegate = mock(BlobStore.class);
+        when(delegate.get(anyString())).thenAnswer(invocation -> remote(invocation.getArgument(0)));
+        when(delegate.get(anyString(), anyLong(), anyLong())).thenAnswer(invocation -> remote(
+                invocation.getArgument(0), invocation.<Long>getArgument(1), invocation.<Long>getArgument(2)));
+        remote.put("a.csv", "aaaa");
+        remote.put("b.csv", "bbbb");
+        remote.put("c.csv", "cccc");
+        remote.put("large.csv", "0123456789");
+    }
+
+    @Test
+    void readsABlobFromTheRemoteStoreOnce() throws IOException {
+        CachingBlobStore blobStore = new CachingBlobStore(delegate, cacheDirectory, 100);
+
+        assertEquals("aaaa", read(blobStore.get("s3://bucket/a.csv")));
+        assertEquals("aaaa", read(blobStore.get("s3://bucket/a.csv")));
+        assertEquals("aa", read(blobStore.get("s3://bucket/a.csv", 1, 2)));
+
+        verify(delegate, times(1)).get("s3://bucket/a.csv");
+        assertTrue(Files.isRegularFile(cacheDirectory.resolve("a.csv")));
+    }
+
+    @Test
+    void evictsTheLeastRecentlyReadBlobs() throws IOException {
+        CachingBlobStore blobStore = new CachingBlobStore(delegate, cacheDirectory, 10);
+        read(blobStore.get("a.csv"));
+        read(blobStore.get("b.csv"));
+        setLastModified("a.csv", 1000);
+        setLastModified("b.csv", 2000);
+
+        // Reading a makes b the least recently read.
+        read(blobStore.get("a.csv"));
+        read(blobStore.get("c.csv"));
+
+        assertTrue(Files.exists(cacheDirectory.resolve("a.csv")));
+        assertFalse(Files.exists(cacheDirectory.resolve("b.csv")));
+        assertTrue(Files.exists(cacheDirectory.resolve("c.csv")));
+        assertEquals("bbbb", read(blobStore.get("b.csv")));
+        verify(delegate, times(2)).get("b.csv");
+    }
+
+    @Test
+    void readsABlobLargerThanTheCacheWithoutKeepingIt() throws IOException {
+        CachingBlobStore blobStore = new CachingBlobStore(delegate, cacheDirectory, 8);
+        read(blobStore.get("a.csv"));
+
+        assertEquals("0123456789", read(blobStore.get("large.csv")));
+        assertEquals("0123456789", read(blobStore.get("large.csv")));
+
+        verify(delegate, times(2)).get("large.csv");
+        assertFalse(Files.exists(cacheDirectory.resolve("large.csv")));
+        // Nothing was evicted to make room for it.
+        assertTrue(Files.exists(cacheDirectory.resolve("a.csv")));
+    }
+
+    @Test
+    void readsFromTheRemoteStoreWhenTheCachedFileIsEvictedMeanwhile() throws IOException {
+        AtomicBoolean evictBeforeRead = new AtomicBoolean();
+        // Stands in for an eviction by another reader between the lookup and the read.
+        LocalBlobStore cache = new LocalBlobStore(cacheDirectory) {
+            @Override
+            public InputStream get(String location, long offset, long length) {
+                if (evictBeforeRead.getAndSet(false)) {
+                    try {
+                        Files.delete(resolve(BlobStore.keyOf(location)));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return super.get(location, offset, length);
+            }
+        };
+        CachingBlobStore blobStore = new CachingBlobStore(delegate, cache, cacheDirectory, 100);
+        read(blobStore.get("a.csv"));
+
+        evictBeforeRead.set(true);
+        assertEquals("aaaa", read(blobStore.get("a.csv")));
+        evictBeforeRead.set(true);
+        assertEquals("aa", read(blobStore.get("a.csv", 1, 2)));
+
+        verify(delegate, times(2)).get("a.csv");
+        verify(delegate).get("a.csv", 1, 2);
+    }
+
+    private InputStream remote(String location) {
+        return remote(location, 0, Long.MAX_VALUE);
+    }
+
+    private InputStream remote(String location, long offset, long length) {
+        byte[] content = remote.get(BlobStore.keyOf(location)).getBytes(StandardCharsets.UTF_8);
+        int start = (int) Math.min(offset, content.length);
+        return new ByteArrayInputStream(content, start, (int) Math.min(length, content.length - start));
+    }
+
+    private void setLastModified(String key, long millis) throws IOException {
+        Files.setLastModifiedTime(cacheDirectory.resolve(key), FileTime.fromMillis(millis));
+    }
+}
@@ -0,0 +1,116 @@
+package com.immunopass.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.StreamUtils;
+
+
+class LocalBlobStoreTests {
+
+    @TempDir
+    Path root;
+
+    private LocalBlobStore blobStore;
+
+    @BeforeEach
+    void setUp() {
+        blobStore = new LocalBlobStore(root);
+    }
+
+    @Test
+    void readsBackTheStoredBlobByItsLocation() throws IOException {
+        String location = put("order.csv", "name,mobile\n");
+
+        assertTrue(blobStore.contains(location));
+        assertEquals("name,mobile\n", read(blobStore.get(location)));
+        // Only the last path segment of a location counts.
+        assertEquals("name,mobile\n", read(blobStore.get("https://bucket.s3.amazonaws.com/order.csv")));
+    }
+
+    @Test
+    void readsARangeCutAtTheEndOfTheBlob() throws IOException {
+        String location = put("order.csv", "0123456789");
+
+        assertEquals("234", read(blobStore.get(location, 2, 3)));
+        assertEquals("789", read(blobStore.get(location, 7, 100)));
+        assertEquals("", read(blobStore.get(location, 10, 5)));
+        assertEquals("", read(blobStore.get(location, 20, 5)));
+    }
+
+    @Test
+    void replacesABlobWithoutLeavingPartialFiles() throws IOException {
+        String location = put("order.csv", "first");
+        put("order.csv", "second");
+
+        assertEquals("second", read(blobStore.get(location)));
+        assertEquals(1, files().size());
+    }
+
+    @Test
+    void keepsThePreviousBlobWhenAWriteFails() throws IOException {
+        String location = put("order.csv", "first");
+        InputStream failing = new InputStream() {
+            private int remaining = 3;
+
+            @Override
+            public int read() throws IOException {
+                if (remaining == 0) {
+                    throw new IOException("Connection reset");
+                }
+                remaining--;
+                return 'x';
+            }
+        };
+
+        assertThrows(UncheckedIOException.class, () -> blobStore.put("order.csv", failing, -1, null));
+
+        assertEquals("first", read(blobStore.get(location)));
+        assertEquals(1, files().size());
+    }
+
+    @Test
+    void rejectsKeysOutsideTheRoot() {
+        assertThrows(IllegalArgumentException.class, () -> blobStore.resolve("../order.csv"));
+        assertThrows(IllegalArgumentException.class, () -> blobStore.resolve("orders/../../order.csv"));
+        assertThrows(IllegalArgumentException.class, () -> blobStore.resolve("orders/order.csv"));
+        assertThrows(IllegalArgumentException.class, () -> blobStore.resolve(".."));
+        assertThrows(IllegalArgumentException.class, () -> blobStore.get("/tmp/.."));
+        assertEquals(root.toAbsolutePath().normalize().resolve("order.csv"), blobStore.resolve("order.csv"));
+    }
+
+    @Test
+    void failsToReadAMissingBlob() {
+        assertThrows(UncheckedIOException.class, () -> blobStore.get("missing.csv"));
+    }
+
+    private String put(String key, String content) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return blobStore.put(key, new ByteArrayInputStream(bytes), bytes.length, "text/csv");
+    }
+
+    private List<Path> files() throws IOException {
+        try (Stream<Path> files = Files.list(root)) {
+            return files.collect(Collectors.toList());
+        }
+    }
+
+    static String read(InputStream content) throws IOException {
+        try (InputStream stream = content) {
+            return new String(StreamUtils.copyToByteArray(stream), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.immunopass.tracing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.MDC;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.immunopass.enums.SpanKind;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+
+class TracerTests {
+
+    @TempDir
+    Path directory;
+    private Path file;
+    private OtlpJsonSpanExporter exporter;
+    private Tracer tracer;
+
+    @BeforeEach
+    void setUp() {
+        file = directory.resolve("spans.json");
+        exporter = new OtlpJsonSpanExporter(new SimpleMeterRegistry(), file.toString(), "", "immunopass", 100, 10,
+                60000, 1000);
+        tracer = new Tracer(exporter);
+    }
+
+    @AfterEach
+    void tearDown() {
+        exporter.flush();
+    }
+
+    @Test
+    void childSpansJoinTheCurrentTraceAndRestoreTheMdc() {
+        try (Span parent = tracer.startSpan("parent", SpanKind.INTERNAL)) {
+            try (Span child = tracer.startSpan("child", SpanKind.CLIENT)) {
+                assertEquals(parent.getTraceId(), child.getTraceId());
+                assertEquals(parent.getSpanId(), child.getParentSpanId());
+                assertEquals(child.getSpanId(), MDC.get(Tracer.SPAN_ID_KEY));
+            }
+            assertSame(parent, tracer.currentSpan());
+            assertEquals(parent.getSpanId(), MDC.get(Tracer.SPAN_ID_KEY));
+        }
+        assertNull(tracer.currentSpan());
+        assertNull(MDC.get(Tracer.TRACE_ID_KEY));
+    }
+
+    @Test
+    void serverSpansContinueAValidTraceparent() {
+        try (Span span = tracer.startServerSpan("GET /", "00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01")) {
+            assertEquals("0af7651916cd43dd8448eb211c80319c", span.getTraceId());
+            assertEquals("b7ad6b7169203331", span.getParentSpanId());
+        }
+        try (Span span = tracer.startServerSpan("GET /", "00-00000000000000000000000000000000-b7ad6b7169203331-01")) {
+            assertNull(span.getParentSpanId());
+        }
+    }
+
+    @Test
+    void untracedThreadsDontRecordChildSpans() {
+        assertSame(Span.NOOP, tracer.startChildSpan("VoucherRepository.findByVoucherCode", SpanKind.CLIENT));
+    }
+
+    @Test
+    void spansAreExportedAsOtlpJson() throws Exception {
+        Span root = tracer.startDetachedSpan("voucher_order");
+        root.setAttribute("voucher_order.id", 7L);
+        try (Span stage = tracer.startSpan("voucher_order.ingest", SpanKind.INTERNAL, root)) {
+            stage.recordError(new IllegalStateException("boom"));
+        }
+        root.close();
+        exporter.flush();
+
+        // One line per batch, the writer thread may have taken the first span on its own.
+        List<JsonNode> spans = new ArrayList<>();
+        for (String line : Files.readAllLines(file)) {
+            JsonNode resourceSpans = new ObjectMapper().readTree(line).get("resourceSpans").get(0);
+            assertEquals("immunopass",
+                    resourceSpans.get("resource").get("attributes").get(0).get("value").get("stringValue").asText());
+            resourceSpans.get("scopeSpans").get(0).get("spans").forEach(spans::add);
+        }
+        assertEquals(2, spans.size());
+        assertEquals("voucher_order.ingest", spans.get(0).get("name").asText());
+        assertEquals(root.getSpanId(), spans.get(0).get("parentSpanId").asText());
+        assertEquals(2, spans.get(0).get("status").get("code").asInt());
+        assertEquals("7", spans.get(1).get("attributes").get(0).get("value").get("intValue").asText());
+    }
+}
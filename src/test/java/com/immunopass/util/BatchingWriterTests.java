@@ -0,0 +1,98 @@
+package com.immunopass.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+
+class BatchingWriterTests {
+
+    private final List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    void writesAFullBatchWithoutWaitingForTheInterval() throws InterruptedException {
+        CountDownLatch written = new CountDownLatch(1);
+        try (BatchingWriter<Integer> writer = new BatchingWriter<>("test-writer", 10, 3, 60000, batch -> {
+            batches.add(new ArrayList<>(batch));
+            written.countDown();
+        })) {
+            writer.start();
+            // Lets the thread find the queue empty and park for the interval.
+            Thread.sleep(200);
+            writer.offer(1);
+            writer.offer(2);
+            writer.offer(3);
+
+            assertTrue(written.await(10, TimeUnit.SECONDS));
+            assertEquals(Collections.singletonList(Arrays.asList(1, 2, 3)), batches);
+        }
+    }
+
+    @Test
+    void writesWhatIsQueuedEveryInterval() throws InterruptedException {
+        CountDownLatch written = new CountDownLatch(1);
+        try (BatchingWriter<Integer> writer = new BatchingWriter<>("test-writer", 10, 100, 50, batch -> {
+            batches.add(new ArrayList<>(batch));
+            written.countDown();
+        })) {
+            writer.start();
+            writer.offer(1);
+
+            assertTrue(written.await(10, TimeUnit.SECONDS));
+            assertEquals(Collections.singletonList(Collections.singletonList(1)), batches);
+        }
+    }
+
+    @Test
+    void rejectsItemsBeyondCapacity() {
+        BatchingWriter<Integer> writer = new BatchingWriter<>("test-writer", 2, 10, 60000, batches::add);
+
+        assertTrue(writer.offer(1));
+        assertTrue(writer.offer(2));
+        assertFalse(writer.offer(3));
+        assertEquals(2, writer.size());
+    }
+
+    @Test
+    void closeWritesWhatIsLeftInBatches() {
+        BatchingWriter<Integer> writer = new BatchingWriter<>("test-writer", 10, 2, 60000,
+                batch -> batches.add(new ArrayList<>(batch)));
+        for (int i = 1; i <= 5; i++) {
+            writer.offer(i);
+        }
+
+        writer.close();
+
+        assertEquals(Arrays.asList(Arrays.asList(1, 2), Arrays.asList(3, 4), Collections.singletonList(5)),
+                batches);
+        assertEquals(0, writer.size());
+    }
+
+    @Test
+    void keepsWritingAfterTheSinkFails() throws InterruptedException {
+        AtomicBoolean failed = new AtomicBoolean();
+        CountDownLatch written = new CountDownLatch(1);
+        try (BatchingWriter<Integer> writer = new BatchingWriter<>("test-writer", 10, 1, 50, batch -> {
+            if (failed.compareAndSet(false, true)) {
+                throw new IllegalStateException("sink is down");
+            }
+            batches.add(new ArrayList<>(batch));
+            written.countDown();
+        })) {
+            writer.start();
+            writer.offer(1);
+            writer.offer(2);
+
+            assertTrue(written.await(10, TimeUnit.SECONDS));
+            assertEquals(Collections.singletonList(Collections.singletonList(2)), batches);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.immunopass.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.StreamUtils;
+
+
+class GzipUtilTests {
+
+    @Test
+    void acceptsGzipListedWithAPositiveQuality() {
+        assertTrue(GzipUtil.acceptsGzip("gzip"));
+        assertTrue(GzipUtil.acceptsGzip("GZIP"));
+        assertTrue(GzipUtil.acceptsGzip("x-gzip"));
+        assertTrue(GzipUtil.acceptsGzip("gzip, deflate, br"));
+        assertTrue(GzipUtil.acceptsGzip("deflate;q=1.0, gzip;q=0.5"));
+        assertTrue(GzipUtil.acceptsGzip("gzip ; Q=0.001"));
+    }
+
+    @Test
+    void doesNotAcceptGzipRefusedWithAZeroQuality() {
+        assertFalse(GzipUtil.acceptsGzip("gzip;q=0"));
+        assertFalse(GzipUtil.acceptsGzip("gzip; q=0.000, deflate"));
+        // An explicit gzip overrides the wildcard.
+        assertFalse(GzipUtil.acceptsGzip("*, gzip;q=0"));
+        assertFalse(GzipUtil.acceptsGzip("gzip;q=oops"));
+        assertFalse(GzipUtil.acceptsGzip("gzip;q=2"));
+    }
+
+    @Test
+    void acceptsGzipThroughTheWildcard() {
+        assertTrue(GzipUtil.acceptsGzip("*"));
+        assertTrue(GzipUtil.acceptsGzip("deflate, *;q=0.1"));
+        assertFalse(GzipUtil.acceptsGzip("deflate, *;q=0"));
+    }
+
+    @Test
+    void doesNotAcceptGzipUnlessListed() {
+        assertFalse(GzipUtil.acceptsGzip(null));
+        assertFalse(GzipUtil.acceptsGzip(""));
+        assertFalse(GzipUtil.acceptsGzip("identity"));
+        assertFalse(GzipUtil.acceptsGzip("deflate, br"));
+        // Only whole codings count.
+        assertFalse(GzipUtil.acceptsGzip("not-gzip"));
+    }
+
+    @Test
+    void decompressesOnlyGzippedContent() throws IOException {
+        byte[] content = "voucher_code,name\n".getBytes(StandardCharsets.UTF_8);
+
+        try (InputStream plain = GzipUtil.decompressIfGzipped(new ByteArrayInputStream(content));
+                InputStream gzipped = GzipUtil.decompressIfGzipped(
+                        new ByteArrayInputStream(GzipUtil.compress(content)))) {
+            assertArrayEquals(content, StreamUtils.copyToByteArray(plain));
+            assertArrayEquals(content, StreamUtils.copyToByteArray(gzipped));
+        }
+    }
+}
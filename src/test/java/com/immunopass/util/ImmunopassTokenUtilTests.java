@@ -0,0 +1,115 @@
+package com.immunopass.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Base64;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import com.immunopass.entity.ImmunopassEntity;
+import com.immunopass.enums.ImmunoTestResult;
+import com.immunopass.model.ImmunopassToken;
+import io.jsonwebtoken.JwtException;
+
+
+class ImmunopassTokenUtilTests {
+
+    private KeyPair oldKey;
+    private KeyPair newKey;
+    private MockEnvironment environment;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        oldKey = generateKeyPair();
+        newKey = generateKeyPair();
+        environment = new MockEnvironment();
+    }
+
+    @Test
+    void verifiesTheTokensItSigns() {
+        ImmunopassTokenUtil tokenUtil = tokenUtil("k1", oldKey, "");
+        ImmunopassToken token = tokenUtil.verifyToken(tokenUtil.generateToken(immunopass()));
+        assertEquals("ABCDEFGH", token.getImmunopassCode());
+        assertEquals("J*** D**", token.getMaskedUserName());
+        assertEquals(ImmunoTestResult.GREEN, token.getImmunoTestResult());
+        assertTrue(token.getExpiresAt().isAfter(token.getIssuedAt()));
+    }
+
+    @Test
+    void rejectsTokensSignedWithAnUnknownKey() {
+        String token = tokenUtil("k1", oldKey, "").generateToken(immunopass());
+        assertThrows(JwtException.class, () -> tokenUtil("k2", newKey, "").verifyToken(token));
+    }
+
+    @Test
+    void rejectsTamperedTokens() {
+        ImmunopassTokenUtil tokenUtil = tokenUtil("k1", oldKey, "");
+        String token = tokenUtil.generateToken(immunopass());
+        String[] parts = token.split("\\.");
+        String claims = "{\"sub\":\"ZZZZZZZZ\",\"n\":\"J*** D**\",\"r\":\"GREEN\"}";
+        String tampered = parts[0] + "."
+                + Base64.getUrlEncoder().withoutPadding().encodeToString(claims.getBytes(StandardCharsets.UTF_8))
+                + "." + parts[2];
+        assertThrows(JwtException.class, () -> tokenUtil.verifyToken(tampered));
+    }
+
+    @Test
+    void keepsVerifyingTokensOfARetiredKey() {
+        String oldToken = tokenUtil("k1", oldKey, "").generateToken(immunopass());
+        ImmunopassTokenUtil rotated = tokenUtil("k2", newKey, " k1:" + publicKey(oldKey) + " ");
+        assertEquals("ABCDEFGH", rotated.verifyToken(oldToken).getImmunopassCode());
+        assertEquals("ABCDEFGH", rotated.verifyToken(rotated.generateToken(immunopass())).getImmunopassCode());
+        assertEquals(2, rotated.getPublicKeys().size());
+        assertEquals(publicKey(oldKey), rotated.getPublicKeys().get("k1"));
+    }
+
+    @Test
+    void rejectsRetiredKeysWithoutAKeyId() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> tokenUtil("k2", newKey, publicKey(oldKey)));
+        assertTrue(e.getMessage().contains("expected kid:base64"), e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> tokenUtil("k2", newKey, "k1:"));
+    }
+
+    @Test
+    void refusesToStartWithoutAKey() {
+        assertThrows(IllegalStateException.class, () -> tokenUtil("", null, ""));
+    }
+
+    @Test
+    void usesAnEphemeralKeyInDevelopment() {
+        environment.setActiveProfiles("local");
+        ImmunopassTokenUtil tokenUtil = tokenUtil("", null, "");
+        assertEquals("ABCDEFGH", tokenUtil.verifyToken(tokenUtil.generateToken(immunopass())).getImmunopassCode());
+    }
+
+    private ImmunopassTokenUtil tokenUtil(String keyId, KeyPair keyPair, String retiredPublicKeys) {
+        return new ImmunopassTokenUtil(keyId,
+                keyPair == null ? "" : Base64.getEncoder().encodeToString(keyPair.getPrivate().getEncoded()),
+                keyPair == null ? "" : publicKey(keyPair),
+                retiredPublicKeys, 90, environment);
+    }
+
+    private static String publicKey(KeyPair keyPair) {
+        return Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded());
+    }
+
+    private static ImmunopassEntity immunopass() {
+        return ImmunopassEntity.builder()
+                .userName("John Doe")
+                .immunopassCode("ABCDEFGH")
+                .immunoTestResult(ImmunoTestResult.GREEN)
+                .build();
+    }
+
+    private static KeyPair generateKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        return generator.generateKeyPair();
+    }
+}
@@ -0,0 +1,87 @@
+package com.immunopass.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+
+class LongHashSetTests {
+
+    @Test
+    void addsEachValueOnce() {
+        LongHashSet set = new LongHashSet(16);
+
+        assertTrue(set.add(9876543210L));
+        assertFalse(set.add(9876543210L));
+        assertTrue(set.add(-1L));
+        assertTrue(set.contains(9876543210L));
+        assertTrue(set.contains(-1L));
+        assertFalse(set.contains(9876543211L));
+        assertEquals(2, set.size());
+    }
+
+    @Test
+    void holdsZeroThoughItMarksEmptySlots() {
+        LongHashSet set = new LongHashSet(16);
+        assertFalse(set.contains(0L));
+
+        assertTrue(set.add(0L));
+        assertFalse(set.add(0L));
+
+        assertTrue(set.contains(0L));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    void keepsItsValuesAcrossResizes() {
+        LongHashSet set = new LongHashSet(0);
+        for (long value = 0; value < 10000; value++) {
+            assertTrue(set.add(value * 31));
+        }
+
+        assertEquals(10000, set.size());
+        for (long value = 0; value < 10000; value++) {
+            assertTrue(set.contains(value * 31));
+            assertFalse(set.contains(value * 31 + 1));
+        }
+    }
+
+    /*
+     * Multiples of a large power of two share their low bits, so before mixing they would all land in one slot and
+     * be found only by probing past each other.
+     */
+    @Test
+    void findsValuesPastCollidingOnes() {
+        LongHashSet set = new LongHashSet(4);
+        for (long value = 1; value <= 1000; value++) {
+            set.add(value << 32);
+        }
+
+        for (long value = 1; value <= 1000; value++) {
+            assertTrue(set.contains(value << 32));
+            assertFalse(set.add(value << 32));
+        }
+        assertFalse(set.contains(1001L << 32));
+    }
+
+    @Test
+    void agreesWithAHashSet() {
+        Random random = new Random(42);
+        LongHashSet set = new LongHashSet(100);
+        Set<Long> expected = new HashSet<>();
+        for (int i = 0; i < 5000; i++) {
+            // A narrow range, so values repeat.
+            long value = 9000000000L + random.nextInt(3000);
+            assertEquals(expected.add(value), set.add(value));
+        }
+
+        assertEquals(expected.size(), set.size());
+        for (long value = 9000000000L; value < 9000003000L; value++) {
+            assertEquals(expected.contains(value), set.contains(value));
+        }
+    }
+}
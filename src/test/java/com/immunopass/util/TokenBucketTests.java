@@ -0,0 +1,81 @@
+package com.immunopass.util;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+
+class TokenBucketTests {
+
+    @Test
+    void rejectsANonPositiveRate() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(-1));
+    }
+
+    @Test
+    void allowsABurstOfOneSecond() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(20);
+        long start = System.nanoTime();
+        acquire(bucket, 20);
+        assertTrue(elapsedMs(start) < 500, "a full bucket shouldn't wait");
+    }
+
+    @Test
+    void holdsTheRateOnceEmpty() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(20);
+        acquire(bucket, 20);
+        long start = System.nanoTime();
+        acquire(bucket, 10);
+        // 10 tokens refill in 500 ms.
+        assertTrue(elapsedMs(start) >= 450, "an empty bucket should wait for its tokens");
+    }
+
+    @Test
+    void holdsTheRateAcrossThreads() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(20);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    acquire(bucket, 10);
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        // The burst covers 20 of the 40 tokens, the other 20 refill in a second.
+        assertTrue(elapsedMs(start) >= 950, "the threads should share the rate");
+        assertFalse(interrupted.get());
+    }
+
+    @Test
+    void waitingIsInterruptible() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1);
+        bucket.acquire();
+        Thread.currentThread().interrupt();
+        assertThrows(InterruptedException.class, bucket::acquire);
+    }
+
+    private static void acquire(TokenBucket bucket, int tokens) throws InterruptedException {
+        for (int i = 0; i < tokens; i++) {
+            bucket.acquire();
+        }
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}